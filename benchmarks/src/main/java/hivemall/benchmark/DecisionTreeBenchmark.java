@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.math.matrix.Matrix;
+import hivemall.math.matrix.dense.RowMajorDenseMatrix2d;
+import hivemall.math.random.RandomNumberGeneratorFactory;
+import hivemall.smile.classification.DecisionTree;
+import hivemall.smile.classification.DecisionTree.SplitRule;
+import hivemall.smile.data.Attribute;
+import hivemall.smile.utils.SmileExtUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to train a {@link DecisionTree} on a dense dataset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DecisionTreeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int numExamples;
+
+    @Param({"20"})
+    public int numDims;
+
+    private Matrix x;
+    private int[] y;
+    private Attribute[] attributes;
+
+    @Setup
+    public void setup() throws HiveException {
+        SyntheticData data = SyntheticData.dense(numExamples, numDims);
+        final double[][] rows = new double[numExamples][numDims];
+        this.y = new int[numExamples];
+        for (int i = 0; i < numExamples; i++) {
+            float[] features = data.denseFeatures(i);
+            for (int j = 0; j < numDims; j++) {
+                rows[i][j] = features[j];
+            }
+            y[i] = (int) data.label(i);
+        }
+        this.x = new RowMajorDenseMatrix2d(rows, numDims);
+        this.attributes = SmileExtUtils.attributeTypes(null, x);
+    }
+
+    @Benchmark
+    public DecisionTree train() {
+        return new DecisionTree(attributes, x, y, numDims, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            2, 1, null, null, SplitRule.GINI, RandomNumberGeneratorFactory.createPRNG(43L));
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.ftvec.hashing.FeatureHashingUDF;
+import hivemall.ftvec.scaling.L2NormalizationUDF;
+import hivemall.ftvec.scaling.RescaleUDF;
+import hivemall.ftvec.scaling.ZScoreUDF;
+import hivemall.tools.math.SigmoidGenericUDF;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-row throughput of the scaling and feature UDFs that are evaluated once per row of a scan:
+ * sigmoid, zscore, rescale, feature_hashing and l2_normalize.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class FeatureUDFBenchmark {
+
+    private static final int NUM_ROWS = 1000;
+
+    private float[] values;
+    private String[] features;
+    private List<String>[] featureVectors;
+    private List<Text>[] textVectors;
+
+    private SigmoidGenericUDF sigmoid;
+    private ZScoreUDF zscore;
+    private RescaleUDF rescale;
+    private FeatureHashingUDF featureHashing;
+    private L2NormalizationUDF l2normalize;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() throws HiveException {
+        SyntheticData data = SyntheticData.sparse(NUM_ROWS, 30, 1 << 16);
+        this.values = new float[NUM_ROWS];
+        this.features = new String[NUM_ROWS];
+        this.featureVectors = new List[NUM_ROWS];
+        this.textVectors = new List[NUM_ROWS];
+        for (int i = 0; i < NUM_ROWS; i++) {
+            String[] x = data.sparseFeatures(i);
+            features[i] = x[0];
+            values[i] = Float.parseFloat(x[0].substring(x[0].indexOf(':') + 1));
+            // feature_hashing takes feature names rather than integer indices
+            final List<String> names = new ArrayList<String>(x.length);
+            final List<Text> texts = new ArrayList<Text>(x.length);
+            for (String f : x) {
+                names.add("f" + f);
+                texts.add(new Text(f));
+            }
+            featureVectors[i] = names;
+            textVectors[i] = texts;
+        }
+
+        this.sigmoid = new SigmoidGenericUDF();
+        sigmoid.initialize(
+            new ObjectInspector[] {PrimitiveObjectInspectorFactory.javaFloatObjectInspector});
+        this.zscore = new ZScoreUDF();
+        this.rescale = new RescaleUDF();
+        this.featureHashing = new FeatureHashingUDF();
+        featureHashing.initialize(
+            new ObjectInspector[] {ObjectInspectorFactory.getStandardListObjectInspector(
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector)});
+        this.l2normalize = new L2NormalizationUDF();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public void sigmoid(Blackhole bh) throws HiveException {
+        final DeferredObject[] args = new DeferredObject[1];
+        for (float v : values) {
+            args[0] = new DeferredJavaObject(Float.valueOf(v));
+            bh.consume(sigmoid.evaluate(args));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public void zscore(Blackhole bh) {
+        for (float v : values) {
+            bh.consume(zscore.evaluate(v, 0.5f, 1.5f));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public void rescale(Blackhole bh) throws HiveException {
+        final Float min = Float.valueOf(-3.f), max = Float.valueOf(6.f);
+        for (String f : features) {
+            bh.consume(rescale.evaluate(f, min, max));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public void featureHashing(Blackhole bh) throws HiveException {
+        final DeferredObject[] args = new DeferredObject[1];
+        for (List<String> x : featureVectors) {
+            args[0] = new DeferredJavaObject(x);
+            bh.consume(featureHashing.evaluate(args));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public void l2normalize(Blackhole bh) throws HiveException {
+        for (List<Text> x : textVectors) {
+            bh.consume(l2normalize.evaluate(x));
+        }
+    }
+
+}
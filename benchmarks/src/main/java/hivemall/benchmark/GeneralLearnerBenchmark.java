@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.classifier.GeneralClassifierUDTF;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Training throughput of {@code GeneralLearnerBaseUDTF#process} through train_classifier.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneralLearnerBenchmark {
+
+    private static final int NUM_EXAMPLES = 10000;
+
+    @Param({"sgd", "adagrad", "adam"})
+    public String optimizer;
+
+    @Param({"1", "64"})
+    public int miniBatch;
+
+    private List<?>[] features;
+    private Float[] labels;
+    private GeneralClassifierUDTF udtf;
+
+    @Setup(Level.Trial)
+    public void setupData() throws HiveException {
+        SyntheticData data = SyntheticData.sparse(NUM_EXAMPLES, 30, 1 << 16);
+        this.features = new List<?>[NUM_EXAMPLES];
+        this.labels = new Float[NUM_EXAMPLES];
+        for (int i = 0; i < NUM_EXAMPLES; i++) {
+            features[i] = Arrays.asList(data.sparseFeatures(i));
+            labels[i] = Float.valueOf(data.label(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupLearner() throws HiveException {
+        GeneralClassifierUDTF udtf = new GeneralClassifierUDTF();
+        ObjectInspector featuresOI = ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+        ObjectInspector labelOI = PrimitiveObjectInspectorFactory.javaFloatObjectInspector;
+        ObjectInspector optionsOI = ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+            "-loss logloss -opt " + optimizer + " -mini_batch " + miniBatch + " -iter 1");
+        udtf.initialize(new ObjectInspector[] {featuresOI, labelOI, optionsOI});
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {}
+        });
+        this.udtf = udtf;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownLearner() throws HiveException {
+        udtf.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_EXAMPLES)
+    public void process() throws HiveException {
+        final GeneralClassifierUDTF udtf = this.udtf;
+        final Object[] args = new Object[2];
+        for (int i = 0; i < NUM_EXAMPLES; i++) {
+            args[0] = features[i];
+            args[1] = labels[i];
+            udtf.process(args);
+        }
+    }
+
+}
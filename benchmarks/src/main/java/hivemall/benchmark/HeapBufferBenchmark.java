@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.utils.buffer.HeapBuffer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link HeapBuffer}, which holds the entries of factorization machines, accessed
+ * in the random order of features.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class HeapBufferBenchmark {
+
+    private static final int NUM_ENTRIES = 1 << 16;
+
+    /** The number of floats of an entry, e.g., W_i and V_if of factors */
+    @Param({"1", "10"})
+    public int entrySize;
+
+    private HeapBuffer buffer;
+    private long[] pointers;
+    private float[] values;
+
+    @Setup
+    public void setup() {
+        this.buffer = new HeapBuffer();
+        this.pointers = new long[NUM_ENTRIES];
+        this.values = new float[entrySize];
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            pointers[i] = buffer.allocate(entrySize * 4);
+        }
+        // shuffle the access order
+        final Random rnd = new Random(43L);
+        for (int i = NUM_ENTRIES - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            long tmp = pointers[i];
+            pointers[i] = pointers[j];
+            pointers[j] = tmp;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENTRIES)
+    public void allocate() {
+        HeapBuffer buf = new HeapBuffer();
+        final int bytes = entrySize * 4;
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            buf.allocate(bytes);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENTRIES)
+    public float getFloat() {
+        float sum = 0.f;
+        for (long ptr : pointers) {
+            sum += buffer.getFloat(ptr);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENTRIES)
+    public void putFloat() {
+        for (long ptr : pointers) {
+            buffer.putFloat(ptr, 1.f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENTRIES)
+    public float getFloats() {
+        final float[] values = this.values;
+        float sum = 0.f;
+        for (long ptr : pointers) {
+            buffer.getFloats(ptr, values);
+            sum += values[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENTRIES)
+    public void putFloats() {
+        final float[] values = this.values;
+        for (long ptr : pointers) {
+            buffer.putFloats(ptr, values);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.utils.collections.maps.Long2FloatOpenHashTable;
+import hivemall.utils.collections.maps.OpenHashTable;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Put and get throughput of {@link OpenHashTable} and {@link Long2FloatOpenHashTable}, with
+ * {@link HashMap} as a baseline. Keys are random feature indices as in sparse models.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class OpenHashTableBenchmark {
+
+    private static final int NUM_OPS = 1 << 16;
+
+    @Param({"1024", "1048576"})
+    public int numKeys;
+
+    private long[] keys;
+    private Long[] boxedKeys;
+
+    private OpenHashTable<Long, Float> openHashTable;
+    private Long2FloatOpenHashTable long2floatTable;
+    private HashMap<Long, Float> hashMap;
+
+    @Setup
+    public void setup() {
+        final Random rnd = new Random(43L);
+        this.keys = new long[NUM_OPS];
+        this.boxedKeys = new Long[NUM_OPS];
+        for (int i = 0; i < NUM_OPS; i++) {
+            long k = rnd.nextInt(numKeys);
+            keys[i] = k;
+            boxedKeys[i] = Long.valueOf(k);
+        }
+
+        this.openHashTable = new OpenHashTable<Long, Float>(numKeys);
+        this.long2floatTable = new Long2FloatOpenHashTable(numKeys);
+        this.hashMap = new HashMap<Long, Float>(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            Long k = Long.valueOf(i);
+            openHashTable.put(k, 1.f);
+            long2floatTable.put(i, 1.f);
+            hashMap.put(k, 1.f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public float openHashTableGet() {
+        float sum = 0.f;
+        for (Long k : boxedKeys) {
+            sum += openHashTable.get(k).floatValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public void openHashTablePut() {
+        final Float v = Float.valueOf(2.f);
+        for (Long k : boxedKeys) {
+            openHashTable.put(k, v);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public float long2floatGet() {
+        float sum = 0.f;
+        for (long k : keys) {
+            sum += long2floatTable.get(k);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public void long2floatPut() {
+        for (long k : keys) {
+            long2floatTable.put(k, 2.f);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public float hashMapGet() {
+        float sum = 0.f;
+        for (Long k : boxedKeys) {
+            sum += hashMap.get(k).floatValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_OPS)
+    public void hashMapPut() {
+        final Float v = Float.valueOf(2.f);
+        for (Long k : boxedKeys) {
+            hashMap.put(k, v);
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.benchmark;
+
+import hivemall.dataset.LogisticRegressionDataGeneratorUDTF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * Synthetic datasets generated by lr_datagen, i.e., {@link LogisticRegressionDataGeneratorUDTF},
+ * so that every benchmark runs on the same reproducible data.
+ */
+public final class SyntheticData {
+
+    @Nonnull
+    private final float[] labels;
+    @Nonnull
+    private final Object[] features; // String[] for sparse, float[] for dense
+
+    private SyntheticData(@Nonnull float[] labels, @Nonnull Object[] features) {
+        this.labels = labels;
+        this.features = features;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public float label(final int i) {
+        return labels[i];
+    }
+
+    /**
+     * @return features in "index:value" format of the i-th example of a sparse dataset
+     */
+    @Nonnull
+    public String[] sparseFeatures(final int i) {
+        return (String[]) features[i];
+    }
+
+    @Nonnull
+    public float[] denseFeatures(final int i) {
+        return (float[]) features[i];
+    }
+
+    /**
+     * Generates a sparse classification dataset whose feature indices are in [0, numDims).
+     */
+    @Nonnull
+    public static SyntheticData sparse(@Nonnegative int numExamples, @Nonnegative int numFeatures,
+            @Nonnegative int numDims) throws HiveException {
+        return generate("-classification -n_examples " + numExamples + " -n_features "
+                + numFeatures + " -n_dims " + numDims, false);
+    }
+
+    /**
+     * Generates a dense classification dataset.
+     */
+    @Nonnull
+    public static SyntheticData dense(@Nonnegative int numExamples, @Nonnegative int numDims)
+            throws HiveException {
+        return generate("-classification -dense -n_examples " + numExamples + " -n_features "
+                + numDims + " -n_dims " + numDims, true);
+    }
+
+    @Nonnull
+    private static SyntheticData generate(@Nonnull final String options, final boolean dense)
+            throws HiveException {
+        final List<Float> labels = new ArrayList<Float>();
+        final List<Object> features = new ArrayList<Object>();
+
+        LogisticRegressionDataGeneratorUDTF udtf = new LogisticRegressionDataGeneratorUDTF();
+        ObjectInspector optionsOI = ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector, options + " -seed 43");
+        udtf.initialize(new ObjectInspector[] {optionsOI});
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {
+                // forwarded arrays are reused by lr_datagen and thus copied
+                Object[] row = (Object[]) input;
+                labels.add((Float) row[0]);
+                List<?> list = (List<?>) row[1];
+                final int size = list.size();
+                if (dense) {
+                    float[] x = new float[size];
+                    for (int i = 0; i < size; i++) {
+                        x[i] = ((Float) list.get(i)).floatValue();
+                    }
+                    features.add(x);
+                } else {
+                    features.add(list.toArray(new String[size]));
+                }
+            }
+        });
+        udtf.process(new Object[] {options});
+        udtf.close();
+
+        final int size = labels.size();
+        final float[] y = new float[size];
+        for (int i = 0; i < size; i++) {
+            y[i] = labels.get(i).floatValue();
+        }
+        return new SyntheticData(y, features.toArray());
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.benchmark.SyntheticData;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Training and prediction throughput of {@link FactorizationMachineModel}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class FactorizationMachineBenchmark {
+
+    private static final int NUM_EXAMPLES = 10000;
+
+    @Param({"5", "20"})
+    public int factors;
+
+    private List<?>[] features;
+    private Double[] labels;
+    private Feature[][] parsed;
+
+    private FactorizationMachineUDTF udtf;
+
+    @Setup(Level.Trial)
+    public void setupData() throws HiveException {
+        SyntheticData data = SyntheticData.sparse(NUM_EXAMPLES, 30, 1 << 16);
+        ListObjectInspector listOI = ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+        this.features = new List<?>[NUM_EXAMPLES];
+        this.labels = new Double[NUM_EXAMPLES];
+        this.parsed = new Feature[NUM_EXAMPLES][];
+        for (int i = 0; i < NUM_EXAMPLES; i++) {
+            features[i] = Arrays.asList(data.sparseFeatures(i));
+            labels[i] = Double.valueOf(data.label(i));
+            parsed[i] = Feature.parseFeatures(features[i], listOI, null, false);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupLearner() throws HiveException {
+        FactorizationMachineUDTF udtf = new FactorizationMachineUDTF();
+        ObjectInspector featuresOI = ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+        ObjectInspector labelOI = PrimitiveObjectInspectorFactory.javaDoubleObjectInspector;
+        ObjectInspector optionsOI = ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+            "-classification -factors " + factors + " -iters 1 -seed 43");
+        udtf.initialize(new ObjectInspector[] {featuresOI, labelOI, optionsOI});
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {}
+        });
+        this.udtf = udtf;
+        // one pass so that predict() runs against a populated model
+        process();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownLearner() throws HiveException {
+        udtf.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_EXAMPLES)
+    public void process() throws HiveException {
+        final FactorizationMachineUDTF udtf = this.udtf;
+        final Object[] args = new Object[2];
+        for (int i = 0; i < NUM_EXAMPLES; i++) {
+            args[0] = features[i];
+            args[1] = labels[i];
+            udtf.process(args);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_EXAMPLES)
+    public void predict(final Blackhole bh) throws HiveException {
+        final FactorizationMachineModel model = udtf._model;
+        for (int i = 0; i < NUM_EXAMPLES; i++) {
+            bh.consume(model.predict(parsed[i]));
+        }
+    }
+
+}
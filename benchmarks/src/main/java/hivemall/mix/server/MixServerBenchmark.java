@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.server;
+
+import hivemall.mix.MixMessage;
+import hivemall.mix.MixMessage.MixEventName;
+import hivemall.mix.MixMessageDecoder;
+import hivemall.mix.MixMessageEncoder;
+import hivemall.mix.server.MixServer.ServerState;
+import hivemall.utils.lang.CommandLineUtils;
+import hivemall.utils.net.NetUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load generator of a MIX server. Each benchmark thread holds a connection to an embedded
+ * {@link MixServer} and sends average requests one at a time. The sync threshold of the server is
+ * set to 0 so that every request is answered, and thus the throughput mode reports messages/sec
+ * and the sample mode reports percentiles of the round-trip latency. Run with {@code -t} to vary
+ * the number of concurrent connections.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MixServerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"1024", "1048576"})
+        public int numFeatures;
+
+        @Param({"false", "true"})
+        public boolean epoll;
+
+        int port;
+        private ExecutorService serverExec;
+
+        @Setup(Level.Trial)
+        public void start() throws InterruptedException {
+            this.port = NetUtils.getAvailablePort();
+            String[] args = epoll
+                    ? new String[] {"-port", Integer.toString(port), "-sync", "0", "-epoll"}
+                    : new String[] {"-port", Integer.toString(port), "-sync", "0"};
+            CommandLine cl = CommandLineUtils.parseOptions(args, MixServer.getOptions());
+            MixServer server = new MixServer(cl);
+            this.serverExec = Executors.newSingleThreadExecutor();
+            serverExec.submit(server);
+
+            int retry = 0;
+            while (server.getState() != ServerState.RUNNING) {
+                if (++retry > 100) {
+                    throw new IllegalStateException("MixServer did not start: " + server);
+                }
+                Thread.sleep(100L);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws InterruptedException {
+            serverExec.shutdownNow();
+            serverExec.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private final BlockingQueue<MixMessage> responses = new ArrayBlockingQueue<MixMessage>(1);
+        private final Random rand = new Random(43L);
+
+        private EventLoopGroup workerGroup;
+        private Channel channel;
+        private int numFeatures;
+        private short clock;
+
+        @Setup(Level.Trial)
+        public void connect(final Server server) throws InterruptedException {
+            this.numFeatures = server.numFeatures;
+            this.workerGroup = new NioEventLoopGroup(1);
+            Bootstrap b = new Bootstrap();
+            b.group(workerGroup);
+            b.channel(NioSocketChannel.class);
+            b.option(ChannelOption.TCP_NODELAY, true);
+            b.handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    ch.pipeline().addLast(new MixMessageEncoder(), new MixMessageDecoder(),
+                        new SimpleChannelInboundHandler<MixMessage>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx,
+                                    MixMessage msg) throws Exception {
+                                responses.put(msg);
+                            }
+                        });
+                }
+            });
+            this.channel = b.connect("localhost", server.port).sync().channel();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws InterruptedException {
+            channel.close().sync();
+            workerGroup.shutdownGracefully().sync();
+        }
+
+        MixMessage roundTrip() throws InterruptedException {
+            Integer feature = Integer.valueOf(rand.nextInt(numFeatures));
+            MixMessage msg = new MixMessage(MixEventName.average, feature,
+                (float) rand.nextGaussian(), ++clock, 1);
+            msg.setGroupID("benchmark");
+            channel.writeAndFlush(msg);
+            return responses.take();
+        }
+    }
+
+    @Benchmark
+    public MixMessage average(final Connection conn) throws InterruptedException {
+        return conn.roundTrip();
+    }
+
+}
@@ -20,8 +20,12 @@ package hivemall;
 
 import hivemall.annotations.VisibleForTesting;
 import hivemall.common.ConversionState;
+import hivemall.common.EpochReplayBuffer;
 import hivemall.model.FeatureValue;
+import hivemall.model.FusedSparseModel;
 import hivemall.model.IWeightValue;
+import hivemall.model.ModelSnapshot;
+import hivemall.model.ModelSnapshot.KeyType;
 import hivemall.model.PredictionModel;
 import hivemall.model.WeightValue;
 import hivemall.model.WeightValue.WeightValueWithCovar;
@@ -31,11 +35,14 @@ import hivemall.optimizer.LossFunctions.LossType;
 import hivemall.optimizer.Optimizer;
 import hivemall.optimizer.OptimizerOptions;
 import hivemall.utils.collections.IMapIterator;
+import hivemall.utils.collections.maps.FloatAccumulatorTable;
+import hivemall.utils.concurrent.ExecutorFactory;
+import hivemall.utils.datetime.StopWatch;
+import hivemall.utils.hadoop.HadoopUtils;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.io.FileUtils;
+import hivemall.utils.io.IOUtils;
 import hivemall.utils.io.NIOUtils;
-import hivemall.utils.io.NioStatefulSegment;
-import hivemall.utils.lang.FloatAccumulator;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.Primitives;
 import hivemall.utils.lang.SizeOf;
@@ -44,9 +51,12 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -56,6 +66,11 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.MapredContext;
+import org.apache.hadoop.hive.ql.exec.MapredContextAccessor;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
@@ -72,6 +87,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectIn
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Reporter;
 
 public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
@@ -90,28 +106,48 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
     private final Map<String, String> optimizerOptions;
     private Optimizer optimizer;
     private LossFunction lossFunction;
+    @Nullable
+    private String warmStartFile;
+    @Nullable
+    private String snapshotDir;
 
     // -----------------------------------------
 
     private PredictionModel model;
+    /** the same instance as the model when the optimizer states are kept in the model */
+    @Nullable
+    private FusedSparseModel fusedModel;
     private long count;
 
     // -----------------------------------------
     // for mini-batch
 
-    /** The accumulated delta of each weight values. */
+    /** The accumulated delta of each weight values, reused across mini-batches. */
     @Nullable
-    private transient Map<Object, FloatAccumulator> accumulated;
+    private transient FloatAccumulatorTable<Object> accumulated;
     private int sampled;
 
+    /** The number of threads to compute the predictions of a mini-batch in parallel */
+    private int miniBatchThreads;
+    /** Buffered examples of a mini-batch when {@link #miniBatchThreads} > 1 */
+    @Nullable
+    private transient FeatureValue[][] batchFeatures;
+    @Nullable
+    private transient float[] batchTargets;
+    @Nullable
+    private transient float[] batchPredicted;
+    private int batchRows;
+    @Nullable
+    private transient ExecutorService batchExecutor;
+
     // -----------------------------------------
     // for iterations
 
     @Nullable
-    protected transient NioStatefulSegment fileIO;
-    @Nullable
-    protected transient ByteBuffer inputBuf;
+    protected transient EpochReplayBuffer replayBuffer;
     private int iterations;
+    private long replayMemoryBudget;
+    private boolean shuffleBlocks;
     protected ConversionState cvState;
 
     // -----------------------------------------
@@ -138,6 +174,13 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
     protected abstract void train(@Nonnull final FeatureValue[] features, final float target);
 
+    /**
+     * Train by the given prediction, which is computed by the weights at the beginning of a
+     * mini-batch when the predictions of a mini-batch are computed in parallel.
+     */
+    protected abstract void train(@Nonnull final FeatureValue[] features, final float target,
+            final float predicted);
+
     @Override
     public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
         if (argOIs.length < 2) {
@@ -150,20 +193,43 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
         processOptions(argOIs);
 
-        this.model = createModel();
-
         try {
             this.optimizer = createOptimizer(optimizerOptions);
         } catch (Throwable e) {
             throw new UDFArgumentException(e);
         }
 
+        this.model = createModel();
+        if (model instanceof FusedSparseModel) {
+            this.fusedModel = (FusedSparseModel) model;
+        }
+
+        if (warmStartFile != null) {
+            loadSnapshot(new File(warmStartFile));
+        }
+
         this.count = 0L;
         this.sampled = 0;
 
         return getReturnOI(getFeatureOutputOI(featureType));
     }
 
+    /**
+     * Keeps the optimizer states in a sparse model so that a weight and its states are updated
+     * with a single lookup. MIX requires clocks, which the fused model does not keep.
+     */
+    @Override
+    protected PredictionModel createModel() {
+        if (dense_model || mixConnectInfo != null || useCovariance()) {
+            return super.createModel();
+        }
+        int initModelSize = getInitialModelSize();
+        logger.info("Build a sparse model fused with the states of "
+                + optimizer.getOptimizerName() + " with " + initModelSize
+                + " initial dimensions");
+        return new FusedSparseModel(initModelSize, optimizer.getNumStates());
+    }
+
     @Override
     protected Options getOptions() {
         Options opts = super.getOptions();
@@ -177,6 +243,15 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
             "Whether to disable convergence check [default: OFF]");
         opts.addOption("cv_rate", "convergence_rate", true,
             "Threshold to determine convergence [default: 0.005]");
+        EpochReplayBuffer.setup(opts);
+        // mini-batch
+        opts.addOption("mini_batch_threads", true,
+            "The number of threads to compute predictions of a mini-batch [default: 1]");
+        // model snapshot
+        opts.addOption("warm_start", true,
+            "Path to a model snapshot to resume training from, e.g., a file in distributed cache");
+        opts.addOption("snapshot", "snapshot_dir", true,
+            "Directory to write a model snapshot with optimizer states when training finishes");
         OptimizerOptions.setup(opts);
         return opts;
     }
@@ -189,6 +264,9 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
         int iterations = 10;
         boolean conversionCheck = true;
         double convergenceRate = 0.005d;
+        String warmStartFile = null;
+        String snapshotDir = null;
+        int miniBatchThreads = 1;
 
         if (cl != null) {
             if (cl.hasOption("loss_function")) {
@@ -209,11 +287,27 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
             conversionCheck = !cl.hasOption("disable_cvtest");
             convergenceRate = Primitives.parseDouble(cl.getOptionValue("cv_rate"), convergenceRate);
+
+            warmStartFile = cl.getOptionValue("warm_start");
+            snapshotDir = cl.getOptionValue("snapshot_dir");
+
+            miniBatchThreads =
+                    Primitives.parseInt(cl.getOptionValue("mini_batch_threads"), miniBatchThreads);
+            if (miniBatchThreads < 1) {
+                throw new UDFArgumentException(
+                    "'-mini_batch_threads' must be greater than or equals to 1: "
+                            + miniBatchThreads);
+            }
         }
 
         this.lossFunction = lossFunction;
         this.iterations = iterations;
+        this.replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this.shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
         this.cvState = new ConversionState(conversionCheck, convergenceRate);
+        this.warmStartFile = warmStartFile;
+        this.snapshotDir = snapshotDir;
+        this.miniBatchThreads = miniBatchThreads;
 
         OptimizerOptions.processOptions(cl, optimizerOptions);
 
@@ -245,7 +339,10 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
     protected final ObjectInspector getFeatureOutputOI(@Nonnull final FeatureType featureType)
             throws UDFArgumentException {
         final PrimitiveObjectInspector outputOI;
-        if (dense_model) {
+        if (paged_model) {
+            // see PagedDenseModel
+            outputOI = PrimitiveObjectInspectorFactory.javaLongObjectInspector;
+        } else if (dense_model) {
             // TODO validation
             outputOI = PrimitiveObjectInspectorFactory.javaIntObjectInspector; // see DenseModel (long/string is also parsed as int)
         } else {
@@ -286,7 +383,14 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
     @Override
     public void process(Object[] args) throws HiveException {
         if (is_mini_batch && accumulated == null) {
-            this.accumulated = new HashMap<Object, FloatAccumulator>(1024);
+            this.accumulated = new FloatAccumulatorTable<Object>(1024);
+            if (miniBatchThreads > 1) {
+                this.batchFeatures = new FeatureValue[mini_batch_size][];
+                this.batchTargets = new float[mini_batch_size];
+                this.batchPredicted = new float[mini_batch_size];
+                this.batchExecutor = ExecutorFactory.newFixedThreadPool(miniBatchThreads - 1,
+                    "Hivemall-MiniBatch", true);
+            }
         }
 
         List<?> features = (List<?>) featureListOI.getList(args[0]);
@@ -297,8 +401,9 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
         float target = PrimitiveObjectInspectorUtils.getFloat(args[1], targetOI);
         checkTargetValue(target);
 
+        applyMixedUpdates();
         count++;
-        train(featureVector, target);
+        trainExample(featureVector, target);
 
         recordTrainSampleToTempFile(featureVector, target);
     }
@@ -309,26 +414,10 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
             return;
         }
 
-        ByteBuffer buf = inputBuf;
-        NioStatefulSegment dst = fileIO;
-
-        if (buf == null) {
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_general_learner", ".sgmt");
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-                logger.info("Record training samples to a file: " + file.getAbsolutePath());
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            } catch (Throwable e) {
-                throw new UDFArgumentException(e);
-            }
-            this.inputBuf = buf = ByteBuffer.allocateDirect(1024 * 1024); // 1 MB
-            this.fileIO = dst = new NioStatefulSegment(file, false);
+        EpochReplayBuffer dst = replayBuffer;
+        if (dst == null) {
+            this.replayBuffer = dst = new EpochReplayBuffer("hivemall_general_learner",
+                replayMemoryBudget, EpochReplayBuffer.DEFAULT_BLOCK_SIZE, shuffleBlocks);
         }
 
         int featureVectorBytes = 0;
@@ -350,14 +439,13 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
         // feature length, feature 1, feature 2, ..., feature n, target
         int recordBytes = SizeOf.INT + featureVectorBytes + SizeOf.FLOAT;
-        int requiredBytes = SizeOf.INT + recordBytes; // need to allocate space for "recordBytes" itself
 
-        int remain = buf.remaining();
-        if (remain < requiredBytes) {
-            writeBuffer(buf, dst);
+        final ByteBuffer buf;
+        try {
+            buf = dst.beginRecord(recordBytes);
+        } catch (IOException e) {
+            throw new HiveException("Failed to record a training example", e);
         }
-
-        buf.putInt(recordBytes);
         buf.putInt(featureVector.length);
         for (FeatureValue f : featureVector) {
             writeFeatureValue(buf, f);
@@ -422,17 +510,6 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
         return featureVector;
     }
 
-    private static void writeBuffer(@Nonnull ByteBuffer srcBuf, @Nonnull NioStatefulSegment dst)
-            throws HiveException {
-        srcBuf.flip();
-        try {
-            dst.write(srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing a buffer to file", e);
-        }
-        srcBuf.clear();
-    }
-
     public float predict(@Nonnull final FeatureValue[] features) {
         float score = 0.f;
         for (FeatureValue f : features) {// a += w[i] * x[i]
@@ -468,7 +545,7 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
         if (is_mini_batch) {
             accumulateUpdate(features, dloss);
-            if (sampled >= mini_batch_size) {
+            if (sampled >= mini_batch_size && batchFeatures == null) {
                 batchUpdate();
             }
         } else {
@@ -478,22 +555,25 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
     }
 
     protected void accumulateUpdate(@Nonnull final FeatureValue[] features, final float dloss) {
+        final FusedSparseModel fusedModel = this.fusedModel;
         for (FeatureValue f : features) {
             Object feature = f.getFeature();
             float xi = f.getValueAsFloat();
-            float weight = model.getWeight(feature);
 
             // compute new weight, but still not set to the model
-            float new_weight = optimizer.update(feature, weight, dloss * xi);
-
-            // (w_i - eta * delta_1) + (w_i - eta * delta_2) + ... + (w_i - eta * delta_M)
-            FloatAccumulator acc = accumulated.get(feature);
-            if (acc == null) {
-                acc = new FloatAccumulator(new_weight);
-                accumulated.put(feature, acc);
+            final float new_weight;
+            if (fusedModel != null) {
+                IWeightValue slot = fusedModel.slot(feature);
+                float weight = slot.get();
+                new_weight = optimizer.update(slot, dloss * xi);
+                slot.set(weight);
             } else {
-                acc.add(new_weight);
+                float weight = model.getWeight(feature);
+                new_weight = optimizer.update(feature, weight, dloss * xi);
             }
+
+            // (w_i - eta * delta_1) + (w_i - eta * delta_2) + ... + (w_i - eta * delta_M)
+            accumulated.add(feature, new_weight);
         }
         sampled++;
     }
@@ -504,13 +584,18 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
             return;
         }
 
-        for (Map.Entry<Object, FloatAccumulator> e : accumulated.entrySet()) {
-            Object feature = e.getKey();
-            FloatAccumulator v = e.getValue();
-            final float new_weight = v.get(); // w_i - (eta / M) * (delta_1 + delta_2 + ... + delta_M)
+        final FloatAccumulatorTable<Object> accumulated = this.accumulated;
+        final FusedSparseModel fusedModel = this.fusedModel;
+        for (int i = 0, size = accumulated.size(); i < size; i++) {
+            Object feature = accumulated.getKey(i);
+            // w_i - (eta / M) * (delta_1 + delta_2 + ... + delta_M)
+            final float new_weight = accumulated.getMean(i);
             if (new_weight == 0.f) {
-                model.delete(feature);
-                continue;
+                // a slot of the fused model also holds the optimizer states
+                if (fusedModel == null || isZeroStates(fusedModel.slot(feature))) {
+                    model.delete(feature);
+                    continue;
+                }
             }
             model.setWeight(feature, new_weight);
         }
@@ -520,6 +605,10 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
     }
 
     protected void onlineUpdate(@Nonnull final FeatureValue[] features, final float dloss) {
+        if (fusedModel != null) {
+            fusedUpdate(fusedModel, features, dloss);
+            return;
+        }
         for (FeatureValue f : features) {
             Object feature = f.getFeature();
             float xi = f.getValueAsFloat();
@@ -533,13 +622,122 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
         }
     }
 
+    private void fusedUpdate(@Nonnull final FusedSparseModel model,
+            @Nonnull final FeatureValue[] features, final float dloss) {
+        final Optimizer optimizer = this.optimizer;
+        for (FeatureValue f : features) {
+            Object feature = f.getFeature();
+            float xi = f.getValueAsFloat();
+            IWeightValue slot = model.slot(feature);
+            final float new_weight = optimizer.update(slot, dloss * xi);
+            if (new_weight == 0.f && isZeroStates(slot)) {
+                model.delete(feature); // e.g., truncated by the L1 term of RDA or FTRL
+            }
+        }
+    }
+
+    private static boolean isZeroStates(@Nonnull final IWeightValue slot) {
+        switch (slot.getType()) {
+            case ParamsF2:
+                return slot.getFloatParams(1) == 0.f && slot.getFloatParams(2) == 0.f;
+            case ParamsF1:
+                return slot.getFloatParams(1) == 0.f;
+            default:
+                return true;
+        }
+    }
+
+    private void trainExample(@Nonnull final FeatureValue[] features, final float target)
+            throws HiveException {
+        final FeatureValue[][] batchFeatures = this.batchFeatures;
+        if (batchFeatures == null) {
+            train(features, target);
+            return;
+        }
+        batchFeatures[batchRows] = features;
+        batchTargets[batchRows] = target;
+        if (++batchRows == mini_batch_size) {
+            trainMiniBatch();
+            batchUpdate();
+        }
+    }
+
+    private void flushMiniBatch() throws HiveException {
+        if (batchRows > 0) {
+            trainMiniBatch();
+        }
+        batchUpdate();
+    }
+
+    /**
+     * Computes the predictions of the buffered examples in parallel, all by the weights at the
+     * beginning of the mini-batch, and then updates the optimizer states and accumulates the
+     * weights in the order of the examples so that the result does not depend on the number of
+     * threads.
+     */
+    private void trainMiniBatch() throws HiveException {
+        final int rows = batchRows;
+        final FeatureValue[][] features = batchFeatures;
+        final float[] targets = batchTargets;
+        final float[] predicted = batchPredicted;
+        assert (features != null && targets != null && predicted != null);
+
+        final int chunkSize = (rows + miniBatchThreads - 1) / miniBatchThreads;
+        final List<Future<?>> futures = new ArrayList<Future<?>>(miniBatchThreads - 1);
+        for (int begin = chunkSize; begin < rows; begin += chunkSize) {
+            final int from = begin;
+            final int to = Math.min(begin + chunkSize, rows);
+            futures.add(batchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        predicted[i] = predict(features[i]);
+                    }
+                }
+            }));
+        }
+        for (int i = 0, end = Math.min(chunkSize, rows); i < end; i++) {
+            predicted[i] = predict(features[i]);
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HiveException("Interrupted while computing predictions", e);
+            } catch (ExecutionException e) {
+                throw new HiveException("Failed to compute predictions", e.getCause());
+            }
+        }
+
+        for (int i = 0; i < rows; i++) {
+            train(features[i], targets[i], predicted[i]);
+            features[i] = null;
+        }
+        this.batchRows = 0;
+    }
+
     @Override
     public final void close() throws HiveException {
         super.close();
-        finalizeTraining();
-        forwardModel();
+        try {
+            finalizeTraining();
+            if (snapshotDir != null && model != null) {
+                writeSnapshot(snapshotDir);
+            }
+            forwardModel();
+        } finally {
+            if (batchExecutor != null) {
+                batchExecutor.shutdownNow();
+                this.batchExecutor = null;
+            }
+        }
         this.accumulated = null;
+        this.batchFeatures = null;
+        this.batchTargets = null;
+        this.batchPredicted = null;
         this.model = null;
+        this.fusedModel = null;
     }
 
     @VisibleForTesting
@@ -549,7 +747,7 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
             return;
         }
         if (is_mini_batch) { // Update model with accumulated delta
-            batchUpdate();
+            flushMiniBatch();
         }
         if (iterations > 1) {
             runIterativeTraining(iterations);
@@ -558,10 +756,10 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
 
     protected final void runIterativeTraining(@Nonnegative final int iterations)
             throws HiveException {
-        final ByteBuffer buf = this.inputBuf;
-        final NioStatefulSegment dst = this.fileIO;
-        assert (buf != null);
-        assert (dst != null);
+        final EpochReplayBuffer src = this.replayBuffer;
+        if (src == null) {
+            return; // no training example
+        }
         final long numTrainingExamples = count;
 
         final Reporter reporter = getReporter();
@@ -569,144 +767,180 @@ public abstract class GeneralLearnerBaseUDTF extends LearnerBaseUDTF {
                 : reporter.getCounter("hivemall.GeneralLearnerBase$Counter", "iteration");
 
         try {
-            if (dst.getPosition() == 0L) {// run iterations w/o temporary file
-                if (buf.position() == 0) {
-                    return; // no training example
-                }
-                buf.flip();
-
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (buf.remaining() > 0) {
-                        int recordBytes = buf.getInt();
-                        assert (recordBytes > 0) : recordBytes;
-                        int featureVectorLength = buf.getInt();
-                        final FeatureValue[] featureVector = new FeatureValue[featureVectorLength];
-                        for (int j = 0; j < featureVectorLength; j++) {
-                            featureVector[j] = readFeatureValue(buf, featureType);
-                        }
-                        float target = buf.getFloat();
-                        train(featureVector, target);
-                    }
-                    buf.rewind();
-
-                    if (is_mini_batch) { // Update model with accumulated delta
-                        batchUpdate();
+            for (int iter = 2; iter <= iterations; iter++) {
+                cvState.next();
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer buf;
+                while ((buf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
+                    int featureVectorLength = buf.getInt();
+                    final FeatureValue[] featureVector = new FeatureValue[featureVectorLength];
+                    for (int j = 0; j < featureVectorLength; j++) {
+                        featureVector[j] = readFeatureValue(buf, featureType);
                     }
+                    float target = buf.getFloat();
+                    trainExample(featureVector, target);
                 }
-                logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on memory (thus "
-                        + NumberUtils.formatNumber(
-                            numTrainingExamples * cvState.getCurrentIteration())
-                        + " training updates in total) ");
-            } else {// read training examples in the temporary file and invoke train for each example
-                // write training examples in buffer to a temporary file
-                if (buf.remaining() > 0) {
-                    writeBuffer(buf, dst);
-                }
-                try {
-                    dst.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + dst.getFile().getAbsolutePath(), e);
+                replay.close();
+
+                if (is_mini_batch) { // Update model with accumulated delta
+                    flushMiniBatch();
                 }
-                if (logger.isInfoEnabled()) {
-                    File tmpFile = dst.getFile();
-                    logger.info("Wrote " + numTrainingExamples
-                            + " records to a temporary file for iterative training: "
-                            + tmpFile.getAbsolutePath() + " (" + FileUtils.prettyFileSize(tmpFile)
-                            + ")");
+
+                if (cvState.isConverged(numTrainingExamples)) {
+                    break;
                 }
+            }
+            logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
+                    + NumberUtils.formatNumber(numTrainingExamples) + " training examples "
+                    + (src.isSpilled() ? "on a secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(numTrainingExamples * cvState.getCurrentIteration())
+                    + " training updates in total)");
+        } catch (Throwable e) {
+            throw new HiveException("Exception caused in the iterative training", e);
+        } finally {
+            // delete the temporary file and release resources
+            try {
+                src.close();
+            } catch (IOException e) {
+                throw new HiveException("Failed to close a replay buffer", e);
+            }
+            this.replayBuffer = null;
+        }
+    }
 
-                // run iterations
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    setCounterValue(iterCounter, iter);
+    @Nonnull
+    private KeyType getSnapshotKeyType() {
+        if (paged_model) {
+            return KeyType.LONG; // see PagedDenseModel
+        }
+        if (dense_model) {
+            return KeyType.INT; // see DenseModel
+        }
+        switch (featureType) {
+            case INT:
+                return KeyType.INT;
+            case LONG:
+                return KeyType.LONG;
+            default:
+                return KeyType.STRING;
+        }
+    }
 
-                    buf.clear();
-                    dst.resetPosition();
-                    while (true) {
-                        reportProgress(reporter);
-                        // TODO prefetch
-                        // writes training examples to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = dst.read(buf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + dst.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
-
-                        // reads training examples from a buffer
-                        buf.flip();
-                        int remain = buf.remaining();
-                        if (remain < SizeOf.INT) {
-                            throw new HiveException("Illegal file format was detected");
-                        }
-                        while (remain >= SizeOf.INT) {
-                            int pos = buf.position();
-                            int recordBytes = buf.getInt();
-                            remain -= SizeOf.INT;
-
-                            if (remain < recordBytes) {
-                                buf.position(pos);
-                                break;
-                            }
-
-                            int featureVectorLength = buf.getInt();
-                            final FeatureValue[] featureVector =
-                                    new FeatureValue[featureVectorLength];
-                            for (int j = 0; j < featureVectorLength; j++) {
-                                featureVector[j] = readFeatureValue(buf, featureType);
-                            }
-                            float target = buf.getFloat();
-                            train(featureVector, target);
-
-                            remain -= recordBytes;
-                        }
-                        buf.compact();
-                    }
+    private void loadSnapshot(@Nonnull final File file) throws UDFArgumentException {
+        final StopWatch elapsed = new StopWatch();
+        final PredictionModel model = this.model;
+        final FusedSparseModel fusedModel = this.fusedModel;
+        final Optimizer optimizer = this.optimizer;
 
-                    if (is_mini_batch) { // Update model with accumulated delta
-                        batchUpdate();
+        final ModelSnapshot.Reader reader;
+        try {
+            reader = new ModelSnapshot.Reader(file);
+        } catch (IOException e) {
+            throw new UDFArgumentException(e);
+        }
+        try {
+            if (reader.getKeyType() != getSnapshotKeyType()) {
+                throw new UDFArgumentException("Feature type of the snapshot '"
+                        + reader.getKeyType() + "' does not match: " + getSnapshotKeyType());
+            }
+            final int numStates = optimizer.getNumStates();
+            final boolean restoreStates = numStates > 0 && reader.getNumStates() == numStates;
+            if (numStates > 0 && !restoreStates) {
+                logger.warn("Optimizer states are not restored since the snapshot has "
+                        + reader.getNumStates() + " states while " + optimizer.getOptimizerName()
+                        + " expects " + numStates);
+            }
+            optimizer.setNumStep(reader.getNumStep());
+
+            int nprocs = Runtime.getRuntime().availableProcessors();
+            reader.load(new ModelSnapshot.EntryHandler() {
+                @Override
+                public void handle(@Nonnull Object key, float weight, @Nonnull float[] states) {
+                    if (restoreStates && fusedModel != null) {
+                        fusedModel.setStates(key, weight, states);
+                        return;
+                    }
+                    model.setWeight(key, weight);
+                    if (restoreStates) {
+                        optimizer.setState(key, weight, states);
                     }
+                }
+            }, Math.max(1, nprocs - 1));
+        } catch (IOException e) {
+            throw new UDFArgumentException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        logger.info("Loaded " + reader.getNumEntries() + " features from a model snapshot '"
+                + file.getAbsolutePath() + "' (" + FileUtils.prettyFileSize(file) + ") in "
+                + elapsed);
+    }
+
+    protected void writeSnapshot(@Nonnull final String dir) throws HiveException {
+        final File tmpFile;
+        try {
+            tmpFile = File.createTempFile("hivemall_snapshot", ".hms");
+            tmpFile.deleteOnExit();
+        } catch (IOException e) {
+            throw new HiveException("Failed to create a temporary file", e);
+        }
 
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
+        final int numStates = optimizer.getNumStates();
+        final float[] states = new float[numStates];
+        final WeightValue probe = new WeightValue();
+        ModelSnapshot.Writer writer = null;
+        try {
+            writer = new ModelSnapshot.Writer(tmpFile, getSnapshotKeyType(), numStates,
+                optimizer.getNumStep());
+            final IMapIterator<Object, IWeightValue> itor = model.entries();
+            while (itor.next() != -1) {
+                itor.getValue(probe);
+                if (!probe.isTouched()) {
+                    continue;
+                }
+                final Object k = itor.getKey();
+                final float v = probe.get();
+                final boolean hasStates = (fusedModel != null) ? fusedModel.getStates(k, states)
+                        : optimizer.getState(k, states);
+                if (!hasStates) {
+                    if (v == 0.f) {
+                        continue;
                     }
+                    Arrays.fill(states, 0.f);
                 }
-                logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on a secondary storage (thus "
-                        + NumberUtils.formatNumber(
-                            numTrainingExamples * cvState.getCurrentIteration())
-                        + " training updates in total)");
+                writer.write(k, v, states);
             }
-        } catch (Throwable e) {
-            throw new HiveException("Exception caused in the iterative training", e);
+            writer.close();
+
+            final Path dst = new Path(dir, HadoopUtils.getUniqueTaskIdString() + ".hms");
+            final FileSystem fs = dst.getFileSystem(getConfiguration());
+            fs.copyFromLocalFile(true, true, new Path(tmpFile.toURI()), dst);
+            logger.info("Wrote a model snapshot of " + writer.getNumEntries() + " features to "
+                    + dst);
+        } catch (IOException e) {
+            throw new HiveException("Failed to write a model snapshot to " + dir, e);
         } finally {
-            // delete the temporary file and release resources
-            try {
-                dst.close(true);
-            } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + dst.getFile().getAbsolutePath(), e);
+            IOUtils.closeQuietly(writer);
+            tmpFile.delete();
+        }
+    }
+
+    @Nonnull
+    private static Configuration getConfiguration() {
+        MapredContext ctx = MapredContextAccessor.get();
+        if (ctx != null) {
+            JobConf conf = ctx.getJobConf();
+            if (conf != null) {
+                return conf;
             }
-            this.inputBuf = null;
-            this.fileIO = null;
         }
+        return new Configuration();
     }
 
     protected void forwardModel() throws HiveException {
@@ -19,10 +19,13 @@
 package hivemall;
 
 import hivemall.mix.MixMessage.MixEventName;
+import hivemall.mix.MixUpdateQueue;
+import hivemall.mix.MixedModel;
 import hivemall.mix.client.MixClient;
 import hivemall.model.DenseModel;
 import hivemall.model.NewDenseModel;
 import hivemall.model.NewSpaceEfficientDenseModel;
+import hivemall.model.PagedDenseModel;
 import hivemall.model.NewSparseModel;
 import hivemall.model.PredictionModel;
 import hivemall.model.SpaceEfficientDenseModel;
@@ -35,7 +38,10 @@ import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.io.IOUtils;
 import hivemall.utils.lang.Preconditions;
 import hivemall.utils.lang.Primitives;
+import hivemall.utils.net.NettyUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.CheckForNull;
@@ -57,9 +63,12 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     private static final Log logger = LogFactory.getLog(LearnerBaseUDTF.class);
     private static final int DEFAULT_SPARSE_DIMS = 16384;
     private static final int DEFAULT_DENSE_DIMS = 16777216;
+    private static final int MIX_QUEUE_CAPACITY = 65536;
 
     protected final boolean enableNewModel;
     protected boolean dense_model;
+    protected boolean paged_model;
+    protected boolean offheap;
     protected int model_dims;
     protected boolean disable_halffloat;
     protected boolean is_mini_batch;
@@ -68,10 +77,15 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     protected String mixSessionName;
     protected int mixThreshold;
     protected boolean mixCancel;
+    protected boolean mixQueue;
+    protected int mixReplicas;
+    protected boolean mixEpoll;
     protected boolean ssl;
 
     @Nullable
     protected MixClient mixClient;
+    @Nullable
+    private List<MixUpdateQueue> mixQueues;
 
     public LearnerBaseUDTF(boolean enableNewModel) {
         this.enableNewModel = enableNewModel;
@@ -89,6 +103,10 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
             "The dimension of model [default: 16777216 (2^24)]");
         opts.addOption("disable_halffloat", false,
             "Toggle this option to disable the use of SpaceEfficientDenseModel");
+        opts.addOption("paged", "paged_model", false,
+            "Use a dense model that allocates fixed-size pages on first touch [implies -dense]");
+        opts.addOption("offheap", false,
+            "Allocate the pages of a paged dense model off-heap [implies -paged]");
         opts.addOption("mini_batch", "mini_batch_size", true,
             "Mini batch size [default: 1]. Expecting the value in range [1,100] or so.");
         opts.addOption("mix", "mix_servers", true, "Comma separated list of MIX servers");
@@ -97,6 +115,13 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
         opts.addOption("mix_threshold", true,
             "Threshold to mix local updates in range (0,127] [default: 3]");
         opts.addOption("mix_cancel", "enable_mix_canceling", false, "Enable mix cancel requests");
+        opts.addOption("mix_queue", false,
+            "Apply mixed weights in the training thread through a lock-free queue"
+                    + " instead of synchronizing the model");
+        opts.addOption("mix_replicas", true,
+            "The number of MIX servers to which each local update is sent [default: 1]");
+        opts.addOption("mix_epoll", false,
+            "Use the native epoll transport for MIX if available (Linux only) [default: false]");
         opts.addOption("ssl", false, "Use SSL for the communication with mix servers");
         return opts;
     }
@@ -106,6 +131,8 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     protected CommandLine processOptions(@Nonnull ObjectInspector[] argOIs)
             throws UDFArgumentException {
         boolean denseModel = false;
+        boolean pagedModel = false;
+        boolean offheap = false;
         int modelDims = -1;
         boolean disableHalfFloat = false;
         int miniBatchSize = 1;
@@ -113,6 +140,9 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
         String mixSessionName = null;
         int mixThreshold = -1;
         boolean mixCancel = false;
+        boolean mixQueue = false;
+        int mixReplicas = 1;
+        boolean mixEpoll = false;
         boolean ssl = false;
 
         CommandLine cl = null;
@@ -120,7 +150,9 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
             String rawArgs = HiveUtils.getConstString(argOIs[2]);
             cl = parseOptions(rawArgs);
 
-            denseModel = cl.hasOption("dense");
+            offheap = cl.hasOption("offheap");
+            pagedModel = offheap || cl.hasOption("paged");
+            denseModel = pagedModel || cl.hasOption("dense");
             if (denseModel) {
                 modelDims = Primitives.parseInt(cl.getOptionValue("dims"), DEFAULT_DENSE_DIMS);
             }
@@ -141,10 +173,23 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
                     "mix_threshold must be in range (0,127]: " + mixThreshold);
             }
             mixCancel = cl.hasOption("mix_cancel");
+            mixQueue = cl.hasOption("mix_queue");
+            mixReplicas = Primitives.parseInt(cl.getOptionValue("mix_replicas"), mixReplicas);
+            if (mixReplicas < 1) {
+                throw new UDFArgumentException(
+                    "mix_replicas must be greater than 0: " + mixReplicas);
+            }
+            mixEpoll = cl.hasOption("mix_epoll");
             ssl = cl.hasOption("ssl");
+
+            if (pagedModel && mixConnectInfo != null) {
+                throw new UDFArgumentException("-paged_model does not support -mix");
+            }
         }
 
         this.dense_model = denseModel;
+        this.paged_model = pagedModel;
+        this.offheap = offheap;
         this.model_dims = modelDims;
         this.disable_halffloat = disableHalfFloat;
         this.is_mini_batch = miniBatchSize > 1;
@@ -153,6 +198,9 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
         this.mixSessionName = mixSessionName;
         this.mixThreshold = mixThreshold;
         this.mixCancel = mixCancel;
+        this.mixQueue = mixQueue;
+        this.mixReplicas = mixReplicas;
+        this.mixEpoll = mixEpoll;
         this.ssl = ssl;
         return cl;
     }
@@ -170,7 +218,11 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     private final PredictionModel createOldModel(@Nullable String label) {
         PredictionModel model;
         final boolean useCovar = useCovariance();
-        if (dense_model) {
+        if (paged_model) {
+            logger.info("Build a paged dense model with " + model_dims + " initial dimensions"
+                    + (useCovar ? " w/ covariances" : "") + (offheap ? " off-heap" : ""));
+            model = new PagedDenseModel(model_dims, useCovar, offheap);
+        } else if (dense_model) {
             if (disable_halffloat == false && model_dims > DEFAULT_DENSE_DIMS) {
                 logger.info("Build a space efficient dense model with " + model_dims
                         + " initial dimensions" + (useCovar ? " w/ covariances" : ""));
@@ -187,11 +239,7 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
             model = new SparseModel(initModelSize, useCovar);
         }
         if (mixConnectInfo != null) {
-            model.configureClock();
-            model = new SynchronizedModelWrapper(model);
-            MixClient client = configureMixClient(mixConnectInfo, label, model);
-            model.configureMix(client, mixCancel);
-            this.mixClient = client;
+            model = configureMix(model, label);
         }
         assert (model != null);
         return model;
@@ -201,7 +249,11 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     private final PredictionModel createNewModel(@Nullable String label) {
         PredictionModel model;
         final boolean useCovar = useCovariance();
-        if (dense_model) {
+        if (paged_model) {
+            logger.info("Build a paged dense model with " + model_dims + " initial dimensions"
+                    + (useCovar ? " w/ covariances" : "") + (offheap ? " off-heap" : ""));
+            model = new PagedDenseModel(model_dims, useCovar, offheap);
+        } else if (dense_model) {
             if (disable_halffloat == false && model_dims > DEFAULT_DENSE_DIMS) {
                 logger.info("Build a space efficient dense model with " + model_dims
                         + " initial dimensions" + (useCovar ? " w/ covariances" : ""));
@@ -218,22 +270,53 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
             model = new NewSparseModel(initModelSize, useCovar);
         }
         if (mixConnectInfo != null) {
-            model.configureClock();
-            model = new SynchronizedModelWrapper(model);
-            MixClient client = configureMixClient(mixConnectInfo, label, model);
-            model.configureMix(client, mixCancel);
-            this.mixClient = client;
+            model = configureMix(model, label);
         }
         assert (model != null);
         return model;
     }
 
+    @Nonnull
+    private PredictionModel configureMix(@Nonnull PredictionModel model, @Nullable String label) {
+        model.configureClock();
+        final MixedModel mixedModel;
+        if (mixQueue) {
+            MixUpdateQueue queue = new MixUpdateQueue(model, MIX_QUEUE_CAPACITY);
+            if (mixQueues == null) {
+                this.mixQueues = new ArrayList<MixUpdateQueue>(2);
+            }
+            mixQueues.add(queue);
+            mixedModel = queue;
+        } else {
+            model = new SynchronizedModelWrapper(model);
+            mixedModel = model;
+        }
+        MixClient client = configureMixClient(mixConnectInfo, label, mixedModel);
+        model.configureMix(client, mixCancel);
+        this.mixClient = client;
+        return model;
+    }
+
+    /**
+     * Applies mixed weights received since the last call when `-mix_queue` is enabled. Learners
+     * call this between training examples in the training thread.
+     */
+    protected final void applyMixedUpdates() {
+        final List<MixUpdateQueue> queues = mixQueues;
+        if (queues == null) {
+            return;
+        }
+        for (int i = 0, size = queues.size(); i < size; i++) {
+            queues.get(i).drainTo();
+        }
+    }
+
     @Nonnull
     protected final Optimizer createOptimizer(@CheckForNull Map<String, String> options) {
         Preconditions.checkNotNull(options);
         if (dense_model) {
             return DenseOptimizerFactory.create(model_dims < 0 ? DEFAULT_DENSE_DIMS : model_dims,
-                options);
+                options, offheap);
         } else {
             return SparseOptimizerFactory.create(model_dims < 0 ? DEFAULT_SPARSE_DIMS : model_dims,
                 options);
@@ -242,13 +325,17 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
 
     @Nonnull
     protected MixClient configureMixClient(@Nonnull String connectURIs, @Nullable String label,
-            @Nonnull PredictionModel model) {
+            @Nonnull MixedModel model) {
         String jobId = (mixSessionName == null) ? MixClient.DUMMY_JOB_ID : mixSessionName;
         if (label != null) {
             jobId = jobId + '-' + label;
         }
         MixEventName event = useCovariance() ? MixEventName.argminKLD : MixEventName.average;
-        MixClient client = new MixClient(event, jobId, connectURIs, ssl, mixThreshold, model);
+        if (mixEpoll && !NettyUtils.useEpoll(true)) {
+            logger.warn("Native epoll transport is not available. Use NIO transport instead.");
+        }
+        MixClient client = new MixClient(event, jobId, connectURIs, ssl, mixThreshold,
+            mixReplicas, mixEpoll, model);
         logger.info("Successfully configured mix client: " + connectURIs);
         return client;
     }
@@ -260,6 +347,9 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     @Nonnull
     protected ObjectInspector getFeatureOutputOI(@Nonnull PrimitiveObjectInspector featureInputOI)
             throws UDFArgumentException {
+        if (paged_model) {
+            return PrimitiveObjectInspectorFactory.javaLongObjectInspector; // see PagedDenseModel
+        }
         if (dense_model) {
             // TODO validation
             return PrimitiveObjectInspectorFactory.javaIntObjectInspector; // see DenseModel
@@ -270,9 +360,24 @@ public abstract class LearnerBaseUDTF extends UDTFWithOptions {
     @Override
     public void close() throws HiveException {
         if (mixClient != null) {
+            long dropped = mixClient.getNumDropped();
+            if (dropped > 0L) {
+                logger.info("Dropped " + dropped
+                        + " local updates while no MIX server was available or writable");
+            }
             IOUtils.closeQuietly(mixClient);
             this.mixClient = null;
         }
+        if (mixQueues != null) {
+            long dropped = 0L;
+            for (MixUpdateQueue queue : mixQueues) {
+                dropped += queue.getNumDropped();
+            }
+            if (dropped > 0L) {
+                logger.info("Dropped " + dropped + " mixed weights due to a full mix queue");
+            }
+            this.mixQueues = null;
+        }
     }
 
 }
@@ -132,6 +132,7 @@ public abstract class BinaryOnlineClassifierUDTF extends LearnerBaseUDTF {
         int label = PrimitiveObjectInspectorUtils.getInt(args[1], labelOI);
         checkLabelValue(label);
 
+        applyMixedUpdates();
         count++;
         train(featureVector, label);
     }
@@ -66,7 +66,12 @@ public final class GeneralClassifierUDTF extends GeneralLearnerBaseUDTF {
 
     @Override
     protected void train(@Nonnull final FeatureValue[] features, final float label) {
-        float predicted = predict(features);
+        train(features, label, predict(features));
+    }
+
+    @Override
+    protected void train(@Nonnull final FeatureValue[] features, final float label,
+            final float predicted) {
         float y = label > 0.f ? 1.f : -1.f;
         update(features, y, predicted);
     }
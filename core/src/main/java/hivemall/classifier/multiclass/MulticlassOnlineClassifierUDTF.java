@@ -161,6 +161,7 @@ public abstract class MulticlassOnlineClassifierUDTF extends LearnerBaseUDTF {
             throw new UDFArgumentException("label value must not be NULL");
         }
 
+        applyMixedUpdates();
         count++;
         train(featureVector, label);
     }
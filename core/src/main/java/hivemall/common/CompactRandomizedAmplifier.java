@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.common;
+
+import hivemall.utils.buffer.DynamicByteArray;
+import hivemall.utils.collections.lists.IntArrayList;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * A variant of {@link RandomizedAmplifier} that keeps buffered records as serialized bytes in a
+ * chunked byte array. A record is stored once and shared by its x-times copies, and the slots
+ * only hold primitive record ids, so the buffer creates no per-row objects for GC to trace.
+ * Space of dropped records is reclaimed by compaction once it exceeds the live bytes.
+ */
+public final class CompactRandomizedAmplifier {
+
+    private static final int COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+
+    private final int numBuffers;
+    private final int xtimes;
+
+    /** record ids for each [xtimes][numBuffers] slot, -1 for an empty slot */
+    private final int[][] slots;
+    private final long[][] timestamps;
+    private int position;
+    private long clock;
+
+    private final Random[] randoms;
+
+    @Nonnull
+    private DynamicByteArray records;
+    private int[] recordOffsets;
+    private int[] recordLengths;
+    private int[] recordRefs;
+    private int numRecords;
+    @Nonnull
+    private final IntArrayList freeRecords;
+    private long liveBytes;
+
+    @Nonnull
+    private byte[] scratch;
+
+    private DropoutListener listener = null;
+
+    public CompactRandomizedAmplifier(int numBuffers, int xtimes) {
+        this(numBuffers, xtimes, null);
+    }
+
+    public CompactRandomizedAmplifier(int numBuffers, int xtimes, long seed) {
+        this(numBuffers, xtimes, Long.valueOf(seed));
+    }
+
+    private CompactRandomizedAmplifier(int numBuffers, int xtimes, Long seed) {
+        if (numBuffers < 1) {
+            throw new IllegalArgumentException("numBuffers must be greater than 0: " + numBuffers);
+        }
+        if (xtimes < 1) {
+            throw new IllegalArgumentException("xtime must be greater than 0: " + xtimes);
+        }
+        this.numBuffers = numBuffers;
+        this.xtimes = xtimes;
+        this.slots = new int[xtimes][numBuffers];
+        this.timestamps = new long[xtimes][numBuffers];
+        for (int x = 0; x < xtimes; x++) {
+            Arrays.fill(slots[x], -1);
+        }
+        this.position = 0;
+        this.clock = 0L;
+        this.randoms = new Random[xtimes];
+        for (int i = 0; i < xtimes; i++) {
+            randoms[i] = (seed == null) ? new Random() : new Random(seed.longValue() + i);
+        }
+        this.records = new DynamicByteArray();
+        int initialRecords = Math.min(numBuffers, 1024);
+        this.recordOffsets = new int[initialRecords];
+        this.recordLengths = new int[initialRecords];
+        this.recordRefs = new int[initialRecords];
+        this.numRecords = 0;
+        this.freeRecords = new IntArrayList();
+        this.liveBytes = 0L;
+        this.scratch = new byte[256];
+    }
+
+    public void setDropoutListener(DropoutListener listener) {
+        this.listener = listener;
+    }
+
+    public void add(@Nonnull final byte[] b, final int offset, final int length)
+            throws HiveException {
+        final int id = addRecord(b, offset, length);
+
+        if (position < numBuffers) {
+            for (int x = 0; x < xtimes; x++) {
+                slots[x][position] = id;
+                timestamps[x][position] = clock;
+            }
+            position++;
+            if (position == numBuffers) {
+                for (int x = 0; x < xtimes; x++) {
+                    shuffle(slots[x], timestamps[x], numBuffers, randoms[x]);
+                }
+            }
+        } else {
+            for (int x = 0; x < xtimes; x++) {
+                final int[] slot = slots[x];
+                final long[] ts = timestamps[x];
+                final Random rnd = randoms[x];
+                int rindex1 = rnd.nextInt(numBuffers);
+                int rindex2 = rnd.nextInt(numBuffers);
+                // bias to hold old entry
+                int replaced = (ts[rindex1] >= ts[rindex2]) ? rindex1 : rindex2;
+                dropout(slot[replaced]);
+                slot[replaced] = id;
+                ts[replaced] = clock;
+            }
+            compactIfNecessary();
+        }
+        clock++;
+    }
+
+    public void sweepAll() throws HiveException {
+        if (position < numBuffers && position > 1) {// shuffle an unfilled buffer
+            for (int x = 0; x < xtimes; x++) {
+                shuffle(slots[x], timestamps[x], position, randoms[x]);
+            }
+        }
+        for (int i = 0; i < numBuffers; i++) {
+            for (int x = 0; x < xtimes; x++) {
+                final int[] slot = slots[x];
+                final int id = slot[i];
+                if (id != -1) {
+                    dropout(id);
+                    slot[i] = -1;
+                }
+            }
+        }
+        this.position = 0;
+        this.records.clear();
+        this.numRecords = 0;
+        this.freeRecords.clear();
+        this.liveBytes = 0L;
+    }
+
+    private int addRecord(@Nonnull final byte[] b, final int offset, final int length) {
+        final int id;
+        if (freeRecords.isEmpty()) {
+            id = numRecords++;
+            if (id >= recordOffsets.length) {
+                int newSize = recordOffsets.length * 2;
+                this.recordOffsets = Arrays.copyOf(recordOffsets, newSize);
+                this.recordLengths = Arrays.copyOf(recordLengths, newSize);
+                this.recordRefs = Arrays.copyOf(recordRefs, newSize);
+            }
+        } else {
+            id = freeRecords.remove();
+        }
+        recordOffsets[id] = records.add(b, offset, length);
+        recordLengths[id] = length;
+        recordRefs[id] = xtimes;
+        liveBytes += length;
+        return id;
+    }
+
+    private void dropout(final int id) throws HiveException {
+        if (id == -1) {
+            throw new IllegalStateException("Illegal condition that dropped object is null");
+        }
+        final int length = recordLengths[id];
+        final byte[] buf = readRecord(id);
+        if (listener != null) {
+            listener.onDrop(buf, 0, length);
+        }
+        if (--recordRefs[id] == 0) {
+            liveBytes -= length;
+            freeRecords.add(id);
+        }
+    }
+
+    @Nonnull
+    private byte[] readRecord(final int id) {
+        final int length = recordLengths[id];
+        if (length > scratch.length) {
+            this.scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        records.get(ByteBuffer.wrap(scratch), recordOffsets[id], length);
+        return scratch;
+    }
+
+    private void compactIfNecessary() {
+        final int size = records.size();
+        if (size < COMPACTION_THRESHOLD || size - liveBytes < liveBytes) {
+            return;
+        }
+        final DynamicByteArray compacted = new DynamicByteArray();
+        for (int id = 0; id < numRecords; id++) {
+            if (recordRefs[id] > 0) {
+                byte[] buf = readRecord(id);
+                recordOffsets[id] = compacted.add(buf, 0, recordLengths[id]);
+            }
+        }
+        this.records = compacted;
+    }
+
+    private static void shuffle(@Nonnull final int[] ids, @Nonnull final long[] ts,
+            final int size, @Nonnull final Random rnd) {
+        for (int i = size; i > 1; i--) {
+            int randomPosition = rnd.nextInt(i);
+            int j = i - 1;
+            int tmpId = ids[j];
+            ids[j] = ids[randomPosition];
+            ids[randomPosition] = tmpId;
+            long tmpTs = ts[j];
+            ts[j] = ts[randomPosition];
+            ts[randomPosition] = tmpTs;
+        }
+    }
+
+    public interface DropoutListener {
+        /**
+         * @param buf a buffer that is reused after this call returns
+         */
+        void onDrop(@Nonnull byte[] buf, int offset, int length) throws HiveException;
+    }
+
+}
@@ -0,0 +1,527 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.common;
+
+import hivemall.utils.io.NioSegment;
+import hivemall.utils.lang.Preconditions;
+import hivemall.utils.lang.Primitives;
+import hivemall.utils.lang.SizeOf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records training examples of the first epoch and replays them in the following epochs.
+ * 
+ * Records are appended to fixed-size blocks. Blocks are kept in memory while they fit in the
+ * memory budget, and all the blocks are spilled to a temporary file otherwise. When replaying a
+ * spilled buffer, a background thread reads the following blocks into a ring of buffers while
+ * the caller trains on the current block. The order of blocks can be shuffled in each epoch.
+ * 
+ * <pre>
+ * ByteBuffer buf = replayBuffer.beginRecord(recordBytes);
+ * buf.putInt(...); // exactly recordBytes
+ * 
+ * EpochReplayBuffer.Replay replay = replayBuffer.replay();
+ * for (ByteBuffer rec = replay.next(); rec != null; rec = replay.next()) {
+ *     rec.getInt(); // reads the record
+ * }
+ * replay.close();
+ * </pre>
+ */
+@NotThreadSafe
+public final class EpochReplayBuffer implements Closeable {
+    private static final Log logger = LogFactory.getLog(EpochReplayBuffer.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024; // 1 MiB
+    public static final int DEFAULT_MEMORY_BUDGET_MB = 64;
+    /** The number of buffers to which the background reader reads blocks ahead */
+    private static final int NUM_READ_BUFFERS = 3;
+
+    @Nonnull
+    private final String filePrefix;
+    private final long memoryBudget;
+    private final int blockSize;
+    private final boolean shuffleBlocks;
+    @Nonnull
+    private final Random rand;
+
+    /** blocks in memory, empty once spilled */
+    @Nonnull
+    private final List<ByteBuffer> blocks;
+    /** the block being written */
+    @Nullable
+    private ByteBuffer current;
+
+    /** the offsets and lengths of the spilled blocks */
+    @Nullable
+    private long[] blockOffsets;
+    @Nullable
+    private int[] blockLengths;
+    private int numSpilledBlocks;
+    private long filePos;
+    @Nullable
+    private NioSegment file;
+
+    private long numRecords;
+    private long numBytes;
+    private int maxBlockLength;
+    private boolean sealed;
+    @Nullable
+    private Replay activeReplay;
+
+    public EpochReplayBuffer(@Nonnull String filePrefix) {
+        this(filePrefix, DEFAULT_MEMORY_BUDGET_MB * 1024L * 1024L, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    public EpochReplayBuffer(@Nonnull String filePrefix, @Nonnegative long memoryBudget,
+            @Nonnegative int blockSize, boolean shuffleBlocks) {
+        Preconditions.checkArgument(memoryBudget >= 0L, "Invalid memory budget: " + memoryBudget);
+        Preconditions.checkArgument(blockSize > SizeOf.INT, "Invalid block size: " + blockSize);
+        this.filePrefix = filePrefix;
+        this.memoryBudget = memoryBudget;
+        this.blockSize = blockSize;
+        this.shuffleBlocks = shuffleBlocks;
+        this.rand = new Random(43L);
+        this.blocks = new ArrayList<ByteBuffer>();
+    }
+
+    /**
+     * Adds the options to configure a replay buffer, namely `-replay_buffer_mb` and
+     * `-shuffle_blocks`.
+     */
+    public static void setup(@Nonnull Options opts) {
+        opts.addOption("replay_buffer_mb", true,
+            "Memory budget in MiB to keep training examples for iterations in memory"
+                    + " before spilling them to a temporary file [default: "
+                    + DEFAULT_MEMORY_BUDGET_MB + "]");
+        opts.addOption("shuffle_blocks", false,
+            "Shuffle the order of blocks of training examples in each iteration");
+    }
+
+    /**
+     * @return the memory budget in bytes given by `-replay_buffer_mb`
+     */
+    public static long getMemoryBudget(@Nullable CommandLine cl) {
+        int mb = DEFAULT_MEMORY_BUDGET_MB;
+        if (cl != null) {
+            mb = Primitives.parseInt(cl.getOptionValue("replay_buffer_mb"), mb);
+            if (mb < 0) {
+                throw new IllegalArgumentException("Invalid -replay_buffer_mb: " + mb);
+            }
+        }
+        return mb * 1024L * 1024L;
+    }
+
+    public static boolean isShuffleBlocks(@Nullable CommandLine cl) {
+        return cl != null && cl.hasOption("shuffle_blocks");
+    }
+
+    /**
+     * Reserves a record of the given size and returns the buffer to which exactly `recordBytes`
+     * bytes of the record are to be put.
+     */
+    @Nonnull
+    public ByteBuffer beginRecord(@Nonnegative final int recordBytes) throws IOException {
+        if (sealed) {
+            throw new IllegalStateException("Cannot add a record after replay started");
+        }
+        final int requiredBytes = SizeOf.INT + recordBytes;
+        ByteBuffer buf = current;
+        if (buf == null || buf.remaining() < requiredBytes) {
+            if (buf != null) {
+                sealBlock(buf);
+            }
+            buf = ByteBuffer.allocateDirect(Math.max(blockSize, requiredBytes));
+            this.current = buf;
+        }
+        buf.putInt(recordBytes);
+        numRecords++;
+        numBytes += requiredBytes;
+        if (file == null && numBytes > memoryBudget) {
+            spill();
+        }
+        return buf;
+    }
+
+    private void sealBlock(@Nonnull final ByteBuffer block) throws IOException {
+        block.flip();
+        if (!block.hasRemaining()) {
+            return;
+        }
+        this.maxBlockLength = Math.max(maxBlockLength, block.remaining());
+        if (file == null) {
+            blocks.add(block);
+        } else {
+            writeBlock(block);
+        }
+    }
+
+    private void spill() throws IOException {
+        final File tmpFile = File.createTempFile(filePrefix, ".sgmt");
+        tmpFile.deleteOnExit();
+        if (!tmpFile.canWrite()) {
+            throw new IOException("Cannot write a temporary file: " + tmpFile.getAbsolutePath());
+        }
+        logger.info("Spill training examples exceeding " + memoryBudget
+                + " bytes to a temporary file: " + tmpFile.getAbsolutePath());
+        this.file = new NioSegment(tmpFile);
+        this.blockOffsets = new long[Math.max(16, blocks.size() * 2)];
+        this.blockLengths = new int[blockOffsets.length];
+        for (ByteBuffer block : blocks) {
+            writeBlock(block);
+        }
+        blocks.clear();
+    }
+
+    private void writeBlock(@Nonnull final ByteBuffer block) throws IOException {
+        if (numSpilledBlocks == blockOffsets.length) {
+            int newLength = blockOffsets.length * 2;
+            this.blockOffsets = Arrays.copyOf(blockOffsets, newLength);
+            this.blockLengths = Arrays.copyOf(blockLengths, newLength);
+        }
+        final int length = block.remaining();
+        file.write(filePos, block);
+        blockOffsets[numSpilledBlocks] = filePos;
+        blockLengths[numSpilledBlocks] = length;
+        numSpilledBlocks++;
+        this.filePos += length;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return the number of bytes of the records including their length headers
+     */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return the temporary file to which blocks are spilled, or null when not spilled
+     */
+    @Nullable
+    public File getFile() {
+        return file == null ? null : file.getFile();
+    }
+
+    /**
+     * Starts replaying the records of an epoch. The previous replay is closed if it is still
+     * open. No record can be added after the first replay.
+     */
+    @Nonnull
+    public Replay replay() throws IOException {
+        if (activeReplay != null) {
+            activeReplay.close();
+        }
+        if (!sealed) {
+            this.sealed = true;
+            if (current != null) {
+                sealBlock(current);
+                this.current = null;
+            }
+        }
+
+        final int numBlocks = (file == null) ? blocks.size() : numSpilledBlocks;
+        final int[] order = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            order[i] = i;
+        }
+        if (shuffleBlocks) {
+            for (int i = numBlocks - 1; i > 0; i--) {
+                int j = rand.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+
+        final Replay replay;
+        if (file == null) {
+            replay = new Replay(order);
+        } else {
+            replay = new Replay(order, new BlockReader(order));
+        }
+        this.activeReplay = replay;
+        return replay;
+    }
+
+    /**
+     * Releases the blocks and deletes the temporary file if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (activeReplay != null) {
+            activeReplay.close();
+            this.activeReplay = null;
+        }
+        blocks.clear();
+        this.current = null;
+        this.blockOffsets = null;
+        this.blockLengths = null;
+        if (file != null) {
+            NioSegment f = file;
+            this.file = null;
+            f.close(true);
+        }
+    }
+
+    /**
+     * An iteration over the records of an epoch.
+     */
+    public final class Replay implements Closeable {
+
+        @Nonnull
+        private final int[] order;
+        @Nullable
+        private final BlockReader reader;
+
+        private int nextBlock;
+        @Nullable
+        private ByteBuffer block;
+        private int blockLimit;
+        private int recordEnd;
+        private boolean firstInBlock;
+
+        private Replay(@Nonnull int[] order) {
+            this(order, null);
+        }
+
+        private Replay(@Nonnull int[] order, @Nullable BlockReader reader) {
+            this.order = order;
+            this.reader = reader;
+            this.nextBlock = 0;
+            if (reader != null) {
+                reader.start();
+            }
+        }
+
+        /**
+         * @return a buffer positioned at the beginning of the next record and limited to its
+         *         end, or null when the epoch is finished. The buffer is valid until the next
+         *         call.
+         */
+        @Nullable
+        public ByteBuffer next() throws IOException {
+            ByteBuffer buf = block;
+            if (buf != null) {
+                buf.limit(blockLimit);
+                buf.position(recordEnd);
+                this.firstInBlock = false;
+            }
+            if (buf == null || !buf.hasRemaining()) {
+                buf = nextBlock(buf);
+                if (buf == null) {
+                    return null;
+                }
+                this.firstInBlock = true;
+            }
+            final int recordBytes = buf.getInt();
+            this.recordEnd = buf.position() + recordBytes;
+            buf.limit(recordEnd);
+            return buf;
+        }
+
+        /**
+         * @return whether the last record returned by {@link #next()} is the first record of a
+         *         block, e.g., to report progress once for each block
+         */
+        public boolean isFirstInBlock() {
+            return firstInBlock;
+        }
+
+        @Nullable
+        private ByteBuffer nextBlock(@Nullable final ByteBuffer prev) throws IOException {
+            final ByteBuffer next;
+            if (reader == null) {
+                if (nextBlock >= order.length) {
+                    this.block = null;
+                    return null;
+                }
+                next = blocks.get(order[nextBlock++]);
+                next.rewind();
+            } else {
+                if (prev != null) {
+                    reader.release(prev);
+                }
+                next = reader.take();
+                if (next == null) {
+                    this.block = null;
+                    return null;
+                }
+            }
+            this.block = next;
+            this.blockLimit = next.limit();
+            return next;
+        }
+
+        /**
+         * Stops the background reader if it is still reading blocks.
+         */
+        @Override
+        public void close() throws IOException {
+            if (block != null && reader == null) {
+                block.limit(blockLimit); // blocks in memory are reused in the next epoch
+            }
+            this.block = null;
+            if (reader != null) {
+                reader.stop();
+            }
+            if (activeReplay == this) {
+                activeReplay = null;
+            }
+        }
+
+    }
+
+    /**
+     * Reads spilled blocks ahead in a background thread.
+     */
+    private final class BlockReader implements Runnable {
+
+        @Nonnull
+        private final ByteBuffer eof;
+        @Nonnull
+        private final int[] order;
+        @Nonnull
+        private final NioSegment src;
+        @Nonnull
+        private final BlockingQueue<ByteBuffer> free;
+        @Nonnull
+        private final BlockingQueue<ByteBuffer> filled;
+        @Nonnull
+        private final Thread thread;
+
+        private volatile boolean stopped;
+        @Nullable
+        private volatile Throwable error;
+
+        private BlockReader(@Nonnull int[] order) {
+            this.eof = ByteBuffer.allocate(0);
+            this.order = order;
+            this.src = file;
+            this.free = new ArrayBlockingQueue<ByteBuffer>(NUM_READ_BUFFERS + 1);
+            this.filled = new ArrayBlockingQueue<ByteBuffer>(NUM_READ_BUFFERS + 1);
+            for (int i = 0; i < NUM_READ_BUFFERS; i++) {
+                free.add(ByteBuffer.allocateDirect(maxBlockLength));
+            }
+            this.thread = new Thread(this, "Hivemall-EpochReplayReader");
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < order.length; i++) {
+                    final ByteBuffer buf = free.take();
+                    if (stopped) {
+                        return;
+                    }
+                    final int blockIdx = order[i];
+                    buf.clear();
+                    buf.limit(blockLengths[blockIdx]);
+                    long pos = blockOffsets[blockIdx];
+                    while (buf.hasRemaining()) {
+                        int n = src.read(pos, buf);
+                        if (n <= 0) {
+                            throw new IOException("Unexpected EOF of a temporary file: "
+                                    + src.getFile().getAbsolutePath());
+                        }
+                        pos += n;
+                    }
+                    buf.flip();
+                    filled.put(buf);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                this.error = e;
+            }
+            filled.offer(eof);
+        }
+
+        /**
+         * @return the next block, or null when all the blocks are read
+         */
+        @Nullable
+        private ByteBuffer take() throws IOException {
+            final ByteBuffer buf;
+            try {
+                buf = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading a temporary file", e);
+            }
+            if (buf == eof) {
+                filled.offer(eof); // for subsequent calls
+                Throwable e = error;
+                if (e != null) {
+                    throw new IOException("Failed to read a temporary file: "
+                            + src.getFile().getAbsolutePath(), e);
+                }
+                return null;
+            }
+            return buf;
+        }
+
+        private void release(@Nonnull final ByteBuffer buf) {
+            free.offer(buf);
+        }
+
+        private void stop() {
+            this.stopped = true;
+            free.offer(eof); // wake up the reader waiting for a free buffer
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.model.ModelTableReader;
+import hivemall.utils.collections.lists.FloatArrayList;
+import hivemall.utils.math.MathUtils;
+import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Read-only field-aware factorization machines loaded from a (model_id, i, Wi, Vi) table of
+ * train_ffm. As in the training, i=0 is the global bias, i&lt;0 is Wi of the feature index -i and
+ * i&gt;0 is Vi of (index, field) encoded by {@link Feature#toIntFeature(Feature, int, int)}.
+ */
+public final class CompactFFMModel implements ModelTableReader.RowHandler {
+
+    @Nonnegative
+    private final int numFields;
+
+    @Nonnull
+    private final Object2IntOpenHashMap<String> modelIndex;
+    @Nonnull
+    private final List<Model> models;
+    private int factors;
+
+    public CompactFFMModel(@Nonnegative int numFields) {
+        this.numFields = numFields;
+        this.modelIndex = new Object2IntOpenHashMap<String>();
+        modelIndex.defaultReturnValue(-1);
+        this.models = new ArrayList<Model>();
+        this.factors = -1;
+    }
+
+    public static int numColumns() {
+        return 4;
+    }
+
+    @Override
+    public void handle(@Nonnull final String[] row) throws IOException {
+        final String modelId = row[0];
+        if (modelId == null || row[1] == null) {
+            return;
+        }
+        final int i;
+        final float[] vi;
+        final float wi;
+        try {
+            i = Integer.parseInt(row[1]);
+            wi = (row[2] == null) ? 0.f : Float.parseFloat(row[2]);
+            vi = ModelTableReader.parseFloatArray(row[3]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid model row of model '" + modelId + "'", e);
+        }
+        set(modelId, i, wi, vi);
+    }
+
+    void set(@Nonnull final String modelId, final int i, final float wi, final float[] vi)
+            throws IOException {
+        int idx = modelIndex.getInt(modelId);
+        if (idx == -1) {
+            idx = models.size();
+            models.add(new Model());
+            modelIndex.put(modelId, idx);
+        }
+        final Model model = models.get(idx);
+
+        if (i == 0) {
+            model.w0 = wi;
+        } else if (Entry.isEntryW(i)) {
+            model.W.put(i, wi);
+        } else if (vi != null) {
+            if (factors == -1) {
+                this.factors = vi.length;
+            } else if (vi.length != factors) {
+                throw new IOException(
+                    "Expected " + factors + " factors for i=" + i + " but got " + vi.length);
+            }
+            int offset = model.offsets.get(i);
+            if (offset == -1) {
+                offset = model.V.size();
+                model.V.add(vi);
+                model.offsets.put(i, offset);
+            } else {
+                for (int f = 0; f < factors; f++) {
+                    model.V.set(offset + f, vi[f]);
+                }
+            }
+        }
+    }
+
+    public int getNumModels() {
+        return models.size();
+    }
+
+    public long size() {
+        long total = 0L;
+        for (Model model : models) {
+            total += model.W.size() + model.offsets.size();
+        }
+        return total;
+    }
+
+    /**
+     * @param sigmoid whether to apply the sigmoid function to the score of each model
+     * @return the average score of the models, or 0 if no model is loaded
+     */
+    public double predict(@Nonnull final Feature[] x, final boolean sigmoid) {
+        final int numModels = models.size();
+        if (numModels == 0) {
+            return 0.d;
+        }
+        double sum = 0.d;
+        for (int m = 0; m < numModels; m++) {
+            double score = models.get(m).predict(x, numFields, factors);
+            if (sigmoid) {
+                score = MathUtils.sigmoid(score);
+            }
+            sum += score;
+        }
+        return sum / numModels;
+    }
+
+    private static final class Model {
+
+        float w0;
+        @Nonnull
+        final Int2FloatOpenHashMap W;
+        @Nonnull
+        final Int2IntOpenHashMap offsets;
+        @Nonnull
+        final FloatArrayList V;
+
+        Model() {
+            this.w0 = 0.f;
+            this.W = new Int2FloatOpenHashMap();
+            this.offsets = new Int2IntOpenHashMap();
+            offsets.defaultReturnValue(-1);
+            this.V = new FloatArrayList(8192);
+        }
+
+        double predict(@Nonnull final Feature[] x, final int numFields, final int factors) {
+            double ret = w0;
+            final int size = x.length;
+            for (int i = 0; i < size; i++) {
+                final Feature ei = x[i];
+                ret += W.get(Feature.toIntFeature(ei)) * ei.getValue();
+            }
+            if (factors <= 0) {
+                return ret;
+            }
+            for (int i = 0; i < size; i++) {
+                final Feature ei = x[i];
+                final double xi = ei.getValue();
+                final int iField = ei.getField();
+                for (int j = i + 1; j < size; j++) {
+                    final Feature ej = x[j];
+                    final int jField = ej.getField();
+                    final int vij = offsets.get(Feature.toIntFeature(ei, jField, numFields));
+                    if (vij == -1) {
+                        continue;
+                    }
+                    final int vji = offsets.get(Feature.toIntFeature(ej, iField, numFields));
+                    if (vji == -1) {
+                        continue;
+                    }
+                    double dot = 0.d;
+                    for (int f = 0; f < factors; f++) {
+                        dot += V.fastGet(vij + f) * V.fastGet(vji + f);
+                    }
+                    ret += dot * xi * ej.getValue();
+                }
+            }
+            return ret;
+        }
+
+    }
+
+}
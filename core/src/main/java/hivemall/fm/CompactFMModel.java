@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.model.FeatureSlotMap;
+import hivemall.model.ModelTableReader;
+import hivemall.utils.collections.lists.FloatArrayList;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A read-only factorization machine loaded from a (feature, W_i, V_if) table of train_fm. Wi and
+ * Vif of a feature are stored at the slot of the feature in flat float arrays.
+ */
+public final class CompactFMModel implements ModelTableReader.RowHandler {
+
+    private static final String W0_FEATURE = "0";
+
+    @Nonnull
+    private final FeatureSlotMap slots;
+    @Nonnull
+    private final FloatArrayList W;
+    @Nonnull
+    private final FloatArrayList V;
+
+    private float w0;
+    private int factors;
+
+    public CompactFMModel() {
+        this.slots = new FeatureSlotMap();
+        this.W = new FloatArrayList(8192);
+        this.V = new FloatArrayList(8192);
+        this.w0 = 0.f;
+        this.factors = -1;
+    }
+
+    public static int numColumns() {
+        return 3;
+    }
+
+    @Override
+    public void handle(@Nonnull final String[] row) throws IOException {
+        final String feature = row[0];
+        if (feature == null || row[1] == null) {
+            return;
+        }
+        final float wi;
+        final float[] vi;
+        try {
+            wi = Float.parseFloat(row[1]);
+            vi = ModelTableReader.parseFloatArray(row[2]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid model row of feature '" + feature + "'", e);
+        }
+        if (W0_FEATURE.equals(feature)) {
+            this.w0 = wi;
+        } else {
+            set(feature, wi, vi);
+        }
+    }
+
+    void set(@Nonnull final String feature, final float wi, final float[] vi)
+            throws IOException {
+        if (vi != null) {
+            if (factors == -1) {
+                this.factors = vi.length;
+            } else if (vi.length != factors) {
+                throw new IOException("Expected " + factors + " factors for feature '" + feature
+                        + "' but got " + vi.length);
+            }
+        }
+        final int slot = slots.getOrAdd(feature);
+        if (slot == W.size()) {
+            W.add(wi);
+        } else {
+            W.set(slot, wi);
+        }
+        if (factors == -1) {
+            return; // V of features without V are padded once the number of factors is known
+        }
+        final int required = (slot + 1) * factors;
+        while (V.size() < required) {
+            V.add(0.f);
+        }
+        if (vi != null) {
+            final int offset = slot * factors;
+            for (int f = 0; f < factors; f++) {
+                V.set(offset + f, vi[f]);
+            }
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public int getFactors() {
+        return Math.max(factors, 0);
+    }
+
+    public float getW0() {
+        return w0;
+    }
+
+    /**
+     * @return the slot of the given feature, or -1 if the feature is unknown
+     */
+    public int getSlot(@Nonnull final String feature) {
+        return slots.get(feature);
+    }
+
+    /**
+     * Computes w0 + \sum_i w_i x_i + 1/2 \sum_f ((\sum_i v_if x_i)^2 - \sum_i v_if^2 x_i^2).
+     *
+     * @param slots slots of the features where -1 stands for an unknown feature
+     * @param x values of the features
+     */
+    public double predict(@Nonnull final int[] slots, @Nonnull final double[] x,
+            @Nonnegative final int size) {
+        double ret = w0;
+        for (int i = 0; i < size; i++) {
+            final int slot = slots[i];
+            if (slot != -1) {
+                ret += W.fastGet(slot) * x[i];
+            }
+        }
+
+        final int factors = this.factors;
+        final int numV = V.size();
+        for (int f = 0; f < factors; f++) {
+            double sumVjfXj = 0.d;
+            double sumV2X2 = 0.d;
+            for (int i = 0; i < size; i++) {
+                final int slot = slots[i];
+                if (slot == -1) {
+                    continue;
+                }
+                final int pos = slot * factors + f;
+                if (pos >= numV) {
+                    continue;
+                }
+                final double vx = V.fastGet(pos) * x[i];
+                sumVjfXj += vx;
+                sumV2X2 += vx * vx;
+            }
+            ret += 0.5d * (sumVjfXj * sumVjfXj - sumV2X2);
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.UDFWithOptions;
+import hivemall.model.ModelTableReader;
+import hivemall.utils.datetime.StopWatch;
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.lang.Primitives;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+@Description(name = "score_ffm",
+        value = "_FUNC_(const string modelPath, array<string> features [, const string options])"
+                + " - Returns the prediction of field-aware factorization machines of"
+                + " (model_id, i, Wi, Vi) rows averaged over model_id",
+        extended = "The model is loaded once per task from a local file or a directory in the"
+                + " distributed cache, so that prediction requires neither a join nor a shuffle."
+                + " Features are given in <field>:<index>:<value> as in train_ffm")
+@UDFType(deterministic = true, stateful = false)
+public final class FFMScoringUDF extends UDFWithOptions {
+    private static final Log logger = LogFactory.getLog(FFMScoringUDF.class);
+
+    private String modelPath;
+    private ListObjectInspector featuresOI;
+
+    // options that need to be the same as train_ffm
+    private int numFeatures = -1;
+    private int numFields = Feature.DEFAULT_NUM_FIELDS;
+    private boolean parseFeatureAsInt = false;
+    private boolean l2norm = true;
+    // whether to average the probabilities instead of the raw scores
+    private boolean sigmoid = false;
+
+    @Nullable
+    private CompactFFMModel model;
+    @Nullable
+    private Feature[] probes;
+    private DoubleWritable result;
+
+    @Override
+    protected Options getOptions() {
+        Options opts = new Options();
+        opts.addOption("num_features", true, "The number of features used in training");
+        opts.addOption("feature_hashing", true,
+            "The number of bits for feature hashing used in training [default: -1]");
+        opts.addOption("num_fields", true,
+            "The number of fields [default: " + Feature.DEFAULT_NUM_FIELDS + "]");
+        opts.addOption("int_feature", "feature_as_integer", false,
+            "Parse field and index as integers without hashing");
+        opts.addOption("no_norm", "disable_norm", false, "Disable instance-wise L2 normalization");
+        opts.addOption("sigmoid", false,
+            "Apply the sigmoid function to the score of each model before averaging");
+        return opts;
+    }
+
+    @Override
+    protected CommandLine processOptions(@Nonnull String optionValue) throws UDFArgumentException {
+        CommandLine cl = parseOptions(optionValue);
+
+        this.numFeatures = Primitives.parseInt(cl.getOptionValue("num_features"), numFeatures);
+        if (numFeatures == -1) {
+            int hashbits = Primitives.parseInt(cl.getOptionValue("feature_hashing"), -1);
+            if (hashbits != -1) {
+                assumeTrue(hashbits >= 18 && hashbits <= 31,
+                    "-feature_hashing MUST be in range [18,31]: " + hashbits);
+                this.numFeatures = 1 << hashbits;
+            }
+        }
+        this.numFields = Primitives.parseInt(cl.getOptionValue("num_fields"), numFields);
+        assumeTrue(numFields > 1, "-num_fields MUST be greater than 1: " + numFields);
+        this.parseFeatureAsInt = cl.hasOption("int_feature");
+        assumeFalse(parseFeatureAsInt && numFeatures != -1,
+            "-int_feature and -feature_hashing MUST NOT be used simultaneously");
+        this.l2norm = !cl.hasOption("disable_norm");
+        this.sigmoid = cl.hasOption("sigmoid");
+        return cl;
+    }
+
+    @Override
+    public ObjectInspector initialize(@Nonnull ObjectInspector[] argOIs)
+            throws UDFArgumentException {
+        if (argOIs.length != 2 && argOIs.length != 3) {
+            throw new UDFArgumentLengthException(
+                "score_ffm takes 2 or 3 arguments: " + argOIs.length);
+        }
+        this.modelPath = HiveUtils.getConstString(argOIs[0]);
+        this.featuresOI = HiveUtils.asListOI(argOIs[1]);
+        if (!HiveUtils.isStringOI(featuresOI.getListElementObjectInspector())) {
+            throw new UDFArgumentException(
+                "The second argument features must be array<string>: " + argOIs[1].getTypeName());
+        }
+        if (argOIs.length == 3) {
+            String opts = HiveUtils.getConstString(argOIs[2]);
+            processOptions(opts);
+        }
+
+        this.model = null;
+        this.probes = null;
+        this.result = new DoubleWritable();
+        return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+    }
+
+    @Nullable
+    @Override
+    public DoubleWritable evaluate(@Nonnull DeferredObject[] args) throws HiveException {
+        final Object arg1 = args[1].get();
+        if (arg1 == null) {
+            return null;
+        }
+        CompactFFMModel model = this.model;
+        if (model == null) {
+            model = loadModel(modelPath, numFields);
+            this.model = model;
+        }
+
+        final Feature[] x = Feature.parseFFMFeatures(arg1, featuresOI, probes, numFeatures,
+            numFields, parseFeatureAsInt);
+        if (x == null) {
+            return null;
+        }
+        this.probes = x;
+        if (l2norm) {
+            Feature.l2normalize(x);
+        }
+
+        result.set(model.predict(x, sigmoid));
+        return result;
+    }
+
+    @Nonnull
+    private static CompactFFMModel loadModel(@Nonnull final String path, final int numFields)
+            throws HiveException {
+        final File file = new File(path);
+        if (!file.exists()) {
+            throw new HiveException("Model file does not exist: " + path);
+        }
+        final StopWatch elapsed = new StopWatch();
+        final CompactFFMModel model = new CompactFFMModel(numFields);
+        final long lines;
+        try {
+            lines = ModelTableReader.read(file, CompactFFMModel.numColumns(), model);
+        } catch (IOException e) {
+            throw new HiveException("Failed to load a model: " + path, e);
+        }
+        logger.info("Loaded " + model.size() + " entries of " + model.getNumModels()
+                + " models from '" + path + "' (" + lines + " lines) in " + elapsed);
+        return model;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.model = null;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+        return "score_ffm(" + Arrays.toString(children) + ')';
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package hivemall.fm;
 
+import hivemall.common.EpochReplayBuffer;
 import hivemall.fm.FactorizationMachineModel.VInitScheme;
 import hivemall.optimizer.EtaEstimator;
 import hivemall.utils.lang.Primitives;
@@ -64,6 +65,8 @@ class FMHyperParameters {
     boolean l2norm; // enable by default for FFM. disabled by default for FM.
 
     int iters = 10;
+    long replayMemoryBudget = EpochReplayBuffer.DEFAULT_MEMORY_BUDGET_MB * 1024L * 1024L;
+    boolean shuffleBlocks = false;
     boolean conversionCheck = true;
     double convergenceRate = 0.005d;
 
@@ -117,6 +120,8 @@ class FMHyperParameters {
         } else {
             this.iters = Primitives.parseInt(cl.getOptionValue("iterations"), iters);
         }
+        this.replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this.shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
         this.conversionCheck = !cl.hasOption("disable_cvtest");
         this.convergenceRate =
                 Primitives.parseDouble(cl.getOptionValue("cv_rate"), convergenceRate);
@@ -186,10 +191,6 @@ class FMHyperParameters {
         void processOptions(@Nonnull CommandLine cl) throws UDFArgumentException {
             super.processOptions(cl);
 
-            if (cl.hasOption("int_feature")) {
-                throw new UDFArgumentException("int_feature option is not supported yet for FFM");
-            }
-
             this.globalBias = cl.hasOption("global_bias");
             this.linearCoeff = cl.hasOption("linear_term");
 
@@ -214,6 +215,10 @@ class FMHyperParameters {
             if (numFields <= 1) {
                 throw new UDFArgumentException("-num_fields MUST be greater than 1: " + numFields);
             }
+            if (parseFeatureAsInt && numFeatures != -1) {
+                throw new UDFArgumentException(
+                    "-int_feature and -feature_hashing MUST NOT be used simultaneously");
+            }
 
             // optimizer
             final String optimizer = cl.getOptionValue("optimizer", "ftrl").toLowerCase();
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.model.FeatureValue;
+import hivemall.model.ModelTableReader;
+import hivemall.utils.datetime.StopWatch;
+import hivemall.utils.hadoop.HiveUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+@Description(name = "score_fm",
+        value = "_FUNC_(const string modelPath, array<string> features [, const boolean l2norm])"
+                + " - Returns the prediction of a factorization machine of (feature, W_i, V_if)"
+                + " rows",
+        extended = "The model is loaded once per task from a local file or a directory in the"
+                + " distributed cache, so that prediction requires neither a join nor a shuffle."
+                + " Set l2norm to true when the model is trained with -enable_norm")
+@UDFType(deterministic = true, stateful = false)
+public final class FMScoringUDF extends GenericUDF {
+    private static final Log logger = LogFactory.getLog(FMScoringUDF.class);
+
+    private String modelPath;
+    private ListObjectInspector featuresOI;
+    private boolean l2norm;
+
+    @Nullable
+    private CompactFMModel model;
+    private FeatureValue probe;
+    private int[] slots;
+    private double[] x;
+    private DoubleWritable result;
+
+    @Override
+    public ObjectInspector initialize(@Nonnull ObjectInspector[] argOIs)
+            throws UDFArgumentException {
+        if (argOIs.length != 2 && argOIs.length != 3) {
+            throw new UDFArgumentLengthException(
+                "score_fm takes 2 or 3 arguments: " + argOIs.length);
+        }
+        this.modelPath = HiveUtils.getConstString(argOIs[0]);
+        this.featuresOI = HiveUtils.asListOI(argOIs[1]);
+        if (!HiveUtils.isStringOI(featuresOI.getListElementObjectInspector())) {
+            throw new UDFArgumentException(
+                "The second argument features must be array<string>: " + argOIs[1].getTypeName());
+        }
+        this.l2norm = (argOIs.length == 3) ? HiveUtils.getConstBoolean(argOIs[2]) : false;
+
+        this.model = null;
+        this.probe = new FeatureValue();
+        this.slots = new int[32];
+        this.x = new double[32];
+        this.result = new DoubleWritable();
+        return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+    }
+
+    @Nullable
+    @Override
+    public DoubleWritable evaluate(@Nonnull DeferredObject[] args) throws HiveException {
+        final Object arg1 = args[1].get();
+        if (arg1 == null) {
+            return null;
+        }
+        CompactFMModel model = this.model;
+        if (model == null) {
+            model = loadModel(modelPath);
+            this.model = model;
+        }
+
+        final int size = featuresOI.getListLength(arg1);
+        if (size > slots.length) {
+            this.slots = new int[size];
+            this.x = new double[size];
+        }
+        final int[] slots = this.slots;
+        final double[] x = this.x;
+        int n = 0;
+        double squaredSum = 0.d;
+        for (int i = 0; i < size; i++) {
+            Object f = featuresOI.getListElement(arg1, i);
+            if (f == null) {
+                continue;
+            }
+            try {
+                FeatureValue.parseFeatureAsString(f.toString(), probe);
+            } catch (IllegalArgumentException e) {
+                throw new HiveException(e);
+            }
+            double v = probe.getValue();
+            slots[n] = model.getSlot(probe.getFeatureAsString());
+            x[n] = v;
+            squaredSum += v * v;
+            n++;
+        }
+        if (l2norm && squaredSum != 0.d) {
+            final double invNorm = 1.d / Math.sqrt(squaredSum);
+            for (int i = 0; i < n; i++) {
+                x[i] *= invNorm;
+            }
+        }
+
+        result.set(model.predict(slots, x, n));
+        return result;
+    }
+
+    @Nonnull
+    private static CompactFMModel loadModel(@Nonnull final String path) throws HiveException {
+        final File file = new File(path);
+        if (!file.exists()) {
+            throw new HiveException("Model file does not exist: " + path);
+        }
+        final StopWatch elapsed = new StopWatch();
+        final CompactFMModel model = new CompactFMModel();
+        final long lines;
+        try {
+            lines = ModelTableReader.read(file, CompactFMModel.numColumns(), model);
+        } catch (IOException e) {
+            throw new HiveException("Failed to load a model: " + path, e);
+        }
+        logger.info("Loaded " + model.size() + " features of " + model.getFactors()
+                + " factors from '" + path + "' (" + lines + " lines) in " + elapsed);
+        return model;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.model = null;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+        return "score_fm(" + Arrays.toString(children) + ')';
+    }
+
+}
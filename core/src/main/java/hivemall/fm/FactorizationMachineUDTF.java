@@ -26,6 +26,7 @@ import static hivemall.utils.lang.Primitives.TRUE_BYTE;
 import hivemall.UDTFWithOptions;
 import hivemall.annotations.VisibleForTesting;
 import hivemall.common.ConversionState;
+import hivemall.common.EpochReplayBuffer;
 import hivemall.fm.FMStringFeatureMapModel.Entry;
 import hivemall.optimizer.EtaEstimator;
 import hivemall.optimizer.LossFunctions;
@@ -33,13 +34,10 @@ import hivemall.optimizer.LossFunctions.LossFunction;
 import hivemall.optimizer.LossFunctions.LossType;
 import hivemall.utils.collections.Fastutil;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.io.FileUtils;
-import hivemall.utils.io.NioStatefulSegment;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.SizeOf;
 import hivemall.utils.math.MathUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -70,8 +68,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.Counters.Counter;
 import org.apache.hadoop.mapred.Reporter;
 
-import com.google.common.base.Preconditions;
-
 @Description(name = "train_fm",
         value = "_FUNC_(array<string> x, double y [, const string options]) - Returns a prediction model")
 public class FactorizationMachineUDTF extends UDTFWithOptions {
@@ -123,9 +119,9 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
      */
     protected long _numValidations;
 
-    // file IO
-    private ByteBuffer _inputBuf;
-    private NioStatefulSegment _fileIO;
+    // training examples replayed in iterations
+    @Nullable
+    private EpochReplayBuffer _replayBuffer;
 
     @Override
     protected Options getOptions() {
@@ -162,6 +158,7 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
             "Whether to disable convergence check [default: OFF]");
         opts.addOption("cv_rate", "convergence_rate", true,
             "Threshold to determine convergence [default: 0.005]");
+        EpochReplayBuffer.setup(opts);
         // adaptive regularization and early stopping with randomly hold-out validation samples
         opts.addOption("early_stopping", false,
             "Stop at the iteration that achieves the best validation on partial samples [default: OFF]");
@@ -336,37 +333,21 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
             return;
         }
 
-        ByteBuffer inputBuf = _inputBuf;
-        NioStatefulSegment dst = _fileIO;
-        if (inputBuf == null) {
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_fm", ".sgmt");
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-                LOG.info("Record training examples to a file: " + file.getAbsolutePath());
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            } catch (Throwable e) {
-                throw new UDFArgumentException(e);
-            }
-
-            this._inputBuf = inputBuf = ByteBuffer.allocateDirect(1024 * 1024); // 1 MiB
-            this._fileIO = dst = new NioStatefulSegment(file, false);
+        EpochReplayBuffer dst = _replayBuffer;
+        if (dst == null) {
+            this._replayBuffer = dst = new EpochReplayBuffer("hivemall_fm",
+                _params.replayMemoryBudget, EpochReplayBuffer.DEFAULT_BLOCK_SIZE,
+                _params.shuffleBlocks);
         }
 
         int xBytes = Feature.requiredBytes(x);
         int recordBytes = SizeOf.INT + SizeOf.DOUBLE + xBytes + SizeOf.BYTE;
-        int requiredBytes = SizeOf.INT + recordBytes;
-        int remain = inputBuf.remaining();
-        if (remain < requiredBytes) {
-            writeBuffer(inputBuf, dst);
+        final ByteBuffer inputBuf;
+        try {
+            inputBuf = dst.beginRecord(recordBytes);
+        } catch (IOException e) {
+            throw new HiveException("Failed to record a training example", e);
         }
-
-        inputBuf.putInt(recordBytes);
         inputBuf.putInt(x.length);
         for (Feature f : x) {
             f.writeTo(inputBuf);
@@ -380,17 +361,6 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
         }
     }
 
-    private static void writeBuffer(@Nonnull ByteBuffer srcBuf, @Nonnull NioStatefulSegment dst)
-            throws HiveException {
-        srcBuf.flip();
-        try {
-            dst.write(srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing a buffer to file", e);
-        }
-        srcBuf.clear();
-    }
-
     private void train(@Nonnull final Feature[] x, final double y, final boolean validation)
             throws HiveException {
         try {
@@ -579,8 +549,10 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
     }
 
     protected void runTrainingIteration(int iterations) throws HiveException {
-        final ByteBuffer inputBuf = Preconditions.checkNotNull(this._inputBuf);
-        final NioStatefulSegment fileIO = Preconditions.checkNotNull(this._fileIO);
+        final EpochReplayBuffer src = this._replayBuffer;
+        if (src == null) {
+            return; // no training example
+        }
 
         final long numTrainingExamples = _t;
         boolean lossIncreasedLastIter = false;
@@ -590,144 +562,54 @@ public class FactorizationMachineUDTF extends UDTFWithOptions {
                 : reporter.getCounter("hivemall.fm.FactorizationMachines$Counter", "iteration");
 
         try {
-            if (fileIO.getPosition() == 0L) {// run iterations w/o temporary file
-                if (inputBuf.position() == 0) {
-                    return; // no training example
-                }
-                inputBuf.flip();
-
-                for (int iter = 2; iter <= iterations; iter++) {
-                    _validationState.next();
-                    _cvState.next();
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (inputBuf.remaining() > 0) {
-                        int bytes = inputBuf.getInt();
-                        assert (bytes > 0) : bytes;
-                        int xLength = inputBuf.getInt();
-                        final Feature[] x = new Feature[xLength];
-                        for (int j = 0; j < xLength; j++) {
-                            x[j] = instantiateFeature(inputBuf);
-                        }
-                        double y = inputBuf.getDouble();
-                        boolean validation = (inputBuf.get() == TRUE_BYTE);
-
-                        // invoke train
-                        train(x, y, validation);
+            for (int iter = 2; iter <= iterations; iter++) {
+                _validationState.next();
+                _cvState.next();
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer inputBuf;
+                while ((inputBuf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-                    // stop if validation loss is consecutively increased over recent 2 iterations
-                    final boolean lossIncreased = _validationState.isLossIncreased();
-                    if ((lossIncreasedLastIter && lossIncreased)
-                            || _cvState.isConverged(numTrainingExamples)) {
-                        break;
+                    final int xLength = inputBuf.getInt();
+                    final Feature[] x = new Feature[xLength];
+                    for (int j = 0; j < xLength; j++) {
+                        x[j] = instantiateFeature(inputBuf);
                     }
-                    lossIncreasedLastIter = lossIncreased;
-                    inputBuf.rewind();
-                }
-                LOG.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on memory (thus " + NumberUtils.formatNumber(_t)
-                        + " training updates in total), used " + _numValidations
-                        + " validation examples");
-            } else {// read training examples in the temporary file and invoke train for each example
-
-                // write training examples in buffer to a temporary file
-                if (inputBuf.remaining() > 0) {
-                    writeBuffer(inputBuf, fileIO);
-                }
-                try {
-                    fileIO.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + fileIO.getFile().getAbsolutePath(), e);
-                }
-                if (LOG.isInfoEnabled()) {
-                    File tmpFile = fileIO.getFile();
-                    LOG.info("Wrote " + numTrainingExamples
-                            + " records to a temporary file for iterative training: "
-                            + tmpFile.getAbsolutePath() + " (" + FileUtils.prettyFileSize(tmpFile)
-                            + ")");
-                }
+                    double y = inputBuf.getDouble();
+                    boolean validation = (inputBuf.get() == TRUE_BYTE);
 
-                // run iterations
-                for (int iter = 2; iter <= iterations; iter++) {
-                    _validationState.next();
-                    _cvState.next();
-                    setCounterValue(iterCounter, iter);
+                    // invoke training
+                    train(x, y, validation);
+                }
+                replay.close();
 
-                    inputBuf.clear();
-                    fileIO.resetPosition();
-                    while (true) {
-                        reportProgress(reporter);
-                        // TODO prefetch
-                        // writes training examples to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = fileIO.read(inputBuf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + fileIO.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
-
-                        // reads training examples from a buffer
-                        inputBuf.flip();
-                        int remain = inputBuf.remaining();
-                        if (remain < SizeOf.INT) {
-                            throw new HiveException("Illegal file format was detected");
-                        }
-                        while (remain >= SizeOf.INT) {
-                            int pos = inputBuf.position();
-                            int recordBytes = inputBuf.getInt();
-                            remain -= SizeOf.INT;
-                            if (remain < recordBytes) {
-                                inputBuf.position(pos);
-                                break;
-                            }
-
-                            final int xLength = inputBuf.getInt();
-                            final Feature[] x = new Feature[xLength];
-                            for (int j = 0; j < xLength; j++) {
-                                x[j] = instantiateFeature(inputBuf);
-                            }
-                            double y = inputBuf.getDouble();
-                            boolean validation = (inputBuf.get() == TRUE_BYTE);
-
-                            // invoke training
-                            train(x, y, validation);
-
-                            remain -= recordBytes;
-                        }
-                        inputBuf.compact();
-                    }
-                    // stop if validation loss is consecutively increased over recent 2 iterations
-                    final boolean lossIncreased = _validationState.isLossIncreased();
-                    if ((lossIncreasedLastIter && lossIncreased)
-                            || _cvState.isConverged(numTrainingExamples)) {
-                        break;
-                    }
-                    lossIncreasedLastIter = lossIncreased;
+                // stop if validation loss is consecutively increased over recent 2 iterations
+                final boolean lossIncreased = _validationState.isLossIncreased();
+                if ((lossIncreasedLastIter && lossIncreased)
+                        || _cvState.isConverged(numTrainingExamples)) {
+                    break;
                 }
-                LOG.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on a secondary storage (thus "
-                        + NumberUtils.formatNumber(_t) + " training updates in total), used "
-                        + _numValidations + " validation examples");
+                lossIncreasedLastIter = lossIncreased;
             }
+            LOG.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
+                    + NumberUtils.formatNumber(numTrainingExamples) + " training examples "
+                    + (src.isSpilled() ? "on a secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(_t) + " training updates in total), used "
+                    + _numValidations + " validation examples");
+        } catch (IOException e) {
+            throw new HiveException("Failed to replay training examples", e);
         } finally {
             // delete the temporary file and release resources
             try {
-                fileIO.close(true);
+                src.close();
             } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + fileIO.getFile().getAbsolutePath(), e);
+                throw new HiveException("Failed to close a replay buffer", e);
             }
-            this._inputBuf = null;
-            this._fileIO = null;
+            this._replayBuffer = null;
         }
     }
 
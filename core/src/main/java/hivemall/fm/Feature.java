@@ -133,6 +133,18 @@ public abstract class Feature {
     public static Feature[] parseFFMFeatures(@Nonnull final Object arg,
             @Nonnull final ListObjectInspector listOI, @Nullable final Feature[] probes,
             final int numFeatures, final int numFields) throws HiveException {
+        return parseFFMFeatures(arg, listOI, probes, numFeatures, numFields, false);
+    }
+
+    /**
+     * @param asIntFeature when true, both field and index MUST be integers and are used as they
+     *        are without hashing
+     */
+    @Nullable
+    public static Feature[] parseFFMFeatures(@Nonnull final Object arg,
+            @Nonnull final ListObjectInspector listOI, @Nullable final Feature[] probes,
+            final int numFeatures, final int numFields, final boolean asIntFeature)
+            throws HiveException {
         if (arg == null) {
             return null;
         }
@@ -154,7 +166,10 @@ public abstract class Feature {
             String s = o.toString();
             Feature f = ary[j];
             if (f == null) {
-                f = parseFFMFeature(s, numFeatures, numFields);
+                f = new IntFeature(0, 0.d);
+            }
+            if (asIntFeature) {
+                parseFFMIntFeature(s, f, numFields);
             } else {
                 parseFFMFeature(s, f, numFeatures, numFields);
             }
@@ -215,38 +230,9 @@ public abstract class Feature {
     @Nonnull
     static IntFeature parseFFMFeature(@Nonnull final String fv, final int numFeatures,
             final int numFields) throws HiveException {
-        final int pos1 = fv.indexOf(':');
-        if (pos1 == -1) {
-            throw new HiveException("Invalid FFM feature format: " + fv);
-        }
-        final String lead = fv.substring(0, pos1);
-        final String rest = fv.substring(pos1 + 1);
-        final int pos2 = rest.indexOf(':');
-        if (pos2 == -1) {
-            throw new HiveException(
-                "Invalid FFM feature representation. Expected <field>:<index>:<value> but got "
-                        + fv);
-        }
-
-        final short field;
-        if (NumberUtils.isDigits(lead)) {
-            field = parseField(lead, numFields);
-        } else {
-            field = NumberUtils.castToShort(MurmurHash3.murmurhash3(lead, numFields));
-        }
-
-        final int index;
-        final String indexStr = rest.substring(0, pos2);
-        if (numFeatures == -1 && NumberUtils.isDigits(indexStr)) {
-            index = parseFeatureIndex(indexStr);
-        } else {
-            // +NUM_FIELD to avoid conflict to quantitative features
-            index = MurmurHash3.murmurhash3(indexStr, numFeatures) + numFields;
-        }
-        String valueStr = rest.substring(pos2 + 1);
-        double value = parseFeatureValue(valueStr);
-
-        return new IntFeature(index, field, value);
+        IntFeature probe = new IntFeature(0, 0.d);
+        parseFFMFeature(fv, probe, numFeatures, numFields);
+        return probe;
     }
 
     static void parseFeature(@Nonnull final String fv, @Nonnull final Feature probe,
@@ -285,15 +271,17 @@ public abstract class Feature {
         parseFFMFeature(fv, probe, DEFAULT_NUM_FEATURES, DEFAULT_NUM_FIELDS);
     }
 
+    /**
+     * Parses <field>:<index>:<value> into the probe. Field and index are scanned and hashed in
+     * place so that no substring is created but for the value.
+     */
     static void parseFFMFeature(@Nonnull final String fv, @Nonnull final Feature probe,
             final int numFeatures, final int numFields) throws HiveException {
-        final int pos1 = fv.indexOf(":");
+        final int pos1 = fv.indexOf(':');
         if (pos1 == -1) {
             throw new HiveException("Invalid FFM feature format: " + fv);
         }
-        final String lead = fv.substring(0, pos1);
-        final String rest = fv.substring(pos1 + 1);
-        final int pos2 = rest.indexOf(':');
+        final int pos2 = fv.indexOf(':', pos1 + 1);
         if (pos2 == -1) {
             throw new HiveException(
                 "Invalid FFM feature representation. Expected <field>:<index>:<value> but got "
@@ -301,24 +289,45 @@ public abstract class Feature {
         }
 
         final short field;
-        if (NumberUtils.isDigits(lead)) {
-            field = parseField(lead, numFields);
+        if (isDigits(fv, 0, pos1)) {
+            field = parseField(fv, 0, pos1, numFields);
         } else {
-            field = NumberUtils.castToShort(MurmurHash3.murmurhash3(lead, numFields));
+            field = NumberUtils.castToShort(MurmurHash3.murmurhash3(fv, 0, pos1, numFields));
         }
         final int index;
-        final String indexStr = rest.substring(0, pos2);
-        if (numFeatures == -1 && NumberUtils.isDigits(indexStr)) {
-            index = parseFeatureIndex(indexStr);
+        final int indexStart = pos1 + 1;
+        if (numFeatures == -1 && isDigits(fv, indexStart, pos2)) {
+            index = parseFeatureIndex(fv, indexStart, pos2);
         } else {
             // +NUM_FIELD to avoid conflict to quantitative features
-            index = MurmurHash3.murmurhash3(indexStr, numFeatures) + numFields;
+            index = MurmurHash3.murmurhash3(fv, indexStart, pos2 - indexStart, numFeatures)
+                    + numFields;
         }
         probe.setField(field);
         probe.setFeatureIndex(index);
+        probe.value = parseFeatureValue(fv.substring(pos2 + 1));
+    }
 
-        String valueStr = rest.substring(pos2 + 1);
-        probe.value = parseFeatureValue(valueStr);
+    /**
+     * Parses <field>:<index>:<value> where field and index are integers that are used without
+     * hashing.
+     */
+    static void parseFFMIntFeature(@Nonnull final String fv, @Nonnull final Feature probe,
+            final int numFields) throws HiveException {
+        final int pos1 = fv.indexOf(':');
+        final int pos2 = (pos1 == -1) ? -1 : fv.indexOf(':', pos1 + 1);
+        if (pos2 == -1) {
+            throw new HiveException(
+                "Invalid FFM feature representation. Expected <field>:<index>:<value> but got "
+                        + fv);
+        }
+        if (!isDigits(fv, 0, pos1) || !isDigits(fv, pos1 + 1, pos2)) {
+            throw new HiveException(
+                "Field and index MUST be integers when -int_feature is specified: " + fv);
+        }
+        probe.setField(parseField(fv, 0, pos1, numFields));
+        probe.setFeatureIndex(parseFeatureIndex(fv, pos1 + 1, pos2));
+        probe.value = parseFeatureValue(fv.substring(pos2 + 1));
     }
 
     private static int parseFeatureIndex(@Nonnull final String indexStr) throws HiveException {
@@ -334,6 +343,19 @@ public abstract class Feature {
         return index;
     }
 
+    private static int parseFeatureIndex(@Nonnull final String s, final int start,
+            final int end) throws HiveException {
+        final long index = parseDigits(s, start, end);
+        if (index > Integer.MAX_VALUE) {
+            throw new HiveException("Invalid index value: " + s.substring(start, end));
+        }
+        if (index <= 0L) {
+            throw new HiveException(
+                "Feature index MUST be greater than 0: " + s.substring(start, end));
+        }
+        return (int) index;
+    }
+
     private static double parseFeatureValue(@Nonnull final String value) throws HiveException {
         try {
             return Double.parseDouble(value);
@@ -342,18 +364,42 @@ public abstract class Feature {
         }
     }
 
-    private static short parseField(@Nonnull final String fieldStr, final int numFields)
-            throws HiveException {
-        final short field;
-        try {
-            field = Short.parseShort(fieldStr);
-        } catch (NumberFormatException e) {
-            throw new HiveException("Invalid field value: " + fieldStr, e);
+    private static short parseField(@Nonnull final String s, final int start, final int end,
+            final int numFields) throws HiveException {
+        final long field = parseDigits(s, start, end);
+        if (field > Short.MAX_VALUE) {
+            throw new HiveException("Invalid field value: " + s.substring(start, end));
+        }
+        if (field >= numFields) {
+            throw new HiveException("Invalid field value: " + s.substring(start, end));
+        }
+        return (short) field;
+    }
+
+    private static boolean isDigits(@Nonnull final String s, final int start, final int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
         }
-        if (field < 0 || field >= numFields) {
-            throw new HiveException("Invalid field value: " + fieldStr);
+        return true;
+    }
+
+    /**
+     * @return the value of the digits in the given range, or Long.MAX_VALUE on overflow
+     */
+    private static long parseDigits(@Nonnull final String s, final int start, final int end) {
+        long v = 0L;
+        for (int i = start; i < end; i++) {
+            v = v * 10L + Character.digit(s.charAt(i), 10);
+            if (v > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
         }
-        return field;
+        return v;
     }
 
     public static int toIntFeature(@Nonnull final Feature x) {
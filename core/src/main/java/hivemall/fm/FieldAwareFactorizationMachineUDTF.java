@@ -173,7 +173,8 @@ public final class FieldAwareFactorizationMachineUDTF extends FactorizationMachi
 
     @Override
     protected Feature[] parseFeatures(@Nonnull final Object arg) throws HiveException {
-        Feature[] features = Feature.parseFFMFeatures(arg, _xOI, _probes, _numFeatures, _numFields);
+        Feature[] features = Feature.parseFFMFeatures(arg, _xOI, _probes, _numFeatures,
+            _numFields, _parseFeatureAsInt);
         if (_params.l2norm) {
             Feature.l2normalize(features);
         }
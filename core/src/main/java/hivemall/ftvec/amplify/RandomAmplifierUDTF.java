@@ -19,6 +19,7 @@
 package hivemall.ftvec.amplify;
 
 import hivemall.UDTFWithOptions;
+import hivemall.common.CompactRandomizedAmplifier;
 import hivemall.common.RandomizedAmplifier;
 import hivemall.common.RandomizedAmplifier.DropoutListener;
 import hivemall.utils.hadoop.HiveUtils;
@@ -27,16 +28,22 @@ import hivemall.utils.lang.Primitives;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nonnull;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
 
 @Description(name = "rand_amplify", value = "_FUNC_(const int xtimes [, const string options], *)"
         + " - amplify the input records x-times in map-side")
@@ -46,16 +53,27 @@ public final class RandomAmplifierUDTF extends UDTFWithOptions
     private boolean hasOption = false;
     private long seed = -1L;
     private int numBuffers = 1000;
+    private boolean compact = false;
 
     private transient ObjectInspector[] argOIs;
     private transient RandomizedAmplifier<Object[]> amplifier;
 
+    // for -compact
+    private transient CompactRandomizedAmplifier compactAmplifier;
+    private transient LazyBinarySerDe serde;
+    private transient StructObjectInspector rowOI;
+    private transient StructObjectInspector serdeOI;
+    private transient Object[] row;
+
     @Override
     protected Options getOptions() {
         Options opts = new Options();
         opts.addOption("seed", true, "Random seed value [default: -1L (random)]");
         opts.addOption("buf", "num_buffers", true,
             "The number of rows to keep in a buffer [default: 1000]");
+        opts.addOption("compact", false,
+            "Keep buffered rows in a serialized binary form rather than as objects on heap"
+                    + " so that a larger buffer fits in the same memory [default: false]");
         return opts;
     }
 
@@ -69,6 +87,7 @@ public final class RandomAmplifierUDTF extends UDTFWithOptions
             this.seed = Primitives.parseLong(cl.getOptionValue("seed"), this.seed);
             this.numBuffers =
                     Primitives.parseInt(cl.getOptionValue("num_buffers"), this.numBuffers);
+            this.compact = cl.hasOption("compact");
         }
         return cl;
     }
@@ -89,13 +108,18 @@ public final class RandomAmplifierUDTF extends UDTFWithOptions
 
         processOptions(argOIs);
 
+        final List<String> fieldNames = new ArrayList<String>();
+        final List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>();
+        final int argStartIndex = hasOption ? 2 : 1;
+        if (compact) {
+            initCompactAmplifier(argOIs, argStartIndex, xtimes, fieldNames, fieldOIs);
+            return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
+        }
+
         this.amplifier = (seed == -1L) ? new RandomizedAmplifier<Object[]>(numBuffers, xtimes)
                 : new RandomizedAmplifier<Object[]>(numBuffers, xtimes, seed);
         amplifier.setDropoutListener(this);
 
-        final List<String> fieldNames = new ArrayList<String>();
-        final List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>();
-        final int argStartIndex = hasOption ? 2 : 1;
         for (int i = argStartIndex; i < numArgs; i++) {
             fieldNames.add("c" + (i - 1));
             ObjectInspector rawOI = argOIs[i];
@@ -106,9 +130,63 @@ public final class RandomAmplifierUDTF extends UDTFWithOptions
         return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
     }
 
+    private void initCompactAmplifier(@Nonnull final ObjectInspector[] argOIs,
+            final int argStartIndex, final int xtimes, @Nonnull final List<String> fieldNames,
+            @Nonnull final List<ObjectInspector> fieldOIs) throws UDFArgumentException {
+        final List<String> rowFieldNames = new ArrayList<String>();
+        final List<ObjectInspector> rowFieldOIs = new ArrayList<ObjectInspector>();
+        for (int i = argStartIndex; i < argOIs.length; i++) {
+            rowFieldNames.add("c" + (i - 1));
+            rowFieldOIs.add(argOIs[i]);
+        }
+        this.rowOI =
+                ObjectInspectorFactory.getStandardStructObjectInspector(rowFieldNames, rowFieldOIs);
+        try {
+            this.serde = HiveUtils.getLazyBinarySerde(rowOI);
+            this.serdeOI = (StructObjectInspector) serde.getObjectInspector();
+        } catch (SerDeException e) {
+            throw new UDFArgumentException(e);
+        }
+        for (StructField field : serdeOI.getAllStructFieldRefs()) {
+            fieldNames.add(field.getFieldName());
+            fieldOIs.add(field.getFieldObjectInspector());
+        }
+        this.row = new Object[rowFieldOIs.size()];
+
+        this.compactAmplifier = (seed == -1L) ? new CompactRandomizedAmplifier(numBuffers, xtimes)
+                : new CompactRandomizedAmplifier(numBuffers, xtimes, seed);
+        final BytesWritable buf = new BytesWritable();
+        compactAmplifier.setDropoutListener(new CompactRandomizedAmplifier.DropoutListener() {
+            @Override
+            public void onDrop(byte[] b, int offset, int length) throws HiveException {
+                buf.set(b, offset, length);
+                final Object lazyRow;
+                try {
+                    lazyRow = serde.deserialize(buf);
+                } catch (SerDeException e) {
+                    throw new HiveException(e);
+                }
+                forward(serdeOI.getStructFieldsDataAsList(lazyRow));
+            }
+        });
+    }
+
     @Override
     public void process(Object[] args) throws HiveException {
         final int argStartIndex = hasOption ? 2 : 1;
+        if (compact) {
+            final Object[] row = this.row;
+            System.arraycopy(args, argStartIndex, row, 0, row.length);
+            final BytesWritable serialized;
+            try {
+                serialized = (BytesWritable) serde.serialize(row, rowOI);
+            } catch (SerDeException e) {
+                throw new HiveException(e);
+            }
+            compactAmplifier.add(serialized.getBytes(), 0, serialized.getLength());
+            return;
+        }
+
         final Object[] row = new Object[args.length - argStartIndex];
         for (int i = argStartIndex; i < args.length; i++) {
             Object arg = args[i];
@@ -121,6 +199,13 @@ public final class RandomAmplifierUDTF extends UDTFWithOptions
 
     @Override
     public void close() throws HiveException {
+        if (compact) {
+            compactAmplifier.sweepAll();
+            this.compactAmplifier = null;
+            this.serde = null;
+            this.row = null;
+            return;
+        }
         amplifier.sweepAll();
         this.amplifier = null;
     }
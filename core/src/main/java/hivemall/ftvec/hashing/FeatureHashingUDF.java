@@ -56,6 +56,10 @@ public final class FeatureHashingUDF extends UDFWithOptions {
 
     @Nullable
     private List<Text> _returnObj;
+    @Nullable
+    private Text _scalarObj;
+    @Nonnull
+    private final StringBuilder _buf = new StringBuilder(64);
 
     public FeatureHashingUDF() {}
 
@@ -120,7 +124,14 @@ public final class FeatureHashingUDF extends UDFWithOptions {
     @Nonnull
     private Text evaluateScalar(@Nonnull final Object arg0) {
         String fv = arg0.toString();
-        return new Text(featureHashing(fv, _numFeatures));
+        featureHashing(fv, _numFeatures, _buf);
+        Text t = _scalarObj;
+        if (t == null) {
+            t = new Text();
+            this._scalarObj = t;
+        }
+        t.set(_buf.toString());
+        return t;
     }
 
     @Nonnull
@@ -130,19 +141,27 @@ public final class FeatureHashingUDF extends UDFWithOptions {
         if (list == null) {
             list = new ArrayList<Text>(len);
             this._returnObj = list;
-        } else {
-            list.clear();
         }
 
         final int numFeatures = _numFeatures;
+        final StringBuilder buf = _buf;
+        int size = 0;
         for (int i = 0; i < len; i++) {
             Object obj = _listOI.getListElement(arg0, i);
             if (obj == null) {
                 continue;
             }
             String fv = obj.toString();
-            Text t = new Text(featureHashing(fv, numFeatures));
-            list.add(t);
+            featureHashing(fv, numFeatures, buf);
+            if (size < list.size()) {
+                list.get(size).set(buf.toString()); // reuse Text objects of the previous row
+            } else {
+                list.add(new Text(buf.toString()));
+            }
+            size++;
+        }
+        for (int i = list.size() - 1; i >= size; i--) {
+            list.remove(i);
         }
 
         return list;
@@ -150,43 +169,57 @@ public final class FeatureHashingUDF extends UDFWithOptions {
 
     @Nonnull
     static String featureHashing(@Nonnull final String fv, final int numFeatures) {
+        final StringBuilder buf = new StringBuilder(fv.length() + 8);
+        featureHashing(fv, numFeatures, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Writes the hashed representation of the given feature to {@code buf} without creating
+     * substrings of the feature.
+     */
+    static void featureHashing(@Nonnull final String fv, final int numFeatures,
+            @Nonnull final StringBuilder buf) {
+        buf.setLength(0);
         final int headPos = fv.indexOf(':');
         if (headPos == -1) {
             if (fv.equals(HivemallConstants.BIAS_CLAUSE)) {
-                return fv;
+                buf.append(fv);
+            } else {
+                buf.append(mhash(fv, 0, fv.length(), numFeatures));
             }
-            int h = mhash(fv, numFeatures);
-            return String.valueOf(h);
-        } else {
-            final int tailPos = fv.lastIndexOf(':');
-            if (headPos == tailPos) {
-                String f = fv.substring(0, headPos);
-                String tail = fv.substring(headPos);
-                if (f.equals(HivemallConstants.BIAS_CLAUSE)) {
-                    String v = fv.substring(headPos + 1);
-                    double d = Double.parseDouble(v);
-                    if (d == 1.d) {
-                        return fv;
-                    }
+            return;
+        }
+
+        final int tailPos = fv.lastIndexOf(':');
+        if (headPos == tailPos) {
+            if (isBias(fv, headPos)) {
+                double d = Double.parseDouble(fv.substring(headPos + 1));
+                if (d == 1.d) {
+                    buf.append(fv);
+                    return;
                 }
-                int h = mhash(f, numFeatures);
-                return h + tail;
-            } else {
-                String field = fv.substring(0, headPos + 1);
-                String f = fv.substring(headPos + 1, tailPos);
-                int h = mhash(f, numFeatures);
-                String v = fv.substring(tailPos);
-                return field + h + v;
             }
+            buf.append(mhash(fv, 0, headPos, numFeatures)).append(fv, headPos, fv.length());
+        } else {
+            buf.append(fv, 0, headPos + 1)
+                    .append(mhash(fv, headPos + 1, tailPos - headPos - 1, numFeatures))
+                    .append(fv, tailPos, fv.length());
         }
     }
 
+    private static boolean isBias(@Nonnull final String fv, final int len) {
+        final String bias = HivemallConstants.BIAS_CLAUSE;
+        return len == bias.length() && fv.regionMatches(0, bias, 0, len);
+    }
+
     static int mhash(@Nonnull final String word, final int numFeatures) {
-        int r = MurmurHash3.murmurhash3_x86_32(word, 0, word.length(), 0x9747b28c) % numFeatures;
-        if (r < 0) {
-            r += numFeatures;
-        }
-        return r + 1;
+        return mhash(word, 0, word.length(), numFeatures);
+    }
+
+    private static int mhash(@Nonnull final String s, final int offset, final int len,
+            final int numFeatures) {
+        return MurmurHash3.murmurhash3(s, offset, len, numFeatures) + 1;
     }
 
 }
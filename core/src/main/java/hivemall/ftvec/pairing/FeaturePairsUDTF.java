@@ -23,6 +23,7 @@ import hivemall.fm.Feature;
 import hivemall.model.FeatureValue;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.hashing.HashFunction;
+import hivemall.utils.hashing.MurmurHash3;
 import hivemall.utils.lang.Preconditions;
 import hivemall.utils.lang.Primitives;
 
@@ -56,6 +57,7 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
     private int _numFields;
     private int _numFeatures;
     private boolean _l2norm;
+    private boolean _hashPairs;
 
     public FeaturePairsUDTF() {}
 
@@ -73,6 +75,9 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
         opts.addOption("num_fields", true,
             "The number of fields [default: " + Feature.DEFAULT_NUM_FIELDS + "]");
         opts.addOption("no_norm", "disable_norm", false, "Disable instance-wise L2 normalization");
+        opts.addOption("hash_pairs", false,
+            "Emit a pair of features as a single index hashed from <field_i, index_i, field_j, index_j>"
+                    + " in column i instead of <i, j> for -ffm [default: false]");
         return opts;
     }
 
@@ -83,7 +88,7 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
             String args = HiveUtils.getConstString(argOIs[1]);
             cl = parseOptions(args);
 
-            Preconditions.checkArgument(cl.getOptions().length <= 3, UDFArgumentException.class,
+            Preconditions.checkArgument(cl.getOptions().length <= 5, UDFArgumentException.class,
                 "Too many options were specified: " + cl.getArgList());
 
             if (cl.hasOption("kpa")) {
@@ -108,6 +113,7 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
                         "-num_fields MUST be greater than 1: " + _numFields);
                 }
                 this._l2norm = !cl.hasOption("disable_norm");
+                this._hashPairs = cl.hasOption("hash_pairs");
             } else {
                 throw new UDFArgumentException("Unsupported option: " + cl.getArgList().get(0));
             }
@@ -145,9 +151,9 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
             }
             case ffm: {
                 this._proc = new FFMProcessor(fvOI);
-                fieldNames.add("i"); // <ei, jField> index
+                fieldNames.add("i"); // <ei, jField> index or hashed pair index for -hash_pairs
                 fieldOIs.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
-                fieldNames.add("j"); // <ej, iField> index
+                fieldNames.add("j"); // <ej, iField> index or null for -hash_pairs
                 fieldOIs.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
                 fieldNames.add("xi");
                 fieldOIs.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
@@ -269,6 +275,11 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
         @Nullable
         private transient Feature[] _features;
 
+        /** a reused key of <field_i, index_i, field_j, index_j> for -hash_pairs */
+        @Nonnull
+        private final int[] pairKey;
+        private final int numPairs;
+
         FFMProcessor(@Nonnull ListObjectInspector fvOI) {
             super(fvOI);
             this.f0 = new IntWritable();
@@ -277,6 +288,8 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
             this.f3 = new DoubleWritable();
             this.forward = new Writable[] {f0, null, null, null};
             this._features = null;
+            this.pairKey = new int[4];
+            this.numPairs = (_numFeatures == -1) ? MurmurHash3.DEFAULT_NUM_FEATURES : _numFeatures;
         }
 
         @Override
@@ -312,7 +325,7 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
                 forward[3] = null;
                 forward(forward);
 
-                forward[1] = f1;
+                forward[1] = _hashPairs ? null : f1;
                 forward[3] = f3;
                 final int iField = ei.getField();
                 for (int j = i + 1; j < len; j++) {
@@ -320,6 +333,14 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
                     double xj = ej.getValue();
                     int jField = ej.getField();
 
+                    if (_hashPairs) {
+                        f0.set(hashPair(iField, ei.getFeatureIndex(), jField,
+                            ej.getFeatureIndex()));
+                        f3.set(xj);
+                        forward(forward);
+                        continue;
+                    }
+
                     int ifj = Feature.toIntFeature(ei, jField, _numFields);
                     int jfi = Feature.toIntFeature(ej, iField, _numFields);
 
@@ -332,6 +353,24 @@ public final class FeaturePairsUDTF extends UDTFWithOptions {
                 }
             }
         }
+
+        /**
+         * @return a pair index in range [1, numPairs] that does not conflict with W0 (0) and Wi
+         *         (negative)
+         */
+        private int hashPair(final int iField, final int iIndex, final int jField,
+                final int jIndex) {
+            final int[] key = pairKey;
+            key[0] = iField;
+            key[1] = iIndex;
+            key[2] = jField;
+            key[3] = jIndex;
+            int r = MurmurHash3.murmurhash3_x86_32(key, 0, 4, 0x9747b28c) % numPairs;
+            if (r < 0) {
+                r += numPairs;
+            }
+            return r + 1;
+        }
     }
 
     @Override
@@ -40,6 +40,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectIn
 import org.apache.hadoop.io.IntWritable;
 
 import hivemall.UDTFWithOptions;
+import hivemall.ftvec.ranking.NegativeSampler.Strategy;
 import hivemall.utils.collections.lists.IntArrayList;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.lang.BitUtils;
@@ -64,6 +65,8 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
     private float samplingRate;
     private boolean withoutReplacement;
     private boolean pairSampling;
+    private Strategy negSampling;
+    private int oversampling;
 
     private Object[] forwardObjs;
     private IntWritable userId;
@@ -82,6 +85,10 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
         opts.addOption("uniform_pair_sampling", "pair_sampling", false,
             "Sampling pairs uniform from feedbacks [default: false]");
         opts.addOption("maxcol", "max_itemid", true, "Max item id index [default: -1]");
+        opts.addOption("neg_sampling", true,
+            "Distribution of negative items [default: uniform, popularity, adaptive]");
+        opts.addOption("oversampling", true,
+            "The number of candidates ranked in adaptive negative sampling [default: 8]");
         return opts;
     }
 
@@ -94,6 +101,8 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
         float samplingRate = 1.f;
         boolean withoutReplacement = false;
         boolean pairSampling = false;
+        Strategy negSampling = Strategy.uniform;
+        int oversampling = 8;
 
         if (argOIs.length >= 3) {
             String args = HiveUtils.getConstString(argOIs[2]);
@@ -102,6 +111,16 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
             maxItemId = Primitives.parseInt(cl.getOptionValue("max_itemid"), maxItemId);
             withoutReplacement = cl.hasOption("without_replacement");
             pairSampling = cl.hasOption("uniform_pair_sampling");
+            try {
+                negSampling = Strategy.resolve(cl.getOptionValue("neg_sampling"));
+            } catch (IllegalArgumentException e) {
+                throw new UDFArgumentException(e);
+            }
+            oversampling = Primitives.parseInt(cl.getOptionValue("oversampling"), oversampling);
+            if (oversampling <= 0) {
+                throw new UDFArgumentException(
+                    "oversampling MUST be greater than 0: " + oversampling);
+            }
 
             samplingRate = Primitives.parseFloat(cl.getOptionValue("sampling_rate"), samplingRate);
             if (withoutReplacement && samplingRate > 1.f) {
@@ -114,6 +133,8 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
         this.samplingRate = samplingRate;
         this.withoutReplacement = withoutReplacement;
         this.pairSampling = pairSampling;
+        this.negSampling = negSampling;
+        this.oversampling = oversampling;
         return cl;
     }
 
@@ -193,19 +214,28 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
             return;
         }
         int numSamples = (int) (feedbacks * samplingRate);
+        final int maxItemId = feedback.getMaxItemId();
+        if (maxItemId <= 0) {
+            throw new HiveException("Invalid maxItemId: " + maxItemId);
+        }
+
+        final Random rand = new Random(31L);
+        // negative items are drawn from [0, maxItemId)
+        final NegativeSampler sampler =
+                new NegativeSampler(feedback, maxItemId, negSampling, oversampling, rand);
 
         if (pairSampling) {
             PerEventPositiveOnlyFeedback evFeedback = (PerEventPositiveOnlyFeedback) feedback;
             if (withoutReplacement) {
-                uniformPairSamplingWithoutReplacement(evFeedback, numSamples);
+                uniformPairSamplingWithoutReplacement(evFeedback, sampler, rand, numSamples);
             } else {
-                uniformPairSamplingWithReplacement(evFeedback, numSamples);
+                uniformPairSamplingWithReplacement(evFeedback, sampler, rand, numSamples);
             }
         } else {
             if (withoutReplacement) {
-                uniformUserSamplingWithoutReplacement(feedback, numSamples);
+                uniformUserSamplingWithoutReplacement(feedback, sampler, rand, numSamples);
             } else {
-                uniformUserSamplingWithReplacement(feedback, numSamples);
+                uniformUserSamplingWithReplacement(feedback, sampler, rand, numSamples);
             }
         }
     }
@@ -226,20 +256,15 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
      * Sampling pairs uniform for each user with replacement. Sample a user. Then, sample a pair.
      */
     private void uniformUserSamplingWithReplacement(@Nonnull final PositiveOnlyFeedback feedback,
+            @Nonnull final NegativeSampler sampler, @Nonnull final Random rand,
             final int numSamples) throws HiveException {
         final int numUsers = feedback.getNumUsers();
         if (numUsers == 0) {
             return;
         }
-        final int maxItemId = feedback.getMaxItemId();
-        if (maxItemId <= 0) {
-            throw new HiveException("Invalid maxItemId: " + maxItemId);
-        }
-        final int numItems = maxItemId + 1;
         final int[] users = feedback.getUsers();
         assert (users.length == numUsers);
 
-        final Random rand = new Random(31L);
         for (int i = 0; i < numSamples; i++) {
             int user = users[rand.nextInt(numUsers)];
 
@@ -247,17 +272,14 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
             assert (posItems != null) : user;
             int size = posItems.size();
             assert (size > 0) : size;
-            if (size == numItems) {// cannot draw a negative item      
-                --i;
-                continue;
-            }
 
             int posItemIndex = rand.nextInt(size);
             int posItem = posItems.fastGet(posItemIndex);
-            int negItem;
-            do {
-                negItem = rand.nextInt(maxItemId);
-            } while (posItems.contains(negItem));
+            int negItem = sampler.sample(user);
+            if (negItem == -1) {// cannot draw a negative item
+                --i;
+                continue;
+            }
 
             forward(user, posItem, negItem);
         }
@@ -270,20 +292,15 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
      * feedbacks.
      */
     private void uniformUserSamplingWithoutReplacement(@Nonnull final PositiveOnlyFeedback feedback,
+            @Nonnull final NegativeSampler sampler, @Nonnull final Random rand,
             final int numSamples) throws HiveException {
         int numUsers = feedback.getNumUsers();
         if (numUsers == 0) {
             return;
         }
-        final int maxItemId = feedback.getMaxItemId();
-        if (maxItemId <= 0) {
-            throw new HiveException("Invalid maxItemId: " + maxItemId);
-        }
-        final int numItems = maxItemId + 1;
         final BitSet userBits = new BitSet(numUsers);
         feedback.getUsers(userBits);
 
-        final Random rand = new Random(31L);
         for (int i = 0; i < numSamples && numUsers > 0; i++) {
             int nthUser = rand.nextInt(numUsers);
             int user = BitUtils.indexOfSetBit(userBits, nthUser);
@@ -296,17 +313,14 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
             assert (posItems != null) : user;
             int size = posItems.size();
             assert (size > 0) : size;
-            if (size == numItems) {// cannot draw a negative item                
-                --i;
-                continue;
-            }
 
             int posItemIndex = rand.nextInt(size);
             int posItem = posItems.fastGet(posItemIndex);
-            int negItem;
-            do {
-                negItem = rand.nextInt(maxItemId);
-            } while (posItems.contains(negItem));
+            int negItem = sampler.sample(user);
+            if (negItem == -1) {// cannot draw a negative item
+                --i;
+                continue;
+            }
 
             posItems.remove(posItemIndex);
             if (posItems.isEmpty()) {
@@ -323,30 +337,22 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
      * Sampling pairs uniform from feedbacks with replacement.
      */
     private void uniformPairSamplingWithReplacement(
-            @Nonnull final PerEventPositiveOnlyFeedback feedback, final int numSamples)
-            throws HiveException {
+            @Nonnull final PerEventPositiveOnlyFeedback feedback,
+            @Nonnull final NegativeSampler sampler, @Nonnull final Random rand,
+            final int numSamples) throws HiveException {
         final int numFeedbacks = feedback.getTotalFeedbacks();
         if (numFeedbacks == 0) {
             return;
         }
-        final int maxItemId = feedback.getMaxItemId();
-        if (maxItemId <= 0) {
-            throw new HiveException("Invalid maxItemId: " + maxItemId);
-        }
-
-        final Random rand = new Random(31L);
         for (int i = 0; i < numSamples; i++) {
             int index = rand.nextInt(numFeedbacks);
             int user = feedback.getUser(index);
             int posItem = feedback.getPositiveItem(index);
 
-            IntArrayList posItems = feedback.getItems(user, true);
-            assert (posItems != null) : user;
-
-            int negItem;
-            do {
-                negItem = rand.nextInt(maxItemId);
-            } while (posItems.contains(negItem));
+            int negItem = sampler.sample(user);
+            if (negItem == -1) {// cannot draw a negative item
+                continue;
+            }
 
             forward(user, posItem, negItem);
         }
@@ -359,30 +365,22 @@ public final class BprSamplingUDTF extends UDTFWithOptions {
      * feedbacks.
      */
     private void uniformPairSamplingWithoutReplacement(
-            @Nonnull final PerEventPositiveOnlyFeedback feedback, final int numSamples)
-            throws HiveException {
+            @Nonnull final PerEventPositiveOnlyFeedback feedback,
+            @Nonnull final NegativeSampler sampler, @Nonnull final Random rand,
+            final int numSamples) throws HiveException {
         final int numFeedbacks = feedback.getTotalFeedbacks();
         if (numFeedbacks == 0) {
             return;
         }
-        final int maxItemId = feedback.getMaxItemId();
-        if (maxItemId <= 0) {
-            throw new HiveException("Invalid maxItemId: " + maxItemId);
-        }
-
-        final Random rand = new Random(31L);
         final int[] perm = feedback.getRandomIndex(rand);
         for (int index : perm) {
             int user = feedback.getUser(index);
             int posItem = feedback.getPositiveItem(index);
 
-            IntArrayList posItems = feedback.getItems(user, true);
-            assert (posItems != null) : user;
-
-            int negItem;
-            do {
-                negItem = rand.nextInt(maxItemId);
-            } while (posItems.contains(negItem));
+            int negItem = sampler.sample(user);
+            if (negItem == -1) {// cannot draw a negative item
+                continue;
+            }
 
             forward(user, posItem, negItem);
         }
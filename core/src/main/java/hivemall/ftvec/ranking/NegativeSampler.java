@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.ftvec.ranking;
+
+import hivemall.utils.collections.lists.IntArrayList;
+import hivemall.utils.sampling.AliasTable;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Draws negative items of a user, i.e., items that are not in the positive feedbacks of the user.
+ * 
+ * Positive items of each user are kept in a sorted int array, and thus a rejection check takes
+ * O(log n). Items are drawn from the following distributions:
+ * 
+ * <ul>
+ * <li>uniform: items are drawn uniformly</li>
+ * <li>popularity: items are drawn proportionally to the number of positive feedbacks of the items
+ * using an alias table, and thus a draw takes O(1)</li>
+ * <li>adaptive: <i>k</i> candidates are drawn uniformly and ranked by a score, e.g., the current
+ * model prediction, and then the candidate at rank <i>r</i> is chosen where <i>r</i> follows a
+ * geometric distribution truncated at <i>k</i>. The popularity of items is used as the score when
+ * no scorer is given.</li>
+ * </ul>
+ * 
+ * <pre>
+ * Steffen Rendle and Christoph Freudenthaler, Improving Pairwise Learning for Item Recommendation
+ * from Implicit Feedback, Proc. WSDM, 2014.
+ * </pre>
+ */
+public final class NegativeSampler {
+
+    /** The maximum number of rejected draws before falling back to uniform draws */
+    private static final int MAX_REJECTIONS = 64;
+
+    public enum Strategy {
+        uniform, popularity, adaptive;
+
+        @Nonnull
+        public static Strategy resolve(@Nullable final String name) {
+            if (name == null) {
+                return uniform;
+            }
+            if ("uniform".equalsIgnoreCase(name)) {
+                return uniform;
+            } else if ("popularity".equalsIgnoreCase(name) || "pop".equalsIgnoreCase(name)) {
+                return popularity;
+            } else if ("adaptive".equalsIgnoreCase(name)) {
+                return adaptive;
+            }
+            throw new IllegalArgumentException("Unsupported negative sampling strategy: " + name);
+        }
+    }
+
+    public interface ItemScorer {
+        /**
+         * @return a larger score for an item that is harder to distinguish from positive items
+         */
+        double score(int user, int item);
+    }
+
+    @Nonnull
+    private final Strategy strategy;
+    @Nonnegative
+    private final int numItems;
+    @Nonnull
+    private final Random rand;
+
+    /** sorted positive items of each user */
+    @Nonnull
+    private final Int2ObjectMap<int[]> positives;
+    /** the number of positive feedbacks of each item */
+    @Nonnull
+    private final int[] itemCounts;
+    @Nullable
+    private final AliasTable popularity;
+
+    // for adaptive oversampling
+    @Nonnegative
+    private final int oversampling;
+    private final double rankLambda;
+    @Nonnull
+    private final int[] candidates;
+    @Nonnull
+    private final double[] scores;
+
+    /**
+     * @param numItems items in [0, numItems) are drawn
+     * @param oversampling the number of candidates in adaptive sampling
+     */
+    public NegativeSampler(@Nonnull final PositiveOnlyFeedback feedback,
+            @Nonnegative final int numItems, @Nonnull final Strategy strategy,
+            @Nonnegative final int oversampling, @Nonnull final Random rand) {
+        if (numItems <= 0) {
+            throw new IllegalArgumentException("numItems must be positive: " + numItems);
+        }
+        if (oversampling <= 0) {
+            throw new IllegalArgumentException("oversampling must be positive: " + oversampling);
+        }
+        this.strategy = strategy;
+        this.numItems = numItems;
+        this.rand = rand;
+
+        final int[] users = feedback.getUsers();
+        final Int2ObjectMap<int[]> positives = new Int2ObjectOpenHashMap<int[]>(users.length);
+        final int[] itemCounts = new int[numItems];
+        for (int user : users) {
+            IntArrayList items = feedback.getItems(user, false);
+            if (items == null || items.isEmpty()) {
+                continue;
+            }
+            int[] sorted = unique(items.toArray());
+            positives.put(user, sorted);
+            for (int item : sorted) {
+                if (item < numItems) {
+                    itemCounts[item]++;
+                }
+            }
+        }
+        this.positives = positives;
+        this.itemCounts = itemCounts;
+
+        if (strategy == Strategy.popularity) {
+            final double[] weights = new double[numItems];
+            boolean hasWeight = false;
+            for (int i = 0; i < numItems; i++) {
+                weights[i] = itemCounts[i];
+                hasWeight |= (itemCounts[i] > 0);
+            }
+            this.popularity = hasWeight ? new AliasTable(weights) : null;
+        } else {
+            this.popularity = null;
+        }
+
+        this.oversampling = oversampling;
+        this.rankLambda = Math.max(1.d, oversampling / 4.d);
+        this.candidates = new int[oversampling];
+        this.scores = new double[oversampling];
+    }
+
+    @Nonnull
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    @Nonnegative
+    public int getNumItems() {
+        return numItems;
+    }
+
+    @Nonnegative
+    public int getItemCount(final int item) {
+        return (item >= 0 && item < numItems) ? itemCounts[item] : 0;
+    }
+
+    public boolean isPositive(final int user, final int item) {
+        final int[] items = positives.get(user);
+        return items != null && Arrays.binarySearch(items, item) >= 0;
+    }
+
+    /**
+     * @return a negative item of the user, or -1 if all items are positive for the user
+     */
+    public int sample(final int user) {
+        return sample(user, null);
+    }
+
+    /**
+     * @param scorer used for adaptive sampling. The popularity of items is used if null.
+     * @return a negative item of the user, or -1 if all items are positive for the user
+     */
+    public int sample(final int user, @Nullable final ItemScorer scorer) {
+        final int[] items = positives.get(user);
+        if (items != null && countBelow(items, numItems) >= numItems) {
+            return -1; // cannot draw a negative item
+        }
+
+        switch (strategy) {
+            case popularity:
+                return samplePopular(items);
+            case adaptive:
+                return sampleAdaptive(user, items, scorer);
+            default:
+                return sampleUniform(items);
+        }
+    }
+
+    private int sampleUniform(@Nullable final int[] items) {
+        int item;
+        do {
+            item = rand.nextInt(numItems);
+        } while (contains(items, item));
+        return item;
+    }
+
+    private int samplePopular(@Nullable final int[] items) {
+        final AliasTable popularity = this.popularity;
+        if (popularity != null) {
+            for (int i = 0; i < MAX_REJECTIONS; i++) {
+                int item = popularity.sample(rand);
+                if (!contains(items, item)) {
+                    return item;
+                }
+            }
+        }
+        // popular items are mostly positive for the user
+        return sampleUniform(items);
+    }
+
+    private int sampleAdaptive(final int user, @Nullable final int[] items,
+            @Nullable final ItemScorer scorer) {
+        final int[] candidates = this.candidates;
+        final double[] scores = this.scores;
+        final int k = oversampling;
+
+        // insertion sort of the candidates in the descending order of scores
+        for (int i = 0; i < k; i++) {
+            int item = sampleUniform(items);
+            double score = (scorer == null) ? itemCounts[item] : scorer.score(user, item);
+            int j = i;
+            for (; j > 0 && scores[j - 1] < score; j--) {
+                candidates[j] = candidates[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            candidates[j] = item;
+            scores[j] = score;
+        }
+
+        // P(rank = r) is proportional to exp(-r / lambda) for r < k
+        int rank;
+        do {
+            rank = (int) (-rankLambda * Math.log(1.d - rand.nextDouble()));
+        } while (rank >= k);
+        return candidates[rank];
+    }
+
+    private static boolean contains(@Nullable final int[] sorted, final int item) {
+        return sorted != null && Arrays.binarySearch(sorted, item) >= 0;
+    }
+
+    private static int countBelow(@Nonnull final int[] sorted, final int bound) {
+        int i = Arrays.binarySearch(sorted, bound);
+        return (i >= 0) ? i : -(i + 1);
+    }
+
+    @Nonnull
+    private static int[] unique(@Nonnull final int[] items) {
+        Arrays.sort(items);
+        int size = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (size == 0 || items[size - 1] != items[i]) {
+                items[size++] = items[i];
+            }
+        }
+        return (size == items.length) ? items : Arrays.copyOf(items, size);
+    }
+
+}
@@ -68,6 +68,14 @@ public final class PerEventPositiveOnlyFeedback extends PositiveOnlyFeedback {
         }
     }
 
+    @Override
+    public void addFeedback(int userId, int itemId) {
+        super.addFeedback(userId, itemId);
+
+        users.add(userId);
+        posItems.add(itemId);
+    }
+
     @Override
     public void removeFeedback(int userId) {
         throw new UnsupportedOperationException();
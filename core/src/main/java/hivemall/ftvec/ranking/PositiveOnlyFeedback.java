@@ -111,6 +111,21 @@ public class PositiveOnlyFeedback {
         this.totalFeedbacks += itemIds.size();
     }
 
+    /**
+     * Appends a positive item of a user. Duplicate items are kept as they are.
+     */
+    public void addFeedback(final int userId, final int itemId) {
+        validateIndex(userId, itemId);
+
+        IntArrayList items = rows.get(userId);
+        if (items == null) {
+            items = new IntArrayList();
+            rows.put(userId, items);
+        }
+        items.add(itemId);
+        this.totalFeedbacks++;
+    }
+
     protected static void validateIndex(final int index) {
         if (index < 0) {
             throw new IllegalArgumentException("Negative index is not allowed: " + index);
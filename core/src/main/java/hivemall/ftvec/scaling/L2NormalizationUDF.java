@@ -34,53 +34,52 @@ import org.apache.hadoop.io.Text;
 @UDFType(deterministic = true, stateful = false)
 public final class L2NormalizationUDF extends UDF {
 
+    private String[] features = new String[0];
+    private float[] weights = new float[0];
+
     public List<Text> evaluate(final List<Text> ftvecs) throws HiveException {
         if (ftvecs == null) {
             return null;
         }
         double squaredSum = 0.d;
         final int numFeatures = ftvecs.size();
-        final String[] features = new String[numFeatures];
-        final float[] weights = new float[numFeatures];
+        if (numFeatures > features.length) {
+            this.features = new String[numFeatures];
+            this.weights = new float[numFeatures];
+        }
+        final String[] features = this.features;
+        final float[] weights = this.weights;
         for (int i = 0; i < numFeatures; i++) {
             Text ftvec = ftvecs.get(i);
             if (ftvec == null) {
+                features[i] = null;
+                weights[i] = 0.f;
                 continue;
             }
-            String s = ftvec.toString();
-            final String[] ft = s.split(":");
-            final int ftlen = ft.length;
-            if (ftlen == 1) {
-                features[i] = ft[0];
+            final String s = ftvec.toString();
+            final int headPos = s.indexOf(':');
+            if (headPos == -1) {
+                features[i] = s;
                 weights[i] = 1.f;
                 squaredSum += 1.d;
-            } else if (ftlen == 2) {
-                features[i] = ft[0];
-                float v = Float.parseFloat(ft[1]);
-                weights[i] = v;
-                squaredSum += (v * v);
-            } else if (ftlen == 3) {
-                features[i] = ft[0] + ':' + ft[1];
-                float v = Float.parseFloat(ft[2]);
-                weights[i] = v;
-                squaredSum += (v * v);
-            } else {
+                continue;
+            }
+            final int tailPos = s.lastIndexOf(':');
+            if (headPos != tailPos && s.indexOf(':', headPos + 1) != tailPos) {
                 throw new HiveException("Invalid feature value representation: " + s);
             }
+            features[i] = s.substring(0, tailPos);
+            float v = Float.parseFloat(s.substring(tailPos + 1));
+            weights[i] = v;
+            squaredSum += (v * v);
         }
+
         final float norm = (float) Math.sqrt(squaredSum);
         final Text[] t = new Text[numFeatures];
-        if (norm == 0.f) {
-            for (int i = 0; i < numFeatures; i++) {
-                String f = features[i];
-                t[i] = new Text(f + ':' + 0.f);
-            }
-        } else {
-            for (int i = 0; i < numFeatures; i++) {
-                String f = features[i];
-                float v = weights[i] / norm;
-                t[i] = new Text(f + ':' + v);
-            }
+        for (int i = 0; i < numFeatures; i++) {
+            String f = features[i];
+            float v = (norm == 0.f) ? 0.f : weights[i] / norm;
+            t[i] = new Text(f + ':' + v);
         }
         return Arrays.asList(t);
     }
@@ -18,8 +18,6 @@
  */
 package hivemall.ftvec.scaling;
 
-import static hivemall.utils.hadoop.WritableUtils.val;
-
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
@@ -40,6 +38,9 @@ import org.apache.hadoop.io.Text;
 @UDFType(deterministic = true, stateful = false)
 public final class RescaleUDF extends UDF {
 
+    private final FloatWritable floatResult = new FloatWritable();
+    private final Text textResult = new Text();
+
     @Nullable
     public FloatWritable evaluate(@Nullable final Double value, @CheckForNull final Double min,
             @CheckForNull final Double max) throws HiveException {
@@ -58,7 +59,8 @@ public final class RescaleUDF extends UDF {
         if (max == null)
             throw new HiveException("max should not be null");
 
-        return val(min_max_normalization(value, min, max));
+        floatResult.set(min_max_normalization(value, min, max));
+        return floatResult;
     }
 
     @Nullable
@@ -79,23 +81,22 @@ public final class RescaleUDF extends UDF {
         if (max == null)
             throw new HiveException("max should not be null");
 
-        final String[] fv = s.split(":");
-        if (fv.length != 2) {
-            throw new HiveException(
-                String.format("Invalid feature value " + "representation: %s", s));
+        final int pos = s.indexOf(':');
+        if (pos == -1 || pos == s.length() - 1 || s.indexOf(':', pos + 1) != -1) {
+            throw new HiveException("Invalid feature value representation: " + s);
         }
+        final String fv1 = s.substring(pos + 1);
         float v;
         try {
-            v = Float.parseFloat(fv[1]);
+            v = Float.parseFloat(fv1);
         } catch (NumberFormatException e) {
-            throw new HiveException(String.format(
-                "Invalid feature value " + "representation: %s, %s can't parse to float.", s,
-                fv[1]));
+            throw new HiveException("Invalid feature value representation: " + s + ", " + fv1
+                    + " can't parse to float.");
         }
 
         float scaled_v = min_max_normalization(v, min.floatValue(), max.floatValue());
-        String ret = fv[0] + ':' + scaled_v;
-        return val(ret);
+        textResult.set(s.substring(0, pos + 1) + scaled_v);
+        return textResult;
     }
 
     private static float min_max_normalization(final float value, final float min, final float max)
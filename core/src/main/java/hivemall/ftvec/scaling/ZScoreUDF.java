@@ -31,20 +31,24 @@ import org.apache.hadoop.io.FloatWritable;
 @UDFType(deterministic = true, stateful = false)
 public final class ZScoreUDF extends UDF {
 
+    private final FloatWritable result = new FloatWritable();
+
     public FloatWritable evaluate(double value, double mean, double stddev) {
         if (stddev == 0.d) {
-            return new FloatWritable(0.f);
+            result.set(0.f);
+        } else {
+            result.set((float) ((value - mean) / stddev));
         }
-        float v = (float) ((value - mean) / stddev);
-        return new FloatWritable(v);
+        return result;
     }
 
     public FloatWritable evaluate(float value, float mean, float stddev) {
         if (stddev == 0.f) {
-            return new FloatWritable(0.f);
+            result.set(0.f);
+        } else {
+            result.set((value - mean) / stddev);
         }
-        float v = (value - mean) / stddev;
-        return new FloatWritable(v);
+        return result;
     }
 
 }
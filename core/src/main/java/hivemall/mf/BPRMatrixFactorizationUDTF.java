@@ -20,19 +20,23 @@ package hivemall.mf;
 
 import hivemall.UDTFWithOptions;
 import hivemall.common.ConversionState;
+import hivemall.common.EpochReplayBuffer;
+import hivemall.ftvec.ranking.NegativeSampler;
+import hivemall.ftvec.ranking.NegativeSampler.Strategy;
+import hivemall.ftvec.ranking.PositiveOnlyFeedback;
 import hivemall.mf.FactorizedModel.RankInitScheme;
 import hivemall.optimizer.EtaEstimator;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.io.FileUtils;
-import hivemall.utils.io.NioFixedSegment;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.Primitives;
+import hivemall.utils.lang.SizeOf;
 import hivemall.utils.math.MathUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -65,6 +69,9 @@ import org.apache.hadoop.mapred.Reporter;
 public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements RatingInitializer {
     private static final Log LOG = LogFactory.getLog(BPRMatrixFactorizationUDTF.class);
     private static final int RECORD_BYTES = (Integer.SIZE + Integer.SIZE + Integer.SIZE) / 8;
+    /** The bytes of the user (or item) factors in a block of a cache-blocked window */
+    private static final int BLOCK_BYTES = 16 * 1024;
+    private static final int MAX_WINDOW_SIZE = 1 << 20;
 
     // Option variables
     /** The number of latent factors */
@@ -98,9 +105,30 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
     protected PrimitiveObjectInspector negItemOI;
 
     // Used for iterations
-    protected NioFixedSegment fileIO;
-    protected ByteBuffer inputBuf;
-    private long lastWritePos;
+    @Nullable
+    protected EpochReplayBuffer replayBuffer;
+    private long replayMemoryBudget;
+    private boolean shuffleBlocks;
+
+    // Used for resampling negative items in iterations
+    /** Distribution of negative items, or null to use the given negative items */
+    @Nullable
+    private Strategy negSampling;
+    private int oversampling;
+    @Nullable
+    private PositiveOnlyFeedback feedback;
+    private int maxItemId;
+
+    // Used for cache-blocked updates
+    /** The number of training examples updated together, or 0 to update them one by one */
+    private int blockedWindow;
+    /** The number of factor rows in a block */
+    private int blockRows;
+    @Nullable
+    private FactorSlab slab;
+    private int[] windowUsers, windowPosItems, windowNegItems;
+    private long[] windowKeys;
+    private int windowSize;
 
     private float[] uProbe, iProbe, jProbe;
 
@@ -177,6 +205,17 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
             "Whether to disable convergence check [default: enabled]");
         opts.addOption("cv_rate", "convergence_rate", true,
             "Threshold to determine convergence [default: 0.005]");
+        // negative sampling
+        opts.addOption("neg_sampling", true,
+            "Resample negative items in the second and later iterations"
+                    + " [default: none, uniform, popularity, adaptive]");
+        opts.addOption("oversampling", true,
+            "The number of candidates ranked in adaptive negative sampling [default: 8]");
+        // cache-blocked updates
+        opts.addOption("blocked", "blocked_window", true,
+            "The number of training examples buffered and updated in cache-blocked order"
+                    + " [default: 0 (disabled)]");
+        EpochReplayBuffer.setup(opts);
         return opts;
     }
 
@@ -224,6 +263,25 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
             conversionCheck = !cl.hasOption("disable_cvtest");
             convergenceRate = Primitives.parseDouble(cl.getOptionValue("cv_rate"), convergenceRate);
             this.useBiasClause = !cl.hasOption("no_bias");
+
+            String negSamplingOpt = cl.getOptionValue("neg_sampling");
+            if (negSamplingOpt != null && !"none".equalsIgnoreCase(negSamplingOpt)) {
+                try {
+                    this.negSampling = Strategy.resolve(negSamplingOpt);
+                } catch (IllegalArgumentException e) {
+                    throw new UDFArgumentException(e);
+                }
+            }
+            this.oversampling = Primitives.parseInt(cl.getOptionValue("oversampling"), 8);
+            if (oversampling <= 0) {
+                throw new UDFArgumentException(
+                    "'-oversampling' must be greater than 0: " + oversampling);
+            }
+            this.blockedWindow = Primitives.parseInt(cl.getOptionValue("blocked_window"), 0);
+            if (blockedWindow < 0 || blockedWindow > MAX_WINDOW_SIZE) {
+                throw new UDFArgumentException("'-blocked_window' must be in range [0,"
+                        + MAX_WINDOW_SIZE + "]: " + blockedWindow);
+            }
         }
 
         this.lossFunction = LossFunction.resolve(lossFuncName);
@@ -233,6 +291,8 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
         rankInit.setInitStdDev(initStdDev);
         this.etaEstimator = EtaEstimator.get(cl);
         this.cvState = new ConversionState(conversionCheck, convergenceRate);
+        this.replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this.shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
         return cl;
     }
 
@@ -250,28 +310,27 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
 
         this.model = new FactorizedModel(this, factor, rankInit);
         this.count = 0L;
-        this.lastWritePos = 0L;
         this.uProbe = new float[factor];
         this.iProbe = new float[factor];
         this.jProbe = new float[factor];
+        if (blockedWindow > 0) {
+            this.blockRows = Math.max(1, BLOCK_BYTES / (factor * SizeOf.FLOAT));
+            this.slab = new FactorSlab(model, factor, Math.min(blockedWindow, 1024));
+            this.windowUsers = new int[blockedWindow];
+            this.windowPosItems = new int[blockedWindow];
+            this.windowNegItems = new int[blockedWindow];
+            this.windowKeys = new long[blockedWindow];
+            this.windowSize = 0;
+        }
 
         if (mapredContext != null && iterations > 1) {
             // invoke only at task node (initialize is also invoked in compilation)
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_bprmf", ".sgmt");
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            } catch (Throwable e) {
-                throw new UDFArgumentException(e);
+            this.replayBuffer = new EpochReplayBuffer("hivemall_bprmf", replayMemoryBudget,
+                EpochReplayBuffer.DEFAULT_BLOCK_SIZE, shuffleBlocks);
+            if (negSampling != null) {
+                this.feedback = new PositiveOnlyFeedback(-1);
+                this.maxItemId = -1;
             }
-            this.fileIO = new NioFixedSegment(file, RECORD_BYTES, false);
-            this.inputBuf = ByteBuffer.allocateDirect(65536); // 64 KiB
         }
 
         ArrayList<String> fieldNames = new ArrayList<String>();
@@ -302,23 +361,156 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
 
         beforeTrain(count, u, i, j);
         count++;
-        train(u, i, j);
+        update(u, i, j);
     }
 
     protected void beforeTrain(final long rowNum, final int u, final int i, final int j)
             throws HiveException {
-        if (inputBuf != null) {
-            assert (fileIO != null);
-            final ByteBuffer buf = inputBuf;
-            int remain = buf.remaining();
-            if (remain < RECORD_BYTES) {
-                writeBuffer(buf, fileIO, lastWritePos);
-                this.lastWritePos = rowNum;
+        if (replayBuffer != null) {
+            final ByteBuffer buf;
+            try {
+                buf = replayBuffer.beginRecord(RECORD_BYTES);
+            } catch (IOException e) {
+                throw new HiveException("Failed to record a training example: " + rowNum, e);
             }
             buf.putInt(u);
             buf.putInt(i);
             buf.putInt(j);
         }
+        if (feedback != null) {
+            feedback.addFeedback(u, i);
+            this.maxItemId = Math.max(maxItemId, Math.max(i, j));
+        }
+    }
+
+    private void update(final int u, final int i, final int j) {
+        if (slab == null) {
+            train(u, i, j);
+            return;
+        }
+        final int t = windowSize++;
+        windowUsers[t] = u;
+        windowPosItems[t] = i;
+        windowNegItems[t] = j;
+        if (windowSize == blockedWindow) {
+            flushWindow();
+        }
+    }
+
+    /**
+     * Updates the buffered training examples on a {@link FactorSlab}, in the order of the block
+     * of the user and the block of the positive item so that the factors of a block stay in the
+     * CPU cache while they are updated.
+     */
+    private void flushWindow() {
+        final int n = windowSize;
+        if (n == 0) {
+            return;
+        }
+        final FactorSlab slab = this.slab;
+        final int[] users = windowUsers, posItems = windowPosItems, negItems = windowNegItems;
+        final long[] keys = windowKeys;
+        final int blockRows = this.blockRows;
+        // gather in the arrival order so that new vectors are initialized as train() does
+        for (int t = 0; t < n; t++) {
+            int ur = slab.userRow(users[t]);
+            int ir = slab.itemRow(posItems[t]);
+            users[t] = ur;
+            posItems[t] = ir;
+            negItems[t] = slab.itemRow(negItems[t]);
+            keys[t] = ((long) (ur / blockRows) << 41) | ((long) (ir / blockRows) << 20) | t;
+        }
+        Arrays.sort(keys, 0, n);
+
+        final long firstCount = count - n + 1;
+        double loss = 0.d;
+        for (int s = 0; s < n; s++) {
+            int t = (int) (keys[s] & (MAX_WINDOW_SIZE - 1));
+            float eta = etaEstimator.eta(firstCount + t);
+            loss += train(slab, users[t], posItems[t], negItems[t], eta);
+        }
+        slab.scatter(useBiasClause);
+        cvState.incrLoss(loss);
+        this.windowSize = 0;
+    }
+
+    /**
+     * @return the regularization loss
+     */
+    private double train(@Nonnull final FactorSlab slab, final int uRow, final int iRow,
+            final int jRow, final float eta) {
+        final float[] U = slab.userFactors, V = slab.itemFactors, B = slab.itemBiases;
+        final int k = factor;
+        final int uOff = uRow * k, iOff = iRow * k, jOff = jRow * k;
+
+        double x_uij = B[iRow] + FactorSlab.dot(U, uOff, V, iOff, k)
+                - (B[jRow] + FactorSlab.dot(U, uOff, V, jOff, k));
+        if (!NumberUtils.isFinite(x_uij)) {
+            throw new IllegalStateException("Detected " + x_uij + " in predict");
+        }
+        final double dloss = dloss(x_uij, lossFunction);
+
+        double loss = regU * FactorSlab.squaredNorm(U, uOff, k)
+                + regI * FactorSlab.squaredNorm(V, iOff, k)
+                + regJ * FactorSlab.squaredNorm(V, jOff, k);
+        updateFactors(U, uOff, V, iOff, jOff, k, dloss, eta, regU, regI, regJ);
+
+        if (useBiasClause) {
+            float Bi = B[iRow];
+            Bi += eta * (dloss - regBias * Bi);
+            if (!NumberUtils.isFinite(Bi)) {
+                throw new IllegalStateException("Detected " + Bi + " for Bi");
+            }
+            B[iRow] = Bi;
+            loss += regBias * Bi * Bi;
+
+            float Bj = B[jRow];
+            Bj += eta * (-dloss - regBias * Bj);
+            if (!NumberUtils.isFinite(Bj)) {
+                throw new IllegalStateException("Detected " + Bj + " for Bj");
+            }
+            B[jRow] = Bj;
+            loss += regBias * Bj * Bj;
+        }
+        return loss;
+    }
+
+    /**
+     * Updates the factors of a user, a positive item and a negative item in one pass, unrolled by
+     * 4. The negative item is written last as {@link #train(int, int, int)} does when i = j.
+     */
+    private static void updateFactors(@Nonnull final float[] U, final int uOff,
+            @Nonnull final float[] V, final int iOff, final int jOff, final int n,
+            final double dloss, final float eta, final float regU, final float regI,
+            final float regJ) {
+        int k = 0;
+        for (final int end = n - 3; k < end; k += 4) {
+            float w0 = U[uOff + k], w1 = U[uOff + k + 1];
+            float w2 = U[uOff + k + 2], w3 = U[uOff + k + 3];
+            float hi0 = V[iOff + k], hi1 = V[iOff + k + 1];
+            float hi2 = V[iOff + k + 2], hi3 = V[iOff + k + 3];
+            float hj0 = V[jOff + k], hj1 = V[jOff + k + 1];
+            float hj2 = V[jOff + k + 2], hj3 = V[jOff + k + 3];
+
+            U[uOff + k] = w0 + (float) (eta * (dloss * (hi0 - hj0) - regU * w0));
+            U[uOff + k + 1] = w1 + (float) (eta * (dloss * (hi1 - hj1) - regU * w1));
+            U[uOff + k + 2] = w2 + (float) (eta * (dloss * (hi2 - hj2) - regU * w2));
+            U[uOff + k + 3] = w3 + (float) (eta * (dloss * (hi3 - hj3) - regU * w3));
+            V[iOff + k] = hi0 + (float) (eta * (dloss * w0 - regI * hi0));
+            V[iOff + k + 1] = hi1 + (float) (eta * (dloss * w1 - regI * hi1));
+            V[iOff + k + 2] = hi2 + (float) (eta * (dloss * w2 - regI * hi2));
+            V[iOff + k + 3] = hi3 + (float) (eta * (dloss * w3 - regI * hi3));
+            V[jOff + k] = hj0 + (float) (eta * (-dloss * w0 - regJ * hj0));
+            V[jOff + k + 1] = hj1 + (float) (eta * (-dloss * w1 - regJ * hj1));
+            V[jOff + k + 2] = hj2 + (float) (eta * (-dloss * w2 - regJ * hj2));
+            V[jOff + k + 3] = hj3 + (float) (eta * (-dloss * w3 - regJ * hj3));
+        }
+        for (; k < n; k++) {
+            float w = U[uOff + k], hi = V[iOff + k], hj = V[jOff + k];
+            U[uOff + k] = w + (float) (eta * (dloss * (hi - hj) - regU * w));
+            V[iOff + k] = hi + (float) (eta * (dloss * w - regI * hi));
+            V[jOff + k] = hj + (float) (eta * (-dloss * w - regJ * hj));
+        }
     }
 
     protected void train(final int u, final int i, final int j) {
@@ -361,6 +553,22 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
         return ret;
     }
 
+    /**
+     * @return the current score of an item for a user without initializing the vectors
+     */
+    private double predict(final int user, final int item) {
+        double ret = model.getItemBias(item);
+        final Rating[] userVec = model.getUserVector(user);
+        final Rating[] itemVec = model.getItemVector(item);
+        if (userVec == null || itemVec == null) {
+            return ret;
+        }
+        for (int k = 0, size = factor; k < size; k++) {
+            ret += userVec[k].getWeight() * itemVec[k].getWeight();
+        }
+        return ret;
+    }
+
     protected double dloss(final double x, @Nonnull final LossFunction loss) {
         switch (loss) {
             case sigmoid: {
@@ -435,6 +643,7 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
                 this.model = null; // help GC
                 return;
             }
+            flushWindow();
             if (iterations > 1) {
                 runIterativeTraining(iterations);
             }
@@ -476,135 +685,82 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
 
     private final void runIterativeTraining(@Nonnegative final int iterations)
             throws HiveException {
-        final ByteBuffer inputBuf = this.inputBuf;
-        final NioFixedSegment fileIO = this.fileIO;
-        assert (inputBuf != null);
-        assert (fileIO != null);
+        final EpochReplayBuffer src = this.replayBuffer;
+        assert (src != null);
         final long numTrainingExamples = count;
 
+        NegativeSampler sampler = null;
+        NegativeSampler.ItemScorer scorer = null;
+        if (feedback != null && maxItemId >= 0) {
+            sampler = new NegativeSampler(feedback, maxItemId + 1, negSampling, oversampling,
+                new Random(43L));
+            this.feedback = null; // help GC
+            if (negSampling == Strategy.adaptive) {
+                scorer = new NegativeSampler.ItemScorer() {
+                    @Override
+                    public double score(final int user, final int item) {
+                        return predict(user, item);
+                    }
+                };
+            }
+        }
+
         final Reporter reporter = getReporter();
         final Counter iterCounter = (reporter == null) ? null
                 : reporter.getCounter("hivemall.mf.BPRMatrixFactorization$Counter", "iteration");
 
         try {
-            if (lastWritePos == 0) {// run iterations w/o temporary file
-                if (inputBuf.position() == 0) {
-                    return; // no training example
-                }
-                inputBuf.flip();
-
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (inputBuf.remaining() > 0) {
-                        int u = inputBuf.getInt();
-                        int i = inputBuf.getInt();
-                        int j = inputBuf.getInt();
-                        // invoke train
-                        count++;
-                        train(u, i, j);
-                    }
-                    cvState.multiplyLoss(0.5d);
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
+            for (int iter = 2; iter <= iterations; iter++) {
+                cvState.next();
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer inputBuf;
+                while ((inputBuf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-                    if (cvState.isLossIncreased()) {
-                        etaEstimator.update(1.1f);
-                    } else {
-                        etaEstimator.update(0.5f);
+                    int u = inputBuf.getInt();
+                    int i = inputBuf.getInt();
+                    int j = inputBuf.getInt();
+                    if (sampler != null) {
+                        int sampled = sampler.sample(u, scorer);
+                        if (sampled != -1) {
+                            j = sampled;
+                        }
                     }
-                    inputBuf.rewind();
-                }
-                LOG.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on memory (thus " + NumberUtils.formatNumber(count)
-                        + " training updates in total) ");
-            } else {// read training examples in the temporary file and invoke train for each example
-
-                // write training examples in buffer to a temporary file
-                if (inputBuf.position() > 0) {
-                    writeBuffer(inputBuf, fileIO, lastWritePos);
+                    // invoke train
+                    count++;
+                    update(u, i, j);
                 }
+                replay.close();
+                flushWindow();
 
-                try {
-                    fileIO.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + fileIO.getFile().getAbsolutePath(), e);
+                cvState.multiplyLoss(0.5d);
+                if (cvState.isConverged(numTrainingExamples)) {
+                    break;
                 }
-                if (LOG.isInfoEnabled()) {
-                    File tmpFile = fileIO.getFile();
-                    LOG.info("Wrote " + numTrainingExamples
-                            + " records to a temporary file for iterative training: "
-                            + tmpFile.getAbsolutePath() + " (" + FileUtils.prettyFileSize(tmpFile)
-                            + ")");
-                }
-
-                // run iterations
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    setCounterValue(iterCounter, iter);
-
-                    inputBuf.clear();
-                    long seekPos = 0L;
-                    while (true) {
-                        reportProgress(reporter);
-                        // TODO prefetch
-                        // writes training examples to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = fileIO.read(seekPos, inputBuf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + fileIO.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
-                        seekPos += bytesRead;
-
-                        // reads training examples from a buffer
-                        inputBuf.flip();
-                        int remain = inputBuf.remaining();
-                        assert (remain > 0) : remain;
-                        for (; remain >= RECORD_BYTES; remain -= RECORD_BYTES) {
-                            int u = inputBuf.getInt();
-                            int i = inputBuf.getInt();
-                            int j = inputBuf.getInt();
-                            // invoke train
-                            count++;
-                            train(u, i, j);
-                        }
-                        inputBuf.compact();
-                    }
-                    cvState.multiplyLoss(0.5d);
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
-                    }
-                    if (cvState.isLossIncreased()) {
-                        etaEstimator.update(1.1f);
-                    } else {
-                        etaEstimator.update(0.5f);
-                    }
+                if (cvState.isLossIncreased()) {
+                    etaEstimator.update(1.1f);
+                } else {
+                    etaEstimator.update(0.5f);
                 }
-                LOG.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples using a secondary storage (thus "
-                        + NumberUtils.formatNumber(count) + " training updates in total)");
             }
+            LOG.info("Performed " + cvState.getCurrentIteration() + " iterations of "
+                    + NumberUtils.formatNumber(numTrainingExamples) + " training examples "
+                    + (src.isSpilled() ? "using a secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(count) + " training updates in total)");
+        } catch (IOException e) {
+            throw new HiveException("Failed to replay training examples", e);
         } finally {
             // delete the temporary file and release resources
             try {
-                fileIO.close(true);
+                src.close();
             } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + fileIO.getFile().getAbsolutePath(), e);
+                throw new HiveException("Failed to close a replay buffer", e);
             }
-            this.inputBuf = null;
-            this.fileIO = null;
+            this.replayBuffer = null;
         }
     }
 
@@ -628,19 +784,6 @@ public final class BPRMatrixFactorizationUDTF extends UDTFWithOptions implements
         }
     }
 
-    private static void writeBuffer(@Nonnull final ByteBuffer srcBuf,
-            @Nonnull final NioFixedSegment dst, final long lastWritePos) throws HiveException {
-        // TODO asynchronous write in the background
-        srcBuf.flip();
-        try {
-            dst.writeRecords(lastWritePos, srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing records to : " + lastWritePos,
-                e);
-        }
-        srcBuf.clear();
-    }
-
     @Nonnull
     private final void copyToProbe(@Nonnull final Rating[] rating, @Nonnull float[] probe) {
         for (int k = 0, size = factor; k < size; k++) {
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mf;
+
+import hivemall.utils.lang.NumberUtils;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Copies of the factor vectors and the biases used in a window of training examples, held in
+ * contiguous float arrays so that the updates in the window do not chase {@link Rating} objects
+ * through hash tables.
+ * 
+ * Rows are assigned in the order of {@link #userRow(int)} and {@link #itemRow(int)} calls, and
+ * vectors that are not in the model yet are initialized in the same order as
+ * {@link FactorizedModel#getUserVector(int, boolean)} and
+ * {@link FactorizedModel#getItemVector(int, boolean)} would do.
+ */
+@NotThreadSafe
+final class FactorSlab {
+
+    @Nonnull
+    private final FactorizedModel model;
+    @Nonnegative
+    private final int factor;
+
+    @Nonnull
+    private final Int2IntOpenHashMap userRows;
+    @Nonnull
+    private final Int2IntOpenHashMap itemRows;
+    @Nonnull
+    private int[] userIds, itemIds;
+    private int numUsers, numItems;
+
+    /** row-major user factors */
+    @Nonnull
+    float[] userFactors;
+    /** row-major item factors */
+    @Nonnull
+    float[] itemFactors;
+    @Nonnull
+    float[] itemBiases;
+
+    FactorSlab(@Nonnull FactorizedModel model, @Nonnegative int factor, @Nonnegative int rows) {
+        this.model = model;
+        this.factor = factor;
+        this.userRows = new Int2IntOpenHashMap(rows);
+        userRows.defaultReturnValue(-1);
+        this.itemRows = new Int2IntOpenHashMap(rows);
+        itemRows.defaultReturnValue(-1);
+        this.userIds = new int[rows];
+        this.itemIds = new int[rows];
+        this.userFactors = new float[rows * factor];
+        this.itemFactors = new float[rows * factor];
+        this.itemBiases = new float[rows];
+    }
+
+    /**
+     * @return the row of the user, copying the user vector to the slab on the first call
+     */
+    int userRow(final int u) {
+        int row = userRows.get(u);
+        if (row != -1) {
+            return row;
+        }
+        row = numUsers++;
+        if (row == userIds.length) {
+            int newRows = row * 2;
+            this.userIds = Arrays.copyOf(userIds, newRows);
+            this.userFactors = Arrays.copyOf(userFactors, newRows * factor);
+        }
+        userIds[row] = u;
+        userRows.put(u, row);
+
+        final Rating[] v = model.getUserVector(u, true);
+        final float[] dst = userFactors;
+        for (int k = 0, off = row * factor; k < factor; k++) {
+            dst[off + k] = v[k].getWeight();
+        }
+        return row;
+    }
+
+    /**
+     * @return the row of the item, copying the item vector and bias to the slab on the first call
+     */
+    int itemRow(final int i) {
+        int row = itemRows.get(i);
+        if (row != -1) {
+            return row;
+        }
+        row = numItems++;
+        if (row == itemIds.length) {
+            int newRows = row * 2;
+            this.itemIds = Arrays.copyOf(itemIds, newRows);
+            this.itemFactors = Arrays.copyOf(itemFactors, newRows * factor);
+            this.itemBiases = Arrays.copyOf(itemBiases, newRows);
+        }
+        itemIds[row] = i;
+        itemRows.put(i, row);
+
+        final Rating[] v = model.getItemVector(i, true);
+        final float[] dst = itemFactors;
+        for (int k = 0, off = row * factor; k < factor; k++) {
+            dst[off + k] = v[k].getWeight();
+        }
+        itemBiases[row] = model.getItemBias(i);
+        return row;
+    }
+
+    /**
+     * Writes the vectors back to the model and clears the slab.
+     */
+    void scatter(final boolean updateBias) {
+        for (int row = 0; row < numUsers; row++) {
+            copyTo(model.getUserVector(userIds[row]), userFactors, row * factor);
+        }
+        for (int row = 0; row < numItems; row++) {
+            int i = itemIds[row];
+            copyTo(model.getItemVector(i), itemFactors, row * factor);
+            if (updateBias) {
+                model.setItemBias(i, itemBiases[row]);
+            }
+        }
+        userRows.clear();
+        itemRows.clear();
+        this.numUsers = 0;
+        this.numItems = 0;
+    }
+
+    private static void copyTo(@Nonnull final Rating[] dst, @Nonnull final float[] src,
+            final int off) {
+        for (int k = 0; k < dst.length; k++) {
+            float v = src[off + k];
+            if (!NumberUtils.isFinite(v)) {
+                throw new IllegalStateException("Detected " + v + " in a factor");
+            }
+            dst[k].setWeight(v);
+        }
+    }
+
+    /**
+     * Dot product unrolled by 4 so that the JIT compiler can vectorize it.
+     */
+    static double dot(@Nonnull final float[] a, final int aOff, @Nonnull final float[] b,
+            final int bOff, @Nonnegative final int n) {
+        float s0 = 0.f, s1 = 0.f, s2 = 0.f, s3 = 0.f;
+        int k = 0;
+        for (final int end = n - 3; k < end; k += 4) {
+            s0 += a[aOff + k] * b[bOff + k];
+            s1 += a[aOff + k + 1] * b[bOff + k + 1];
+            s2 += a[aOff + k + 2] * b[bOff + k + 2];
+            s3 += a[aOff + k + 3] * b[bOff + k + 3];
+        }
+        for (; k < n; k++) {
+            s0 += a[aOff + k] * b[bOff + k];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Squared L2 norm unrolled by 4.
+     */
+    static double squaredNorm(@Nonnull final float[] a, final int off,
+            @Nonnegative final int n) {
+        float s0 = 0.f, s1 = 0.f, s2 = 0.f, s3 = 0.f;
+        int k = 0;
+        for (final int end = n - 3; k < end; k += 4) {
+            float a0 = a[off + k], a1 = a[off + k + 1], a2 = a[off + k + 2], a3 = a[off + k + 3];
+            s0 += a0 * a0;
+            s1 += a1 * a1;
+            s2 += a2 * a2;
+            s3 += a3 * a3;
+        }
+        for (; k < n; k++) {
+            float a0 = a[off + k];
+            s0 += a0 * a0;
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+}
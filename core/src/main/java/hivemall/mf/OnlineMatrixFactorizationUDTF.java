@@ -20,20 +20,19 @@ package hivemall.mf;
 
 import hivemall.UDTFWithOptions;
 import hivemall.common.ConversionState;
+import hivemall.common.EpochReplayBuffer;
 import hivemall.mf.FactorizedModel.RankInitScheme;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.io.FileUtils;
-import hivemall.utils.io.NioFixedSegment;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.Primitives;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -88,9 +87,10 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
     protected PrimitiveObjectInspector ratingOI;
 
     // Used for iterations
-    protected NioFixedSegment fileIO;
-    protected ByteBuffer inputBuf;
-    private long lastWritePos;
+    @Nullable
+    protected EpochReplayBuffer replayBuffer;
+    private long replayMemoryBudget;
+    private boolean shuffleBlocks;
 
     private float[] userProbe, itemProbe;
 
@@ -127,6 +127,7 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
         opts.addOption("cv_rate", "convergence_rate", true,
             "Threshold to determine convergence [default: 0.005]");
         opts.addOption("disable_bias", "no_bias", false, "Turn off bias clause");
+        EpochReplayBuffer.setup(opts);
         return opts;
     }
 
@@ -176,6 +177,8 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
         initStdDev = Math.max(initStdDev, 1.0d / factor);
         rankInit.setInitStdDev(initStdDev);
         this.cvState = new ConversionState(conversionCheck, convergenceRate);
+        this.replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this.shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
         return cl;
     }
 
@@ -193,27 +196,13 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
 
         this.model = new FactorizedModel(this, factor, meanRating, rankInit);
         this.count = 0L;
-        this.lastWritePos = 0L;
         this.userProbe = new float[factor];
         this.itemProbe = new float[factor];
 
         if (mapredContext != null && iterations > 1) {
             // invoke only at task node (initialize is also invoked in compilation)
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_mf", ".sgmt");
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            } catch (Throwable e) {
-                throw new UDFArgumentException(e);
-            }
-            this.fileIO = new NioFixedSegment(file, RECORD_BYTES, false);
-            this.inputBuf = ByteBuffer.allocateDirect(65536); // 64 KiB
+            this.replayBuffer = new EpochReplayBuffer("hivemall_mf", replayMemoryBudget,
+                EpochReplayBuffer.DEFAULT_BLOCK_SIZE, shuffleBlocks);
         }
 
         ArrayList<String> fieldNames = new ArrayList<String>();
@@ -310,13 +299,12 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
 
     protected void beforeTrain(final long rowNum, final int user, final int item,
             final double rating) throws HiveException {
-        if (inputBuf != null) {
-            assert (fileIO != null);
-            final ByteBuffer buf = inputBuf;
-            int remain = buf.remaining();
-            if (remain < RECORD_BYTES) {
-                writeBuffer(buf, fileIO, lastWritePos);
-                this.lastWritePos = rowNum;
+        if (replayBuffer != null) {
+            final ByteBuffer buf;
+            try {
+                buf = replayBuffer.beginRecord(RECORD_BYTES);
+            } catch (IOException e) {
+                throw new HiveException("Failed to record a training example: " + rowNum, e);
             }
             buf.putInt(user);
             buf.putInt(item);
@@ -460,25 +448,10 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
         }
     }
 
-    protected static void writeBuffer(@Nonnull final ByteBuffer srcBuf,
-            @Nonnull final NioFixedSegment dst, final long lastWritePos) throws HiveException {
-        // TODO asynchronous write in the background
-        srcBuf.flip();
-        try {
-            dst.writeRecords(lastWritePos, srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing records to : " + lastWritePos,
-                e);
-        }
-        srcBuf.clear();
-    }
-
     protected final void runIterativeTraining(@Nonnegative final int iterations)
             throws HiveException {
-        final ByteBuffer inputBuf = this.inputBuf;
-        final NioFixedSegment fileIO = this.fileIO;
-        assert (inputBuf != null);
-        assert (fileIO != null);
+        final EpochReplayBuffer src = this.replayBuffer;
+        assert (src != null);
         final long numTrainingExamples = count;
 
         final Reporter reporter = getReporter();
@@ -486,114 +459,45 @@ public abstract class OnlineMatrixFactorizationUDTF extends UDTFWithOptions
                 : reporter.getCounter("hivemall.mf.MatrixFactorization$Counter", "iteration");
 
         try {
-            if (lastWritePos == 0) {// run iterations w/o temporary file
-                if (inputBuf.position() == 0) {
-                    return; // no training example
-                }
-                inputBuf.flip();
-
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (inputBuf.remaining() > 0) {
-                        int user = inputBuf.getInt();
-                        int item = inputBuf.getInt();
-                        double rating = inputBuf.getDouble();
-                        // invoke train
-                        count++;
-                        train(user, item, rating);
-                    }
-                    cvState.multiplyLoss(0.5d);
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
+            for (int iter = 2; iter <= iterations; iter++) {
+                cvState.next();
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer inputBuf;
+                while ((inputBuf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-                    inputBuf.rewind();
-                }
-                logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on memory (thus " + NumberUtils.formatNumber(count)
-                        + " training updates in total) ");
-            } else {// read training examples in the temporary file and invoke train for each example
-
-                // write training examples in buffer to a temporary file
-                if (inputBuf.position() > 0) {
-                    writeBuffer(inputBuf, fileIO, lastWritePos);
+                    int user = inputBuf.getInt();
+                    int item = inputBuf.getInt();
+                    double rating = inputBuf.getDouble();
+                    // invoke train
+                    count++;
+                    train(user, item, rating);
                 }
+                replay.close();
 
-                try {
-                    fileIO.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + fileIO.getFile().getAbsolutePath(), e);
+                cvState.multiplyLoss(0.5d);
+                if (cvState.isConverged(numTrainingExamples)) {
+                    break;
                 }
-                if (logger.isInfoEnabled()) {
-                    File tmpFile = fileIO.getFile();
-                    logger.info("Wrote " + numTrainingExamples
-                            + " records to a temporary file for iterative training: "
-                            + tmpFile.getAbsolutePath() + " (" + FileUtils.prettyFileSize(tmpFile)
-                            + ")");
-                }
-
-                // run iterations
-                for (int iter = 2; iter <= iterations; iter++) {
-                    cvState.next();
-                    setCounterValue(iterCounter, iter);
-
-                    inputBuf.clear();
-                    long seekPos = 0L;
-                    while (true) {
-                        reportProgress(reporter);
-                        // TODO prefetch
-                        // writes training examples to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = fileIO.read(seekPos, inputBuf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + fileIO.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
-                        seekPos += bytesRead;
-
-                        // reads training examples from a buffer
-                        inputBuf.flip();
-                        int remain = inputBuf.remaining();
-                        assert (remain > 0) : remain;
-                        for (; remain >= RECORD_BYTES; remain -= RECORD_BYTES) {
-                            int user = inputBuf.getInt();
-                            int item = inputBuf.getInt();
-                            double rating = inputBuf.getDouble();
-                            // invoke train
-                            count++;
-                            train(user, item, rating);
-                        }
-                        inputBuf.compact();
-                    }
-                    cvState.multiplyLoss(0.5d);
-                    if (cvState.isConverged(numTrainingExamples)) {
-                        break;
-                    }
-                }
-                logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples using a secondary storage (thus "
-                        + NumberUtils.formatNumber(count) + " training updates in total)");
             }
+            logger.info("Performed " + cvState.getCurrentIteration() + " iterations of "
+                    + NumberUtils.formatNumber(numTrainingExamples) + " training examples "
+                    + (src.isSpilled() ? "using a secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(count) + " training updates in total)");
+        } catch (IOException e) {
+            throw new HiveException("Failed to replay training examples", e);
         } finally {
             // delete the temporary file and release resources
             try {
-                fileIO.close(true);
+                src.close();
             } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + fileIO.getFile().getAbsolutePath(), e);
+                throw new HiveException("Failed to close a replay buffer", e);
             }
-            this.inputBuf = null;
-            this.fileIO = null;
+            this.replayBuffer = null;
         }
     }
 
@@ -24,7 +24,6 @@ import static hivemall.mix.MixMessageEncoder.LONG_WRITABLE_TYPE;
 import static hivemall.mix.MixMessageEncoder.STRING_TYPE;
 import static hivemall.mix.MixMessageEncoder.TEXT_TYPE;
 import hivemall.mix.MixMessage.MixEventName;
-import hivemall.utils.lang.StringUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
@@ -100,10 +99,12 @@ public final class MixMessageDecoder extends LengthFieldBasedFrameDecoder {
         if (length == -1) {
             return null;
         }
-        byte[] b = new byte[length];
-        in.readBytes(b, 0, length);
-        String s = StringUtils.toString(b);
-        return s;
+        // same as StringUtils.toString(byte[]) without creating an intermediate array
+        final char[] c = new char[length >>> 1];
+        for (int i = 0; i < c.length; i++) {
+            c[i] = in.readChar();
+        }
+        return new String(c);
     }
 
     @Override
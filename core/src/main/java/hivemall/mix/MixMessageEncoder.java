@@ -19,7 +19,6 @@
 package hivemall.mix;
 
 import hivemall.mix.MixMessage.MixEventName;
-import hivemall.utils.lang.StringUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
@@ -43,6 +42,43 @@ public final class MixMessageEncoder extends MessageToByteEncoder<MixMessage> {
         super(MixMessage.class, true);
     }
 
+    /**
+     * Allocates a buffer of the exact message size from the allocator of the channel, which is
+     * pooled, so that the buffer never grows while encoding.
+     */
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, MixMessage msg,
+            boolean preferDirect) throws Exception {
+        // length + event + weight + covariance + clock + deltaUpdates + cancelRequest
+        int size = 4 + 1 + 4 + 4 + 2 + 4 + 1;
+        size += requiredBytes(msg.getFeature());
+        size += requiredBytes(msg.getGroupID());
+        if (preferDirect) {
+            return ctx.alloc().ioBuffer(size);
+        } else {
+            return ctx.alloc().heapBuffer(size);
+        }
+    }
+
+    private static int requiredBytes(final Object obj) {
+        if (obj instanceof Integer) {
+            return 1 + 4;
+        } else if (obj instanceof Text) {
+            return 1 + 4 + ((Text) obj).getLength();
+        } else if (obj instanceof String) {
+            return 1 + requiredBytes((String) obj);
+        } else if (obj instanceof IntWritable) {
+            return 1 + 4;
+        } else if (obj instanceof LongWritable) {
+            return 1 + 8;
+        }
+        return 256; // an error is reported on encoding
+    }
+
+    private static int requiredBytes(final String s) {
+        return (s == null) ? 4 : 4 + s.length() * 2;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, MixMessage msg, ByteBuf out) throws Exception {
         int startIdx = out.writerIndex();
@@ -112,10 +148,12 @@ public final class MixMessageEncoder extends MessageToByteEncoder<MixMessage> {
             buf.writeInt(-1);
             return;
         }
-        byte[] b = StringUtils.getBytes(s);
-        int length = b.length;
-        buf.writeInt(length);
-        buf.writeBytes(b, 0, length);
+        // same as StringUtils.getBytes(s) without creating an intermediate array
+        final int len = s.length();
+        buf.writeInt(len * 2);
+        for (int i = 0; i < len; i++) {
+            buf.writeChar(s.charAt(i));
+        }
     }
 
 }
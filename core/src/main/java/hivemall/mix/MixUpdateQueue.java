@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix;
+
+import hivemall.model.PredictionModel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded lock-free multi-producer/single-consumer queue of mixed weights.
+ *
+ * Netty threads receiving mix responses enqueue weights through {@link #set} and the training
+ * thread applies them to its model in batches through {@link #drainTo}, so that the model itself
+ * needs no synchronization. Updates are dropped when the queue is full since mixing is
+ * best-effort and a newer response for the same feature will arrive later.
+ *
+ * The ring follows D. Vyukov's bounded queue where each slot carries a sequence number that
+ * tells producers and the consumer whether the slot is free or published.
+ */
+@ThreadSafe
+public final class MixUpdateQueue implements MixedModel {
+
+    @Nonnull
+    private final PredictionModel target;
+    private final int capacity;
+    private final int mask;
+
+    @Nonnull
+    private final AtomicLongArray sequences;
+    @Nonnull
+    private final Object[] features;
+    @Nonnull
+    private final float[] weights;
+    @Nonnull
+    private final float[] covars;
+    @Nonnull
+    private final short[] clocks;
+
+    @Nonnull
+    private final AtomicLong tail;
+    /** accessed only by the consumer thread */
+    private long head;
+
+    @Nonnull
+    private final AtomicLong numDropped;
+
+    public MixUpdateQueue(@Nonnull PredictionModel target, @Nonnegative int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.target = target;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.features = new Object[capacity];
+        this.weights = new float[capacity];
+        this.covars = new float[capacity];
+        this.clocks = new short[capacity];
+        this.tail = new AtomicLong(0L);
+        this.head = 0L;
+        this.numDropped = new AtomicLong(0L);
+    }
+
+    @Nonnull
+    public PredictionModel getTarget() {
+        return target;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getNumDropped() {
+        return numDropped.get();
+    }
+
+    /**
+     * Enqueues a mixed weight. Can be called from any thread.
+     */
+    @Override
+    public void set(@Nonnull final Object feature, final float weight, final float covar,
+            final short clock) {
+        if (!offer(feature, weight, covar, clock)) {
+            numDropped.incrementAndGet();
+        }
+    }
+
+    public boolean offer(@Nonnull final Object feature, final float weight, final float covar,
+            final short clock) {
+        long pos = tail.get();
+        int idx;
+        while (true) {
+            idx = (int) (pos & mask);
+            final long seq = sequences.get(idx);
+            final long diff = seq - pos;
+            if (diff == 0L) {
+                if (tail.compareAndSet(pos, pos + 1L)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0L) {
+                return false; // full
+            } else {
+                pos = tail.get(); // another producer claimed the slot
+            }
+        }
+        features[idx] = feature;
+        weights[idx] = weight;
+        covars[idx] = covar;
+        clocks[idx] = clock;
+        sequences.lazySet(idx, pos + 1L); // publish
+        return true;
+    }
+
+    /**
+     * Applies the queued weights to the target model. Must be called from the single thread that
+     * owns the target model. Weights of features that have been deleted from the model since the
+     * mix request was sent are discarded.
+     * 
+     * @return the number of dequeued weights
+     */
+    public int drainTo() {
+        final PredictionModel model = target;
+        int drained = 0;
+        // bounded by capacity so that fast producers cannot stall the training thread
+        for (; drained < capacity; drained++) {
+            final long pos = head;
+            final int idx = (int) (pos & mask);
+            if (sequences.get(idx) != pos + 1L) {
+                break; // empty
+            }
+            final Object feature = features[idx];
+            final float weight = weights[idx];
+            final float covar = covars[idx];
+            final short clock = clocks[idx];
+            features[idx] = null;
+            sequences.lazySet(idx, pos + capacity); // release the slot to producers
+            this.head = pos + 1L;
+
+            if (model.contains(feature)) {
+                model.set(feature, weight, covar, clock);
+            }
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        final int idx = (int) (head & mask);
+        return sequences.get(idx) != head + 1L;
+    }
+
+}
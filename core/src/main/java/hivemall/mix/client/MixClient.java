@@ -25,71 +25,109 @@ import hivemall.mix.MixedModel;
 import hivemall.mix.MixedWeight;
 import hivemall.mix.NodeInfo;
 import hivemall.utils.hadoop.HadoopUtils;
+import hivemall.utils.net.NettyUtils;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.SocketAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
-import javax.net.ssl.SSLException;
+import javax.annotation.Nullable;
+
+/**
+ * A client that sends local updates to MIX servers. Features are routed to servers by consistent
+ * hashing. When the server for a feature is unreachable, the update goes to the next server on the
+ * ring instead, and the lost connection is re-established in the background. When the send buffer
+ * of a reachable server is full, the update is dropped rather than sent to another server, so that
+ * the updates of a feature are not mixed by different servers. Thus, training is never blocked on
+ * the network.
+ */
 
 public final class MixClient implements ModelUpdateHandler, Closeable {
     public static final String DUMMY_JOB_ID = "__DUMMY_JOB_ID__";
 
+    private static final long CONNECT_TIMEOUT_MILLIS = 10000L;
+    private static final long RECONNECT_INTERVAL_MILLIS = 1000L;
+
     private final MixEventName event;
     private String groupID;
     private final boolean ssl;
     private final int mixThreshold;
+    private final int numReplicas;
+    private final boolean epoll;
     private final MixRequestRouter router;
     private final MixClientHandler msgHandler;
-    private final Map<NodeInfo, Channel> channelMap;
+    private final Map<NodeInfo, ServerConnection> connections;
+
+    private long numDropped = 0L;
 
     private boolean initialized = false;
     private EventLoopGroup workers;
 
     public MixClient(@Nonnull MixEventName event, @CheckForNull String groupID,
             @Nonnull String connectURIs, boolean ssl, int mixThreshold, @Nonnull MixedModel model) {
+        this(event, groupID, connectURIs, ssl, mixThreshold, 1, model);
+    }
+
+    /**
+     * @param numReplicas the number of servers to which each update is sent
+     */
+    public MixClient(@Nonnull MixEventName event, @CheckForNull String groupID,
+            @Nonnull String connectURIs, boolean ssl, int mixThreshold, int numReplicas,
+            @Nonnull MixedModel model) {
+        this(event, groupID, connectURIs, ssl, mixThreshold, numReplicas, false, model);
+    }
+
+    /**
+     * @param numReplicas the number of servers to which each update is sent
+     * @param epoll use the native epoll transport if available, otherwise the NIO transport
+     */
+    public MixClient(@Nonnull MixEventName event, @CheckForNull String groupID,
+            @Nonnull String connectURIs, boolean ssl, int mixThreshold, int numReplicas,
+            boolean epoll, @Nonnull MixedModel model) {
         if (groupID == null) {
             throw new IllegalArgumentException("groupID is null");
         }
         if (mixThreshold < 1 || mixThreshold > Byte.MAX_VALUE) {
             throw new IllegalArgumentException("Invalid mixThreshold: " + mixThreshold);
         }
+        if (numReplicas < 1) {
+            throw new IllegalArgumentException("Invalid numReplicas: " + numReplicas);
+        }
         this.event = event;
         this.groupID = groupID;
         this.router = new MixRequestRouter(connectURIs);
         this.ssl = ssl;
         this.mixThreshold = mixThreshold;
+        this.numReplicas = Math.min(numReplicas, router.getNumNodes());
+        this.epoll = NettyUtils.useEpoll(epoll);
         this.msgHandler = new MixClientHandler(model);
-        this.channelMap = new HashMap<NodeInfo, Channel>();
+        this.connections = new HashMap<NodeInfo, ServerConnection>();
     }
 
-    private void initialize() throws Exception {
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-        NodeInfo[] serverNodes = router.getAllNodes();
-        for (NodeInfo node : serverNodes) {
-            Bootstrap b = new Bootstrap();
-            configureBootstrap(b, workerGroup, node);
-        }
-        this.workers = workerGroup;
-        this.initialized = true;
+    /**
+     * @return the number of updates dropped because no MIX server was available or their send
+     *         buffers were full
+     */
+    public long getNumDropped() {
+        return numDropped;
     }
 
-    private void configureBootstrap(Bootstrap b, EventLoopGroup workerGroup, NodeInfo server)
-            throws SSLException, InterruptedException {
-        // Configure SSL.
+    private void initialize() throws Exception {
+        EventLoopGroup workerGroup = NettyUtils.newEventLoopGroup(0, epoll);
+        this.workers = workerGroup;
         final SslContext sslCtx;
         if (ssl) {
             sslCtx = SslContext.newClientContext(InsecureTrustManagerFactory.INSTANCE);
@@ -97,17 +135,42 @@ public final class MixClient implements ModelUpdateHandler, Closeable {
             sslCtx = null;
         }
 
+        NodeInfo[] serverNodes = router.getAllNodes();
+        ChannelFuture[] futures = new ChannelFuture[serverNodes.length];
+        for (int i = 0; i < serverNodes.length; i++) {
+            NodeInfo node = serverNodes[i];
+            Bootstrap b = new Bootstrap();
+            configureBootstrap(b, workerGroup, sslCtx);
+            ServerConnection conn = new ServerConnection(node, b);
+            connections.put(node, conn);
+            futures[i] = conn.connect();
+        }
+        // unreachable servers are retried in the background
+        Throwable cause = null;
+        boolean connected = false;
+        for (ChannelFuture f : futures) {
+            f.awaitUninterruptibly(CONNECT_TIMEOUT_MILLIS);
+            if (f.isSuccess()) {
+                connected = true;
+            } else if (cause == null) {
+                cause = f.cause();
+            }
+        }
+        if (!connected) {
+            throw new IOException("Failed to connect to any of the MIX servers", cause);
+        }
+        this.initialized = true;
+    }
+
+    private void configureBootstrap(@Nonnull Bootstrap b, @Nonnull EventLoopGroup workerGroup,
+            @Nullable SslContext sslCtx) {
         b.group(workerGroup);
         b.option(ChannelOption.SO_KEEPALIVE, true);
         b.option(ChannelOption.TCP_NODELAY, true);
-        b.channel(NioSocketChannel.class);
+        b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) CONNECT_TIMEOUT_MILLIS);
+        b.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        b.channel(NettyUtils.getSocketChannelClass(epoll));
         b.handler(new MixClientInitializer(msgHandler, sslCtx));
-
-        SocketAddress remoteAddr = server.getSocketAddress();
-        ChannelFuture channelFuture = b.connect(remoteAddr).sync();
-        Channel channel = channelFuture.channel();
-
-        channelMap.put(server, channel);
     }
 
     /**
@@ -129,15 +192,10 @@ public final class MixClient implements ModelUpdateHandler, Closeable {
         MixMessage msg = new MixMessage(event, feature, weight, covar, clock, deltaUpdates);
         msg.setGroupID(groupID);
 
-        NodeInfo server = router.selectNode(msg);
-        Channel ch = channelMap.get(server);
-        if (!ch.isActive()) {// reconnect
-            SocketAddress remoteAddr = server.getSocketAddress();
-            ch.connect(remoteAddr).sync();
+        if (send(msg) == 0) {
+            numDropped++;
+            return false;
         }
-
-        //ch.writeAndFlush(msg).sync();
-        ch.writeAndFlush(msg); // send asynchronously in the background
         return true;
     }
 
@@ -154,15 +212,34 @@ public final class MixClient implements ModelUpdateHandler, Closeable {
         assert (groupID != null);
         msg.setGroupID(groupID);
 
-        // TODO REVIEWME consider mix server faults (what if mix server dead? Do not send cancel request?)
-        NodeInfo server = router.selectNode(msg);
-        Channel ch = channelMap.get(server);
-        if (!ch.isActive()) {// reconnect
-            SocketAddress remoteAddr = server.getSocketAddress();
-            ch.connect(remoteAddr).sync();
-        }
+        // cancel requests are lost when no server is available for the feature
+        send(msg);
+    }
 
-        ch.writeAndFlush(msg); // send asynchronously in the background
+    /**
+     * Sends the message to the first {@code numReplicas} active servers among the replicas of the
+     * feature and one spare server on the ring. A server whose send buffer is full still takes
+     * its turn, but the message is not sent to it.
+     * 
+     * @return the number of servers to which the message is sent
+     */
+    private int send(@Nonnull MixMessage msg) {
+        final NodeInfo[] candidates = router.selectNodes(msg.getFeature(), numReplicas + 1);
+        int selected = 0, sent = 0;
+        for (int i = 0; i < candidates.length && selected < numReplicas; i++) {
+            ServerConnection conn = connections.get(candidates[i]);
+            Channel ch = conn.getActiveChannel();
+            if (ch == null) {
+                continue; // fail over to the next server
+            }
+            selected++;
+            if (!ch.isWritable()) {
+                continue; // backpressure; drop rather than fail over
+            }
+            ch.writeAndFlush(msg); // send asynchronously in the background
+            sent++;
+        }
+        return sent;
     }
 
     private void replaceGroupIDIfRequired() {
@@ -175,13 +252,87 @@ public final class MixClient implements ModelUpdateHandler, Closeable {
     @Override
     public void close() throws IOException {
         if (workers != null) {
-            for (Channel ch : channelMap.values()) {
-                ch.close();
+            for (ServerConnection conn : connections.values()) {
+                conn.close();
             }
-            channelMap.clear();
+            connections.clear();
             workers.shutdownGracefully();
             this.workers = null;
         }
     }
 
+    private static final class ServerConnection {
+
+        @Nonnull
+        private final NodeInfo node;
+        @Nonnull
+        private final Bootstrap bootstrap;
+        @Nonnull
+        private final AtomicBoolean connecting;
+
+        @Nullable
+        private volatile Channel channel;
+        private volatile long nextRetryMillis;
+        private volatile boolean closed;
+
+        ServerConnection(@Nonnull NodeInfo node, @Nonnull Bootstrap bootstrap) {
+            this.node = node;
+            this.bootstrap = bootstrap;
+            this.connecting = new AtomicBoolean(false);
+            this.nextRetryMillis = 0L;
+            this.closed = false;
+        }
+
+        @Nonnull
+        ChannelFuture connect() {
+            connecting.set(true);
+            ChannelFuture future = bootstrap.connect(node.getSocketAddress());
+            future.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture f) throws Exception {
+                    if (f.isSuccess()) {
+                        Channel ch = f.channel();
+                        if (closed) {
+                            ch.close();
+                        } else {
+                            channel = ch;
+                        }
+                    } else {
+                        nextRetryMillis = System.currentTimeMillis() + RECONNECT_INTERVAL_MILLIS;
+                    }
+                    connecting.set(false);
+                }
+            });
+            return future;
+        }
+
+        /**
+         * @return an active channel, or null when the server is not available. A reconnect is
+         *         started in the background if the channel is lost.
+         */
+        @Nullable
+        Channel getActiveChannel() {
+            final Channel ch = channel;
+            if (ch != null && ch.isActive()) {
+                return ch;
+            }
+            if (!closed && System.currentTimeMillis() >= nextRetryMillis
+                    && connecting.compareAndSet(false, true)) {
+                this.channel = null;
+                connect();
+            }
+            return null;
+        }
+
+        void close() {
+            this.closed = true;
+            Channel ch = channel;
+            if (ch != null) {
+                ch.close();
+                this.channel = null;
+            }
+        }
+
+    }
+
 }
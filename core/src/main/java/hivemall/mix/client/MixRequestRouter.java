@@ -21,25 +21,46 @@ package hivemall.mix.client;
 import hivemall.mix.MixEnv;
 import hivemall.mix.MixMessage;
 import hivemall.mix.NodeInfo;
+import hivemall.utils.hashing.MurmurHash3;
 import hivemall.utils.net.NetUtils;
 
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Routes features to MIX servers by consistent hashing. Each server is placed on a hash ring at
+ * {@code numVirtualNodes} points so that adding or removing a server remaps only about 1/N of the
+ * features.
+ */
 public final class MixRequestRouter {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
 
-    private final int numNodes;
     private final NodeInfo[] nodes;
 
+    /** sorted hash values of the virtual nodes */
+    private final int[] ring;
+    /** index of the node in {@link #nodes} owning each point of {@link #ring} */
+    private final int[] owners;
+
     public MixRequestRouter(String connectInfo) {
+        this(connectInfo, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public MixRequestRouter(String connectInfo, @Nonnegative int numVirtualNodes) {
         if (connectInfo == null) {
             throw new IllegalArgumentException();
         }
+        if (numVirtualNodes < 1) {
+            throw new IllegalArgumentException("Invalid numVirtualNodes: " + numVirtualNodes);
+        }
         String[] endpoints = connectInfo.split("\\s*,\\s*");
         final int numEndpoints = endpoints.length;
         if (numEndpoints < 1) {
             throw new IllegalArgumentException("Invalid connectInfo: " + connectInfo);
         }
-        this.numNodes = numEndpoints;
         NodeInfo[] nodes = new NodeInfo[numEndpoints];
         for (int i = 0; i < numEndpoints; i++) {
             InetSocketAddress addr =
@@ -47,18 +68,101 @@ public final class MixRequestRouter {
             nodes[i] = new NodeInfo(addr);
         }
         this.nodes = nodes;
+
+        final int numPoints = numEndpoints * numVirtualNodes;
+        final long[] points = new long[numPoints];
+        for (int i = 0, p = 0; i < numEndpoints; i++) {
+            NodeInfo node = nodes[i];
+            final String key = node.getAddress().getHostAddress() + ':' + node.getPort() + '#';
+            for (int v = 0; v < numVirtualNodes; v++, p++) {
+                int hash = MurmurHash3.murmurhash3_x86_32(key + v);
+                // upper 32 bits for the (signed) hash value, lower 32 bits for the owner
+                points[p] = ((long) hash << 32) | i;
+            }
+        }
+        Arrays.sort(points);
+        this.ring = new int[numPoints];
+        this.owners = new int[numPoints];
+        for (int p = 0; p < numPoints; p++) {
+            ring[p] = (int) (points[p] >> 32);
+            owners[p] = (int) points[p];
+        }
     }
 
+    @Nonnull
     public NodeInfo[] getAllNodes() {
         return nodes;
     }
 
-    public NodeInfo selectNode(MixMessage msg) {
+    public int getNumNodes() {
+        return nodes.length;
+    }
+
+    @Nonnull
+    public NodeInfo selectNode(@Nonnull MixMessage msg) {
         assert (msg != null);
-        Object feature = msg.getFeature();
-        int hashcode = feature.hashCode();
-        int index = (hashcode & Integer.MAX_VALUE) % numNodes;
-        return nodes[index];
+        return nodes[owners[indexOf(msg.getFeature())]];
+    }
+
+    /**
+     * Returns up to {@code numReplicas} distinct nodes for the given feature, in the order they
+     * appear clockwise on the ring. The first element is the node returned by
+     * {@link #selectNode(MixMessage)}.
+     */
+    @Nonnull
+    public NodeInfo[] selectNodes(@Nonnull Object feature, @Nonnegative int numReplicas) {
+        final int n = Math.min(numReplicas, nodes.length);
+        final NodeInfo[] selected = new NodeInfo[n];
+        if (n == 0) {
+            return selected;
+        }
+        final int numPoints = ring.length;
+        int found = 0;
+        for (int p = indexOf(feature), i = 0; i < numPoints && found < n; i++) {
+            final NodeInfo node = nodes[owners[p]];
+            if (!contains(selected, found, node)) {
+                selected[found++] = node;
+            }
+            if (++p == numPoints) {
+                p = 0;
+            }
+        }
+        return selected;
+    }
+
+    private int indexOf(@Nonnull Object feature) {
+        final int hash = mix(feature.hashCode());
+        int pos = Arrays.binarySearch(ring, hash);
+        if (pos < 0) {
+            pos = -pos - 1;
+            if (pos == ring.length) {
+                pos = 0; // wrap around
+            }
+        }
+        return pos;
+    }
+
+    private static boolean contains(@Nonnull final NodeInfo[] nodes, final int size,
+            @Nonnull final NodeInfo node) {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i].equals(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finalization mix of MurmurHash3 to spread poorly distributed hash codes such as those of
+     * small integers.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.collections.lists.FloatArrayList;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A read-only linear model loaded from a (feature, weight) table and kept in primitive arrays.
+ */
+public final class CompactLinearModel implements ModelTableReader.RowHandler {
+
+    @Nonnull
+    private final FeatureSlotMap slots;
+    @Nonnull
+    private final FloatArrayList weights;
+
+    public CompactLinearModel() {
+        this.slots = new FeatureSlotMap();
+        this.weights = new FloatArrayList(8192);
+    }
+
+    public static int numColumns() {
+        return 2;
+    }
+
+    @Override
+    public void handle(@Nonnull final String[] row) throws IOException {
+        final String feature = row[0];
+        final String weight = row[1];
+        if (feature == null || weight == null) {
+            return;
+        }
+        final float w;
+        try {
+            w = Float.parseFloat(weight);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid weight of feature '" + feature + "': " + weight, e);
+        }
+        set(feature, w);
+    }
+
+    public void set(@Nonnull final String feature, final float weight) {
+        final int slot = slots.getOrAdd(feature);
+        if (slot == weights.size()) {
+            weights.add(weight);
+        } else {
+            weights.set(slot, weight);
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * @return the weight of the given feature, or 0 if the feature is unknown
+     */
+    public float getWeight(@Nonnull final String feature) {
+        final int slot = slots.get(feature);
+        return (slot == -1) ? 0.f : weights.fastGet(slot);
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Assigns dense slot numbers to features. Features written as integers are kept in a primitive
+ * map without String objects.
+ */
+public final class FeatureSlotMap {
+
+    private static final long NOT_INT = Long.MIN_VALUE;
+
+    @Nonnull
+    private final Int2IntOpenHashMap intSlots;
+    @Nonnull
+    private final Object2IntOpenHashMap<String> stringSlots;
+    private int size;
+
+    public FeatureSlotMap() {
+        this(8192);
+    }
+
+    public FeatureSlotMap(@Nonnegative int expectedSize) {
+        this.intSlots = new Int2IntOpenHashMap(expectedSize);
+        intSlots.defaultReturnValue(-1);
+        this.stringSlots = new Object2IntOpenHashMap<String>();
+        stringSlots.defaultReturnValue(-1);
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the given feature, or -1 if the feature is unknown
+     */
+    public int get(@Nonnull final String feature) {
+        final long k = parseIntKey(feature);
+        if (k == NOT_INT) {
+            return stringSlots.getInt(feature);
+        } else {
+            return intSlots.get((int) k);
+        }
+    }
+
+    /**
+     * @return the slot of the given feature, newly assigned if the feature is unknown
+     */
+    public int getOrAdd(@Nonnull final String feature) {
+        final long k = parseIntKey(feature);
+        if (k == NOT_INT) {
+            int slot = stringSlots.getInt(feature);
+            if (slot == -1) {
+                slot = size++;
+                stringSlots.put(feature, slot);
+            }
+            return slot;
+        } else {
+            int slot = intSlots.get((int) k);
+            if (slot == -1) {
+                slot = size++;
+                intSlots.put((int) k, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * @return the integer value of the given feature, or {@link #NOT_INT} if the feature is not
+     *         the canonical representation of an integer (e.g., "007")
+     */
+    static long parseIntKey(@Nonnull final String s) {
+        final int len = s.length();
+        if (len == 0 || len > 11) {
+            return NOT_INT;
+        }
+        int i = 0;
+        final boolean negative = (s.charAt(0) == '-');
+        if (negative) {
+            if (len == 1) {
+                return NOT_INT;
+            }
+            i = 1;
+        }
+        if (s.charAt(i) == '0' && (negative || len > 1)) {
+            return NOT_INT; // leading zeros or -0
+        }
+        long v = 0L;
+        for (; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_INT;
+            }
+            v = v * 10L + (c - '0');
+        }
+        if (negative) {
+            v = -v;
+        }
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            return NOT_INT;
+        }
+        return v;
+    }
+
+}
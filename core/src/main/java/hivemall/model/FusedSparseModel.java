@@ -0,0 +1,605 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.collections.IMapIterator;
+import hivemall.utils.lang.Copyable;
+import hivemall.utils.lang.Preconditions;
+import hivemall.utils.math.Primes;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A sparse model that keeps the auxiliary parameters of an optimizer next to each weight, e.g.,
+ * the sum of squared gradients of AdaGrad. A weight and its states share one slot of a flat float
+ * array, and thus an update finds both with a single probe of an open-addressing hash table using
+ * double-hashing, instead of looking up the model and the table of the optimizer separately.
+ *
+ * MIX is not supported since clocks are not kept.
+ */
+@NotThreadSafe
+public final class FusedSparseModel extends AbstractPredictionModel {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final float GROW_FACTOR = 2.0f;
+    private static final float SHRINK_FACTOR = 0.1f; // at least 10% of table must be FREE
+
+    private static final byte FREE = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+
+    @Nonnegative
+    private final int numStates;
+    /** the number of floats in a slot, i.e., a weight followed by the states */
+    @Nonnegative
+    private final int stride;
+
+    @Nonnull
+    private Object[] keys;
+    @Nonnull
+    private float[] values;
+    @Nonnull
+    private byte[] states;
+
+    private int used;
+    private int freeEntries;
+    private int growThreshold;
+    private int shrinkThreshold;
+
+    @Nonnull
+    private final Slot slotReused;
+
+    public FusedSparseModel(@Nonnegative int size, @Nonnegative int numStates) {
+        super();
+        Preconditions.checkArgument(size >= 1, "Invalid size: " + size);
+        Preconditions.checkArgument(numStates >= 0 && numStates <= 2,
+            "Unsupported number of states: " + numStates);
+        this.numStates = numStates;
+        this.stride = 1 + numStates;
+        allocate(Primes.findLeastPrimeNumber(size));
+        this.slotReused = new Slot();
+    }
+
+    private void allocate(@Nonnegative final int capacity) {
+        this.keys = new Object[capacity];
+        this.values = new float[capacity * stride];
+        this.states = new byte[capacity];
+        this.used = 0;
+        this.freeEntries = capacity;
+        this.growThreshold = Math.round(capacity * LOAD_FACTOR);
+        this.shrinkThreshold = Math.round(capacity * SHRINK_FACTOR);
+    }
+
+    @Nonnegative
+    public int getNumStates() {
+        return numStates;
+    }
+
+    /**
+     * Returns the slot of the given feature. A slot with zero weight and zero states is added
+     * when the feature is not found.
+     * 
+     * @return a reused view of the slot that is valid until the next call of a method of this
+     *         model
+     */
+    @Nonnull
+    public IWeightValue slot(@Nonnull final Object feature) {
+        final Slot slot = slotReused;
+        slot.offset = findOrAdd(feature) * stride;
+        return slot;
+    }
+
+    /**
+     * Copy the states of the given feature into {@code dst}.
+     * 
+     * @return false if the feature is not found
+     */
+    public boolean getStates(@Nonnull final Object feature, @Nonnull final float[] dst) {
+        final int i = find(feature);
+        if (i == -1) {
+            return false;
+        }
+        System.arraycopy(values, i * stride + 1, dst, 0, numStates);
+        return true;
+    }
+
+    public void setStates(@Nonnull final Object feature, final float weight,
+            @Nonnull final float[] src) {
+        final int offset = findOrAdd(feature) * stride;
+        values[offset] = weight;
+        System.arraycopy(src, 0, values, offset + 1, numStates);
+    }
+
+    @Override
+    protected boolean isDenseModel() {
+        return false;
+    }
+
+    @Override
+    public boolean hasCovariance() {
+        return false;
+    }
+
+    @Override
+    public void configureParams(boolean sum_of_squared_gradients, boolean sum_of_squared_delta_x,
+            boolean sum_of_gradients) {}
+
+    @Override
+    public void configureClock() {
+        throw new UnsupportedOperationException("MIX is not supported by " + getClass());
+    }
+
+    @Override
+    public boolean hasClock() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return used;
+    }
+
+    @Override
+    public boolean contains(@Nonnull final Object feature) {
+        return find(feature) != -1;
+    }
+
+    @Override
+    public void delete(@Nonnull final Object feature) {
+        final int i = find(feature);
+        if (i == -1) {
+            return;
+        }
+        keys[i] = null;
+        states[i] = REMOVED;
+        --used;
+    }
+
+    /**
+     * @return a view of the slot that is valid until the feature is added or deleted
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public <T extends IWeightValue> T get(@Nonnull final Object feature) {
+        final int i = find(feature);
+        if (i == -1) {
+            return null;
+        }
+        final Slot slot = new Slot();
+        slot.offset = i * stride;
+        return (T) slot;
+    }
+
+    @Override
+    public <T extends IWeightValue> void set(@Nonnull final Object feature,
+            @Nonnull final T value) {
+        final int offset = findOrAdd(feature) * stride;
+        values[offset] = value.get();
+        final int numParams = numParams(value);
+        for (int j = 1, last = Math.min(numStates, numParams); j <= last; j++) {
+            values[offset + j] = value.getFloatParams(j);
+        }
+    }
+
+    private static int numParams(@Nonnull final IWeightValue value) {
+        switch (value.getType()) {
+            case ParamsF1:
+                return 1;
+            case ParamsF2:
+                return 2;
+            case ParamsF3:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public float getWeight(@Nonnull final Object feature) {
+        final int i = find(feature);
+        return (i == -1) ? 0.f : values[i * stride];
+    }
+
+    @Override
+    public void setWeight(@Nonnull final Object feature, final float value) {
+        values[findOrAdd(feature) * stride] = value;
+    }
+
+    @Override
+    public float getCovariance(@Nonnull final Object feature) {
+        return 1.f;
+    }
+
+    @Override
+    protected void _set(@Nonnull final Object feature, final float weight, final short clock) {
+        throw new UnsupportedOperationException("MIX is not supported by " + getClass());
+    }
+
+    @Override
+    protected void _set(@Nonnull final Object feature, final float weight, final float covar,
+            final short clock) {
+        throw new UnsupportedOperationException("MIX is not supported by " + getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V extends IWeightValue> IMapIterator<K, V> entries() {
+        return (IMapIterator<K, V>) new Itr();
+    }
+
+    private int find(@Nonnull final Object key) {
+        final Object[] keys = this.keys;
+        final byte[] states = this.states;
+        final int length = keys.length;
+
+        final int hash = keyHash(key);
+        final int decr = 1 + (hash % (length - 2));
+        final int start = hash % length;
+        for (int i = start;;) {
+            final byte state = states[i];
+            if (state == FREE) {
+                return -1;
+            }
+            if (state == FULL && equals(keys[i], key)) {
+                return i;
+            }
+            i -= decr;
+            if (i < 0) {
+                i += length;
+            }
+            if (i == start) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the key, which is added with zero values if not found
+     */
+    private int findOrAdd(@Nonnull final Object key) {
+        Preconditions.checkNotNull(key);
+
+        final Object[] keys = this.keys;
+        final byte[] states = this.states;
+        final int length = keys.length;
+
+        final int hash = keyHash(key);
+        final int decr = 1 + (hash % (length - 2));
+        final int start = hash % length;
+        int removed = -1;
+        int i = start;
+        for (;;) {
+            final byte state = states[i];
+            if (state == FREE) {
+                break;
+            }
+            if (state == FULL) {
+                if (equals(keys[i], key)) {
+                    return i;
+                }
+            } else if (removed == -1) {
+                removed = i;
+            }
+            i -= decr;
+            if (i < 0) {
+                i += length;
+            }
+            if (i == start) {
+                if (removed == -1) {
+                    throw new IllegalStateException(
+                        "Detected infinite loop where key=" + key + ", index=" + i);
+                }
+                break;
+            }
+        }
+
+        if (used + 1 >= growThreshold) {
+            rehash(Primes.findLeastPrimeNumber(Math.round(length * GROW_FACTOR)));
+            return findOrAdd(key);
+        }
+        if (removed != -1) {
+            i = removed; // reuse a removed entry
+        } else {
+            if (--freeEntries < shrinkThreshold) { // too many removed entries
+                rehash(length);
+                return findOrAdd(key);
+            }
+        }
+        keys[i] = key;
+        states[i] = FULL;
+        Arrays.fill(values, i * stride, (i + 1) * stride, 0.f);
+        ++used;
+        return i;
+    }
+
+    private void rehash(@Nonnegative final int newCapacity) {
+        final Object[] oldKeys = keys;
+        final float[] oldValues = values;
+        final byte[] oldStates = states;
+        final int stride = this.stride;
+
+        allocate(newCapacity);
+        final Object[] newKeys = keys;
+        final float[] newValues = values;
+        final byte[] newStates = states;
+        int used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] != FULL) {
+                continue;
+            }
+            final Object k = oldKeys[i];
+            final int hash = keyHash(k);
+            int j = hash % newCapacity;
+            if (newStates[j] == FULL) {
+                final int decr = 1 + (hash % (newCapacity - 2));
+                do {
+                    j -= decr;
+                    if (j < 0) {
+                        j += newCapacity;
+                    }
+                } while (newStates[j] == FULL);
+            }
+            newKeys[j] = k;
+            newStates[j] = FULL;
+            System.arraycopy(oldValues, i * stride, newValues, j * stride, stride);
+            used++;
+        }
+        this.used = used;
+        this.freeEntries = newCapacity - used;
+    }
+
+    private static int keyHash(@Nonnull final Object key) {
+        return key.hashCode() & 0x7fffffff;
+    }
+
+    private static boolean equals(@Nonnull final Object k1, @Nonnull final Object k2) {
+        return k1 == k2 || k1.equals(k2);
+    }
+
+    private final class Itr implements IMapIterator<Object, IWeightValue> {
+
+        private int cursor;
+        private int last;
+        @Nonnull
+        private final Slot slot;
+
+        Itr() {
+            this.cursor = nextEntry(0);
+            this.last = -1;
+            this.slot = new Slot();
+        }
+
+        private int nextEntry(int index) {
+            final byte[] states = FusedSparseModel.this.states;
+            while (index < states.length && states[index] != FULL) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < states.length;
+        }
+
+        @Override
+        public int next() {
+            if (!hasNext()) {
+                return -1;
+            }
+            this.last = cursor;
+            this.cursor = nextEntry(cursor + 1);
+            slot.offset = last * stride;
+            return last;
+        }
+
+        @Override
+        public Object getKey() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            return keys[last];
+        }
+
+        @Override
+        public IWeightValue getValue() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            return slot;
+        }
+
+        @Override
+        public <T extends Copyable<IWeightValue>> void getValue(@Nonnull final T probe) {
+            probe.copyFrom(getValue());
+        }
+
+    }
+
+    /**
+     * A view of a slot. The first state corresponds to the first float parameter of
+     * {@link WeightValue.WeightValueParamsF2} and the second to the second one.
+     */
+    private final class Slot implements IWeightValue {
+
+        int offset;
+
+        Slot() {}
+
+        @Override
+        public WeightValueType getType() {
+            switch (numStates) {
+                case 0:
+                    return WeightValueType.NoParams;
+                case 1:
+                    return WeightValueType.ParamsF1;
+                default:
+                    return WeightValueType.ParamsF2;
+            }
+        }
+
+        @Override
+        public float getFloatParams(@Nonnegative final int i) {
+            if (i < 1 || i > numStates) {
+                throw new IllegalArgumentException(
+                    "getFloatParams(" + i + ") should not be called");
+            }
+            return values[offset + i];
+        }
+
+        @Override
+        public float get() {
+            return values[offset];
+        }
+
+        @Override
+        public void set(final float weight) {
+            values[offset] = weight;
+        }
+
+        private float getState(final int i) {
+            return (i <= numStates) ? values[offset + i] : 0.f;
+        }
+
+        private void setState(final int i, final float value) {
+            if (i > numStates) {
+                throw new UnsupportedOperationException(
+                    "State " + i + " is not kept in " + numStates + " states");
+            }
+            values[offset + i] = value;
+        }
+
+        @Override
+        public boolean hasCovariance() {
+            return false;
+        }
+
+        @Override
+        public float getCovariance() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setCovariance(float cov) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public float getSumOfSquaredGradients() {
+            return getState(1);
+        }
+
+        @Override
+        public void setSumOfSquaredGradients(float value) {
+            setState(1, value);
+        }
+
+        @Override
+        public float getSumOfSquaredDeltaX() {
+            return getState(2);
+        }
+
+        @Override
+        public void setSumOfSquaredDeltaX(float value) {
+            setState(2, value);
+        }
+
+        @Override
+        public float getSumOfGradients() {
+            return getState(2);
+        }
+
+        @Override
+        public void setSumOfGradients(float value) {
+            setState(2, value);
+        }
+
+        @Override
+        public float getM() {
+            return getState(1);
+        }
+
+        @Override
+        public void setM(float value) {
+            setState(1, value);
+        }
+
+        @Override
+        public float getV() {
+            return getState(2);
+        }
+
+        @Override
+        public void setV(float value) {
+            setState(2, value);
+        }
+
+        @Override
+        public boolean isTouched() {
+            return true;
+        }
+
+        @Override
+        public void setTouched(boolean touched) {}
+
+        @Override
+        public short getClock() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setClock(short clock) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte getDeltaUpdates() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setDeltaUpdates(byte deltaUpdates) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void copyTo(@Nonnull final IWeightValue another) {
+            another.set(get());
+            another.setTouched(true);
+        }
+
+        @Override
+        public void copyFrom(@Nonnull final IWeightValue another) {
+            set(another.get());
+        }
+
+        @Override
+        public String toString() {
+            return "Slot [weight=" + get() + "]";
+        }
+
+    }
+
+}
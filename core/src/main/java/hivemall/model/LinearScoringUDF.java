@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.datetime.StopWatch;
+import hivemall.utils.hadoop.HiveUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+@Description(name = "score_linear",
+        value = "_FUNC_(const string modelPath, array<string> features)"
+                + " - Returns the score of features by a linear model of (feature, weight) rows",
+        extended = "The model is loaded once per task from a local file or a directory in the"
+                + " distributed cache, so that prediction requires neither a join nor a shuffle")
+@UDFType(deterministic = true, stateful = false)
+public final class LinearScoringUDF extends GenericUDF {
+    private static final Log logger = LogFactory.getLog(LinearScoringUDF.class);
+
+    private String modelPath;
+    private ListObjectInspector featuresOI;
+
+    @Nullable
+    private CompactLinearModel model;
+    private FeatureValue probe;
+    private DoubleWritable result;
+
+    @Override
+    public ObjectInspector initialize(@Nonnull ObjectInspector[] argOIs)
+            throws UDFArgumentException {
+        if (argOIs.length != 2) {
+            throw new UDFArgumentLengthException(
+                "score_linear takes 2 arguments: " + argOIs.length);
+        }
+        this.modelPath = HiveUtils.getConstString(argOIs[0]);
+        this.featuresOI = HiveUtils.asListOI(argOIs[1]);
+        if (!HiveUtils.isStringOI(featuresOI.getListElementObjectInspector())) {
+            throw new UDFArgumentException(
+                "The second argument features must be array<string>: " + argOIs[1].getTypeName());
+        }
+
+        this.model = null;
+        this.probe = new FeatureValue();
+        this.result = new DoubleWritable();
+        return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+    }
+
+    @Nullable
+    @Override
+    public DoubleWritable evaluate(@Nonnull DeferredObject[] args) throws HiveException {
+        final Object arg1 = args[1].get();
+        if (arg1 == null) {
+            return null;
+        }
+        CompactLinearModel model = this.model;
+        if (model == null) {
+            model = loadModel(modelPath);
+            this.model = model;
+        }
+
+        double score = 0.d;
+        final int size = featuresOI.getListLength(arg1);
+        for (int i = 0; i < size; i++) {
+            Object f = featuresOI.getListElement(arg1, i);
+            if (f == null) {
+                continue;
+            }
+            try {
+                FeatureValue.parseFeatureAsString(f.toString(), probe);
+            } catch (IllegalArgumentException e) {
+                throw new HiveException(e);
+            }
+            score += model.getWeight(probe.getFeatureAsString()) * probe.getValue();
+        }
+        result.set(score);
+        return result;
+    }
+
+    @Nonnull
+    private static CompactLinearModel loadModel(@Nonnull final String path) throws HiveException {
+        final File file = new File(path);
+        if (!file.exists()) {
+            throw new HiveException("Model file does not exist: " + path);
+        }
+        final StopWatch elapsed = new StopWatch();
+        final CompactLinearModel model = new CompactLinearModel();
+        final long lines;
+        try {
+            lines = ModelTableReader.read(file, CompactLinearModel.numColumns(), model);
+        } catch (IOException e) {
+            throw new HiveException("Failed to load a model: " + path, e);
+        }
+        logger.info("Loaded " + model.size() + " features from '" + path + "' (" + lines
+                + " lines) in " + elapsed);
+        return model;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.model = null;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+        return "score_linear(" + Arrays.toString(children) + ')';
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.collections.lists.IntArrayList;
+import hivemall.utils.collections.lists.LongArrayList;
+import hivemall.utils.concurrent.ExecutorFactory;
+import hivemall.utils.io.NioSegment;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A compact binary snapshot of a linear model that holds each weight together with the auxiliary
+ * parameters of its optimizer (e.g., AdaGrad accumulators), so that a learner can resume training
+ * from the state where the previous run stopped.
+ *
+ * <pre>
+ * header := MAGIC:int VERSION:int keyType:byte numStates:byte reserved:short numBlocks:int
+ *           numEntries:long numStep:long indexOffset:long
+ * record := key weight:float state:float[numStates]
+ * key    := int | long | length:int utf8:byte[]
+ * index  := (blockOffset:long numRecords:int numBytes:int)[numBlocks]
+ * file   := header record* index
+ * </pre>
+ *
+ * Records are grouped into blocks of bounded size. Blocks are memory-mapped and decoded in
+ * parallel on load, while entries are handed to the caller in the order they were written.
+ */
+public final class ModelSnapshot {
+
+    public static final int MAGIC = 0x484d5353; // "HMSS"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 40;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int MAX_BLOCK_RECORDS = 65536;
+    private static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public enum KeyType {
+        INT, LONG, STRING;
+
+        @Nonnull
+        public static KeyType resolve(final int ordinal) throws IOException {
+            final KeyType[] types = values();
+            if (ordinal < 0 || ordinal >= types.length) {
+                throw new IOException("Unexpected key type: " + ordinal);
+            }
+            return types[ordinal];
+        }
+    }
+
+    public interface EntryHandler {
+        /**
+         * @param states auxiliary parameters of the entry that are reused after this call returns
+         */
+        void handle(@Nonnull Object key, float weight, @Nonnull float[] states);
+    }
+
+    private ModelSnapshot() {}
+
+    @NotThreadSafe
+    public static final class Writer implements Closeable {
+
+        @Nonnull
+        private final File file;
+        @Nonnull
+        private final KeyType keyType;
+        private final int numStates;
+        private final long numStep;
+        @Nonnull
+        private final DataOutputStream out;
+
+        @Nonnull
+        private final LongArrayList blockOffsets;
+        @Nonnull
+        private final IntArrayList blockRecords;
+        @Nonnull
+        private final IntArrayList blockBytes;
+
+        private long position;
+        private long blockStart;
+        private int numBlockRecords;
+        private long numEntries;
+        private boolean closed;
+
+        public Writer(@Nonnull File file, @Nonnull KeyType keyType, @Nonnegative int numStates,
+                @Nonnegative long numStep) throws IOException {
+            if (numStates > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many states: " + numStates);
+            }
+            this.file = file;
+            this.keyType = keyType;
+            this.numStates = numStates;
+            this.numStep = numStep;
+            this.out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536));
+            out.write(new byte[HEADER_BYTES]); // header is written on close
+            this.blockOffsets = new LongArrayList();
+            this.blockRecords = new IntArrayList();
+            this.blockBytes = new IntArrayList();
+            this.position = HEADER_BYTES;
+            this.blockStart = HEADER_BYTES;
+            this.numBlockRecords = 0;
+            this.numEntries = 0L;
+            this.closed = false;
+        }
+
+        public void write(@Nonnull final Object key, final float weight,
+                @Nonnull final float[] states) throws IOException {
+            final byte[] utf8 = (keyType == KeyType.STRING) ? key.toString().getBytes(UTF8) : null;
+            final int keyBytes;
+            switch (keyType) {
+                case INT:
+                    keyBytes = 4;
+                    break;
+                case LONG:
+                    keyBytes = 8;
+                    break;
+                default:
+                    keyBytes = 4 + utf8.length;
+                    break;
+            }
+            final int recordBytes = keyBytes + 4 * (1 + numStates);
+            if (numBlockRecords == MAX_BLOCK_RECORDS || (numBlockRecords > 0
+                    && position - blockStart + recordBytes > MAX_BLOCK_BYTES)) {
+                finishBlock();
+            }
+
+            switch (keyType) {
+                case INT:
+                    out.writeInt(((Number) key).intValue());
+                    break;
+                case LONG:
+                    out.writeLong(((Number) key).longValue());
+                    break;
+                default:
+                    out.writeInt(utf8.length);
+                    out.write(utf8);
+                    break;
+            }
+            out.writeFloat(weight);
+            for (int i = 0; i < numStates; i++) {
+                out.writeFloat(states[i]);
+            }
+            position += recordBytes;
+            numBlockRecords++;
+            numEntries++;
+        }
+
+        private void finishBlock() {
+            if (numBlockRecords == 0) {
+                return;
+            }
+            blockOffsets.add(blockStart);
+            blockRecords.add(numBlockRecords);
+            blockBytes.add((int) (position - blockStart));
+            this.blockStart = position;
+            this.numBlockRecords = 0;
+        }
+
+        public long getNumEntries() {
+            return numEntries;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            this.closed = true;
+
+            finishBlock();
+            final long indexOffset = position;
+            final int numBlocks = blockOffsets.size();
+            for (int i = 0; i < numBlocks; i++) {
+                out.writeLong(blockOffsets.fastGet(i));
+                out.writeInt(blockRecords.fastGet(i));
+                out.writeInt(blockBytes.fastGet(i));
+            }
+            out.close();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.put((byte) keyType.ordinal());
+            header.put((byte) numStates);
+            header.putShort((short) 0);
+            header.putInt(numBlocks);
+            header.putLong(numEntries);
+            header.putLong(numStep);
+            header.putLong(indexOffset);
+            header.flip();
+            final NioSegment segment = new NioSegment(file);
+            try {
+                segment.write(0L, header);
+            } finally {
+                segment.close();
+            }
+        }
+
+    }
+
+    @NotThreadSafe
+    public static final class Reader implements Closeable {
+
+        @Nonnull
+        private final NioSegment segment;
+        @Nonnull
+        private final KeyType keyType;
+        private final int numStates;
+        private final long numEntries;
+        private final long numStep;
+
+        @Nonnull
+        private final long[] blockOffsets;
+        @Nonnull
+        private final int[] blockRecords;
+        @Nonnull
+        private final int[] blockBytes;
+
+        public Reader(@Nonnull File file) throws IOException {
+            if (!file.isFile()) {
+                throw new IOException("Snapshot file not found: " + file.getAbsolutePath());
+            }
+            final NioSegment segment = new NioSegment(file, true);
+            try {
+                final long fileSize = segment.size();
+                if (fileSize < HEADER_BYTES) {
+                    throw new IOException("Illegal snapshot file size: " + fileSize);
+                }
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                segment.read(0L, header);
+                header.flip();
+                final int magic = header.getInt();
+                if (magic != MAGIC) {
+                    throw new IOException(
+                        "Not a model snapshot: " + file.getAbsolutePath() + " (magic: "
+                                + Integer.toHexString(magic) + ')');
+                }
+                final int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version: " + version);
+                }
+                this.keyType = KeyType.resolve(header.get());
+                this.numStates = header.get();
+                header.getShort(); // reserved
+                final int numBlocks = header.getInt();
+                this.numEntries = header.getLong();
+                this.numStep = header.getLong();
+                final long indexOffset = header.getLong();
+                if (indexOffset + (long) numBlocks * INDEX_ENTRY_BYTES != fileSize) {
+                    throw new IOException("Corrupted snapshot file: " + file.getAbsolutePath());
+                }
+
+                final ByteBuffer index = segment.map(MapMode.READ_ONLY, indexOffset,
+                    (long) numBlocks * INDEX_ENTRY_BYTES);
+                this.blockOffsets = new long[numBlocks];
+                this.blockRecords = new int[numBlocks];
+                this.blockBytes = new int[numBlocks];
+                for (int i = 0; i < numBlocks; i++) {
+                    blockOffsets[i] = index.getLong();
+                    blockRecords[i] = index.getInt();
+                    blockBytes[i] = index.getInt();
+                }
+            } catch (IOException e) {
+                segment.close();
+                throw e;
+            }
+            this.segment = segment;
+        }
+
+        @Nonnull
+        public KeyType getKeyType() {
+            return keyType;
+        }
+
+        public int getNumStates() {
+            return numStates;
+        }
+
+        public long getNumEntries() {
+            return numEntries;
+        }
+
+        public long getNumStep() {
+            return numStep;
+        }
+
+        /**
+         * Decodes blocks with the given number of threads and passes the entries to the handler in
+         * the caller's thread.
+         */
+        public void load(@Nonnull final EntryHandler handler, @Nonnegative final int numThreads)
+                throws IOException {
+            final int numBlocks = blockOffsets.length;
+            final float[] states = new float[numStates];
+            if (numThreads <= 1 || numBlocks <= 1) {
+                for (int i = 0; i < numBlocks; i++) {
+                    decode(i).apply(handler, states);
+                }
+                return;
+            }
+
+            final ExecutorService exec =
+                    ExecutorFactory.newFixedThreadPool(numThreads, "Hivemall-ModelSnapshot", true);
+            try {
+                // bound the number of decoded blocks held in memory
+                final int window = numThreads * 2;
+                final ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>(window);
+                int submitted = 0;
+                for (; submitted < numBlocks && submitted < window; submitted++) {
+                    pending.add(exec.submit(newDecodeTask(submitted)));
+                }
+                while (!pending.isEmpty()) {
+                    final Block block = pending.poll().get();
+                    if (submitted < numBlocks) {
+                        pending.add(exec.submit(newDecodeTask(submitted++)));
+                    }
+                    block.apply(handler, states);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading a snapshot", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to decode a snapshot block", e.getCause());
+            } finally {
+                exec.shutdownNow();
+            }
+        }
+
+        @Nonnull
+        private Callable<Block> newDecodeTask(final int blockIndex) {
+            return new Callable<Block>() {
+                @Override
+                public Block call() throws IOException {
+                    return decode(blockIndex);
+                }
+            };
+        }
+
+        @Nonnull
+        private Block decode(final int blockIndex) throws IOException {
+            final int size = blockRecords[blockIndex];
+            final ByteBuffer buf = segment.map(MapMode.READ_ONLY, blockOffsets[blockIndex],
+                blockBytes[blockIndex]);
+            final Block block = new Block(size, numStates);
+            final Object[] keys = block.keys;
+            final float[] weights = block.weights;
+            final float[] states = block.states;
+            byte[] utf8 = null;
+            for (int i = 0, s = 0; i < size; i++) {
+                switch (keyType) {
+                    case INT:
+                        keys[i] = Integer.valueOf(buf.getInt());
+                        break;
+                    case LONG:
+                        keys[i] = Long.valueOf(buf.getLong());
+                        break;
+                    default: {
+                        final int len = buf.getInt();
+                        if (utf8 == null || utf8.length < len) {
+                            utf8 = new byte[Math.max(len, 64)];
+                        }
+                        buf.get(utf8, 0, len);
+                        keys[i] = new String(utf8, 0, len, UTF8);
+                        break;
+                    }
+                }
+                weights[i] = buf.getFloat();
+                for (int j = 0; j < numStates; j++) {
+                    states[s++] = buf.getFloat();
+                }
+            }
+            return block;
+        }
+
+        @Override
+        public void close() throws IOException {
+            segment.close();
+        }
+
+    }
+
+    private static final class Block {
+
+        @Nonnull
+        final Object[] keys;
+        @Nonnull
+        final float[] weights;
+        @Nonnull
+        final float[] states;
+
+        Block(int size, int numStates) {
+            this.keys = new Object[size];
+            this.weights = new float[size];
+            this.states = new float[size * numStates];
+        }
+
+        void apply(@Nonnull final EntryHandler handler, @Nonnull final float[] dst) {
+            final int numStates = dst.length;
+            for (int i = 0; i < keys.length; i++) {
+                System.arraycopy(states, i * numStates, dst, 0, numStates);
+                handler.handle(keys[i], weights[i], dst);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.hadoop.HadoopUtils;
+import hivemall.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads rows of a model table stored in the default text format of Hive, i.e., fields separated
+ * by \u0001, array elements separated by \u0002 and null written as \N.
+ */
+public final class ModelTableReader {
+
+    private static final char FIELD_DELIMITER = '\u0001';
+    private static final char ARRAY_DELIMITER = '\u0002';
+    private static final String NULL_SEQUENCE = "\\N";
+
+    private ModelTableReader() {}
+
+    public interface RowHandler {
+
+        /**
+         * @param row fields of a row where a missing or null field is null. The array is reused
+         *        for the next row.
+         */
+        void handle(@Nonnull String[] row) throws IOException;
+
+    }
+
+    /**
+     * Reads the given file, or the files in the given directory recursively, skipping checksum
+     * files.
+     *
+     * @return the number of rows read
+     */
+    public static long read(@Nonnull final File file, @Nonnegative final int numColumns,
+            @Nonnull final RowHandler handler) throws IOException {
+        long count = 0L;
+        if (!file.exists()) {
+            return count;
+        }
+        if (!file.getName().endsWith(".crc")) {
+            if (file.isDirectory()) {
+                for (File f : file.listFiles()) {
+                    count += read(f, numColumns, handler);
+                }
+            } else {
+                BufferedReader reader = null;
+                try {
+                    reader = HadoopUtils.getBufferedReader(file);
+                    count += read(reader, numColumns, handler);
+                } finally {
+                    IOUtils.closeQuietly(reader);
+                }
+            }
+        }
+        return count;
+    }
+
+    public static long read(@Nonnull final BufferedReader reader,
+            @Nonnegative final int numColumns, @Nonnull final RowHandler handler)
+            throws IOException {
+        final String[] row = new String[numColumns];
+        long count = 0L;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            splitRow(line, row);
+            handler.handle(row);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Splits the given line into the first row.length fields and ignores the rest.
+     */
+    static void splitRow(@Nonnull final String line, @Nonnull final String[] row) {
+        final int numColumns = row.length;
+        int start = 0;
+        for (int i = 0; i < numColumns; i++) {
+            if (start > line.length()) {
+                row[i] = null;
+                continue;
+            }
+            int end = line.indexOf(FIELD_DELIMITER, start);
+            if (end == -1) {
+                end = line.length();
+            }
+            String field = line.substring(start, end);
+            row[i] = NULL_SEQUENCE.equals(field) ? null : field;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Parses a field of array&lt;float&gt; type.
+     */
+    @Nullable
+    public static float[] parseFloatArray(@Nullable final String field) {
+        if (field == null) {
+            return null;
+        }
+        if (field.isEmpty()) {
+            return new float[0];
+        }
+        int size = 1;
+        for (int i = 0, len = field.length(); i < len; i++) {
+            if (field.charAt(i) == ARRAY_DELIMITER) {
+                size++;
+            }
+        }
+        final float[] ary = new float[size];
+        int start = 0;
+        for (int i = 0; i < size; i++) {
+            int end = field.indexOf(ARRAY_DELIMITER, start);
+            if (end == -1) {
+                end = field.length();
+            }
+            String elem = field.substring(start, end);
+            ary[i] = NULL_SEQUENCE.equals(elem) ? 0.f : Float.parseFloat(elem);
+            start = end + 1;
+        }
+        return ary;
+    }
+
+}
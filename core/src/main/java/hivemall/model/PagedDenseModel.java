@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.model.WeightValue.WeightValueParamsF1;
+import hivemall.model.WeightValue.WeightValueParamsF2;
+import hivemall.model.WeightValue.WeightValueWithCovar;
+import hivemall.utils.collections.IMapIterator;
+import hivemall.utils.collections.arrays.PagedFloatArray;
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.lang.Copyable;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A dense model that stores weights, covariances and optimizer states in {@link PagedFloatArray}s.
+ * Pages are allocated on the first update, optionally off-heap, so that the model grows without
+ * copying and features are not limited to int. Features are output as long.
+ * 
+ * MIX is not supported because clocks are not kept.
+ */
+public final class PagedDenseModel extends AbstractPredictionModel {
+
+    @Nonnull
+    private final PagedFloatArray weights;
+    @Nullable
+    private final PagedFloatArray covars;
+    private final long initialCapacity;
+    private final boolean offheap;
+
+    // optional values for adagrad
+    @Nullable
+    private PagedFloatArray sum_of_squared_gradients;
+    // optional value for adadelta
+    @Nullable
+    private PagedFloatArray sum_of_squared_delta_x;
+    // optional value for adagrad+rda
+    @Nullable
+    private PagedFloatArray sum_of_gradients;
+
+    public PagedDenseModel(@Nonnegative long ndims) {
+        this(ndims, false, false);
+    }
+
+    public PagedDenseModel(@Nonnegative long ndims, boolean withCovar, boolean offheap) {
+        super();
+        this.initialCapacity = ndims + 1L;
+        this.offheap = offheap;
+        this.weights = new PagedFloatArray(initialCapacity, 0.f, offheap);
+        if (withCovar) {
+            this.covars = new PagedFloatArray(initialCapacity, 1.f, offheap);
+        } else {
+            this.covars = null;
+        }
+        this.sum_of_squared_gradients = null;
+        this.sum_of_squared_delta_x = null;
+        this.sum_of_gradients = null;
+    }
+
+    @Override
+    protected boolean isDenseModel() {
+        return true;
+    }
+
+    @Override
+    public boolean hasCovariance() {
+        return covars != null;
+    }
+
+    @Override
+    public void configureParams(boolean sum_of_squared_gradients, boolean sum_of_squared_delta_x,
+            boolean sum_of_gradients) {
+        if (sum_of_squared_gradients) {
+            this.sum_of_squared_gradients = new PagedFloatArray(initialCapacity, 0.f, offheap);
+        }
+        if (sum_of_squared_delta_x) {
+            this.sum_of_squared_delta_x = new PagedFloatArray(initialCapacity, 0.f, offheap);
+        }
+        if (sum_of_gradients) {
+            this.sum_of_gradients = new PagedFloatArray(initialCapacity, 0.f, offheap);
+        }
+    }
+
+    @Override
+    public void configureClock() {
+        throw new UnsupportedOperationException("PagedDenseModel does not support MIX");
+    }
+
+    @Override
+    public boolean hasClock() {
+        return false;
+    }
+
+    /**
+     * @return the number of bytes of the allocated pages
+     */
+    public long getAllocatedBytes() {
+        long bytes = weights.getAllocatedBytes();
+        if (covars != null) {
+            bytes += covars.getAllocatedBytes();
+        }
+        if (sum_of_squared_gradients != null) {
+            bytes += sum_of_squared_gradients.getAllocatedBytes();
+        }
+        if (sum_of_squared_delta_x != null) {
+            bytes += sum_of_squared_delta_x.getAllocatedBytes();
+        }
+        if (sum_of_gradients != null) {
+            bytes += sum_of_gradients.getAllocatedBytes();
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends IWeightValue> T get(@Nonnull final Object feature) {
+        final long i = HiveUtils.parseLong(feature);
+        if (!weights.isAllocated(i)) {
+            return null;
+        }
+        if (sum_of_squared_gradients != null) {
+            if (sum_of_squared_delta_x != null) {
+                return (T) new WeightValueParamsF2(weights.get(i), sum_of_squared_gradients.get(i),
+                    sum_of_squared_delta_x.get(i));
+            } else if (sum_of_gradients != null) {
+                return (T) new WeightValueParamsF2(weights.get(i), sum_of_squared_gradients.get(i),
+                    sum_of_gradients.get(i));
+            } else {
+                return (T) new WeightValueParamsF1(weights.get(i), sum_of_squared_gradients.get(i));
+            }
+        } else if (covars != null) {
+            return (T) new WeightValueWithCovar(weights.get(i), covars.get(i));
+        } else {
+            return (T) new WeightValue(weights.get(i));
+        }
+    }
+
+    @Override
+    public <T extends IWeightValue> void set(@Nonnull final Object feature,
+            @Nonnull final T value) {
+        final long i = HiveUtils.parseLong(feature);
+        weights.set(i, value.get());
+        if (value.hasCovariance()) {
+            covars.set(i, value.getCovariance());
+        }
+        if (sum_of_squared_gradients != null) {
+            sum_of_squared_gradients.set(i, value.getSumOfSquaredGradients());
+        }
+        if (sum_of_squared_delta_x != null) {
+            sum_of_squared_delta_x.set(i, value.getSumOfSquaredDeltaX());
+        }
+        if (sum_of_gradients != null) {
+            sum_of_gradients.set(i, value.getSumOfGradients());
+        }
+    }
+
+    @Override
+    public void delete(@Nonnull final Object feature) {
+        final long i = HiveUtils.parseLong(feature);
+        if (!weights.isAllocated(i)) {
+            return;
+        }
+        weights.set(i, 0.f);
+        if (covars != null) {
+            covars.set(i, 1.f);
+        }
+        if (sum_of_squared_gradients != null) {
+            sum_of_squared_gradients.set(i, 0.f);
+        }
+        if (sum_of_squared_delta_x != null) {
+            sum_of_squared_delta_x.set(i, 0.f);
+        }
+        if (sum_of_gradients != null) {
+            sum_of_gradients.set(i, 0.f);
+        }
+    }
+
+    @Override
+    public float getWeight(@Nonnull final Object feature) {
+        return weights.get(HiveUtils.parseLong(feature));
+    }
+
+    @Override
+    public void setWeight(@Nonnull final Object feature, final float value) {
+        weights.set(HiveUtils.parseLong(feature), value);
+    }
+
+    @Override
+    public float getCovariance(@Nonnull final Object feature) {
+        if (covars == null) {
+            return 1.f;
+        }
+        return covars.get(HiveUtils.parseLong(feature));
+    }
+
+    @Override
+    protected void _set(@Nonnull final Object feature, final float weight, final short clock) {
+        throw new UnsupportedOperationException("PagedDenseModel does not support MIX");
+    }
+
+    @Override
+    protected void _set(@Nonnull final Object feature, final float weight, final float covar,
+            final short clock) {
+        throw new UnsupportedOperationException("PagedDenseModel does not support MIX");
+    }
+
+    /**
+     * @return the number of entries in the allocated pages, capped by Integer.MAX_VALUE
+     */
+    @Override
+    public int size() {
+        long size = (long) weights.getNumAllocatedPages() * weights.getPageSize();
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean contains(@Nonnull final Object feature) {
+        return weights.get(HiveUtils.parseLong(feature)) != 0.f;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V extends IWeightValue> IMapIterator<K, V> entries() {
+        return (IMapIterator<K, V>) new Itr();
+    }
+
+    /**
+     * Iterates over the entries of the allocated pages. {@link #next()} returns 0 instead of the
+     * index because an index may not fit in int; use {@link #getKey()} instead.
+     */
+    private final class Itr implements IMapIterator<Number, IWeightValue> {
+
+        private long cursor;
+        private long nextCursor;
+        private final WeightValueWithCovar tmpWeight;
+
+        private Itr() {
+            this.cursor = -1L;
+            this.nextCursor = weights.nextAllocated(0L);
+            this.tmpWeight = new WeightValueWithCovar();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextCursor != -1L;
+        }
+
+        @Override
+        public int next() {
+            if (nextCursor == -1L) {
+                this.cursor = -1L;
+                return -1;
+            }
+            this.cursor = nextCursor;
+            this.nextCursor = weights.nextAllocated(cursor + 1L);
+            return 0;
+        }
+
+        @Override
+        public Long getKey() {
+            return Long.valueOf(cursor);
+        }
+
+        @Override
+        public IWeightValue getValue() {
+            final float w = weights.get(cursor);
+            if (covars == null) {
+                WeightValue v = new WeightValue(w);
+                v.setTouched(w != 0.f);
+                return v;
+            } else {
+                float cov = covars.get(cursor);
+                WeightValueWithCovar v = new WeightValueWithCovar(w, cov);
+                v.setTouched(w != 0.f || cov != 1.f);
+                return v;
+            }
+        }
+
+        @Override
+        public <T extends Copyable<IWeightValue>> void getValue(@Nonnull final T probe) {
+            final float w = weights.get(cursor);
+            tmpWeight.value = w;
+            float cov = 1.f;
+            if (covars != null) {
+                cov = covars.get(cursor);
+                tmpWeight.setCovariance(cov);
+            }
+            tmpWeight.setTouched(w != 0.f || cov != 1.f);
+            probe.copyFrom(tmpWeight);
+        }
+
+    }
+
+}
@@ -20,10 +20,9 @@ package hivemall.optimizer;
 
 import hivemall.model.IWeightValue;
 import hivemall.model.WeightValue;
+import hivemall.utils.collections.arrays.PagedFloatArray;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.math.MathUtils;
 
-import java.util.Arrays;
 import java.util.Map;
 
 import javax.annotation.Nonnegative;
@@ -39,6 +38,15 @@ public final class DenseOptimizerFactory {
     @Nonnull
     public static Optimizer create(@Nonnegative final int ndims,
             @Nonnull final Map<String, String> options) {
+        return create(ndims, options, false);
+    }
+
+    /**
+     * @param offheap whether to allocate the pages of optimizer states off-heap
+     */
+    @Nonnull
+    public static Optimizer create(@Nonnegative final int ndims,
+            @Nonnull final Map<String, String> options, final boolean offheap) {
         final String optimizerName = options.get("optimizer");
         if (optimizerName == null) {
             throw new IllegalArgumentException("`optimizer` not defined");
@@ -55,17 +63,20 @@ public final class DenseOptimizerFactory {
         if ("sgd".equalsIgnoreCase(optimizerName)) {
             optimizerImpl = new Optimizer.SGD(options);
         } else if ("adadelta".equalsIgnoreCase(optimizerName)) {
-            optimizerImpl = new AdaDelta(ndims, options);
+            optimizerImpl = new AdaDelta(ndims, options, offheap);
         } else if ("adagrad".equalsIgnoreCase(optimizerName)) {
             // If a regularization type is "RDA", wrap the optimizer with `Optimizer#RDA`.
             if ("rda".equalsIgnoreCase(options.get("regularization"))) {
-                AdaGrad adagrad = new AdaGrad(ndims, options);
-                optimizerImpl = new AdagradRDA(ndims, adagrad, options);
+                AdaGrad adagrad = new AdaGrad(ndims, options, offheap);
+                optimizerImpl = new AdagradRDA(ndims, adagrad, options, offheap);
             } else {
-                optimizerImpl = new AdaGrad(ndims, options);
+                optimizerImpl = new AdaGrad(ndims, options, offheap);
             }
         } else if ("adam".equalsIgnoreCase(optimizerName)) {
-            optimizerImpl = new Adam(ndims, options);
+            optimizerImpl = new Adam(ndims, options, offheap);
+        } else if ("ftrl".equalsIgnoreCase(optimizerName)) {
+            // FTRL has its own L1/L2 regularization and thus other `-regularization` is ignored
+            optimizerImpl = new FTRL(ndims, options, offheap);
         } else {
             throw new IllegalArgumentException("Unsupported optimizer name: " + optimizerName);
         }
@@ -85,38 +96,52 @@ public final class DenseOptimizerFactory {
         private final IWeightValue weightValueReused;
 
         @Nonnull
-        private float[] sum_of_squared_gradients;
+        private final PagedFloatArray sum_of_squared_gradients;
         @Nonnull
-        private float[] sum_of_squared_delta_x;
+        private final PagedFloatArray sum_of_squared_delta_x;
 
-        public AdaDelta(int ndims, Map<String, String> options) {
+        public AdaDelta(int ndims, Map<String, String> options, boolean offheap) {
             super(options);
             this.weightValueReused = new WeightValue.WeightValueParamsF2(0.f, 0.f, 0.f);
-            this.sum_of_squared_gradients = new float[ndims];
-            this.sum_of_squared_delta_x = new float[ndims];
+            this.sum_of_squared_gradients = new PagedFloatArray(ndims, 0.f, offheap);
+            this.sum_of_squared_delta_x = new PagedFloatArray(ndims, 0.f, offheap);
         }
 
         @Override
         public float update(@Nonnull final Object feature, final float weight,
                 final float gradient) {
-            int i = HiveUtils.parseInt(feature);
-            ensureCapacity(i);
+            final long i = HiveUtils.parseLong(feature);
             weightValueReused.set(weight);
-            weightValueReused.setSumOfSquaredGradients(sum_of_squared_gradients[i]);
-            weightValueReused.setSumOfSquaredDeltaX(sum_of_squared_delta_x[i]);
+            weightValueReused.setSumOfSquaredGradients(sum_of_squared_gradients.get(i));
+            weightValueReused.setSumOfSquaredDeltaX(sum_of_squared_delta_x.get(i));
             update(weightValueReused, gradient);
-            sum_of_squared_gradients[i] = weightValueReused.getSumOfSquaredGradients();
-            sum_of_squared_delta_x[i] = weightValueReused.getSumOfSquaredDeltaX();
+            sum_of_squared_gradients.set(i, weightValueReused.getSumOfSquaredGradients());
+            sum_of_squared_delta_x.set(i, weightValueReused.getSumOfSquaredDeltaX());
             return weightValueReused.get();
         }
 
-        private void ensureCapacity(final int index) {
-            if (index >= sum_of_squared_gradients.length) {
-                int bits = MathUtils.bitsRequired(index);
-                int newSize = (1 << bits) + 1;
-                this.sum_of_squared_gradients = Arrays.copyOf(sum_of_squared_gradients, newSize);
-                this.sum_of_squared_delta_x = Arrays.copyOf(sum_of_squared_delta_x, newSize);
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final long i = HiveUtils.parseLong(feature);
+            if (!sum_of_squared_gradients.isAllocated(i)) {
+                return false;
             }
+            dst[0] = sum_of_squared_gradients.get(i);
+            dst[1] = sum_of_squared_delta_x.get(i);
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            final long i = HiveUtils.parseLong(feature);
+            sum_of_squared_gradients.set(i, src[0]);
+            sum_of_squared_delta_x.set(i, src[1]);
         }
 
     }
@@ -127,32 +152,45 @@ public final class DenseOptimizerFactory {
         @Nonnull
         private final IWeightValue weightValueReused;
         @Nonnull
-        private float[] sum_of_squared_gradients;
+        private final PagedFloatArray sum_of_squared_gradients;
 
-        public AdaGrad(int ndims, Map<String, String> options) {
+        public AdaGrad(int ndims, Map<String, String> options, boolean offheap) {
             super(options);
             this.weightValueReused = new WeightValue.WeightValueParamsF1(0.f, 0.f);
-            this.sum_of_squared_gradients = new float[ndims];
+            this.sum_of_squared_gradients = new PagedFloatArray(ndims, 0.f, offheap);
         }
 
         @Override
         public float update(@Nonnull final Object feature, final float weight,
                 final float gradient) {
-            int i = HiveUtils.parseInt(feature);
-            ensureCapacity(i);
+            final long i = HiveUtils.parseLong(feature);
             weightValueReused.set(weight);
-            weightValueReused.setSumOfSquaredGradients(sum_of_squared_gradients[i]);
+            weightValueReused.setSumOfSquaredGradients(sum_of_squared_gradients.get(i));
             update(weightValueReused, gradient);
-            sum_of_squared_gradients[i] = weightValueReused.getSumOfSquaredGradients();
+            sum_of_squared_gradients.set(i, weightValueReused.getSumOfSquaredGradients());
             return weightValueReused.get();
         }
 
-        private void ensureCapacity(final int index) {
-            if (index >= sum_of_squared_gradients.length) {
-                int bits = MathUtils.bitsRequired(index);
-                int newSize = (1 << bits) + 1;
-                this.sum_of_squared_gradients = Arrays.copyOf(sum_of_squared_gradients, newSize);
+        @Override
+        public int getNumStates() {
+            return 1;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final long i = HiveUtils.parseLong(feature);
+            if (!sum_of_squared_gradients.isAllocated(i)) {
+                return false;
             }
+            dst[0] = sum_of_squared_gradients.get(i);
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            final long i = HiveUtils.parseLong(feature);
+            sum_of_squared_gradients.set(i, src[0]);
         }
 
     }
@@ -164,38 +202,52 @@ public final class DenseOptimizerFactory {
         private final IWeightValue weightValueReused;
 
         @Nonnull
-        private float[] val_m;
+        private final PagedFloatArray val_m;
         @Nonnull
-        private float[] val_v;
+        private final PagedFloatArray val_v;
 
-        public Adam(int ndims, Map<String, String> options) {
+        public Adam(int ndims, Map<String, String> options, boolean offheap) {
             super(options);
             this.weightValueReused = new WeightValue.WeightValueParamsF2(0.f, 0.f, 0.f);
-            this.val_m = new float[ndims];
-            this.val_v = new float[ndims];
+            this.val_m = new PagedFloatArray(ndims, 0.f, offheap);
+            this.val_v = new PagedFloatArray(ndims, 0.f, offheap);
         }
 
         @Override
         public float update(@Nonnull final Object feature, final float weight,
                 final float gradient) {
-            int i = HiveUtils.parseInt(feature);
-            ensureCapacity(i);
+            final long i = HiveUtils.parseLong(feature);
             weightValueReused.set(weight);
-            weightValueReused.setM(val_m[i]);
-            weightValueReused.setV(val_v[i]);
+            weightValueReused.setM(val_m.get(i));
+            weightValueReused.setV(val_v.get(i));
             update(weightValueReused, gradient);
-            val_m[i] = weightValueReused.getM();
-            val_v[i] = weightValueReused.getV();
+            val_m.set(i, weightValueReused.getM());
+            val_v.set(i, weightValueReused.getV());
             return weightValueReused.get();
         }
 
-        private void ensureCapacity(final int index) {
-            if (index >= val_m.length) {
-                int bits = MathUtils.bitsRequired(index);
-                int newSize = (1 << bits) + 1;
-                this.val_m = Arrays.copyOf(val_m, newSize);
-                this.val_v = Arrays.copyOf(val_v, newSize);
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final long i = HiveUtils.parseLong(feature);
+            if (!val_m.isAllocated(i)) {
+                return false;
             }
+            dst[0] = val_m.get(i);
+            dst[1] = val_v.get(i);
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            final long i = HiveUtils.parseLong(feature);
+            val_m.set(i, src[0]);
+            val_v.set(i, src[1]);
         }
 
     }
@@ -207,33 +259,103 @@ public final class DenseOptimizerFactory {
         private final IWeightValue weightValueReused;
 
         @Nonnull
-        private float[] sum_of_gradients;
+        private final PagedFloatArray sum_of_gradients;
 
         public AdagradRDA(int ndims, @Nonnull Optimizer.AdaGrad optimizerImpl,
-                @Nonnull Map<String, String> options) {
+                @Nonnull Map<String, String> options, boolean offheap) {
             super(optimizerImpl, options);
             this.weightValueReused = new WeightValue.WeightValueParamsF3(0.f, 0.f, 0.f, 0.f);
-            this.sum_of_gradients = new float[ndims];
+            this.sum_of_gradients = new PagedFloatArray(ndims, 0.f, offheap);
+        }
+
+        @Override
+        public float update(@Nonnull final Object feature, final float weight,
+                final float gradient) {
+            final long i = HiveUtils.parseLong(feature);
+            weightValueReused.set(weight);
+            weightValueReused.setSumOfGradients(sum_of_gradients.get(i));
+            update(weightValueReused, gradient);
+            sum_of_gradients.set(i, weightValueReused.getSumOfGradients());
+            return weightValueReused.get();
+        }
+
+        @Override
+        public int getNumStates() {
+            return 1;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final long i = HiveUtils.parseLong(feature);
+            if (!sum_of_gradients.isAllocated(i)) {
+                return false;
+            }
+            dst[0] = sum_of_gradients.get(i);
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            final long i = HiveUtils.parseLong(feature);
+            sum_of_gradients.set(i, src[0]);
+        }
+
+    }
+
+    @NotThreadSafe
+    static final class FTRL extends Optimizer.FTRL {
+
+        @Nonnull
+        private final IWeightValue weightValueReused;
+
+        @Nonnull
+        private final PagedFloatArray sum_of_squared_gradients;
+        @Nonnull
+        private final PagedFloatArray z;
+
+        public FTRL(int ndims, @Nonnull Map<String, String> options, boolean offheap) {
+            super(options);
+            this.weightValueReused = new WeightValue.WeightValueParamsF2(0.f, 0.f, 0.f);
+            this.sum_of_squared_gradients = new PagedFloatArray(ndims, 0.f, offheap);
+            this.z = new PagedFloatArray(ndims, 0.f, offheap);
         }
 
         @Override
         public float update(@Nonnull final Object feature, final float weight,
                 final float gradient) {
-            int i = HiveUtils.parseInt(feature);
-            ensureCapacity(i);
+            final long i = HiveUtils.parseLong(feature);
             weightValueReused.set(weight);
-            weightValueReused.setSumOfGradients(sum_of_gradients[i]);
+            weightValueReused.setSumOfSquaredGradients(sum_of_squared_gradients.get(i));
+            weightValueReused.setSumOfGradients(z.get(i));
             update(weightValueReused, gradient);
-            sum_of_gradients[i] = weightValueReused.getSumOfGradients();
+            sum_of_squared_gradients.set(i, weightValueReused.getSumOfSquaredGradients());
+            z.set(i, weightValueReused.getSumOfGradients());
             return weightValueReused.get();
         }
 
-        private void ensureCapacity(final int index) {
-            if (index >= sum_of_gradients.length) {
-                int bits = MathUtils.bitsRequired(index);
-                int newSize = (1 << bits) + 1;
-                this.sum_of_gradients = Arrays.copyOf(sum_of_gradients, newSize);
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final long i = HiveUtils.parseLong(feature);
+            if (!z.isAllocated(i)) {
+                return false;
             }
+            dst[0] = sum_of_squared_gradients.get(i);
+            dst[1] = z.get(i);
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            final long i = HiveUtils.parseLong(feature);
+            sum_of_squared_gradients.set(i, src[0]);
+            z.set(i, src[1]);
         }
 
     }
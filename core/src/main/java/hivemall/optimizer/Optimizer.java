@@ -21,6 +21,7 @@ package hivemall.optimizer;
 import hivemall.model.IWeightValue;
 import hivemall.model.WeightValue;
 import hivemall.utils.lang.Primitives;
+import hivemall.utils.math.MathUtils;
 
 import java.util.Map;
 
@@ -35,6 +36,14 @@ public interface Optimizer {
      */
     float update(@Nonnull Object feature, float weight, float gradient);
 
+    /**
+     * Update the weight and the auxiliary parameters held by the given value in place, e.g., when
+     * the model keeps the optimizer states next to each weight.
+     * 
+     * @return new weight
+     */
+    float update(@Nonnull IWeightValue weight, float gradient);
+
     /**
      * Count up #step to tune learning rate
      */
@@ -43,6 +52,35 @@ public interface Optimizer {
     @Nonnull
     String getOptimizerName();
 
+    /**
+     * @return the number of steps proceeded so far
+     */
+    @Nonnegative
+    long getNumStep();
+
+    /**
+     * Restore the number of steps, e.g., when warm-starting from a model snapshot
+     */
+    void setNumStep(@Nonnegative long numStep);
+
+    /**
+     * @return the number of auxiliary parameters kept for each feature, e.g., 1 for AdaGrad
+     */
+    @Nonnegative
+    int getNumStates();
+
+    /**
+     * Copy the auxiliary parameters of the given feature into {@code dst}.
+     * 
+     * @return false if no state is kept for the feature
+     */
+    boolean getState(@Nonnull Object feature, @Nonnull float[] dst);
+
+    /**
+     * Restore the auxiliary parameters of the given feature from {@code src}.
+     */
+    void setState(@Nonnull Object feature, float weight, @Nonnull float[] src);
+
     @NotThreadSafe
     static abstract class OptimizerBase implements Optimizer {
 
@@ -63,12 +101,37 @@ public interface Optimizer {
             _numStep++;
         }
 
+        @Override
+        public long getNumStep() {
+            return _numStep;
+        }
+
+        @Override
+        public void setNumStep(@Nonnegative final long numStep) {
+            this._numStep = numStep;
+        }
+
+        @Override
+        public int getNumStates() {
+            return 0;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            return false;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {}
+
         /**
          * Update the given weight by the given gradient.
          * 
          * @return new weight to be set
          */
-        protected float update(@Nonnull final IWeightValue weight, final float gradient) {
+        @Override
+        public float update(@Nonnull final IWeightValue weight, final float gradient) {
             float oldWeight = weight.get();
             float delta = computeDelta(weight, gradient);
             float eta = _eta.eta(_numStep);
@@ -225,7 +288,7 @@ public interface Optimizer {
         }
 
         @Override
-        protected float update(@Nonnull final IWeightValue weight, final float gradient) {
+        public float update(@Nonnull final IWeightValue weight, final float gradient) {
             final float new_sum_grad = weight.getSumOfGradients() + gradient;
             // sign(u_{t,i})
             final float sign = (new_sum_grad > 0.f) ? 1.f : -1.f;
@@ -254,4 +317,57 @@ public interface Optimizer {
 
     }
 
+    /**
+     * FTRL-Proximal, Follow-The-Regularized-Leader with per-coordinate learning rates.
+     *
+     * The L1 shrinkage is applied lazily, i.e., only to the features of a training example. When
+     * the L1 term makes a weight zero, the accumulated z and n are kept for the later updates.
+     *
+     * - H. B. McMahan et al.: "Ad Click Prediction: a View from the Trenches." KDD 2013.
+     */
+    static abstract class FTRL extends OptimizerBase {
+
+        private final float alpha;
+        private final float beta;
+        private final float lambda1;
+        private final float lambda2;
+
+        public FTRL(@Nonnull Map<String, String> options) {
+            super(options);
+            this.alpha = Primitives.parseFloat(options.get("alpha"), 0.5f);
+            if (alpha == 0.f) {
+                throw new IllegalArgumentException("-alpha SHOULD NOT be 0");
+            }
+            this.beta = Primitives.parseFloat(options.get("beta"), 1.0f);
+            this.lambda1 = Primitives.parseFloat(options.get("lambda1"), 0.0002f);
+            this.lambda2 = Primitives.parseFloat(options.get("lambda2"), 0.0001f);
+        }
+
+        @Override
+        public float update(@Nonnull final IWeightValue weight, final float gradient) {
+            final float z = weight.getSumOfGradients();
+            final double n = weight.getSumOfSquaredGradients();
+            final double newN = n + gradient * gradient;
+            final float sigma = (float) ((Math.sqrt(newN) - Math.sqrt(n)) / alpha);
+            final float newZ = z + gradient - sigma * weight.get();
+            final float newWeight;
+            if (Math.abs(newZ) <= lambda1) {
+                newWeight = 0.f;
+            } else {
+                newWeight = (float) ((MathUtils.sign(newZ) * lambda1 - newZ)
+                        / ((beta + Math.sqrt(newN)) / alpha + lambda2));
+            }
+            weight.set(newWeight);
+            weight.setSumOfSquaredGradients((float) newN);
+            weight.setSumOfGradients(newZ);
+            return newWeight;
+        }
+
+        @Override
+        public String getOptimizerName() {
+            return "ftrl";
+        }
+
+    }
+
 }
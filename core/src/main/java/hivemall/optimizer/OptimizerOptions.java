@@ -42,7 +42,7 @@ public final class OptimizerOptions {
 
     public static void setup(@Nonnull Options opts) {
         opts.addOption("opt", "optimizer", true,
-            "Optimizer to update weights [default: adagrad, sgd, adadelta, adam]");
+            "Optimizer to update weights [default: adagrad, sgd, adadelta, adam, ftrl]");
         opts.addOption("eps", true, "Denominator value of AdaDelta/AdaGrad [default 1e-6]");
         opts.addOption("rho", "decay", true, "Decay rate of AdaDelta [default 0.95]");
         // regularization
@@ -57,6 +57,12 @@ public final class OptimizerOptions {
         opts.addOption("t", "total_steps", true, "a total of n_samples * epochs time steps");
         opts.addOption("power_t", true,
             "The exponent for inverse scaling learning rate [default 0.1]");
+        // FTRL
+        opts.addOption("alpha", true, "Learning rate of FTRL [default 0.5]");
+        opts.addOption("beta", true, "Smoothing parameter of FTRL [default 1.0], "
+                + "or decay rate of the first moment of Adam [default 0.9]");
+        opts.addOption("lambda1", true, "L1 regularization term of FTRL [default 0.0002]");
+        opts.addOption("lambda2", true, "L2 regularization term of FTRL [default 0.0001]");
         // other
         opts.addOption("scale", true, "Scaling factor for cumulative weights [100.0]");
     }
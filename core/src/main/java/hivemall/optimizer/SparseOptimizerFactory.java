@@ -65,6 +65,9 @@ public final class SparseOptimizerFactory {
             }
         } else if ("adam".equalsIgnoreCase(optimizerName)) {
             optimizerImpl = new Adam(ndims, options);
+        } else if ("ftrl".equalsIgnoreCase(optimizerName)) {
+            // FTRL has its own L1/L2 regularization and thus other `-regularization` is ignored
+            optimizerImpl = new FTRL(ndims, options);
         } else {
             throw new IllegalArgumentException("Unsupported optimizer name: " + optimizerName);
         }
@@ -101,6 +104,22 @@ public final class SparseOptimizerFactory {
             return update(auxWeight, gradient);
         }
 
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            return SparseOptimizerFactory.getState(auxWeights, feature, dst);
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            auxWeights.put(feature, new WeightValue.WeightValueParamsF2(weight, src[0], src[1]));
+        }
+
     }
 
     @NotThreadSafe
@@ -119,7 +138,7 @@ public final class SparseOptimizerFactory {
                 final float gradient) {
             IWeightValue auxWeight = auxWeights.get(feature);
             if (auxWeight == null) {
-                auxWeight = new WeightValue.WeightValueParamsF2(weight, 0.f, 0.f);
+                auxWeight = new WeightValue.WeightValueParamsF1(weight, 0.f);
                 auxWeights.put(feature, auxWeight);
             } else {
                 auxWeight.set(weight);
@@ -127,6 +146,27 @@ public final class SparseOptimizerFactory {
             return update(auxWeight, gradient);
         }
 
+        @Override
+        public int getNumStates() {
+            return 1;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            final IWeightValue auxWeight = auxWeights.get(feature);
+            if (auxWeight == null) {
+                return false;
+            }
+            dst[0] = auxWeight.getSumOfSquaredGradients();
+            return true;
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            auxWeights.put(feature, new WeightValue.WeightValueParamsF1(weight, src[0]));
+        }
+
     }
 
     @NotThreadSafe
@@ -153,6 +193,22 @@ public final class SparseOptimizerFactory {
             return update(auxWeight, gradient);
         }
 
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            return SparseOptimizerFactory.getState(auxWeights, feature, dst);
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            auxWeights.put(feature, new WeightValue.WeightValueParamsF2(weight, src[0], src[1]));
+        }
+
     }
 
     @NotThreadSafe
@@ -184,6 +240,76 @@ public final class SparseOptimizerFactory {
             return newWeight;
         }
 
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            return SparseOptimizerFactory.getState(auxWeights, feature, dst);
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            auxWeights.put(feature, new WeightValue.WeightValueParamsF2(weight, src[0], src[1]));
+        }
+
+    }
+
+    @NotThreadSafe
+    static final class FTRL extends Optimizer.FTRL {
+
+        @Nonnull
+        private final Object2ObjectMap<Object, IWeightValue> auxWeights;
+
+        public FTRL(@Nonnegative int size, @Nonnull Map<String, String> options) {
+            super(options);
+            this.auxWeights = new Object2ObjectOpenHashMap<Object, IWeightValue>(size);
+        }
+
+        @Override
+        public float update(@Nonnull final Object feature, final float weight,
+                final float gradient) {
+            IWeightValue auxWeight = auxWeights.get(feature);
+            if (auxWeight == null) {
+                auxWeight = new WeightValue.WeightValueParamsF2(weight, 0.f, 0.f);
+                auxWeights.put(feature, auxWeight);
+            } else {
+                auxWeight.set(weight);
+            }
+            return update(auxWeight, gradient);
+        }
+
+        @Override
+        public int getNumStates() {
+            return 2;
+        }
+
+        @Override
+        public boolean getState(@Nonnull final Object feature, @Nonnull final float[] dst) {
+            return SparseOptimizerFactory.getState(auxWeights, feature, dst);
+        }
+
+        @Override
+        public void setState(@Nonnull final Object feature, final float weight,
+                @Nonnull final float[] src) {
+            auxWeights.put(feature, new WeightValue.WeightValueParamsF2(weight, src[0], src[1]));
+        }
+
+    }
+
+    private static boolean getState(
+            @Nonnull final Object2ObjectMap<Object, IWeightValue> auxWeights,
+            @Nonnull final Object feature, @Nonnull final float[] dst) {
+        final IWeightValue auxWeight = auxWeights.get(feature);
+        if (auxWeight == null) {
+            return false;
+        }
+        dst[0] = auxWeight.getFloatParams(1);
+        dst[1] = auxWeight.getFloatParams(2);
+        return true;
     }
 
 }
@@ -21,13 +21,13 @@ package hivemall.recommend;
 import hivemall.UDTFWithOptions;
 import hivemall.annotations.VisibleForTesting;
 import hivemall.common.ConversionState;
+import hivemall.common.EpochReplayBuffer;
 import hivemall.math.matrix.FloatMatrix;
 import hivemall.math.matrix.sparse.floats.DoKFloatMatrix;
 import hivemall.math.vector.VectorProcedure;
 import hivemall.utils.collections.Fastutil;
+import hivemall.utils.concurrent.ExecutorFactory;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.io.FileUtils;
-import hivemall.utils.io.NioStatefulSegment;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.Primitives;
 import hivemall.utils.lang.SizeOf;
@@ -41,13 +41,14 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -110,12 +111,13 @@ public class SlimUDTF extends UDTFWithOptions {
     private double l1;
     private double l2;
     private int numIterations;
+    private int numThreads;
 
     //--------------------------------------------
     // model parameters and else
 
-    /** item-item weight matrix */
-    private transient DoKFloatMatrix _weightMatrix;
+    /** item-item weight matrix whose rows are sharded by item i */
+    private transient WeightShard[] _weightShards;
 
     //--------------------------------------------
     // caching for each item i
@@ -138,8 +140,10 @@ public class SlimUDTF extends UDTFWithOptions {
     private transient FloatMatrix _dataMatrix;
 
     // used to store KNN data into temporary file for iterative training
-    private transient NioStatefulSegment _fileIO;
-    private transient ByteBuffer _inputBuf;
+    @Nullable
+    private transient EpochReplayBuffer _replayBuffer;
+    private long _replayMemoryBudget;
+    private boolean _shuffleBlocks;
 
     private ConversionState _cvState;
     private long _observedTrainingExamples;
@@ -187,7 +191,7 @@ public class SlimUDTF extends UDTFWithOptions {
 
         this._observedTrainingExamples = 0L;
         this._previousItemId = Integer.MIN_VALUE;
-        this._weightMatrix = null;
+        this._weightShards = null;
         this._dataMatrix = null;
 
         List<String> fieldNames = new ArrayList<>();
@@ -216,6 +220,9 @@ public class SlimUDTF extends UDTFWithOptions {
             "Whether to disable convergence check [default: enabled]");
         opts.addOption("cv_rate", "convergence_rate", true,
             "Threshold to determine convergence [default: 0.005]");
+        opts.addOption("threads", "num_threads", true,
+            "The number of threads to train items in parallel in the iterations [default: 1]");
+        EpochReplayBuffer.setup(opts);
         return opts;
     }
 
@@ -226,6 +233,7 @@ public class SlimUDTF extends UDTFWithOptions {
         double l1 = 0.001d;
         double l2 = 0.0005d;
         int numIterations = 30;
+        int numThreads = 1;
         boolean conversionCheck = true;
         double cv_rate = 0.005d;
 
@@ -249,6 +257,12 @@ public class SlimUDTF extends UDTFWithOptions {
                     "Argument `int iters` must be greater than 0: " + numIterations);
             }
 
+            numThreads = Primitives.parseInt(cl.getOptionValue("num_threads"), numThreads);
+            if (numThreads <= 0) {
+                throw new UDFArgumentException(
+                    "Argument `int num_threads` must be greater than 0: " + numThreads);
+            }
+
             conversionCheck = !cl.hasOption("disable_cvtest");
 
             cv_rate = Primitives.parseDouble(cl.getOptionValue("cv_rate"), cv_rate);
@@ -261,15 +275,21 @@ public class SlimUDTF extends UDTFWithOptions {
         this.l1 = l1;
         this.l2 = l2;
         this.numIterations = numIterations;
+        this.numThreads = numThreads;
         this._cvState = new ConversionState(conversionCheck, cv_rate);
+        this._replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this._shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
 
         return cl;
     }
 
     @Override
     public void process(@Nonnull Object[] args) throws HiveException {
-        if (_weightMatrix == null) {// initialize variables
-            this._weightMatrix = new DoKFloatMatrix();
+        if (_weightShards == null) {// initialize variables
+            this._weightShards = new WeightShard[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                _weightShards[i] = new WeightShard();
+            }
             if (numIterations >= 2) {
                 this._dataMatrix = new DoKFloatMatrix();
             }
@@ -303,37 +323,22 @@ public class SlimUDTF extends UDTFWithOptions {
     private void recordTrainingInput(final int itemI,
             @Nonnull final Int2ObjectMap<Int2FloatMap> knnItems, final int numKNNItems)
             throws HiveException {
-        ByteBuffer buf = this._inputBuf;
-        NioStatefulSegment dst = this._fileIO;
-
-        if (buf == null) {
-            // invoke only at task node (initialize is also invoked in compilation)
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_slim", ".sgmt"); // to save KNN data
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            }
-
-            this._inputBuf = buf = ByteBuffer.allocateDirect(8 * 1024 * 1024); // 8MB
-            this._fileIO = dst = new NioStatefulSegment(file, false);
+        EpochReplayBuffer dst = this._replayBuffer;
+        if (dst == null) {
+            // to save KNN data
+            this._replayBuffer = dst = new EpochReplayBuffer("hivemall_slim",
+                _replayMemoryBudget, EpochReplayBuffer.DEFAULT_BLOCK_SIZE, _shuffleBlocks);
         }
 
         int recordBytes = SizeOf.INT + SizeOf.INT + SizeOf.INT * 2 * knnItems.size()
                 + (SizeOf.INT + SizeOf.FLOAT) * numKNNItems;
-        int requiredBytes = SizeOf.INT + recordBytes; // need to allocate space for "recordBytes" itself
 
-        int remain = buf.remaining();
-        if (remain < requiredBytes) {
-            writeBuffer(buf, dst);
+        final ByteBuffer buf;
+        try {
+            buf = dst.beginRecord(recordBytes);
+        } catch (IOException e) {
+            throw new HiveException("Failed to record KNN entries of item: " + itemI, e);
         }
-
-        buf.putInt(recordBytes);
         buf.putInt(itemI);
         buf.putInt(knnItems.size());
 
@@ -350,21 +355,10 @@ public class SlimUDTF extends UDTFWithOptions {
         }
     }
 
-    private static void writeBuffer(@Nonnull final ByteBuffer srcBuf,
-            @Nonnull final NioStatefulSegment dst) throws HiveException {
-        srcBuf.flip();
-        try {
-            dst.write(srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing a buffer to file", e);
-        }
-        srcBuf.clear();
-    }
-
     private void train(final int itemI, @Nonnull final Int2FloatMap ri,
             @Nonnull final Int2ObjectMap<Int2FloatMap> kNNi, final int itemJ,
             @Nonnull final Int2FloatMap rj) {
-        final FloatMatrix W = _weightMatrix;
+        final FloatMatrix W = shardOf(itemI).weights;
 
         final int N = rj.size();
         if (N == 0) {
@@ -396,14 +390,19 @@ public class SlimUDTF extends UDTFWithOptions {
         W.set(itemI, itemJ, getUpdateTerm(gradSum, rateSum, l1, l2));
     }
 
-    private void train(final int itemI, @Nonnull final Int2ObjectMap<Int2FloatMap> knnItems,
-            final int itemJ) {
+    /**
+     * Updates w_ij in the iterations. The data matrix is read-only in the iterations and
+     * {@code W} is only accessed by the thread that owns the shard of item i.
+     *
+     * @return the loss of w_ij
+     */
+    private double train(final int itemI, @Nonnull final Int2ObjectMap<Int2FloatMap> knnItems,
+            final int itemJ, @Nonnull final FloatMatrix W) {
         final FloatMatrix A = _dataMatrix;
-        final FloatMatrix W = _weightMatrix;
 
         final int N = A.numColumns(itemJ);
         if (N == 0) {
-            return;
+            return 0.d;
         }
 
         final MutableDouble mutableGradSum = new MutableDouble(0.d);
@@ -427,9 +426,9 @@ public class SlimUDTF extends UDTFWithOptions {
 
         double wij = W.get(itemI, itemJ, 0.d);
         double loss = mutableLossSum.getValue() / N + 0.5 * l2 * wij * wij + l1 * wij;
-        _cvState.incrLoss(loss);
 
         W.set(itemI, itemJ, getUpdateTerm(gradSum, rateSum, l1, l2));
+        return loss;
     }
 
     private static double predict(final int user, final int itemI,
@@ -473,7 +472,7 @@ public class SlimUDTF extends UDTFWithOptions {
     public void close() throws HiveException {
         finalizeTraining();
         forwardModel();
-        this._weightMatrix = null;
+        this._weightShards = null;
     }
 
     @VisibleForTesting
@@ -489,144 +488,103 @@ public class SlimUDTF extends UDTFWithOptions {
     }
 
     private void runIterativeTraining() throws HiveException {
-        final ByteBuffer buf = this._inputBuf;
-        final NioStatefulSegment dst = this._fileIO;
-        assert (buf != null);
-        assert (dst != null);
+        final EpochReplayBuffer src = this._replayBuffer;
+        if (src == null) {
+            return; // no training example
+        }
 
         final Reporter reporter = getReporter();
         final Counters.Counter iterCounter = (reporter == null) ? null
                 : reporter.getCounter("hivemall.recommend.slim$Counter", "iteration");
 
+        final WeightShard[] shards = _weightShards;
+        final int numShards = shards.length;
+        // bounds the replayed records held by the batches waiting for workers
+        final int maxPendingBatches = numShards * 2;
+        final Semaphore pendingBatches = new Semaphore(maxPendingBatches);
+        if (numShards > 1) {
+            for (WeightShard shard : shards) {
+                shard.startWorker();
+            }
+        }
+
         try {
-            if (dst.getPosition() == 0L) {// run iterations w/o temporary file
-                if (buf.position() == 0) {
-                    return; // no training example
-                }
-                buf.flip();
-                for (int iter = 2; iter < numIterations; iter++) {
-                    _cvState.next();
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (buf.remaining() > 0) {
-                        int recordBytes = buf.getInt();
-                        assert (recordBytes > 0) : recordBytes;
-                        replayTrain(buf);
+            for (int iter = 2; iter < numIterations; iter++) {
+                _cvState.next();
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer buf;
+                while ((buf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-                    buf.rewind();
-                    if (_cvState.isConverged(_observedTrainingExamples)) {
-                        break;
+                    if (numShards == 1) {
+                        replayTrain(buf, shards[0]);
+                    } else {
+                        int itemI = buf.getInt(buf.position());
+                        shardOf(itemI).append(buf, pendingBatches);
                     }
                 }
-                logger.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(_observedTrainingExamples)
-                        + " training examples on memory (thus "
-                        + NumberUtils.formatNumber(
-                            _observedTrainingExamples * _cvState.getCurrentIteration())
-                        + " training updates in total) ");
-
-            } else { // read training examples in the temporary file and invoke train for each example
-                // write KNNi in buffer to a temporary file
-                if (buf.remaining() > 0) {
-                    writeBuffer(buf, dst);
-                }
-
-                try {
-                    dst.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + dst.getFile().getAbsolutePath(), e);
-                }
-
-                if (logger.isInfoEnabled()) {
-                    File tmpFile = dst.getFile();
-                    logger.info(
-                        "Wrote KNN entries of axis items to a temporary file for iterative training: "
-                                + tmpFile.getAbsolutePath() + " ("
-                                + FileUtils.prettyFileSize(tmpFile) + ")");
-                }
-
-                // run iterations
-                for (int iter = 2; iter < numIterations; iter++) {
-                    _cvState.next();
-                    setCounterValue(iterCounter, iter);
-
-                    buf.clear();
-                    dst.resetPosition();
-                    while (true) {
-                        reportProgress(reporter);
-                        // load a KNNi to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = dst.read(buf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + dst.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
+                replay.close();
 
-                        // reads training examples from a buffer
-                        buf.flip();
-                        int remain = buf.remaining();
-                        if (remain < SizeOf.INT) {
-                            throw new HiveException("Illegal file format was detected");
-                        }
-                        while (remain >= SizeOf.INT) {
-                            int pos = buf.position();
-                            int recordBytes = buf.getInt();
-                            remain -= SizeOf.INT;
-                            if (remain < recordBytes) {
-                                buf.position(pos);
-                                break;
-                            }
-
-                            replayTrain(buf);
-                            remain -= recordBytes;
-                        }
-                        buf.compact();
+                if (numShards > 1) {
+                    for (WeightShard shard : shards) {
+                        shard.flush(pendingBatches);
                     }
-                    if (_cvState.isConverged(_observedTrainingExamples)) {
-                        break;
+                    // wait until all the batches are trained
+                    pendingBatches.acquire(maxPendingBatches);
+                    pendingBatches.release(maxPendingBatches);
+                }
+                for (WeightShard shard : shards) {
+                    Throwable error = shard.error;
+                    if (error != null) {
+                        throw error;
                     }
+                    _cvState.incrLoss(shard.loss);
+                    shard.loss = 0.d;
                 }
-                logger.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
-                        + NumberUtils.formatNumber(_observedTrainingExamples)
-                        + " training examples on memory and KNNi data on secondary storage (thus "
-                        + NumberUtils.formatNumber(
-                            _observedTrainingExamples * _cvState.getCurrentIteration())
-                        + " training updates in total) ");
 
+                if (_cvState.isConverged(_observedTrainingExamples)) {
+                    break;
+                }
             }
+            logger.info("Performed " + _cvState.getCurrentIteration() + " iterations of "
+                    + NumberUtils.formatNumber(_observedTrainingExamples)
+                    + " training examples on memory and KNNi data "
+                    + (src.isSpilled() ? "on secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(
+                        _observedTrainingExamples * _cvState.getCurrentIteration())
+                    + " training updates in total) using " + numShards + " threads");
         } catch (Throwable e) {
             throw new HiveException("Exception caused in the iterative training", e);
         } finally {
+            for (WeightShard shard : shards) {
+                shard.stopWorker();
+            }
             // delete the temporary file and release resources
             try {
-                dst.close(true);
+                src.close();
             } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + dst.getFile().getAbsolutePath(), e);
+                throw new HiveException("Failed to close a replay buffer", e);
             }
-            this._inputBuf = null;
-            this._fileIO = null;
+            this._replayBuffer = null;
         }
     }
 
-    private void replayTrain(@Nonnull final ByteBuffer buf) {
+    private void replayTrain(@Nonnull final ByteBuffer buf, @Nonnull final WeightShard shard) {
         final int itemI = buf.getInt();
         final int knnSize = buf.getInt();
 
-        final Int2ObjectMap<Int2FloatMap> knnItems = new Int2ObjectOpenHashMap<>(1024);
-        final IntSet pairItems = new IntOpenHashSet();
+        final Int2ObjectMap<Int2FloatMap> knnItems = shard.knnItems;
+        final IntSet pairItems = shard.pairItems;
+        knnItems.clear();
+        pairItems.clear();
         for (int i = 0; i < knnSize; i++) {
             int user = buf.getInt();
             int ruSize = buf.getInt();
-            Int2FloatMap ru = new Int2FloatOpenHashMap(ruSize);
-            ru.defaultReturnValue(0.f);
+            Int2FloatMap ru = shard.scratchMap(i, ruSize);
 
             for (int j = 0; j < ruSize; j++) {
                 int itemK = buf.getInt();
@@ -637,9 +595,18 @@ public class SlimUDTF extends UDTFWithOptions {
             knnItems.put(user, ru);
         }
 
+        final FloatMatrix W = shard.weights;
+        double loss = 0.d;
         for (int itemJ : pairItems) {
-            train(itemI, knnItems, itemJ);
+            loss += train(itemI, knnItems, itemJ, W);
         }
+        shard.loss += loss;
+    }
+
+    @Nonnull
+    private WeightShard shardOf(final int itemI) {
+        final WeightShard[] shards = _weightShards;
+        return shards[Math.abs(itemI % shards.length)];
     }
 
     private void forwardModel() throws HiveException {
@@ -649,7 +616,7 @@ public class SlimUDTF extends UDTFWithOptions {
         final Object[] forwardObj = new Object[] {f0, f1, f2};
 
         final MutableObject<HiveException> catched = new MutableObject<>();
-        _weightMatrix.eachNonZeroCell(new VectorProcedure() {
+        final VectorProcedure proc = new VectorProcedure() {
             @Override
             public void apply(int i, int j, float value) {
                 if (value == 0.f) {
@@ -664,7 +631,10 @@ public class SlimUDTF extends UDTFWithOptions {
                     catched.setIfAbsent(e);
                 }
             }
-        });
+        };
+        for (WeightShard shard : _weightShards) {
+            shard.weights.eachNonZeroCell(proc);
+        }
         HiveException ex = catched.get();
         if (ex != null) {
             throw ex;
@@ -752,4 +722,112 @@ public class SlimUDTF extends UDTFWithOptions {
 
         return dst;
     }
+
+    /**
+     * A shard of the rows of the weight matrix. Since the rows of different items do not interact
+     * in the coordinate descent, each shard is trained by its own worker thread in the iterations.
+     */
+    private final class WeightShard {
+        private static final int BATCH_BYTES = 256 * 1024; // 256 KiB
+
+        @Nonnull
+        final DoKFloatMatrix weights;
+
+        // scratch space to decode replayed KNN entries
+        @Nonnull
+        final Int2ObjectMap<Int2FloatMap> knnItems;
+        @Nonnull
+        final IntSet pairItems;
+        @Nonnull
+        private final List<Int2FloatOpenHashMap> scratchMaps;
+
+        double loss;
+        @Nullable
+        volatile Throwable error;
+
+        @Nullable
+        private ExecutorService worker;
+        @Nullable
+        private ByteBuffer batch;
+
+        WeightShard() {
+            this.weights = new DoKFloatMatrix();
+            this.knnItems = new Int2ObjectOpenHashMap<>(1024);
+            this.pairItems = new IntOpenHashSet();
+            this.scratchMaps = new ArrayList<>();
+        }
+
+        @Nonnull
+        Int2FloatMap scratchMap(final int index, final int expectedSize) {
+            if (index < scratchMaps.size()) {
+                Int2FloatOpenHashMap map = scratchMaps.get(index);
+                map.clear();
+                return map;
+            }
+            Int2FloatOpenHashMap map = new Int2FloatOpenHashMap(expectedSize);
+            map.defaultReturnValue(0.f);
+            scratchMaps.add(map);
+            return map;
+        }
+
+        void startWorker() {
+            this.worker = ExecutorFactory.newFixedThreadPool(1, "Hivemall-SlimWorker", true);
+        }
+
+        void stopWorker() {
+            if (worker != null) {
+                worker.shutdownNow();
+                this.worker = null;
+            }
+            this.batch = null;
+        }
+
+        /**
+         * Copies a replayed record to the current batch because the replay buffer reuses the
+         * memory of the record.
+         */
+        void append(@Nonnull final ByteBuffer record, @Nonnull final Semaphore pendingBatches)
+                throws InterruptedException {
+            final int recordBytes = record.remaining();
+            ByteBuffer dst = batch;
+            if (dst != null && dst.remaining() < recordBytes) {
+                flush(pendingBatches);
+                dst = null;
+            }
+            if (dst == null) {
+                this.batch = dst = ByteBuffer.allocate(Math.max(BATCH_BYTES, recordBytes));
+            }
+            dst.put(record);
+        }
+
+        void flush(@Nonnull final Semaphore pendingBatches) throws InterruptedException {
+            final ByteBuffer dst = batch;
+            final ExecutorService worker = this.worker;
+            if (dst == null || worker == null) {
+                return;
+            }
+            this.batch = null;
+            dst.flip();
+
+            pendingBatches.acquire();
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (error != null) {
+                            return; // skip the rest after a failure
+                        }
+                        while (dst.hasRemaining()) {
+                            replayTrain(dst, WeightShard.this);
+                        }
+                    } catch (Throwable e) {
+                        error = e;
+                    } finally {
+                        pendingBatches.release();
+                    }
+                }
+            });
+        }
+    }
+
 }
@@ -64,8 +64,13 @@ public final class GeneralRegressorUDTF extends GeneralLearnerBaseUDTF {
 
     @Override
     protected void train(@Nonnull final FeatureValue[] features, final float target) {
-        float p = predict(features);
-        update(features, target, p);
+        train(features, target, predict(features));
+    }
+
+    @Override
+    protected void train(@Nonnull final FeatureValue[] features, final float target,
+            final float predicted) {
+        update(features, target, predicted);
     }
 
 }
@@ -137,6 +137,7 @@ public abstract class RegressionBaseUDTF extends LearnerBaseUDTF {
         float target = PrimitiveObjectInspectorUtils.getFloat(args[1], targetOI);
         checkTargetValue(target);
 
+        applyMixedUpdates();
         count++;
 
         train(featureVector, target);
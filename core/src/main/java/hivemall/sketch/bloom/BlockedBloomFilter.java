@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.bloom;
+
+import hivemall.utils.hashing.MurmurHash3;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Split block Bloom filter where each key sets 8 bits in a single 512-bit block, i.e., one bit in
+ * each of the 8 words of a block, so that an insertion or a probe touches a single cache line.
+ * 
+ * The filter is serialized as a 8-byte header followed by the words in big endian, and
+ * {@link #mightContain(byte[], int, int, Text)} probes the serialized form without
+ * deserializing it.
+ * 
+ * @link https://arxiv.org/abs/2101.01719
+ */
+public final class BlockedBloomFilter {
+
+    public static final long DEFAULT_CAPACITY = 1024 * 1024;
+    public static final double DEFAULT_ERROR_RATE = 0.005d;
+
+    private static final int MAGIC = 0x53424246; // "SBBF"
+    private static final int HEADER_BYTES = 8;
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BLOCK_BYTES = WORDS_PER_BLOCK * 8;
+    private static final int MAX_BLOCKS = (Integer.MAX_VALUE - HEADER_BYTES) / BLOCK_BYTES;
+    private static final double ERROR_RATE_HEADROOM = 0.95d;
+    private static final int SEED = 0x9747b28c;
+    private static final int[] SALT = {0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+            0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31};
+
+    @Nonnull
+    private final long[] words;
+    @Nonnegative
+    private final int numBlocks;
+
+    public BlockedBloomFilter(@Nonnegative final long capacity, final double errorRate) {
+        this(numBlocks(capacity, errorRate));
+    }
+
+    private BlockedBloomFilter(@Nonnegative final int numBlocks) {
+        this.numBlocks = numBlocks;
+        this.words = new long[numBlocks * WORDS_PER_BLOCK];
+    }
+
+    /**
+     * @return the number of 512-bit blocks to keep the false positive rate below the given error
+     *         rate for the given number of keys
+     */
+    static int numBlocks(@Nonnegative final long capacity, final double errorRate) {
+        if (capacity <= 0L) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        if (errorRate <= 0.d || errorRate >= 1.d) {
+            throw new IllegalArgumentException("errorRate must be in range (0,1): " + errorRate);
+        }
+        // a split block Bloom filter needs at least the bits of a classic Bloom filter of k = 8,
+        // i.e., bits = -kn / ln(1 - p^(1/k))
+        double bits = -WORDS_PER_BLOCK * (double) capacity
+                / Math.log(1.d - Math.pow(errorRate, 1.d / WORDS_PER_BLOCK));
+        long lo = Math.max(1L, (long) Math.ceil(bits / (BLOCK_BYTES * 8)));
+        // leave headroom since the rate of a filter varies with the numbers of keys in its blocks
+        final double targetRate = errorRate * ERROR_RATE_HEADROOM;
+        long hi = lo;
+        while (falsePositiveRate(capacity, hi) > targetRate) {
+            lo = hi + 1L;
+            hi *= 2L;
+            if (hi > MAX_BLOCKS * 2L) {
+                break;
+            }
+        }
+        // binary search for the least number of blocks that satisfies the error rate
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (falsePositiveRate(capacity, mid) > targetRate) {
+                lo = mid + 1L;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo > MAX_BLOCKS) {
+            throw new IllegalArgumentException("Too large bloom filter for capacity=" + capacity
+                    + " and errorRate=" + errorRate);
+        }
+        return (int) lo;
+    }
+
+    /**
+     * @return the expected false positive rate of the given number of blocks for the given number
+     *         of keys, i.e., the probability that all the 8 bits of a probe are set in a block
+     *         whose number of keys follows a Poisson distribution
+     */
+    static double falsePositiveRate(@Nonnegative final long capacity,
+            @Nonnegative final long numBlocks) {
+        final double lambda = capacity / (double) numBlocks;
+        final double logLambda = Math.log(lambda);
+        final double logMiss = Math.log(1.d - 1.d / 64); // a key does not set a bit of a word
+        final long maxKeys = (long) Math.ceil(lambda + 12.d * Math.sqrt(lambda) + 32.d);
+        double fpr = 0.d;
+        double logPmf = -lambda; // log of P(j keys in a block)
+        for (long j = 1L; j <= maxKeys; j++) {
+            logPmf += logLambda - Math.log(j);
+            double bitSet = -Math.expm1(j * logMiss);
+            fpr += Math.exp(logPmf + WORDS_PER_BLOCK * Math.log(bitSet));
+        }
+        return fpr;
+    }
+
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+
+    public void add(@Nonnull final Text key) {
+        add(key.getBytes(), 0, key.getLength());
+    }
+
+    public void add(@Nonnull final byte[] key, final int offset, final int len) {
+        final int h = MurmurHash3.murmurhash3_x86_32(key, offset, len, SEED);
+        final int base = block(h, numBlocks) * WORDS_PER_BLOCK;
+        final int x = rehash(h);
+        final long[] words = this.words;
+        for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+            words[base + w] |= 1L << ((x * SALT[w]) >>> 26);
+        }
+    }
+
+    public boolean mightContain(@Nonnull final Text key) {
+        final int h = MurmurHash3.murmurhash3_x86_32(key.getBytes(), 0, key.getLength(), SEED);
+        final int base = block(h, numBlocks) * WORDS_PER_BLOCK;
+        final int x = rehash(h);
+        final long[] words = this.words;
+        for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+            long mask = 1L << ((x * SALT[w]) >>> 26);
+            if ((words[base + w] & mask) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Probes a serialized filter.
+     */
+    public static boolean mightContain(@Nonnull final byte[] buf, final int offset,
+            final int len, @Nonnull final Text key) {
+        final int numBlocks = checkHeader(buf, offset, len);
+        final int h = MurmurHash3.murmurhash3_x86_32(key.getBytes(), 0, key.getLength(), SEED);
+        final int base = offset + HEADER_BYTES + block(h, numBlocks) * BLOCK_BYTES;
+        final int x = rehash(h);
+        for (int w = 0; w < WORDS_PER_BLOCK; w++) {
+            long mask = 1L << ((x * SALT[w]) >>> 26);
+            if ((getLong(buf, base + w * 8) & mask) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void or(@Nonnull final BlockedBloomFilter other) {
+        checkCompatible(other);
+        final long[] words = this.words, otherWords = other.words;
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= otherWords[i];
+        }
+    }
+
+    public void and(@Nonnull final BlockedBloomFilter other) {
+        checkCompatible(other);
+        final long[] words = this.words, otherWords = other.words;
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= otherWords[i];
+        }
+    }
+
+    public void not() {
+        final long[] words = this.words;
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ~words[i];
+        }
+    }
+
+    private void checkCompatible(@Nonnull final BlockedBloomFilter other) {
+        if (other.numBlocks != numBlocks) {
+            throw new IllegalArgumentException("Cannot combine bloom filters of different sizes: "
+                    + numBlocks + " and " + other.numBlocks + " blocks");
+        }
+    }
+
+    @Nonnull
+    public byte[] serialize() {
+        final long[] words = this.words;
+        final byte[] buf = new byte[HEADER_BYTES + words.length * 8];
+        putInt(buf, 0, MAGIC);
+        putInt(buf, 4, numBlocks);
+        for (int i = 0, pos = HEADER_BYTES; i < words.length; i++, pos += 8) {
+            putLong(buf, pos, words[i]);
+        }
+        return buf;
+    }
+
+    @Nonnull
+    public static BlockedBloomFilter deserialize(@Nonnull final byte[] buf, final int offset,
+            final int len) {
+        final int numBlocks = checkHeader(buf, offset, len);
+        final BlockedBloomFilter filter = new BlockedBloomFilter(numBlocks);
+        final long[] words = filter.words;
+        for (int i = 0, pos = offset + HEADER_BYTES; i < words.length; i++, pos += 8) {
+            words[i] = getLong(buf, pos);
+        }
+        return filter;
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    private static int checkHeader(@Nonnull final byte[] buf, final int offset, final int len) {
+        if (len < HEADER_BYTES || getInt(buf, offset) != MAGIC) {
+            throw new IllegalArgumentException("Not a blocked bloom filter");
+        }
+        final int numBlocks = getInt(buf, offset + 4);
+        if (numBlocks <= 0 || numBlocks > MAX_BLOCKS
+                || len != HEADER_BYTES + numBlocks * BLOCK_BYTES) {
+            throw new IllegalArgumentException(
+                "Illegal size of a blocked bloom filter: " + numBlocks + " blocks in " + len
+                        + " bytes");
+        }
+        return numBlocks;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Arrays.equals(words, ((BlockedBloomFilter) obj).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    private static int block(final int h, final int numBlocks) {
+        return (int) (((h & 0xffffffffL) * numBlocks) >>> 32);
+    }
+
+    /**
+     * Remixes the hash value so that the bits in a block are independent from the block index.
+     */
+    private static int rehash(int h) {
+        h = (h ^ (h >>> 15)) * 0x2c1b3c6d;
+        h = (h ^ (h >>> 12)) * 0x297a2d39;
+        return h ^ (h >>> 15);
+    }
+
+    private static int getInt(@Nonnull final byte[] b, final int i) {
+        return ((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8)
+                | (b[i + 3] & 0xff);
+    }
+
+    private static long getLong(@Nonnull final byte[] b, final int i) {
+        return ((long) getInt(b, i) << 32) | (getInt(b, i + 4) & 0xffffffffL);
+    }
+
+    private static void putInt(@Nonnull final byte[] b, final int i, final int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+    }
+
+    private static void putLong(@Nonnull final byte[] b, final int i, final long v) {
+        putInt(b, i, (int) (v >>> 32));
+        putInt(b, i + 4, (int) v);
+    }
+
+}
@@ -26,12 +26,14 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDF;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
 
 @Description(name = "bloom_and",
-        value = "_FUNC_(string bloom1, string bloom2) - Returns the logical AND of two bloom filters",
+        value = "_FUNC_(string|binary bloom1, string|binary bloom2)"
+                + " - Returns the logical AND of two bloom filters",
         extended = "SELECT bloom_and(bf1, bf2) FROM xxx;")
 @UDFType(deterministic = true, stateful = false)
 public final class BloomAndUDF extends UDF {
@@ -60,4 +62,21 @@ public final class BloomAndUDF extends UDF {
         }
     }
 
+    @Nullable
+    public BytesWritable evaluate(@Nullable BytesWritable bloom1, @Nullable BytesWritable bloom2)
+            throws HiveException {
+        if (bloom1 == null || bloom2 == null) {
+            return null;
+        }
+
+        try {
+            BlockedBloomFilter filter =
+                    BlockedBloomFilter.deserialize(bloom1.getBytes(), 0, bloom1.getLength());
+            filter.and(BlockedBloomFilter.deserialize(bloom2.getBytes(), 0, bloom2.getLength()));
+            return new BytesWritable(filter.serialize());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+    }
+
 }
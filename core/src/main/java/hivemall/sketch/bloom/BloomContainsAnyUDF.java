@@ -28,6 +28,7 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDF;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
@@ -35,8 +36,8 @@ import org.apache.hadoop.util.bloom.Key;
 
 //@formatter:off
 @Description(name = "bloom_contains_any",
-        value = "_FUNC_(string bloom, string key) or _FUNC_(string bloom, array<string> keys)"
-                + "- Returns true if the bloom filter contains any of the given key",
+        value = "_FUNC_(string|binary bloom, array<string> keys)"
+                + " - Returns true if the bloom filter contains any of the given key",
         extended = "WITH data1 as (\n" + 
                 "  SELECT explode(array(1,2,3,4,5)) as id\n" + 
                 "),\n" + 
@@ -91,6 +92,37 @@ public final class BloomContainsAnyUDF extends UDF {
         return Boolean.FALSE;
     }
 
+    /**
+     * Probes a serialized {@link BlockedBloomFilter} without deserializing it.
+     */
+    @Nullable
+    public Boolean evaluate(@Nullable BytesWritable bloom, @Nullable List<Text> keys)
+            throws HiveException {
+        if (bloom == null) {
+            return null;
+        }
+        if (keys == null) {
+            return Boolean.FALSE;
+        }
+
+        final byte[] buf = bloom.getBytes();
+        final int len = bloom.getLength();
+        try {
+            for (Text key : keys) {
+                if (key == null) {
+                    continue;
+                }
+                if (BlockedBloomFilter.mightContain(buf, 0, len, key)) {
+                    return Boolean.TRUE;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+
+        return Boolean.FALSE;
+    }
+
     @Nonnull
     private Filter getFilter(@Nonnull final Text bloomStr) throws HiveException {
         final Filter bloom;
@@ -28,6 +28,7 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDF;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
@@ -35,7 +36,8 @@ import org.apache.hadoop.util.bloom.Key;
 
 //@formatter:off
 @Description(name = "bloom_contains",
-        value = "_FUNC_(string bloom, string key) or _FUNC_(string bloom, array<string> keys)"
+        value = "_FUNC_(string|binary bloom, string key)"
+                + " or _FUNC_(string|binary bloom, array<string> keys)"
                 + " - Returns true if the bloom filter contains all the given key(s). Returns false if key is null.",
         extended = "WITH satisfied_movies as (\n" + 
                 "  SELECT bloom(movieid) as movies\n" + 
@@ -114,6 +116,55 @@ public final class BloomContainsUDF extends UDF {
         return Boolean.TRUE;
     }
 
+    /**
+     * Probes a serialized {@link BlockedBloomFilter} without deserializing it.
+     */
+    @Nullable
+    public Boolean evaluate(@Nullable BytesWritable bloom, @Nullable Text key)
+            throws HiveException {
+        if (bloom == null) {
+            return null;
+        }
+        if (key == null) {
+            return Boolean.FALSE;
+        }
+
+        try {
+            return Boolean.valueOf(
+                BlockedBloomFilter.mightContain(bloom.getBytes(), 0, bloom.getLength(), key));
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+    }
+
+    @Nullable
+    public Boolean evaluate(@Nullable BytesWritable bloom, @Nullable List<Text> keys)
+            throws HiveException {
+        if (bloom == null) {
+            return null;
+        }
+        if (keys == null) {
+            return Boolean.FALSE;
+        }
+
+        final byte[] buf = bloom.getBytes();
+        final int len = bloom.getLength();
+        try {
+            for (Text key : keys) {
+                if (key == null) {
+                    continue;
+                }
+                if (BlockedBloomFilter.mightContain(buf, 0, len, key) == false) {
+                    return Boolean.FALSE;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+
+        return Boolean.TRUE;
+    }
+
     @Nonnull
     private Filter getFilter(@Nonnull final Text bloomStr) throws HiveException {
         final Filter bloom;
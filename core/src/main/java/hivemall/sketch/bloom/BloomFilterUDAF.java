@@ -18,15 +18,21 @@
  */
 package hivemall.sketch.bloom;
 
+import hivemall.utils.lang.CommandLineUtils;
+import hivemall.utils.lang.Primitives;
+
 import java.io.IOException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDAF;
 import org.apache.hadoop.hive.ql.exec.UDAFEvaluator;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
@@ -34,7 +40,9 @@ import org.apache.hadoop.util.bloom.Key;
 
 //@formatter:off
 @Description(name = "bloom",
-        value = "_FUNC_(string key) - Constructs a BloomFilter by aggregating a set of keys",
+        value = "_FUNC_(string key [, const string options])"
+                + " - Constructs a BloomFilter by aggregating a set of keys. With options,"
+                + " returns a binary blocked bloom filter of the given -capacity and -error_rate",
         extended = "CREATE TABLE satisfied_movies AS \n" + 
                 "  SELECT bloom(movieid) as movies\n" + 
                 "  FROM (\n" + 
@@ -111,4 +119,88 @@ public final class BloomFilterUDAF extends UDAF {
         }
 
     }
+
+    /**
+     * Evaluator of {@link BlockedBloomFilter} chosen when the options are given.
+     */
+    public static class BlockedEvaluator implements UDAFEvaluator {
+
+        @Nullable
+        private BlockedBloomFilter filter;
+
+        @Override
+        public void init() {
+            this.filter = null;
+        }
+
+        public boolean iterate(@Nullable Text keyStr, @Nullable String options)
+                throws HiveException {
+            if (keyStr == null) {
+                return true;
+            }
+            if (filter == null) {
+                this.filter = newFilter(options);
+            }
+            filter.add(keyStr);
+            return true;
+        }
+
+        @Nonnull
+        private static BlockedBloomFilter newFilter(@Nullable String options)
+                throws HiveException {
+            Options opts = new Options();
+            opts.addOption("capacity", true,
+                "The expected number of keys [default: " + BlockedBloomFilter.DEFAULT_CAPACITY
+                        + "]");
+            opts.addOption("error_rate", true,
+                "The false positive rate [default: " + BlockedBloomFilter.DEFAULT_ERROR_RATE
+                        + "]");
+
+            long capacity = BlockedBloomFilter.DEFAULT_CAPACITY;
+            double errorRate = BlockedBloomFilter.DEFAULT_ERROR_RATE;
+            try {
+                if (options != null) {
+                    CommandLine cl = CommandLineUtils.parseOptions(options.split("\\s+"), opts);
+                    capacity = Primitives.parseLong(cl.getOptionValue("capacity"), capacity);
+                    errorRate =
+                            Primitives.parseDouble(cl.getOptionValue("error_rate"), errorRate);
+                }
+                return new BlockedBloomFilter(capacity, errorRate);
+            } catch (IllegalArgumentException e) {
+                throw new HiveException("Invalid options for bloom: " + options, e);
+            }
+        }
+
+        @Nullable
+        public BytesWritable terminatePartial() {
+            return terminate();
+        }
+
+        public boolean merge(@Nullable BytesWritable partial) throws HiveException {
+            if (partial == null) {
+                return true;
+            }
+            try {
+                BlockedBloomFilter other = BlockedBloomFilter.deserialize(partial.getBytes(), 0,
+                    partial.getLength());
+                if (filter == null) {
+                    this.filter = other;
+                } else {
+                    filter.or(other);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new HiveException(e);
+            }
+            return true;
+        }
+
+        @Nullable
+        public BytesWritable terminate() {
+            if (filter == null) {
+                return null;
+            }
+            return new BytesWritable(filter.serialize());
+        }
+
+    }
 }
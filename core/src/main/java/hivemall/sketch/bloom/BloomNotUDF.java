@@ -26,12 +26,13 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDF;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
 
 @Description(name = "bloom_not",
-        value = "_FUNC_(string bloom) - Returns the logical NOT of a bloom filters",
+        value = "_FUNC_(string|binary bloom) - Returns the logical NOT of a bloom filters",
         extended = "SELECT bloom_not(bf) FROM xxx;")
 @UDFType(deterministic = true, stateful = false)
 public final class BloomNotUDF extends UDF {
@@ -57,4 +58,21 @@ public final class BloomNotUDF extends UDF {
             throw new HiveException(e);
         }
     }
+
+    @Nullable
+    public BytesWritable evaluate(@Nullable BytesWritable bloom) throws HiveException {
+        if (bloom == null) {
+            return null;
+        }
+
+        try {
+            BlockedBloomFilter filter =
+                    BlockedBloomFilter.deserialize(bloom.getBytes(), 0, bloom.getLength());
+            filter.not();
+            return new BytesWritable(filter.serialize());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+    }
+
 }
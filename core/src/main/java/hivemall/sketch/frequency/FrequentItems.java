@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import hivemall.utils.lang.mutable.MutableLong;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Mergeable Misra-Gries sketch of frequent items. Up to 2k counters are buffered, and when a new
+ * item overflows them, the (k+1)-th largest count is subtracted from every counter and
+ * non-positive counters are dropped, which leaves at most k counters as in the merge of Agarwal et
+ * al. The subtracted counts are summed up in the offset, so the actual count of an item lies
+ * between its counter (0 if absent) and the counter plus the offset. Since a subtraction removes
+ * the offset increment from at least k+1 counters, the offset is at most n/(k+1) for n inputs.
+ * 
+ * @link https://arxiv.org/abs/1206.5725
+ */
+public final class FrequentItems {
+
+    public static final int DEFAULT_K = 1024;
+    public static final int MIN_K = 4;
+    public static final int MAX_K = 1 << 24;
+
+    private static final byte VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Nonnegative
+    private final int k;
+    @Nonnull
+    private final Map<String, MutableLong> counters;
+    /** The sum of the input weights */
+    private long n;
+    /** The maximum error of the counters */
+    private long offset;
+
+    public FrequentItems() {
+        this(DEFAULT_K);
+    }
+
+    public FrequentItems(@Nonnegative final int k) {
+        if (k < MIN_K || k > MAX_K) {
+            throw new IllegalArgumentException(
+                "k must be in range [" + MIN_K + "," + MAX_K + "]: " + k);
+        }
+        this.k = k;
+        this.counters = new HashMap<String, MutableLong>(Math.min(k, 1024) * 4);
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public long getMaxError() {
+        return offset;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public void update(@Nonnull final String item) {
+        update(item, 1L);
+    }
+
+    public void update(@Nonnull final String item, final long weight) {
+        if (weight <= 0L) {
+            if (weight == 0L) {
+                return;
+            }
+            throw new IllegalArgumentException("weight must not be negative: " + weight);
+        }
+        this.n += weight;
+        add(item, weight);
+    }
+
+    private void add(@Nonnull final String item, final long count) {
+        MutableLong counter = counters.get(item);
+        if (counter != null) {
+            counter.addValue(count);
+            return;
+        }
+        counters.put(item, new MutableLong(count));
+        if (counters.size() > 2 * k) {
+            purge();
+        }
+    }
+
+    /**
+     * Subtracts the (k+1)-th largest count from all the counters, which leaves at most k counters.
+     */
+    private void purge() {
+        final long[] counts = new long[counters.size()];
+        int i = 0;
+        for (MutableLong c : counters.values()) {
+            counts[i++] = c.getValue();
+        }
+        Arrays.sort(counts);
+        final long decrement = counts[counts.length - k - 1];
+
+        final Iterator<MutableLong> itor = counters.values().iterator();
+        while (itor.hasNext()) {
+            MutableLong c = itor.next();
+            long v = c.getValue() - decrement;
+            if (v <= 0L) {
+                itor.remove();
+            } else {
+                c.setValue(v);
+            }
+        }
+        this.offset += decrement;
+    }
+
+    public void merge(@Nonnull final FrequentItems other) {
+        for (Map.Entry<String, MutableLong> e : other.counters.entrySet()) {
+            add(e.getKey(), e.getValue().getValue());
+        }
+        this.n += other.n;
+        this.offset += other.offset;
+    }
+
+    /**
+     * @return the lower bound of the count of the item
+     */
+    public long getLowerBound(@Nonnull final String item) {
+        MutableLong c = counters.get(item);
+        return (c == null) ? 0L : c.getValue();
+    }
+
+    /**
+     * @return the upper bound of the count of the item
+     */
+    public long getUpperBound(@Nonnull final String item) {
+        return getLowerBound(item) + offset;
+    }
+
+    /**
+     * @return at most limit items in the descending order of their counts
+     */
+    @Nonnull
+    public List<Map.Entry<String, MutableLong>> getTopItems(@Nonnegative final int limit) {
+        final List<Map.Entry<String, MutableLong>> entries =
+                new ArrayList<Map.Entry<String, MutableLong>>(counters.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, MutableLong>>() {
+            @Override
+            public int compare(Map.Entry<String, MutableLong> o1,
+                    Map.Entry<String, MutableLong> o2) {
+                long c1 = o1.getValue().getValue(), c2 = o2.getValue().getValue();
+                if (c1 != c2) {
+                    return c1 > c2 ? -1 : 1;
+                }
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return (entries.size() <= limit) ? entries : entries.subList(0, limit);
+    }
+
+    @Nonnull
+    public byte[] serialize() {
+        final byte[][] keys = new byte[counters.size()][];
+        final long[] counts = new long[keys.length];
+        int bytes = 1 + 4 + 8 + 8 + 4;
+        int i = 0;
+        for (Map.Entry<String, MutableLong> e : counters.entrySet()) {
+            keys[i] = e.getKey().getBytes(UTF8);
+            counts[i] = e.getValue().getValue();
+            bytes += 4 + keys[i].length + 8;
+            i++;
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(bytes);
+        buf.put(VERSION);
+        buf.putInt(k);
+        buf.putLong(n);
+        buf.putLong(offset);
+        buf.putInt(keys.length);
+        for (i = 0; i < keys.length; i++) {
+            buf.putInt(keys[i].length);
+            buf.put(keys[i]);
+            buf.putLong(counts[i]);
+        }
+        return buf.array();
+    }
+
+    @Nonnull
+    public static FrequentItems deserialize(@Nonnull final byte[] b, final int offset,
+            final int len) {
+        final ByteBuffer buf = ByteBuffer.wrap(b, offset, len);
+        try {
+            if (buf.get() != VERSION) {
+                throw new IllegalArgumentException("Not a frequent items sketch");
+            }
+            final FrequentItems sketch = new FrequentItems(buf.getInt());
+            sketch.n = buf.getLong();
+            sketch.offset = buf.getLong();
+            final int size = buf.getInt();
+            if (size < 0 || size > 2 * sketch.k) {
+                throw new IllegalArgumentException("Illegal number of counters: " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                final int keyLen = buf.getInt();
+                if (keyLen < 0 || keyLen > buf.remaining()) {
+                    throw new IllegalArgumentException("Illegal length of an item: " + keyLen);
+                }
+                String item = new String(b, buf.position(), keyLen, UTF8);
+                buf.position(buf.position() + keyLen);
+                sketch.counters.put(item, new MutableLong(buf.getLong()));
+            }
+            if (buf.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes in a frequent items sketch");
+            }
+            return sketch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated frequent items sketch", e);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+@Description(name = "freq_estimate",
+        value = "_FUNC_(binary sketch, string item)"
+                + " - Returns the upper bound of the count of the item in a frequent items sketch",
+        extended = "SELECT freq_estimate(sketch, 'hivemall') FROM daily_queries;")
+@UDFType(deterministic = true, stateful = false)
+public final class FrequentItemsEstimateUDF extends UDF {
+
+    @Nullable
+    public LongWritable evaluate(@Nullable BytesWritable sketch, @Nullable Text item)
+            throws HiveException {
+        if (sketch == null || item == null) {
+            return null;
+        }
+
+        final FrequentItems fi;
+        try {
+            fi = FrequentItems.deserialize(sketch.getBytes(), 0, sketch.getLength());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+        return new LongWritable(fi.getUpperBound(item.toString()));
+    }
+
+}
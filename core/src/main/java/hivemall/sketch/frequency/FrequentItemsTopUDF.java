@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.lang.mutable.MutableLong;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+@Description(name = "freq_top",
+        value = "_FUNC_(binary sketch [, const int limit])"
+                + " - Returns the most frequent items of a sketch as"
+                + " array<struct<item:string,lower_bound:bigint,upper_bound:bigint>>",
+        extended = "SELECT freq_top(freq_union(sketch), 3) FROM daily_queries;\n\n"
+                + "[{\"item\":\"hive\",\"lower_bound\":5831,\"upper_bound\":5840},...]")
+@UDFType(deterministic = true, stateful = false)
+public final class FrequentItemsTopUDF extends GenericUDF {
+
+    private BinaryObjectInspector sketchOI;
+    private int limit = Integer.MAX_VALUE;
+
+    @Override
+    public ObjectInspector initialize(@Nonnull ObjectInspector[] argOIs)
+            throws UDFArgumentException {
+        if (argOIs.length != 1 && argOIs.length != 2) {
+            throw new UDFArgumentLengthException(
+                "freq_top takes one or two arguments: " + argOIs.length);
+        }
+        this.sketchOI = HiveUtils.asBinaryOI(argOIs[0]);
+        if (argOIs.length == 2) {
+            int limit = HiveUtils.getConstInt(argOIs[1]);
+            if (limit < 0) {
+                throw new UDFArgumentException("limit must not be negative: " + limit);
+            }
+            this.limit = limit;
+        }
+
+        List<String> fieldNames = Arrays.asList("item", "lower_bound", "upper_bound");
+        List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(3);
+        fieldOIs.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        fieldOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+        fieldOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+
+        return ObjectInspectorFactory.getStandardListObjectInspector(
+            ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs));
+    }
+
+    @Override
+    @Nullable
+    public List<Object[]> evaluate(@Nonnull DeferredObject[] arguments) throws HiveException {
+        final Object arg0 = arguments[0].get();
+        if (arg0 == null) {
+            return null;
+        }
+        final BytesWritable b = sketchOI.getPrimitiveWritableObject(arg0);
+
+        final FrequentItems sketch;
+        try {
+            sketch = FrequentItems.deserialize(b.getBytes(), 0, b.getLength());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+
+        final long maxError = sketch.getMaxError();
+        final List<Map.Entry<String, MutableLong>> items = sketch.getTopItems(limit);
+        final List<Object[]> result = new ArrayList<Object[]>(items.size());
+        for (Map.Entry<String, MutableLong> e : items) {
+            long count = e.getValue().getValue();
+            result.add(new Object[] {new Text(e.getKey()), new LongWritable(count),
+                    new LongWritable(count + maxError)});
+        }
+        return result;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+        return "freq_top(" + StringUtils.join(children, ',') + ')';
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import hivemall.UDAFEvaluatorWithOptions;
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.lang.Primitives;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AbstractAggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+//@formatter:off
+@Description(name = "freq_sketch",
+        value = "_FUNC_(primitive item [, const string options])"
+                + " - Returns a binary sketch of the frequent items",
+        extended = "CREATE TABLE daily_queries AS\n" + 
+                "  SELECT dt, freq_sketch(query, '-k 4096') as sketch\n" + 
+                "  FROM search_log\n" + 
+                "  GROUP BY dt;\n" + 
+                "\n" + 
+                "SELECT freq_top(freq_union(sketch), 10)\n" + 
+                "FROM daily_queries;")
+//@formatter:on
+public final class FrequentItemsUDAF extends AbstractGenericUDAFResolver {
+
+    @Override
+    public GenericUDAFEvaluator getEvaluator(@Nonnull TypeInfo[] typeInfo)
+            throws SemanticException {
+        if (typeInfo.length != 1 && typeInfo.length != 2) {
+            throw new UDFArgumentTypeException(typeInfo.length - 1,
+                "_FUNC_ takes one or two arguments");
+        }
+        if (!HiveUtils.isPrimitiveTypeInfo(typeInfo[0])) {
+            throw new UDFArgumentTypeException(0,
+                "The first argument type expected to be primitive: " + typeInfo[0]);
+        }
+        if (typeInfo.length == 2 && !HiveUtils.isStringTypeInfo(typeInfo[1])) {
+            throw new UDFArgumentTypeException(1,
+                "The second argument type expected to be const string: " + typeInfo[1]);
+        }
+
+        return new Evaluator();
+    }
+
+    public static final class Evaluator extends UDAFEvaluatorWithOptions {
+
+        private int k = FrequentItems.DEFAULT_K;
+
+        private PrimitiveObjectInspector inputOI;
+        private BinaryObjectInspector mergeInputOI;
+
+        @Override
+        protected Options getOptions() {
+            Options opts = new Options();
+            opts.addOption("k", true, "The number of counters to keep, where up to 2k counters"
+                    + " are buffered. The error of a count is at most n/(k+1) for n items."
+                    + " `k` MUST be in the range [4,16777216] and 1024 by the default");
+            return opts;
+        }
+
+        @Override
+        protected CommandLine processOptions(@Nonnull ObjectInspector[] argOIs)
+                throws UDFArgumentException {
+            CommandLine cl = null;
+
+            int k = FrequentItems.DEFAULT_K;
+            if (argOIs.length == 2) {
+                if (!HiveUtils.isConstString(argOIs[1])) {
+                    throw new UDFArgumentException(
+                        "The second argument type expected to be const string: " + argOIs[1]);
+                }
+                cl = parseOptions(HiveUtils.getConstString(argOIs[1]));
+                k = Primitives.parseInt(cl.getOptionValue("k"), k);
+                if (k < FrequentItems.MIN_K || k > FrequentItems.MAX_K) {
+                    throw new UDFArgumentException("k must be in range [" + FrequentItems.MIN_K
+                            + "," + FrequentItems.MAX_K + "]: " + k);
+                }
+            }
+            this.k = k;
+
+            return cl;
+        }
+
+        @Override
+        public ObjectInspector init(@Nonnull Mode mode, @Nonnull ObjectInspector[] parameters)
+                throws HiveException {
+            assert (parameters.length == 1 || parameters.length == 2) : parameters.length;
+            super.init(mode, parameters);
+
+            // initialize input
+            if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {// from original data
+                processOptions(parameters);
+                this.inputOI = HiveUtils.asPrimitiveObjectInspector(parameters[0]);
+            } else {// from partial aggregation
+                this.mergeInputOI = HiveUtils.asBinaryOI(parameters[0]);
+            }
+
+            // initialize output
+            return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+        }
+
+        @Override
+        public FrequentItemsBuffer getNewAggregationBuffer() throws HiveException {
+            FrequentItemsBuffer buf = new FrequentItemsBuffer();
+            reset(buf);
+            return buf;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void reset(@Nonnull AggregationBuffer agg) throws HiveException {
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            buf.sketch = (inputOI == null) ? null : new FrequentItems(k);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void iterate(@Nonnull AggregationBuffer agg, @Nonnull Object[] parameters)
+                throws HiveException {
+            final Object arg = parameters[0];
+            if (arg == null) {
+                return;
+            }
+
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            buf.sketch.update(PrimitiveObjectInspectorUtils.getString(arg, inputOI));
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminatePartial(@Nonnull AggregationBuffer agg)
+                throws HiveException {
+            return terminate(agg);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void merge(@Nonnull AggregationBuffer agg, @Nullable Object partial)
+                throws HiveException {
+            if (partial == null) {
+                return;
+            }
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            buf.merge(mergeInputOI.getPrimitiveWritableObject(partial));
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminate(@Nonnull AggregationBuffer agg) throws HiveException {
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            if (buf.sketch == null) {
+                return null;
+            }
+            return new BytesWritable(buf.sketch.serialize());
+        }
+
+    }
+
+    @AggregationType(estimable = true)
+    static final class FrequentItemsBuffer extends AbstractAggregationBuffer {
+
+        @Nullable
+        FrequentItems sketch;
+
+        FrequentItemsBuffer() {}
+
+        void merge(@Nonnull final BytesWritable partial) throws HiveException {
+            final FrequentItems other;
+            try {
+                other = FrequentItems.deserialize(partial.getBytes(), 0, partial.getLength());
+            } catch (IllegalArgumentException e) {
+                throw new HiveException("Failed to merge frequent items sketches", e);
+            }
+            if (sketch == null) {
+                this.sketch = other;
+            } else {
+                sketch.merge(other);
+            }
+        }
+
+        @Override
+        public int estimate() {
+            // rough size of a string key, a counter and a hash map entry
+            return (sketch == null) ? 0 : sketch.size() * 96;
+        }
+
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import static hivemall.HivemallConstants.BINARY_TYPE_NAME;
+
+import hivemall.sketch.frequency.FrequentItemsUDAF.FrequentItemsBuffer;
+import hivemall.utils.hadoop.HiveUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+@Description(name = "freq_union",
+        value = "_FUNC_(binary sketch) - Returns the union of frequent items sketches",
+        extended = "SELECT freq_top(freq_union(sketch), 10) FROM daily_queries;")
+public final class FrequentItemsUnionUDAF extends AbstractGenericUDAFResolver {
+
+    @Override
+    public GenericUDAFEvaluator getEvaluator(@Nonnull TypeInfo[] typeInfo)
+            throws SemanticException {
+        if (typeInfo.length != 1) {
+            throw new UDFArgumentTypeException(typeInfo.length - 1,
+                "_FUNC_ takes exactly one argument");
+        }
+        if (!BINARY_TYPE_NAME.equals(typeInfo[0].getTypeName())) {
+            throw new UDFArgumentTypeException(0,
+                "The argument type expected to be binary: " + typeInfo[0]);
+        }
+        return new Evaluator();
+    }
+
+    public static final class Evaluator extends GenericUDAFEvaluator {
+
+        private BinaryObjectInspector inputOI;
+
+        @Override
+        public ObjectInspector init(@Nonnull Mode mode, @Nonnull ObjectInspector[] parameters)
+                throws HiveException {
+            assert (parameters.length == 1) : parameters.length;
+            super.init(mode, parameters);
+
+            // both the original data and the partial aggregations are sketches
+            this.inputOI = HiveUtils.asBinaryOI(parameters[0]);
+
+            return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+        }
+
+        @Override
+        public FrequentItemsBuffer getNewAggregationBuffer() throws HiveException {
+            return new FrequentItemsBuffer();
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void reset(@Nonnull AggregationBuffer agg) throws HiveException {
+            ((FrequentItemsBuffer) agg).sketch = null;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void iterate(@Nonnull AggregationBuffer agg, @Nonnull Object[] parameters)
+                throws HiveException {
+            merge(agg, parameters[0]);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminatePartial(@Nonnull AggregationBuffer agg)
+                throws HiveException {
+            return terminate(agg);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void merge(@Nonnull AggregationBuffer agg, @Nullable Object partial)
+                throws HiveException {
+            if (partial == null) {
+                return;
+            }
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            buf.merge(inputOI.getPrimitiveWritableObject(partial));
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminate(@Nonnull AggregationBuffer agg) throws HiveException {
+            FrequentItemsBuffer buf = (FrequentItemsBuffer) agg;
+            if (buf.sketch == null) {
+                return null;
+            }
+            return new BytesWritable(buf.sketch.serialize());
+        }
+
+    }
+
+}
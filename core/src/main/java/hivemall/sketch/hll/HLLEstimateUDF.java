@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.hll;
+
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+
+@Description(name = "hll_estimate",
+        value = "_FUNC_(binary sketch) - Returns the estimated number of distinct values"
+                + " of a HyperLogLog sketch",
+        extended = "SELECT dt, hll_estimate(sketch) FROM daily_users;")
+@UDFType(deterministic = true, stateful = false)
+public final class HLLEstimateUDF extends UDF {
+
+    @Nullable
+    public LongWritable evaluate(@Nullable BytesWritable sketch) throws HiveException {
+        if (sketch == null) {
+            return null;
+        }
+
+        try {
+            return new LongWritable(
+                HyperLogLog.estimate(sketch.getBytes(), 0, sketch.getLength()));
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.hll;
+
+import hivemall.UDAFEvaluatorWithOptions;
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.lang.Primitives;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AbstractAggregationBuffer;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+
+//@formatter:off
+@Description(name = "hll_sketch",
+        value = "_FUNC_(primitive x [, const string options])"
+                + " - Returns a binary HyperLogLog sketch of the distinct values of x",
+        extended = "CREATE TABLE daily_users AS\n" + 
+                "  SELECT dt, hll_sketch(userid) as sketch\n" + 
+                "  FROM access_log\n" + 
+                "  GROUP BY dt;\n" + 
+                "\n" + 
+                "SELECT hll_estimate(hll_union(sketch)) as weekly_users\n" + 
+                "FROM daily_users\n" + 
+                "WHERE dt BETWEEN '2018-01-01' AND '2018-01-07';")
+//@formatter:on
+public final class HLLSketchUDAF extends AbstractGenericUDAFResolver {
+
+    @Override
+    public GenericUDAFEvaluator getEvaluator(@Nonnull TypeInfo[] typeInfo)
+            throws SemanticException {
+        if (typeInfo.length != 1 && typeInfo.length != 2) {
+            throw new UDFArgumentTypeException(typeInfo.length - 1,
+                "_FUNC_ takes one or two arguments");
+        }
+        if (!HiveUtils.isPrimitiveTypeInfo(typeInfo[0])) {
+            throw new UDFArgumentTypeException(0,
+                "The first argument type expected to be primitive: " + typeInfo[0]);
+        }
+        if (typeInfo.length == 2 && !HiveUtils.isStringTypeInfo(typeInfo[1])) {
+            throw new UDFArgumentTypeException(1,
+                "The second argument type expected to be const string: " + typeInfo[1]);
+        }
+
+        return new Evaluator();
+    }
+
+    public static final class Evaluator extends UDAFEvaluatorWithOptions {
+
+        private int p = HyperLogLog.DEFAULT_P;
+
+        private PrimitiveObjectInspector inputOI;
+        private BinaryObjectInspector mergeInputOI;
+
+        @Override
+        protected Options getOptions() {
+            Options opts = new Options();
+            opts.addOption("p", true, "The precision, i.e., log2 of the number of registers."
+                    + " `p` MUST be in the range [4,18] and 15 by the default");
+            return opts;
+        }
+
+        @Override
+        protected CommandLine processOptions(@Nonnull ObjectInspector[] argOIs)
+                throws UDFArgumentException {
+            CommandLine cl = null;
+
+            int p = HyperLogLog.DEFAULT_P;
+            if (argOIs.length == 2) {
+                if (!HiveUtils.isConstString(argOIs[1])) {
+                    throw new UDFArgumentException(
+                        "The second argument type expected to be const string: " + argOIs[1]);
+                }
+                cl = parseOptions(HiveUtils.getConstString(argOIs[1]));
+                p = Primitives.parseInt(cl.getOptionValue("p"), p);
+                if (p < HyperLogLog.MIN_P || p > HyperLogLog.MAX_P) {
+                    throw new UDFArgumentException("p must be in range [" + HyperLogLog.MIN_P
+                            + "," + HyperLogLog.MAX_P + "]: " + p);
+                }
+            }
+            this.p = p;
+
+            return cl;
+        }
+
+        @Override
+        public ObjectInspector init(@Nonnull Mode mode, @Nonnull ObjectInspector[] parameters)
+                throws HiveException {
+            assert (parameters.length == 1 || parameters.length == 2) : parameters.length;
+            super.init(mode, parameters);
+
+            // initialize input
+            if (mode == Mode.PARTIAL1 || mode == Mode.COMPLETE) {// from original data
+                processOptions(parameters);
+                this.inputOI = HiveUtils.asPrimitiveObjectInspector(parameters[0]);
+            } else {// from partial aggregation
+                this.mergeInputOI = HiveUtils.asBinaryOI(parameters[0]);
+            }
+
+            // initialize output
+            return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+        }
+
+        @Override
+        public HLLBuffer getNewAggregationBuffer() throws HiveException {
+            HLLBuffer buf = new HLLBuffer();
+            reset(buf);
+            return buf;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void reset(@Nonnull AggregationBuffer agg) throws HiveException {
+            HLLBuffer buf = (HLLBuffer) agg;
+            buf.hll = (inputOI == null) ? null : new HyperLogLog(p);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void iterate(@Nonnull AggregationBuffer agg, @Nonnull Object[] parameters)
+                throws HiveException {
+            final Object arg = parameters[0];
+            if (arg == null) {
+                return;
+            }
+
+            HLLBuffer buf = (HLLBuffer) agg;
+            buf.hll.addHash(hash(arg, inputOI));
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminatePartial(@Nonnull AggregationBuffer agg)
+                throws HiveException {
+            return terminate(agg);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void merge(@Nonnull AggregationBuffer agg, @Nullable Object partial)
+                throws HiveException {
+            if (partial == null) {
+                return;
+            }
+
+            BytesWritable other = mergeInputOI.getPrimitiveWritableObject(partial);
+            HLLBuffer buf = (HLLBuffer) agg;
+            try {
+                buf.hll = HyperLogLog.union(buf.hll, other.getBytes(), 0, other.getLength());
+            } catch (IllegalArgumentException e) {
+                throw new HiveException("Failed to merge HyperLogLog sketches", e);
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        @Nullable
+        public BytesWritable terminate(@Nonnull AggregationBuffer agg) throws HiveException {
+            HLLBuffer buf = (HLLBuffer) agg;
+            if (buf.hll == null) {
+                return null;
+            }
+            return new BytesWritable(buf.hll.serialize());
+        }
+
+    }
+
+    /**
+     * Hashes a value so that the same number is counted once regardless of its integral type.
+     */
+    static long hash(@Nonnull final Object arg, @Nonnull final PrimitiveObjectInspector oi) {
+        switch (oi.getPrimitiveCategory()) {
+            case BOOLEAN:
+                return HyperLogLog.hash(((BooleanObjectInspector) oi).get(arg) ? 1L : 0L);
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return HyperLogLog.hash(PrimitiveObjectInspectorUtils.getLong(arg, oi));
+            case FLOAT:
+            case DOUBLE:
+                return HyperLogLog.hash(
+                    Double.doubleToLongBits(PrimitiveObjectInspectorUtils.getDouble(arg, oi)));
+            case STRING: {
+                Text t = ((StringObjectInspector) oi).getPrimitiveWritableObject(arg);
+                return HyperLogLog.hash(t.getBytes(), 0, t.getLength());
+            }
+            case BINARY: {
+                BytesWritable b = ((BinaryObjectInspector) oi).getPrimitiveWritableObject(arg);
+                return HyperLogLog.hash(b.getBytes(), 0, b.getLength());
+            }
+            default: {
+                Text t = new Text(PrimitiveObjectInspectorUtils.getString(arg, oi));
+                return HyperLogLog.hash(t.getBytes(), 0, t.getLength());
+            }
+        }
+    }
+
+    @AggregationType(estimable = true)
+    static final class HLLBuffer extends AbstractAggregationBuffer {
+
+        @Nullable
+        HyperLogLog hll;
+
+        HLLBuffer() {}
+
+        @Override
+        public int estimate() {
+            return (hll == null) ? 0 : (1 << hll.getPrecision());
+        }
+
+    }
+}
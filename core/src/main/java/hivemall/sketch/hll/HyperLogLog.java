@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.hll;
+
+import hivemall.utils.hashing.MurmurHash3;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * HyperLogLog sketch over 64-bit hashes whose registers are held in a {@code byte[]}, one
+ * register per byte, so that a union is a branch-free element-wise max over two arrays.
+ * 
+ * The serialized form is a 2-byte header of the format version and the precision followed by
+ * the registers, and {@link #estimate(byte[], int, int)} estimates a cardinality directly from
+ * it. Cardinalities are estimated by the improved raw estimator of Ertl, which needs neither
+ * the empirical bias correction nor the linear counting of HLL++ for small cardinalities.
+ * 
+ * @link https://arxiv.org/abs/1702.01284
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_P = 4;
+    public static final int MAX_P = 18;
+    public static final int DEFAULT_P = 15;
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 2;
+    private static final int SEED = 0x9747b28c;
+
+    @Nonnegative
+    private final int p;
+    @Nonnull
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_P);
+    }
+
+    public HyperLogLog(@Nonnegative final int p) {
+        checkPrecision(p);
+        this.p = p;
+        this.registers = new byte[1 << p];
+    }
+
+    private HyperLogLog(@Nonnegative final int p, @Nonnull final byte[] registers) {
+        this.p = p;
+        this.registers = registers;
+    }
+
+    public int getPrecision() {
+        return p;
+    }
+
+    public static long hash(final long value) {
+        return MurmurHash3.fmix64(value ^ SEED);
+    }
+
+    public static long hash(@Nonnull final byte[] b, final int offset, final int len) {
+        return MurmurHash3.murmurhash3_x64_64(b, offset, len, SEED);
+    }
+
+    /**
+     * Adds a 64-bit hash value of an element.
+     */
+    public void addHash(final long hash) {
+        final int idx = (int) (hash >>> (64 - p));
+        // the sentinel bit caps the value at 64 - p + 1
+        final byte value = (byte) (Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1);
+        if (value > registers[idx]) {
+            registers[idx] = value;
+        }
+    }
+
+    /**
+     * Unions the other sketch into this sketch. The other sketch must not have a lower precision.
+     */
+    public void merge(@Nonnull final HyperLogLog other) {
+        merge(other.p, other.registers, 0);
+    }
+
+    /**
+     * Unions a serialized sketch into this sketch without deserializing it.
+     */
+    public void merge(@Nonnull final byte[] buf, final int offset, final int len) {
+        final int otherP = checkHeader(buf, offset, len);
+        merge(otherP, buf, offset + HEADER_BYTES);
+    }
+
+    /**
+     * Unions a serialized sketch into the given sketch, lowering its precision to that of the
+     * serialized one if needed.
+     * 
+     * @return the union, which is a new sketch if dst is null or its precision is lowered
+     */
+    @Nonnull
+    public static HyperLogLog union(@Nullable HyperLogLog dst, @Nonnull final byte[] buf,
+            final int offset, final int len) {
+        final int otherP = checkHeader(buf, offset, len);
+        if (dst == null) {
+            return deserialize(buf, offset, len);
+        }
+        if (otherP < dst.p) {
+            dst = dst.reduce(otherP);
+        }
+        dst.merge(otherP, buf, offset + HEADER_BYTES);
+        return dst;
+    }
+
+    private void merge(final int otherP, @Nonnull final byte[] src, final int srcPos) {
+        final byte[] dst = this.registers;
+        if (otherP == p) {
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = (byte) Math.max(dst[i], src[srcPos + i]);
+            }
+        } else if (otherP > p) {
+            fold(otherP, src, srcPos, p, dst);
+        } else {
+            throw new IllegalArgumentException(
+                "Cannot merge a sketch of precision " + otherP + " into precision " + p);
+        }
+    }
+
+    /**
+     * Folds the registers of precision {@code srcP} into the registers of a lower precision.
+     */
+    private static void fold(final int srcP, @Nonnull final byte[] src, final int srcPos,
+            final int dstP, @Nonnull final byte[] dst) {
+        final int d = srcP - dstP;
+        final int lowMask = (1 << d) - 1;
+        for (int i = 0, m = 1 << srcP; i < m; i++) {
+            final int value = src[srcPos + i];
+            if (value == 0) {
+                continue;
+            }
+            // the low index bits of the higher precision are the leading hash bits of the lower
+            final int low = i & lowMask;
+            final int folded =
+                    (low == 0) ? value + d : Integer.numberOfLeadingZeros(low) - (32 - d) + 1;
+            final int j = i >>> d;
+            if (folded > dst[j]) {
+                dst[j] = (byte) folded;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of this sketch reduced to the given lower precision
+     */
+    @Nonnull
+    public HyperLogLog reduce(@Nonnegative final int newP) {
+        checkPrecision(newP);
+        if (newP > p) {
+            throw new IllegalArgumentException(
+                "Cannot increase the precision from " + p + " to " + newP);
+        }
+        HyperLogLog reduced = new HyperLogLog(newP);
+        reduced.merge(this);
+        return reduced;
+    }
+
+    public long estimate() {
+        return estimate(p, registers, 0);
+    }
+
+    /**
+     * Estimates the cardinality of a serialized sketch without deserializing it.
+     */
+    public static long estimate(@Nonnull final byte[] buf, final int offset, final int len) {
+        final int p = checkHeader(buf, offset, len);
+        return estimate(p, buf, offset + HEADER_BYTES);
+    }
+
+    private static long estimate(final int p, @Nonnull final byte[] registers, final int pos) {
+        final int m = 1 << p;
+        final int q = 64 - p;
+        final int[] histogram = new int[q + 2];
+        for (int i = pos, end = pos + m; i < end; i++) {
+            histogram[registers[i]]++;
+        }
+
+        double z = m * tau(1.d - histogram[q + 1] / (double) m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5d * (z + histogram[k]);
+        }
+        z += m * sigma(histogram[0] / (double) m);
+        final double alpha = 0.5d / Math.log(2.d);
+        return Math.round(alpha * m * (double) m / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1.d) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1.d;
+        double z = x;
+        double zPrev;
+        do {
+            x *= x;
+            zPrev = z;
+            z += x * y;
+            y += y;
+        } while (z != zPrev);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0.d || x == 1.d) {
+            return 0.d;
+        }
+        double y = 1.d;
+        double z = 1.d - x;
+        double zPrev;
+        do {
+            x = Math.sqrt(x);
+            zPrev = z;
+            y *= 0.5d;
+            z -= (1.d - x) * (1.d - x) * y;
+        } while (z != zPrev);
+        return z / 3.d;
+    }
+
+    @Nonnull
+    public byte[] serialize() {
+        final byte[] buf = new byte[HEADER_BYTES + registers.length];
+        buf[0] = VERSION;
+        buf[1] = (byte) p;
+        System.arraycopy(registers, 0, buf, HEADER_BYTES, registers.length);
+        return buf;
+    }
+
+    @Nonnull
+    public static HyperLogLog deserialize(@Nonnull final byte[] buf, final int offset,
+            final int len) {
+        final int p = checkHeader(buf, offset, len);
+        byte[] registers = Arrays.copyOfRange(buf, offset + HEADER_BYTES, offset + len);
+        return new HyperLogLog(p, registers);
+    }
+
+    /**
+     * @return the precision of a serialized sketch
+     */
+    public static int getPrecision(@Nonnull final byte[] buf, final int offset, final int len) {
+        return checkHeader(buf, offset, len);
+    }
+
+    private static int checkHeader(@Nonnull final byte[] buf, final int offset, final int len) {
+        if (len < HEADER_BYTES || buf[offset] != VERSION) {
+            throw new IllegalArgumentException("Not a HyperLogLog sketch");
+        }
+        final int p = buf[offset + 1];
+        if (p < MIN_P || p > MAX_P || len != HEADER_BYTES + (1 << p)) {
+            throw new IllegalArgumentException(
+                "Illegal HyperLogLog sketch of precision " + p + " in " + len + " bytes");
+        }
+        return p;
+    }
+
+    private static void checkPrecision(final int p) {
+        if (p < MIN_P || p > MAX_P) {
+            throw new IllegalArgumentException(
+                "p must be in range [" + MIN_P + "," + MAX_P + "]: " + p);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        HyperLogLog other = (HyperLogLog) obj;
+        return p == other.p && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * p + Arrays.hashCode(registers);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.quantile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.io.BytesWritable;
+
+@Description(name = "kll_quantile",
+        value = "_FUNC_(binary sketch, double phi) or _FUNC_(binary sketch, array<double> phis)"
+                + " - Returns the approximate phi-quantile(s) of a KLL sketch",
+        extended = "SELECT kll_quantile(sketch, 0.5), kll_quantile(sketch, array(0.9, 0.99))"
+                + " FROM daily_latency;")
+@UDFType(deterministic = true, stateful = false)
+public final class KLLQuantileUDF extends UDF {
+
+    @Nullable
+    public DoubleWritable evaluate(@Nullable BytesWritable sketch, @Nullable DoubleWritable phi)
+            throws HiveException {
+        if (sketch == null || phi == null) {
+            return null;
+        }
+
+        final double q;
+        try {
+            q = deserialize(sketch).quantile(phi.get());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+        return Double.isNaN(q) ? null : new DoubleWritable(q);
+    }
+
+    @Nullable
+    public List<DoubleWritable> evaluate(@Nullable BytesWritable sketch,
+            @Nullable List<DoubleWritable> phis) throws HiveException {
+        if (sketch == null || phis == null) {
+            return null;
+        }
+
+        final double[] args = new double[phis.size()];
+        for (int i = 0; i < args.length; i++) {
+            DoubleWritable phi = phis.get(i);
+            if (phi == null) {
+                throw new HiveException("phis must not contain null: " + phis);
+            }
+            args[i] = phi.get();
+        }
+
+        final double[] quantiles;
+        try {
+            quantiles = deserialize(sketch).quantiles(args);
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(e);
+        }
+        final List<DoubleWritable> result = new ArrayList<DoubleWritable>(quantiles.length);
+        for (double q : quantiles) {
+            result.add(Double.isNaN(q) ? null : new DoubleWritable(q));
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static KLLSketch deserialize(@Nonnull final BytesWritable sketch) {
+        return KLLSketch.deserialize(sketch.getBytes(), 0, sketch.getLength());
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.quantile;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * KLL quantile sketch of double values. Items are kept in levels of compactors where an item at
+ * level h stands for 2^h input values, and a full compactor sorts its items and promotes every
+ * other item to the next level. The capacity of a level shrinks geometrically by 2/3 from the
+ * top level, and thus a sketch retains about 3k items regardless of the number of inputs.
+ * 
+ * @link https://arxiv.org/abs/1603.05346
+ */
+public final class KLLSketch {
+
+    public static final int DEFAULT_K = 200;
+    public static final int MIN_K = 8;
+    public static final int MAX_K = 65535;
+
+    private static final double C = 2.d / 3.d;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 1 + 4 + 8 + 8 + 8 + 4;
+
+    @Nonnegative
+    private final int k;
+    /** The number of input values */
+    private long n;
+    private double min, max;
+
+    @Nonnull
+    private double[][] levels;
+    @Nonnull
+    private int[] sizes;
+    private int numLevels;
+    /** The number of retained items */
+    private int numItems;
+    /** The sum of the capacities of the levels */
+    private int maxItems;
+
+    /** State of the xorshift generator choosing the items to promote */
+    private long coin;
+
+    public KLLSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KLLSketch(@Nonnegative final int k) {
+        if (k < MIN_K || k > MAX_K) {
+            throw new IllegalArgumentException(
+                "k must be in range [" + MIN_K + "," + MAX_K + "]: " + k);
+        }
+        this.k = k;
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.levels = new double[4][];
+        this.sizes = new int[4];
+        this.coin = 0x9E3779B97F4A7C15L;
+        grow();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return n == 0L;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of retained items
+     */
+    public int getNumRetained() {
+        return numItems;
+    }
+
+    /**
+     * Adds a value. NaN is ignored.
+     */
+    public void update(final double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (n == 0L) {
+            this.min = value;
+            this.max = value;
+        } else {
+            this.min = Math.min(min, value);
+            this.max = Math.max(max, value);
+        }
+        n++;
+        append(0, value);
+        if (++numItems >= maxItems) {
+            compress();
+        }
+    }
+
+    public void merge(@Nonnull final KLLSketch other) {
+        if (other.n == 0L) {
+            return;
+        }
+        if (n == 0L) {
+            this.min = other.min;
+            this.max = other.max;
+        } else {
+            this.min = Math.min(min, other.min);
+            this.max = Math.max(max, other.max);
+        }
+        this.n += other.n;
+        while (numLevels < other.numLevels) {
+            grow();
+        }
+        for (int h = 0; h < other.numLevels; h++) {
+            final double[] items = other.levels[h];
+            for (int i = 0, size = other.sizes[h]; i < size; i++) {
+                append(h, items[i]);
+            }
+            this.numItems += other.sizes[h];
+        }
+        if (numItems >= maxItems) {
+            compress();
+        }
+    }
+
+    private int capacity(final int h) {
+        int depth = numLevels - h - 1;
+        return Math.max(2, (int) Math.ceil(Math.pow(C, depth) * k));
+    }
+
+    private void grow() {
+        if (numLevels == levels.length) {
+            this.levels = Arrays.copyOf(levels, numLevels * 2);
+            this.sizes = Arrays.copyOf(sizes, numLevels * 2);
+        }
+        levels[numLevels] = new double[8];
+        sizes[numLevels] = 0;
+        numLevels++;
+
+        int total = 0;
+        for (int h = 0; h < numLevels; h++) {
+            total += capacity(h);
+        }
+        this.maxItems = total;
+    }
+
+    private void append(final int h, final double value) {
+        double[] items = levels[h];
+        final int size = sizes[h];
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            levels[h] = items;
+        }
+        items[size] = value;
+        sizes[h] = size + 1;
+    }
+
+    private void compress() {
+        while (numItems >= maxItems) {
+            // some level is full as the sizes sum up to the capacities or more
+            int h = 0;
+            while (sizes[h] < capacity(h)) {
+                h++;
+            }
+            if (h + 1 == numLevels) {
+                grow();
+            }
+            compact(h);
+        }
+    }
+
+    /**
+     * Promotes either the odd or the even items of the sorted level to the next level. The
+     * largest item stays when the level has an odd number of items.
+     */
+    private void compact(final int h) {
+        final double[] items = levels[h];
+        final int size = sizes[h];
+        Arrays.sort(items, 0, size);
+        final int even = size & ~1;
+        for (int i = nextCoin(); i < even; i += 2) {
+            append(h + 1, items[i]);
+        }
+        if (even == size) {
+            sizes[h] = 0;
+        } else {
+            items[0] = items[size - 1];
+            sizes[h] = 1;
+        }
+        this.numItems -= even / 2;
+    }
+
+    private int nextCoin() {
+        long x = coin;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        this.coin = x;
+        return (int) (x >>> 63);
+    }
+
+    /**
+     * @param phi a fraction in the range [0,1]
+     * @return the approximate phi-quantile, or NaN if the sketch is empty
+     */
+    public double quantile(final double phi) {
+        return quantiles(new double[] {phi})[0];
+    }
+
+    @Nonnull
+    public double[] quantiles(@Nonnull final double[] phis) {
+        for (double phi : phis) {
+            if (!(phi >= 0.d && phi <= 1.d)) {
+                throw new IllegalArgumentException("phi must be in range [0,1]: " + phi);
+            }
+        }
+        final double[] result = new double[phis.length];
+        if (n == 0L) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        // sorted view of the retained items and their cumulative weights
+        final double[] values = new double[numItems];
+        final long[] cumWeights = new long[numItems];
+        final int[] pos = new int[numLevels];
+        for (int h = 0; h < numLevels; h++) {
+            Arrays.sort(levels[h], 0, sizes[h]);
+        }
+        long cum = 0L;
+        for (int i = 0; i < numItems; i++) {
+            int argmin = -1;
+            double v = Double.POSITIVE_INFINITY;
+            for (int h = 0; h < numLevels; h++) {
+                if (pos[h] < sizes[h] && (argmin == -1 || levels[h][pos[h]] < v)) {
+                    argmin = h;
+                    v = levels[h][pos[h]];
+                }
+            }
+            pos[argmin]++;
+            cum += 1L << argmin;
+            values[i] = v;
+            cumWeights[i] = cum;
+        }
+
+        for (int q = 0; q < phis.length; q++) {
+            final double phi = phis[q];
+            if (phi == 0.d) {
+                result[q] = min;
+            } else if (phi == 1.d) {
+                result[q] = max;
+            } else {
+                long target = (long) Math.ceil(phi * cum);
+                int i = Arrays.binarySearch(cumWeights, target);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                result[q] = values[Math.min(i, numItems - 1)];
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    public byte[] serialize() {
+        final ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + numLevels * 4 + numItems * 8);
+        buf.put(VERSION);
+        buf.putInt(k);
+        buf.putLong(n);
+        buf.putDouble(min);
+        buf.putDouble(max);
+        buf.putInt(numLevels);
+        for (int h = 0; h < numLevels; h++) {
+            final double[] items = levels[h];
+            final int size = sizes[h];
+            buf.putInt(size);
+            for (int i = 0; i < size; i++) {
+                buf.putDouble(items[i]);
+            }
+        }
+        return buf.array();
+    }
+
+    @Nonnull
+    public static KLLSketch deserialize(@Nonnull final byte[] b, final int offset,
+            final int len) {
+        final ByteBuffer buf = ByteBuffer.wrap(b, offset, len);
+        try {
+            if (buf.get() != VERSION) {
+                throw new IllegalArgumentException("Not a KLL sketch");
+            }
+            final KLLSketch sketch = new KLLSketch(buf.getInt());
+            sketch.n = buf.getLong();
+            sketch.min = buf.getDouble();
+            sketch.max = buf.getDouble();
+            final int numLevels = buf.getInt();
+            if (numLevels <= 0 || numLevels > 64) {
+                throw new IllegalArgumentException("Illegal number of levels: " + numLevels);
+            }
+            while (sketch.numLevels < numLevels) {
+                sketch.grow();
+            }
+            for (int h = 0; h < numLevels; h++) {
+                final int size = buf.getInt();
+                if (size < 0 || size > buf.remaining() / 8) {
+                    throw new IllegalArgumentException("Illegal size of a level: " + size);
+                }
+                final double[] items = new double[Math.max(8, size)];
+                for (int i = 0; i < size; i++) {
+                    items[i] = buf.getDouble();
+                }
+                sketch.levels[h] = items;
+                sketch.sizes[h] = size;
+                sketch.numItems += size;
+            }
+            if (buf.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes in a KLL sketch");
+            }
+            return sketch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated KLL sketch", e);
+        }
+    }
+
+}
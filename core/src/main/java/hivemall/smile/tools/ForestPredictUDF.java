@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.smile.tools;
+
+import hivemall.UDFWithOptions;
+import hivemall.math.vector.Vector;
+import hivemall.smile.classification.DecisionTree;
+import hivemall.smile.classification.PredictionHandler;
+import hivemall.smile.regression.RegressionTree;
+import hivemall.utils.codec.Base91;
+import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.hadoop.WritableUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+//@formatter:off
+@Description(name = "forest_predict",
+        value = "_FUNC_(string forestId, array<string> models, array<double|string> features"
+                + " [, array<double> model_weights]"
+                + " [, const string options | const boolean classification=false])"
+                + " - Returns a prediction result of all the trees of a random forest in"
+                + " <int label, double probability, array<double> probabilities>"
+                + " for classification and <double> for regression",
+        extended = "WITH forest as (\n" + 
+                "  SELECT\n" + 
+                "    'iris_rf' as forest_id,\n" + 
+                "    collect_list(model) as models,\n" + 
+                "    collect_list(model_weight) as weights\n" + 
+                "  FROM model\n" + 
+                ")\n" + 
+                "SELECT\n" + 
+                "  t.rowid,\n" + 
+                "  forest_predict(f.forest_id, f.models, t.features, f.weights, '-c')\n" + 
+                "FROM\n" + 
+                "  test t\n" + 
+                "  CROSS JOIN forest f;")
+//@formatter:on
+@UDFType(deterministic = true, stateful = false)
+public final class ForestPredictUDF extends UDFWithOptions {
+
+    private boolean classification;
+    private ListObjectInspector modelsOI;
+    private StringObjectInspector modelOI;
+    private ListObjectInspector featureListOI;
+    private PrimitiveObjectInspector featureElemOI;
+    private boolean denseInput;
+    @Nullable
+    private ListObjectInspector weightsOI;
+    @Nullable
+    private PrimitiveObjectInspector weightOI;
+    @Nullable
+    private Vector featuresProbe;
+
+    @Nullable
+    private transient Evaluator evaluator;
+
+    @Override
+    protected Options getOptions() {
+        Options opts = new Options();
+        opts.addOption("c", "classification", false,
+            "Predict as classification [default: not enabled]");
+        return opts;
+    }
+
+    @Override
+    protected CommandLine processOptions(@Nonnull String optionValue) throws UDFArgumentException {
+        CommandLine cl = parseOptions(optionValue);
+
+        this.classification = cl.hasOption("classification");
+        return cl;
+    }
+
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
+        final int numArgs = argOIs.length;
+        if (numArgs < 3 || numArgs > 5) {
+            throw new UDFArgumentException("forest_predict takes 3 to 5 arguments: " + numArgs);
+        }
+
+        this.modelsOI = HiveUtils.asListOI(argOIs[1]);
+        this.modelOI = HiveUtils.asStringOI(modelsOI.getListElementObjectInspector());
+        ListObjectInspector listOI = HiveUtils.asListOI(argOIs[2]);
+        this.featureListOI = listOI;
+        ObjectInspector elemOI = listOI.getListElementObjectInspector();
+        if (HiveUtils.isNumberOI(elemOI)) {
+            this.featureElemOI = HiveUtils.asDoubleCompatibleOI(elemOI);
+            this.denseInput = true;
+        } else if (HiveUtils.isStringOI(elemOI)) {
+            this.featureElemOI = HiveUtils.asStringOI(elemOI);
+            this.denseInput = false;
+        } else {
+            throw new UDFArgumentException(
+                "forest_predict takes array<double> or array<string> for the third argument: "
+                        + listOI.getTypeName());
+        }
+
+        this.classification = false;
+        for (int i = 3; i < numArgs; i++) {
+            ObjectInspector argOI = argOIs[i];
+            if (i == 3 && HiveUtils.isListOI(argOI)) {
+                this.weightsOI = HiveUtils.asListOI(argOI);
+                this.weightOI =
+                        HiveUtils.asDoubleCompatibleOI(weightsOI.getListElementObjectInspector());
+            } else if (i == numArgs - 1 && HiveUtils.isConstBoolean(argOI)) {
+                this.classification = HiveUtils.getConstBoolean(argOI);
+            } else if (i == numArgs - 1 && HiveUtils.isConstString(argOI)) {
+                String opts = HiveUtils.getConstString(argOI);
+                processOptions(opts);
+            } else {
+                throw new UDFArgumentException("forest_predict expects array<double> for"
+                        + " model_weights or <const boolean>/<const string> for the last argument: "
+                        + argOI.getTypeName());
+            }
+        }
+
+        if (classification) {
+            List<String> fieldNames = new ArrayList<String>(3);
+            List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(3);
+            fieldNames.add("label");
+            fieldOIs.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+            fieldNames.add("probability");
+            fieldOIs.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+            fieldNames.add("probabilities");
+            fieldOIs.add(ObjectInspectorFactory.getStandardListObjectInspector(
+                PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+            return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
+        } else {
+            return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+        }
+    }
+
+    @Override
+    public Object evaluate(@Nonnull DeferredObject[] arguments) throws HiveException {
+        Object arg0 = arguments[0].get();
+        if (arg0 == null) {
+            throw new HiveException("forestId should not be null");
+        }
+        String forestId = arg0.toString();
+
+        Object arg1 = arguments[1].get();
+        if (arg1 == null) {
+            return null;
+        }
+
+        Object arg2 = arguments[2].get();
+        if (arg2 == null) {
+            throw new HiveException("features was null");
+        }
+        this.featuresProbe = TreePredictUDF.parseFeatures(arg2, featureListOI, featureElemOI,
+            denseInput, featuresProbe);
+
+        if (evaluator == null) {
+            this.evaluator =
+                    classification ? new ClassificationEvaluator() : new RegressionEvaluator();
+        }
+        if (!forestId.equals(evaluator.getForestId())) {
+            Object weightsObj = (weightsOI == null) ? null : arguments[3].get();
+            evaluator.load(forestId, decodeModels(arg1), decodeWeights(weightsObj));
+        }
+        return evaluator.evaluate(featuresProbe);
+    }
+
+    @Nonnull
+    private byte[][] decodeModels(@Nonnull final Object modelsObj) throws HiveException {
+        final int numModels = modelsOI.getListLength(modelsObj);
+        final byte[][] models = new byte[numModels][];
+        for (int i = 0; i < numModels; i++) {
+            Object o = modelsOI.getListElement(modelsObj, i);
+            if (o == null) {
+                throw new HiveException("models should not contain null");
+            }
+            Text model = modelOI.getPrimitiveWritableObject(o);
+            models[i] = Base91.decode(model.getBytes(), 0, model.getLength());
+        }
+        return models;
+    }
+
+    @Nullable
+    private double[] decodeWeights(@Nullable final Object weightsObj) throws HiveException {
+        if (weightsObj == null) {
+            return null;
+        }
+        return HiveUtils.asDoubleArray(weightsObj, weightsOI, weightOI, false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.modelsOI = null;
+        this.modelOI = null;
+        this.featureElemOI = null;
+        this.featureListOI = null;
+        this.weightsOI = null;
+        this.weightOI = null;
+        this.evaluator = null;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+        return "forest_predict(" + Arrays.toString(children) + ")";
+    }
+
+    private static abstract class Evaluator {
+
+        @Nullable
+        private String forestId;
+        @Nonnull
+        protected double[] weights = new double[0];
+
+        @Nullable
+        final String getForestId() {
+            return forestId;
+        }
+
+        void load(@Nonnull String forestId, @Nonnull byte[][] models, @Nullable double[] weights)
+                throws HiveException {
+            final int numModels = models.length;
+            if (weights == null) {
+                weights = new double[numModels];
+                Arrays.fill(weights, 1.d);
+            } else if (weights.length != numModels) {
+                throw new HiveException("The number of model_weights " + weights.length
+                        + " differs from the number of models " + numModels);
+            }
+            this.forestId = null; // not loaded until all the trees are decoded
+            decode(models);
+            this.weights = weights;
+            this.forestId = forestId;
+        }
+
+        abstract void decode(@Nonnull byte[][] models) throws HiveException;
+
+        @Nonnull
+        abstract Object evaluate(@Nonnull Vector features) throws HiveException;
+
+    }
+
+    static final class ClassificationEvaluator extends Evaluator implements PredictionHandler {
+
+        @Nonnull
+        private DecisionTree.Node[] trees = new DecisionTree.Node[0];
+
+        @Nonnull
+        private final Object[] result = new Object[3];
+
+        // states of aggregation
+        @Nullable
+        private double[] posteriori;
+        private double weight;
+        @Nullable
+        private HiveException error;
+
+        ClassificationEvaluator() {}
+
+        @Override
+        void decode(@Nonnull final byte[][] models) throws HiveException {
+            final DecisionTree.Node[] trees = new DecisionTree.Node[models.length];
+            for (int i = 0; i < models.length; i++) {
+                trees[i] = DecisionTree.deserialize(models[i], models[i].length, true);
+            }
+            this.trees = trees;
+            this.posteriori = null;
+        }
+
+        @Override
+        @Nonnull
+        Object[] evaluate(@Nonnull final Vector features) throws HiveException {
+            if (posteriori != null) {
+                Arrays.fill(posteriori, 0.d);
+            }
+            for (int i = 0; i < trees.length; i++) {
+                this.weight = weights[i];
+                trees[i].predict(features, this);
+                if (error != null) {
+                    HiveException e = error;
+                    this.error = null;
+                    throw e;
+                }
+            }
+
+            final double[] posteriori = this.posteriori;
+            if (posteriori == null) {
+                Arrays.fill(result, null);
+                return result;
+            }
+            int label = smile.math.Math.whichMax(posteriori);
+            smile.math.Math.unitize1(posteriori);
+            result[0] = new IntWritable(label);
+            result[1] = new DoubleWritable(posteriori[label]);
+            result[2] = WritableUtils.toWritableList(posteriori);
+            return result;
+        }
+
+        /**
+         * Accumulates the posteriori of each tree in the same way as rf_ensemble
+         */
+        @Override
+        public void handle(final int output, @Nonnull final double[] leafPosteriori) {
+            if (posteriori == null) {
+                this.posteriori = new double[leafPosteriori.length];
+            }
+            if (leafPosteriori.length != posteriori.length) {
+                this.error = new HiveException("Given |a posteriori| " + leafPosteriori.length
+                        + " is differs from expected one: " + posteriori.length);
+                return;
+            }
+            posteriori[output] += leafPosteriori[output] * weight;
+        }
+
+    }
+
+    static final class RegressionEvaluator extends Evaluator {
+
+        @Nonnull
+        private RegressionTree.Node[] trees = new RegressionTree.Node[0];
+        private double sumWeights;
+
+        @Nonnull
+        private final DoubleWritable result = new DoubleWritable();
+
+        RegressionEvaluator() {}
+
+        @Override
+        void decode(@Nonnull final byte[][] models) throws HiveException {
+            final RegressionTree.Node[] trees = new RegressionTree.Node[models.length];
+            for (int i = 0; i < models.length; i++) {
+                trees[i] = RegressionTree.deserialize(models[i], models[i].length, true);
+            }
+            this.trees = trees;
+        }
+
+        @Override
+        void load(@Nonnull String forestId, @Nonnull byte[][] models, @Nullable double[] weights)
+                throws HiveException {
+            super.load(forestId, models, weights);
+            double sum = 0.d;
+            for (double w : this.weights) {
+                sum += w;
+            }
+            this.sumWeights = sum;
+        }
+
+        @Override
+        @Nonnull
+        DoubleWritable evaluate(@Nonnull final Vector features) throws HiveException {
+            double sum = 0.d;
+            for (int i = 0; i < trees.length; i++) {
+                sum += trees[i].predict(features) * weights[i];
+            }
+            result.set(sum / sumWeights);
+            return result;
+        }
+
+    }
+
+}
@@ -160,7 +160,8 @@ public final class TreePredictUDF extends UDFWithOptions {
         if (arg2 == null) {
             throw new HiveException("features was null");
         }
-        this.featuresProbe = parseFeatures(arg2, featuresProbe);
+        this.featuresProbe =
+                parseFeatures(arg2, featureListOI, featureElemOI, denseInput, featuresProbe);
 
         if (evaluator == null) {
             this.evaluator =
@@ -170,8 +171,10 @@ public final class TreePredictUDF extends UDFWithOptions {
     }
 
     @Nonnull
-    private Vector parseFeatures(@Nonnull final Object argObj, @Nullable Vector probe)
-            throws UDFArgumentException {
+    static Vector parseFeatures(@Nonnull final Object argObj,
+            @Nonnull final ListObjectInspector featureListOI,
+            @Nonnull final PrimitiveObjectInspector featureElemOI, final boolean denseInput,
+            @Nullable Vector probe) throws UDFArgumentException {
         if (denseInput) {
             final int length = featureListOI.getListLength(argObj);
             if (probe == null) {
@@ -18,12 +18,10 @@
  */
 package hivemall.tools;
 
-import hivemall.utils.collections.BoundedPriorityQueue;
+import hivemall.utils.collections.DoublePriorityQueue;
 import hivemall.utils.hadoop.HiveUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 
 import javax.annotation.Nonnull;
 
@@ -53,8 +51,7 @@ public final class EachTopKUDTF extends GenericUDTF {
 
     private boolean _constantK;
     private int _prevK;
-    private BoundedPriorityQueue<TupleWithKey> _queue;
-    private TupleWithKey _tuple;
+    private DoublePriorityQueue<Object[]> _queue;
     private Object _previousGroup;
 
     @Override
@@ -83,7 +80,6 @@ public final class EachTopKUDTF extends GenericUDTF {
             ObjectInspectorCopyOption.DEFAULT);
         this.cmpKeyOI = HiveUtils.asDoubleCompatibleOI(argOIs[2]);
 
-        this._tuple = null;
         this._previousGroup = null;
 
         final ArrayList<String> fieldNames = new ArrayList<String>(numArgs);
@@ -103,21 +99,9 @@ public final class EachTopKUDTF extends GenericUDTF {
     }
 
     @Nonnull
-    private static BoundedPriorityQueue<TupleWithKey> getQueue(final int k) {
-        int sizeK = Math.abs(k);
-        final Comparator<TupleWithKey> comparator;
-        if (k < 0) {
-            comparator = Collections.reverseOrder();
-        } else {
-            comparator = new Comparator<TupleWithKey>() {
-                @Override
-                public int compare(TupleWithKey o1, TupleWithKey o2) {
-                    return o1.compareTo(o2);
-                }
-            };
-        }
-        //this.queue = new BoundedPriorityQueue<Row>(sizeK, Comparator.nullsFirst(comparator));
-        return new BoundedPriorityQueue<TupleWithKey>(sizeK, comparator);
+    private static DoublePriorityQueue<Object[]> getQueue(final int k) {
+        // tail-K keeps the smallest keys
+        return new DoublePriorityQueue<Object[]>(Math.abs(k), k < 0);
     }
 
     @Override
@@ -144,26 +128,18 @@ public final class EachTopKUDTF extends GenericUDTF {
         }
 
         final double key = PrimitiveObjectInspectorUtils.getDouble(args[2], cmpKeyOI);
-        final Object[] row;
-        TupleWithKey tuple = this._tuple;
-        if (_tuple == null) {
-            row = new Object[args.length - 1];
-            tuple = new TupleWithKey(key, row);
-            this._tuple = tuple;
-        } else {
-            row = tuple.getRow();
-            tuple.setKey(key);
+        if (_queue.accepts(key) == false) {
+            return; // avoid copying a row to be rejected
         }
+
+        final Object[] row = new Object[args.length - 1];
         for (int i = 3; i < args.length; i++) {
             Object arg = args[i];
             ObjectInspector argOI = argOIs[i];
             row[i - 1] = ObjectInspectorUtils.copyToStandardObject(arg, argOI,
                 ObjectInspectorCopyOption.DEFAULT);
         }
-
-        if (_queue.offer(tuple)) {
-            this._tuple = null;
-        }
+        _queue.offer(key, row);
     }
 
     private boolean isSameGroup(Object arg1) {
@@ -178,29 +154,20 @@ public final class EachTopKUDTF extends GenericUDTF {
     private void drainQueue() throws HiveException {
         final int queueSize = _queue.size();
         if (queueSize > 0) {
-            final TupleWithKey[] tuples = new TupleWithKey[queueSize];
-            for (int i = 0; i < queueSize; i++) {
-                TupleWithKey tuple = _queue.poll();
-                if (tuple == null) {
-                    throw new IllegalStateException("Found null element in the queue");
-                }
-                tuples[i] = tuple;
-            }
+            _queue.sort(); // from the top-1
             final IntWritable rankProbe = new IntWritable(-1);
             final DoubleWritable keyProbe = new DoubleWritable(Double.NaN);
             int rank = 0;
             double lastKey = Double.NaN;
-            for (int i = queueSize - 1; i >= 0; i--) {
-                TupleWithKey tuple = tuples[i];
-                tuples[i] = null; // help GC
-                double key = tuple.getKey();
+            for (int i = 0; i < queueSize; i++) {
+                double key = _queue.getKey(i);
                 if (key != lastKey) {
                     ++rank;
                     rankProbe.set(rank);
                     keyProbe.set(key);
                     lastKey = key;
                 }
-                Object[] row = tuple.getRow();
+                Object[] row = _queue.getValue(i);
                 row[0] = rankProbe;
                 row[1] = keyProbe;
                 forward(row);
@@ -214,35 +181,6 @@ public final class EachTopKUDTF extends GenericUDTF {
         drainQueue();
 
         this._queue = null;
-        this._tuple = null;
-    }
-
-    private static final class TupleWithKey implements Comparable<TupleWithKey> {
-        double key;
-        Object[] row;
-
-        TupleWithKey(double key, Object[] row) {
-            this.key = key;
-            this.row = row;
-        }
-
-        double getKey() {
-            return key;
-        }
-
-        Object[] getRow() {
-            return row;
-        }
-
-        void setKey(final double key) {
-            this.key = key;
-        }
-
-        @Override
-        public int compareTo(TupleWithKey o) {
-            return Double.compare(key, o.key);
-        }
-
     }
 
 }
@@ -19,6 +19,8 @@
 package hivemall.tools.list;
 
 import hivemall.utils.collections.BoundedPriorityQueue;
+import hivemall.utils.collections.DoublePriorityQueue;
+import hivemall.utils.collections.DoublePriorityQueue.ValueLoader;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.lang.CommandLineUtils;
 import hivemall.utils.lang.NaturalComparator;
@@ -50,6 +52,7 @@ import org.apache.hadoop.hive.ql.parse.SemanticException;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
@@ -59,6 +62,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.StandardListObjectInspector
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.IntWritable;
@@ -140,6 +144,8 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
         private int size;
         private boolean reverseOrder;
         private boolean sortByKey;
+        /** compare keys as primitive doubles */
+        private boolean doubleKey;
 
         protected Options getOptions() {
             Options opts = new Options();
@@ -230,10 +236,12 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
                 if (sortByKey) {
                     this.valueOI = argOIs[0];
                     this.keyOI = HiveUtils.asPrimitiveObjectInspector(argOIs[1]);
+                    this.doubleKey = isDoubleKey(keyOI);
                 } else {
                     // sort values by value itself
                     this.valueOI = HiveUtils.asPrimitiveObjectInspector(argOIs[0]);
                     this.keyOI = HiveUtils.asPrimitiveObjectInspector(argOIs[0]);
+                    this.doubleKey = false;
                 }
 
                 processOptions(argOIs);
@@ -255,6 +263,7 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
                 this.keyOI = HiveUtils.asPrimitiveObjectInspector(
                     keyListOI.getListElementObjectInspector());
                 this.keyListOI = ObjectInspectorFactory.getStandardListObjectInspector(keyOI);
+                this.doubleKey = isDoubleKey(keyOI);
 
                 this.sizeField = soi.getStructFieldRef("size");
                 this.reverseOrderField = soi.getStructFieldRef("reverseOrder");
@@ -263,7 +272,9 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
             // initialize output
             final ObjectInspector outputOI;
             if (mode == Mode.PARTIAL1 || mode == Mode.PARTIAL2) {// terminatePartial
-                outputOI = internalMergeOI(valueOI, keyOI);
+                outputOI = internalMergeOI(valueOI,
+                    doubleKey ? PrimitiveObjectInspectorFactory.writableDoubleObjectInspector
+                            : keyOI);
             } else {// terminate
                 outputOI = ObjectInspectorFactory.getStandardListObjectInspector(
                     ObjectInspectorUtils.getStandardObjectInspector(valueOI));
@@ -272,6 +283,23 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
             return outputOI;
         }
 
+        /**
+         * Keys of these types are exactly represented as doubles, and thus are kept in a
+         * {@link DoublePriorityQueue} instead of a queue of boxed objects.
+         */
+        private static boolean isDoubleKey(@Nonnull PrimitiveObjectInspector keyOI) {
+            switch (keyOI.getPrimitiveCategory()) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case FLOAT:
+                case DOUBLE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         @Nonnull
         private static StructObjectInspector internalMergeOI(@Nonnull ObjectInspector valueOI,
                 @Nonnull PrimitiveObjectInspector keyOI) {
@@ -304,7 +332,7 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
         public void reset(@SuppressWarnings("deprecation") AggregationBuffer agg)
                 throws HiveException {
             QueueAggregationBuffer myagg = (QueueAggregationBuffer) agg;
-            myagg.reset(size, reverseOrder);
+            myagg.reset(size, reverseOrder, doubleKey);
         }
 
         @Override
@@ -313,6 +341,20 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
             if (parameters[0] == null) {
                 return;
             }
+
+            if (doubleKey) {
+                if (parameters[1] == null) {
+                    return;
+                }
+                final double key = PrimitiveObjectInspectorUtils.getDouble(parameters[1], keyOI);
+                QueueAggregationBuffer myagg = (QueueAggregationBuffer) agg;
+                if (myagg.accepts(key)) { // copy the value only when it is kept
+                    myagg.iterate(key,
+                        ObjectInspectorUtils.copyToStandardObject(parameters[0], valueOI));
+                }
+                return;
+            }
+
             Object value = ObjectInspectorUtils.copyToStandardObject(parameters[0], valueOI);
 
             final Object key;
@@ -362,6 +404,38 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
             Object valueListObj = internalMergeOI.getStructFieldData(partial, valueListField);
             final List<?> valueListRaw =
                     valueListOI.getList(HiveUtils.castLazyBinaryObject(valueListObj));
+
+            Object sizeObj = internalMergeOI.getStructFieldData(partial, sizeField);
+            int size = PrimitiveObjectInspectorFactory.writableIntObjectInspector.get(sizeObj);
+
+            Object reverseOrderObj = internalMergeOI.getStructFieldData(partial, reverseOrderField);
+            boolean reverseOrder =
+                    PrimitiveObjectInspectorFactory.writableBooleanObjectInspector.get(
+                        reverseOrderObj);
+
+            QueueAggregationBuffer myagg = (QueueAggregationBuffer) agg;
+            myagg.setOptions(size, reverseOrder);
+
+            if (doubleKey) {
+                Object keyListObj = internalMergeOI.getStructFieldData(partial, keyListField);
+                final List<?> keyListRaw =
+                        keyListOI.getList(HiveUtils.castLazyBinaryObject(keyListObj));
+                final int n = keyListRaw.size();
+                final double[] keys = new double[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = PrimitiveObjectInspectorUtils.getDouble(keyListRaw.get(i), keyOI);
+                }
+                // values are copied only when they are kept
+                myagg.merge(keys, n, new ValueLoader<Object>() {
+                    @Override
+                    public Object load(int i) {
+                        return ObjectInspectorUtils.copyToStandardObject(valueListRaw.get(i),
+                            valueOI);
+                    }
+                });
+                return;
+            }
+
             final List<Object> valueList = new ArrayList<Object>();
             for (int i = 0, n = valueListRaw.size(); i < n; i++) {
                 valueList.add(
@@ -376,16 +450,6 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
                 keyList.add(ObjectInspectorUtils.copyToStandardObject(keyListRaw.get(i), keyOI));
             }
 
-            Object sizeObj = internalMergeOI.getStructFieldData(partial, sizeField);
-            int size = PrimitiveObjectInspectorFactory.writableIntObjectInspector.get(sizeObj);
-
-            Object reverseOrderObj = internalMergeOI.getStructFieldData(partial, reverseOrderField);
-            boolean reverseOrder =
-                    PrimitiveObjectInspectorFactory.writableBooleanObjectInspector.get(
-                        reverseOrderObj);
-
-            QueueAggregationBuffer myagg = (QueueAggregationBuffer) agg;
-            myagg.setOptions(size, reverseOrder);
             myagg.merge(keyList, valueList);
         }
 
@@ -403,18 +467,23 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
         static class QueueAggregationBuffer extends AbstractAggregationBuffer {
 
             private AbstractQueueHandler queueHandler;
+            /** used instead of queueHandler for primitive double keys */
+            private DoublePriorityQueue<Object> doubleQueue;
 
             @Nonnegative
             private int size;
             private boolean reverseOrder;
+            private boolean doubleKey;
 
             QueueAggregationBuffer() {
                 super();
             }
 
-            void reset(@Nonnegative int size, boolean reverseOrder) {
+            void reset(@Nonnegative int size, boolean reverseOrder, boolean doubleKey) {
                 setOptions(size, reverseOrder);
+                this.doubleKey = doubleKey;
                 this.queueHandler = null;
+                this.doubleQueue = null;
             }
 
             void setOptions(@Nonnegative int size, boolean reverseOrder) {
@@ -429,6 +498,28 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
                 queueHandler.offer(tuple);
             }
 
+            boolean accepts(final double key) {
+                if (doubleQueue == null) {
+                    initDoubleQueue();
+                }
+                return doubleQueue.accepts(key);
+            }
+
+            void iterate(final double key, @Nonnull final Object value) {
+                if (doubleQueue == null) {
+                    initDoubleQueue();
+                }
+                doubleQueue.offer(key, value);
+            }
+
+            void merge(@Nonnull final double[] o_keys, final int n,
+                    @Nonnull final ValueLoader<Object> o_values) {
+                if (doubleQueue == null) {
+                    initDoubleQueue();
+                }
+                doubleQueue.merge(o_keys, n, o_values);
+            }
+
             void merge(@Nonnull List<Object> o_keyList, @Nonnull List<Object> o_valueList) {
                 if (queueHandler == null) {
                     initQueueHandler();
@@ -440,6 +531,9 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
 
             @Nullable
             Pair<List<Object>, List<Object>> drainQueue() {
+                if (doubleKey) {
+                    return drainDoubleQueue();
+                }
                 if (queueHandler == null) {
                     return null;
                 }
@@ -457,6 +551,33 @@ public final class UDAFToOrderedList extends AbstractGenericUDAFResolver {
                 return Pair.of(Arrays.asList(keys), Arrays.asList(values));
             }
 
+            @Nullable
+            private Pair<List<Object>, List<Object>> drainDoubleQueue() {
+                if (doubleQueue == null) {
+                    return null;
+                }
+
+                doubleQueue.sort();
+                int n = doubleQueue.size();
+                final Object[] keys = new Object[n];
+                final Object[] values = new Object[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = new DoubleWritable(doubleQueue.getKey(i));
+                    values[i] = doubleQueue.getValue(i);
+                }
+                doubleQueue.clear();
+
+                return Pair.of(Arrays.asList(keys), Arrays.asList(values));
+            }
+
+            private void initDoubleQueue() {
+                if (size > 0) {
+                    this.doubleQueue = new DoublePriorityQueue<Object>(size, reverseOrder);
+                } else {
+                    this.doubleQueue = new DoublePriorityQueue<Object>(reverseOrder);
+                }
+            }
+
             private void initQueueHandler() {
                 final Comparator<TupleWithKey> comparator;
                 if (reverseOrder) {
@@ -18,6 +18,7 @@
  */
 package hivemall.tools.map;
 
+import hivemall.utils.collections.maps.SortedArrayMap;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.lang.Preconditions;
 
@@ -37,12 +38,14 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 
 //@formatter:off
 @Description(name = "merge_maps",
         value = "_FUNC_(x) - Returns a map which contains the union of an aggregation of maps."
-                + " Note that an existing value of a key can be replaced with the other duplicate key entry.",
+                + " Note that an existing value of a key can be replaced with the other duplicate key entry."
+                + " Entries are sorted by keys unless keys are binary.",
         extended = "SELECT \n" + 
                 "  merge_maps(m) \n" + 
                 "FROM (\n" + 
@@ -70,11 +73,13 @@ public final class MergeMapsUDAF extends AbstractGenericUDAFResolver {
 
         private transient MapObjectInspector inputMapOI, mergeMapOI;
         private transient ObjectInspector inputKeyOI, inputValOI;
+        /** Keys are kept in a sorted array when they are mutually comparable */
+        private transient boolean sortedKeys;
 
         @AggregationType(estimable = false)
         static final class MapAggBuffer extends AbstractAggregationBuffer {
             @Nonnull
-            final Map<Object, Object> collectMap = new HashMap<Object, Object>();
+            Map<Object, Object> collectMap = new HashMap<Object, Object>();
         }
 
         public ObjectInspector init(Mode mode, ObjectInspector[] parameters) throws HiveException {
@@ -91,6 +96,7 @@ public final class MergeMapsUDAF extends AbstractGenericUDAFResolver {
                 this.inputKeyOI = mergeMapOI.getMapKeyObjectInspector();
                 this.inputValOI = mergeMapOI.getMapValueObjectInspector();
             }
+            this.sortedKeys = isComparable(inputKeyOI);
 
             return ObjectInspectorFactory.getStandardMapObjectInspector(
                 ObjectInspectorUtils.getStandardObjectInspector(inputKeyOI),
@@ -108,7 +114,29 @@ public final class MergeMapsUDAF extends AbstractGenericUDAFResolver {
         public void reset(@SuppressWarnings("deprecation") AggregationBuffer buff)
                 throws HiveException {
             MapAggBuffer aggrBuf = (MapAggBuffer) buff;
-            aggrBuf.collectMap.clear();
+            if (sortedKeys) {
+                aggrBuf.collectMap = new SortedArrayMap<Object, Object>();
+            } else {
+                aggrBuf.collectMap = new HashMap<Object, Object>();
+            }
+        }
+
+        /**
+         * @return true if the copies of keys are mutually comparable, i.e., primitives except
+         *         binary that is copied to byte[]
+         */
+        private static boolean isComparable(@Nonnull final ObjectInspector keyOI) {
+            if (keyOI.getCategory() != Category.PRIMITIVE) {
+                return false;
+            }
+            switch (((PrimitiveObjectInspector) keyOI).getPrimitiveCategory()) {
+                case BINARY:
+                case VOID:
+                case UNKNOWN:
+                    return false;
+                default:
+                    return true;
+            }
         }
 
         @Override
@@ -18,7 +18,7 @@
  */
 package hivemall.tools.map;
 
-import hivemall.utils.collections.maps.BoundedSortedMap;
+import hivemall.utils.collections.maps.SortedArrayMap;
 import hivemall.utils.hadoop.HiveUtils;
 import hivemall.utils.lang.Preconditions;
 
@@ -26,7 +26,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -126,7 +125,7 @@ public final class UDAFToOrderedMap extends UDAFToMap {
         @Override
         public void reset(@SuppressWarnings("deprecation") AggregationBuffer agg)
                 throws HiveException {
-            ((MapAggregationBuffer) agg).container = new TreeMap<Object, Object>();
+            ((MapAggregationBuffer) agg).container = new SortedArrayMap<Object, Object>();
         }
 
     }
@@ -137,7 +136,7 @@ public final class UDAFToOrderedMap extends UDAFToMap {
         public void reset(@SuppressWarnings("deprecation") AggregationBuffer agg)
                 throws HiveException {
             ((MapAggregationBuffer) agg).container =
-                    new TreeMap<Object, Object>(Collections.reverseOrder());
+                    new SortedArrayMap<Object, Object>(Collections.reverseOrder());
         }
 
     }
@@ -259,7 +258,7 @@ public final class UDAFToOrderedMap extends UDAFToMap {
         void initBuffer(@Nonnull MapAggregationBuffer agg, @Nonnegative int size) {
             Preconditions.checkArgument(size > 0, "size MUST be greater than zero: " + size);
 
-            agg.container = new BoundedSortedMap<Object, Object>(size, true);
+            agg.container = new SortedArrayMap<Object, Object>(size, Collections.reverseOrder());
             agg.size = size;
         }
 
@@ -318,7 +317,7 @@ public final class UDAFToOrderedMap extends UDAFToMap {
 
         @Override
         void initBuffer(MapAggregationBuffer agg, int size) {
-            agg.container = new BoundedSortedMap<Object, Object>(size);
+            agg.container = new SortedArrayMap<Object, Object>(size, null);
             agg.size = size;
         }
     }
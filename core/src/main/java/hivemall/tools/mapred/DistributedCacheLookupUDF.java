@@ -21,7 +21,10 @@ package hivemall.tools.mapred;
 import hivemall.ftvec.ExtractFeatureUDF;
 import hivemall.utils.hadoop.HadoopUtils;
 import hivemall.utils.hadoop.HiveUtils;
+import hivemall.utils.hashing.MurmurHash3;
+import hivemall.utils.io.FileUtils;
 import hivemall.utils.io.IOUtils;
+import hivemall.utils.io.MappedKeyValueIndex;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
@@ -32,6 +35,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -42,23 +48,29 @@ import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.Text;
 
 @Description(name = "distcache_gets",
-        value = "_FUNC_(filepath, key, default_value [, parseKey]) - Returns map<key_type, value_type>|value_type")
+        value = "_FUNC_(filepath, key, default_value [, parseKey, useIndex]) - Returns map<key_type, value_type>|value_type",
+        extended = "When useIndex is true or filepath is an index file, lookups are served from a memory-mapped"
+                + " index that is shared among tasks on a node rather than from a per-task in-heap map")
 @UDFType(deterministic = false, stateful = false)
 public final class DistributedCacheLookupUDF extends GenericUDF {
 
     private boolean multipleKeyLookup;
     private boolean multipleDefaultValues;
     private boolean parseKey;
+    private boolean useIndex;
     private Object defaultValue;
 
     private PrimitiveObjectInspector keyInputOI;
@@ -66,24 +78,40 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
     private ListObjectInspector keysInputOI;
     private ListObjectInspector valuesInputOI;
 
+    private ObjectInspector valueOutputOI;
+
+    @Nullable
     private Object2ObjectMap<Object, Object> cache;
 
+    // for memory-mapped index lookups
+    @Nullable
+    private MappedKeyValueIndex index;
+    private Converter valueConverter;
+    private Text keyText;
+    private Text valueText;
+    private byte[] valueBuf;
+
     @Override
     public ObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
-        if (argOIs.length != 3 && argOIs.length != 4) {
+        if (argOIs.length < 3 || argOIs.length > 5) {
             throw new UDFArgumentException(
-                "Invalid number of arguments for distcache_gets(FILEPATH, KEYS, DEFAULT_VAL, PARSE_KEY): "
+                "Invalid number of arguments for distcache_gets(FILEPATH, KEYS, DEFAULT_VAL, PARSE_KEY, USE_INDEX): "
                         + argOIs.length + getUsage());
         }
         if (!ObjectInspectorUtils.isConstantObjectInspector(argOIs[2])) {
             throw new UDFArgumentException("Third argument DEFAULT_VALUE must be a constant value: "
                     + TypeInfoUtils.getTypeInfoFromObjectInspector(argOIs[2]));
         }
-        if (argOIs.length == 4) {
+        if (argOIs.length >= 4) {
             this.parseKey = HiveUtils.getConstBoolean(argOIs[3]);
         } else {
             this.parseKey = false;
         }
+        if (argOIs.length == 5) {
+            this.useIndex = HiveUtils.getConstBoolean(argOIs[4]);
+        } else {
+            this.useIndex = false;
+        }
 
         String filepath = HiveUtils.getConstString(argOIs[0]);
 
@@ -99,6 +127,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
         }
         ObjectInspector valueOutputOI = ObjectInspectorUtils.getStandardObjectInspector(
             valueInputOI, ObjectInspectorCopyOption.WRITABLE);
+        this.valueOutputOI = valueOutputOI;
 
         final ObjectInspector outputOI;
         switch (argOIs[1].getCategory()) {
@@ -124,11 +153,23 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
                 "parseKey=true is only available for string typed key(s)");
         }
 
-        final Object2ObjectMap<Object, Object> map =
-                new Object2ObjectOpenHashMap<Object, Object>(8192);
+        final File file = new File(filepath);
         try {
-            loadValues(map, new File(filepath), keyInputOI, valueInputOI);
-            this.cache = map;
+            if (MappedKeyValueIndex.isIndexFile(file)) {
+                openIndex(file);
+            } else if (useIndex) {
+                openIndex(getLocalIndexFile(file, keyInputOI, valueInputOI));
+            } else {
+                final Object2ObjectMap<Object, Object> map =
+                        new Object2ObjectOpenHashMap<Object, Object>(8192);
+                loadValues(new KeyValueHandler() {
+                    @Override
+                    public void handle(Object key, Object value) {
+                        map.put(key, value);
+                    }
+                }, file, keyInputOI, valueInputOI);
+                this.cache = map;
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         } catch (SerDeException e) {
@@ -138,8 +179,76 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
         return outputOI;
     }
 
-    private static void loadValues(Object2ObjectMap<Object, Object> map, File file,
-            PrimitiveObjectInspector keyOI, PrimitiveObjectInspector valueOI)
+    private void openIndex(@Nonnull final File file) throws IOException {
+        this.index = MappedKeyValueIndex.open(file);
+        this.valueConverter = ObjectInspectorConverters.getConverter(
+            PrimitiveObjectInspectorFactory.writableStringObjectInspector, valueOutputOI);
+        this.keyText = new Text();
+        this.valueText = new Text();
+        this.valueBuf = new byte[64];
+    }
+
+    /**
+     * Builds a memory-mapped index of the given key-value text file(s) in a node-local directory
+     * unless it already exists, so that tasks on the same node share the index through the page
+     * cache. Keys and values are stored as their UTF-8 string representations.
+     */
+    @Nonnull
+    private static File getLocalIndexFile(@Nonnull final File file,
+            @Nonnull final PrimitiveObjectInspector keyOI,
+            @Nonnull final PrimitiveObjectInspector valueOI) throws IOException, SerDeException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "hivemall_distcache");
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("Failed to create a directory: " + dir.getAbsolutePath());
+        }
+        final String id = file.getCanonicalPath() + ':' + FileUtils.getFileSize(file) + ':'
+                + file.lastModified() + ':' + keyOI.getTypeName() + ':' + valueOI.getTypeName();
+        final String name =
+                file.getName() + '-' + Integer.toHexString(MurmurHash3.murmurhash3_x86_32(id));
+        final File indexFile = new File(dir, name + ".idx");
+        if (indexFile.exists()) {
+            return indexFile;
+        }
+
+        final File tmpFile = File.createTempFile(name, ".tmp", dir);
+        try {
+            final MappedKeyValueIndex.Builder builder = new MappedKeyValueIndex.Builder(tmpFile);
+            try {
+                loadValues(new KeyValueHandler() {
+                    @Override
+                    public void handle(Object key, Object value) throws IOException {
+                        Text k = new Text(key.toString());
+                        if (value == null) {
+                            builder.put(k.getBytes(), 0, k.getLength(), null, 0, -1);
+                        } else {
+                            Text v = new Text(value.toString());
+                            builder.put(k.getBytes(), 0, k.getLength(), v.getBytes(), 0,
+                                v.getLength());
+                        }
+                    }
+                }, file, keyOI, valueOI);
+            } finally {
+                builder.close();
+            }
+            // atomically replaces an index concurrently built by another task
+            if (!tmpFile.renameTo(indexFile) && !indexFile.exists()) {
+                throw new IOException("Failed to rename " + tmpFile.getAbsolutePath() + " to "
+                        + indexFile.getAbsolutePath());
+            }
+        } finally {
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+        return indexFile;
+    }
+
+    private interface KeyValueHandler {
+        void handle(@Nonnull Object key, @Nullable Object value) throws IOException;
+    }
+
+    private static void loadValues(@Nonnull KeyValueHandler handler, @Nonnull File file,
+            @Nonnull PrimitiveObjectInspector keyOI, @Nonnull PrimitiveObjectInspector valueOI)
             throws IOException, SerDeException {
         if (!file.exists()) {
             return;
@@ -147,7 +256,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
         if (!file.getName().endsWith(".crc")) {
             if (file.isDirectory()) {
                 for (File f : file.listFiles()) {
-                    loadValues(map, f, keyOI, valueOI);
+                    loadValues(handler, f, keyOI, valueOI);
                 }
             } else {
                 LazySimpleSerDe serde = HiveUtils.getKeyValueLineSerde(keyOI, valueOI);
@@ -171,7 +280,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
                         Object f1 = fields.get(1);
                         Object k = keyRefOI.getPrimitiveJavaObject(f0);
                         Object v = valueRefOI.getPrimitiveWritableObject(valueRefOI.copyObject(f1));
-                        map.put(k, v);
+                        handler.handle(k, v);
                     }
                 } finally {
                     IOUtils.closeQuietly(reader);
@@ -197,7 +306,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
 
     private Object get(Object arg) {
         Object key = keyInputOI.getPrimitiveJavaObject(arg);
-        Object value = cache.get(lookupKey(key));
+        Object value = lookup(key);
         return (value == null) ? defaultValue : value;
     }
 
@@ -210,7 +319,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
                 continue;
             }
             Object kj = keyInputOI.getPrimitiveJavaObject(k);
-            final Object v = cache.get(lookupKey(kj));
+            final Object v = lookup(kj);
             if (v == null) {
                 map.put(k, defaultValue);
             } else {
@@ -236,7 +345,7 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
                 continue;
             }
             Object kj = keyInputOI.getPrimitiveJavaObject(k);
-            Object v = cache.get(lookupKey(kj));
+            Object v = lookup(kj);
             if (v == null) {
                 v = defaultValues.get(i);
                 if (v != null) {
@@ -248,6 +357,33 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
         return map;
     }
 
+    @Nullable
+    private Object lookup(@Nonnull final Object key) {
+        if (index == null) {
+            return cache.get(lookupKey(key));
+        }
+
+        keyText.set(lookupKey(key).toString());
+        final long pos = index.lookup(keyText.getBytes(), 0, keyText.getLength());
+        if (pos == -1L) {
+            return null;
+        }
+        final int length = index.valueLength(pos);
+        if (length == -1) {
+            return null;
+        }
+        if (length > valueBuf.length) {
+            this.valueBuf = new byte[length];
+        }
+        index.readValue(pos, valueBuf, 0);
+        valueText.set(valueBuf, 0, length);
+        // the converter reuses its writable output (or returns valueText itself for string values)
+        // while results have to be distinct objects as the values of the in-heap cache
+        Object value = valueConverter.convert(valueText);
+        return ObjectInspectorUtils.copyToStandardObject(value, valueOutputOI,
+            ObjectInspectorCopyOption.WRITABLE);
+    }
+
     private Object lookupKey(final Object key) {
         if (parseKey) {
             String keyStr = key.toString();
@@ -264,9 +400,9 @@ public final class DistributedCacheLookupUDF extends GenericUDF {
 
     private static String getUsage() {
         return "\nUSAGE: "
-                + "\n\tdistcache_gets(const string FILEPATH, object[] keys, const object defaultValue [, const boolean parseKey])::map<key_type, value_type>"
-                + "\n\tdistcache_gets(const string FILEPATH, object key, const object defaultValue [, const boolean parseKey])::value_type"
-                + "\n\tdistcache_gets(const string FILEPATH, object[] key, object[] defaultValues [, const boolean parseKey])::map<key_type, value_type>";
+                + "\n\tdistcache_gets(const string FILEPATH, object[] keys, const object defaultValue [, const boolean parseKey, const boolean useIndex])::map<key_type, value_type>"
+                + "\n\tdistcache_gets(const string FILEPATH, object key, const object defaultValue [, const boolean parseKey, const boolean useIndex])::value_type"
+                + "\n\tdistcache_gets(const string FILEPATH, object[] key, object[] defaultValues [, const boolean parseKey, const boolean useIndex])::map<key_type, value_type>";
     }
 
 }
@@ -42,6 +42,7 @@ import org.apache.hadoop.io.FloatWritable;
 public final class SigmoidGenericUDF extends GenericUDF {
 
     private PrimitiveObjectInspector argOI;
+    private FloatWritable result;
 
     @Override
     public ObjectInspector initialize(@Nonnull ObjectInspector[] argOIs)
@@ -50,6 +51,7 @@ public final class SigmoidGenericUDF extends GenericUDF {
             throw new UDFArgumentException("_FUNC_ takes 1 argument");
         }
         this.argOI = HiveUtils.asDoubleCompatibleOI(argOIs[0]);
+        this.result = new FloatWritable();
         return PrimitiveObjectInspectorFactory.writableFloatObjectInspector;
     }
 
@@ -64,8 +66,8 @@ public final class SigmoidGenericUDF extends GenericUDF {
             return null;
         }
         double x = PrimitiveObjectInspectorUtils.getDouble(obj0, argOI);
-        float v = (float) MathUtils.sigmoid(x);
-        return new FloatWritable(v);
+        result.set((float) MathUtils.sigmoid(x));
+        return result;
     }
 
     @Override
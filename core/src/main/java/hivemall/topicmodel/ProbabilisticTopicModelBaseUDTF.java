@@ -20,15 +20,13 @@ package hivemall.topicmodel;
 
 import hivemall.UDTFWithOptions;
 import hivemall.annotations.VisibleForTesting;
+import hivemall.common.EpochReplayBuffer;
 import hivemall.utils.hadoop.HiveUtils;
-import hivemall.utils.io.FileUtils;
 import hivemall.utils.io.NIOUtils;
-import hivemall.utils.io.NioStatefulSegment;
 import hivemall.utils.lang.NumberUtils;
 import hivemall.utils.lang.Primitives;
 import hivemall.utils.lang.SizeOf;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -78,8 +76,9 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
     protected ListObjectInspector wordCountsOI;
 
     // for iterations
-    protected NioStatefulSegment fileIO;
-    protected ByteBuffer inputBuf;
+    protected EpochReplayBuffer replayBuffer;
+    private long replayMemoryBudget;
+    private boolean shuffleBlocks;
 
     private float cumPerplexity;
 
@@ -100,6 +99,7 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
             "Check convergence based on the difference of perplexity [default: 1E-1]");
         opts.addOption("s", "mini_batch_size", true,
             "Repeat model updating per mini-batch [default: 128]");
+        EpochReplayBuffer.setup(opts);
         return opts;
     }
 
@@ -119,6 +119,8 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
             this.eps = Primitives.parseDouble(cl.getOptionValue("epsilon"), 1E-1d);
             this.miniBatchSize = Primitives.parseInt(cl.getOptionValue("mini_batch_size"), 128);
         }
+        this.replayMemoryBudget = EpochReplayBuffer.getMemoryBudget(cl);
+        this.shuffleBlocks = EpochReplayBuffer.isShuffleBlocks(cl);
 
         return cl;
     }
@@ -196,26 +198,10 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
             return;
         }
 
-        ByteBuffer buf = inputBuf;
-        NioStatefulSegment dst = fileIO;
-
-        if (buf == null) {
-            final File file;
-            try {
-                file = File.createTempFile("hivemall_topicmodel", ".sgmt");
-                file.deleteOnExit();
-                if (!file.canWrite()) {
-                    throw new UDFArgumentException(
-                        "Cannot write a temporary file: " + file.getAbsolutePath());
-                }
-                logger.info("Record training samples to a file: " + file.getAbsolutePath());
-            } catch (IOException ioe) {
-                throw new UDFArgumentException(ioe);
-            } catch (Throwable e) {
-                throw new UDFArgumentException(e);
-            }
-            this.inputBuf = buf = ByteBuffer.allocateDirect(1024 * 1024); // 1 MB
-            this.fileIO = dst = new NioStatefulSegment(file, false);
+        EpochReplayBuffer dst = replayBuffer;
+        if (dst == null) {
+            this.replayBuffer = dst = new EpochReplayBuffer("hivemall_topicmodel",
+                replayMemoryBudget, EpochReplayBuffer.DEFAULT_BLOCK_SIZE, shuffleBlocks);
         }
 
         // wordCounts length, wc1 length, wc1 string, wc2 length, wc2 string, ...
@@ -227,14 +213,13 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
             wcLengthTotal += wc.length();
         }
         int recordBytes = SizeOf.INT + SizeOf.INT * wordCounts.length + wcLengthTotal * SizeOf.CHAR;
-        int requiredBytes = SizeOf.INT + recordBytes; // need to allocate space for "recordBytes" itself
 
-        int remain = buf.remaining();
-        if (remain < requiredBytes) {
-            writeBuffer(buf, dst);
+        final ByteBuffer buf;
+        try {
+            buf = dst.beginRecord(recordBytes);
+        } catch (IOException e) {
+            throw new HiveException("Failed to record a training example", e);
         }
-
-        buf.putInt(recordBytes);
         buf.putInt(wordCounts.length);
         for (String wc : wordCounts) {
             NIOUtils.putString(wc, buf);
@@ -263,17 +248,6 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
         miniBatchCount = 0;
     }
 
-    private static void writeBuffer(@Nonnull ByteBuffer srcBuf, @Nonnull NioStatefulSegment dst)
-            throws HiveException {
-        srcBuf.flip();
-        try {
-            dst.write(srcBuf);
-        } catch (IOException e) {
-            throw new HiveException("Exception causes while writing a buffer to file", e);
-        }
-        srcBuf.clear();
-    }
-
     @Override
     public void close() throws HiveException {
         if (model == null) {
@@ -304,10 +278,8 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
 
     protected final void runIterativeTraining(@Nonnegative final int iterations)
             throws HiveException {
-        final ByteBuffer buf = this.inputBuf;
-        final NioStatefulSegment dst = this.fileIO;
-        assert (buf != null);
-        assert (dst != null);
+        final EpochReplayBuffer src = this.replayBuffer;
+        assert (src != null);
         final long numTrainingExamples = model.getDocCount();
 
         long numTrain = numTrainingExamples / miniBatchSize;
@@ -321,145 +293,53 @@ public abstract class ProbabilisticTopicModelBaseUDTF extends UDTFWithOptions {
                     "iteration");
 
         try {
-            if (dst.getPosition() == 0L) {// run iterations w/o temporary file
-                if (buf.position() == 0) {
-                    return; // no training example
-                }
-                buf.flip();
-
-                int iter = 2;
-                float perplexity = cumPerplexity / numTrain;
-                float perplexityPrev;
-                for (; iter <= iterations; iter++) {
-                    perplexityPrev = perplexity;
-                    cumPerplexity = 0.f;
-
-                    reportProgress(reporter);
-                    setCounterValue(iterCounter, iter);
-
-                    while (buf.remaining() > 0) {
-                        int recordBytes = buf.getInt();
-                        assert (recordBytes > 0) : recordBytes;
-                        int wcLength = buf.getInt();
-                        final String[] wordCounts = new String[wcLength];
-                        for (int j = 0; j < wcLength; j++) {
-                            wordCounts[j] = NIOUtils.getString(buf);
-                        }
-                        update(wordCounts);
+            int iter = 2;
+            float perplexity = cumPerplexity / numTrain;
+            float perplexityPrev;
+            for (; iter <= iterations; iter++) {
+                perplexityPrev = perplexity;
+                cumPerplexity = 0.f;
+
+                reportProgress(reporter);
+                setCounterValue(iterCounter, iter);
+
+                final EpochReplayBuffer.Replay replay = src.replay();
+                ByteBuffer buf;
+                while ((buf = replay.next()) != null) {
+                    if (replay.isFirstInBlock()) {
+                        reportProgress(reporter);
                     }
-                    buf.rewind();
-
-                    // mean perplexity over `numTrain` mini-batches
-                    perplexity = cumPerplexity / numTrain;
-                    logger.info("Mean perplexity over mini-batches: " + perplexity);
-                    if (Math.abs(perplexityPrev - perplexity) < eps) {
-                        break;
+                    int wcLength = buf.getInt();
+                    final String[] wordCounts = new String[wcLength];
+                    for (int j = 0; j < wcLength; j++) {
+                        wordCounts[j] = NIOUtils.getString(buf);
                     }
+                    update(wordCounts);
                 }
-                logger.info("Performed " + Math.min(iter, iterations) + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on memory (thus "
-                        + NumberUtils.formatNumber(numTrainingExamples * Math.min(iter, iterations))
-                        + " training updates in total) ");
-            } else {// read training examples in the temporary file and invoke train for each example
-                // write training examples in buffer to a temporary file
-                if (buf.remaining() > 0) {
-                    writeBuffer(buf, dst);
-                }
-                try {
-                    dst.flush();
-                } catch (IOException e) {
-                    throw new HiveException(
-                        "Failed to flush a file: " + dst.getFile().getAbsolutePath(), e);
-                }
-                if (logger.isInfoEnabled()) {
-                    File tmpFile = dst.getFile();
-                    logger.info("Wrote " + numTrainingExamples
-                            + " records to a temporary file for iterative training: "
-                            + tmpFile.getAbsolutePath() + " (" + FileUtils.prettyFileSize(tmpFile)
-                            + ")");
-                }
+                replay.close();
 
-                // run iterations
-                int iter = 2;
-                float perplexity = cumPerplexity / numTrain;
-                float perplexityPrev;
-                for (; iter <= iterations; iter++) {
-                    perplexityPrev = perplexity;
-                    cumPerplexity = 0.f;
-
-                    setCounterValue(iterCounter, iter);
-
-                    buf.clear();
-                    dst.resetPosition();
-                    while (true) {
-                        reportProgress(reporter);
-                        // TODO prefetch
-                        // writes training examples to a buffer in the temporary file
-                        final int bytesRead;
-                        try {
-                            bytesRead = dst.read(buf);
-                        } catch (IOException e) {
-                            throw new HiveException(
-                                "Failed to read a file: " + dst.getFile().getAbsolutePath(), e);
-                        }
-                        if (bytesRead == 0) { // reached file EOF
-                            break;
-                        }
-                        assert (bytesRead > 0) : bytesRead;
-
-                        // reads training examples from a buffer
-                        buf.flip();
-                        int remain = buf.remaining();
-                        if (remain < SizeOf.INT) {
-                            throw new HiveException("Illegal file format was detected");
-                        }
-                        while (remain >= SizeOf.INT) {
-                            int pos = buf.position();
-                            int recordBytes = buf.getInt();
-                            remain -= SizeOf.INT;
-                            if (remain < recordBytes) {
-                                buf.position(pos);
-                                break;
-                            }
-
-                            int wcLength = buf.getInt();
-                            final String[] wordCounts = new String[wcLength];
-                            for (int j = 0; j < wcLength; j++) {
-                                wordCounts[j] = NIOUtils.getString(buf);
-                            }
-                            update(wordCounts);
-
-                            remain -= recordBytes;
-                        }
-                        buf.compact();
-                    }
-
-                    // mean perplexity over `numTrain` mini-batches
-                    perplexity = cumPerplexity / numTrain;
-                    logger.info("Mean perplexity over mini-batches: " + perplexity);
-                    if (Math.abs(perplexityPrev - perplexity) < eps) {
-                        break;
-                    }
+                // mean perplexity over `numTrain` mini-batches
+                perplexity = cumPerplexity / numTrain;
+                logger.info("Mean perplexity over mini-batches: " + perplexity);
+                if (Math.abs(perplexityPrev - perplexity) < eps) {
+                    break;
                 }
-                logger.info("Performed " + Math.min(iter, iterations) + " iterations of "
-                        + NumberUtils.formatNumber(numTrainingExamples)
-                        + " training examples on a secondary storage (thus "
-                        + NumberUtils.formatNumber(numTrainingExamples * Math.min(iter, iterations))
-                        + " training updates in total)");
             }
+            logger.info("Performed " + Math.min(iter, iterations) + " iterations of "
+                    + NumberUtils.formatNumber(numTrainingExamples) + " training examples "
+                    + (src.isSpilled() ? "on a secondary storage" : "on memory") + " (thus "
+                    + NumberUtils.formatNumber(numTrainingExamples * Math.min(iter, iterations))
+                    + " training updates in total)");
         } catch (Throwable e) {
             throw new HiveException("Exception caused in the iterative training", e);
         } finally {
             // delete the temporary file and release resources
             try {
-                dst.close(true);
+                src.close();
             } catch (IOException e) {
-                throw new HiveException(
-                    "Failed to close a file: " + dst.getFile().getAbsolutePath(), e);
+                throw new HiveException("Failed to close a replay buffer", e);
             }
-            this.inputBuf = null;
-            this.fileIO = null;
+            this.replayBuffer = null;
         }
     }
 
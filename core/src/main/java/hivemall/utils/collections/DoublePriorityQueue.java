@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A priority queue of primitive double keys and their values that keeps the entries of the
+ * largest keys, or the smallest keys in the reverse order.
+ * 
+ * Keys and values are stored in parallel arrays without a wrapper object per entry. A bounded
+ * queue is a binary min-heap whose head is the entry to be evicted first, and
+ * {@link #accepts(double)} tells whether an entry would be kept so that callers can avoid copying
+ * a value that is rejected. An unbounded queue just appends entries and is heapified on
+ * {@link #sort()}.
+ */
+public final class DoublePriorityQueue<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** 0 for an unbounded queue */
+    @Nonnegative
+    private final int maxSize;
+    private final boolean reverseOrder;
+
+    @Nonnull
+    private double[] keys;
+    @Nonnull
+    private Object[] values;
+    @Nonnegative
+    private int size;
+    private boolean sorted;
+
+    // working buffers of merge
+    @Nonnull
+    private double[] mergeKeys;
+    @Nonnull
+    private int[] mergeIndexes;
+
+    public DoublePriorityQueue(boolean reverseOrder) {
+        this(0, reverseOrder);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries to keep, or 0 for an unbounded queue
+     * @param reverseOrder keep the smallest keys instead of the largest ones
+     */
+    public DoublePriorityQueue(@Nonnegative int maxSize, boolean reverseOrder) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal queue size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.reverseOrder = reverseOrder;
+        int capacity = (maxSize == 0) ? INITIAL_CAPACITY : Math.min(maxSize, INITIAL_CAPACITY);
+        this.keys = new double[capacity];
+        this.values = new Object[capacity];
+        this.mergeKeys = new double[0];
+        this.mergeIndexes = new int[0];
+    }
+
+    @Nonnegative
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if an entry of the given key would be kept by {@link #offer(double, Object)}
+     */
+    public boolean accepts(final double key) {
+        return maxSize == 0 || size < maxSize || higher(key, keys[0]);
+    }
+
+    /**
+     * @return true if the entry is kept
+     */
+    public boolean offer(final double key, @Nonnull final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null argument is not permitted");
+        }
+        checkNotSorted();
+
+        if (maxSize == 0) {
+            ensureCapacity(size + 1);
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        } else if (size < maxSize) {
+            ensureCapacity(size + 1);
+            siftUp(size, key, value);
+            size++;
+        } else if (higher(key, keys[0])) {
+            siftDown(0, key, value, size);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Merges n entries of the given keys. When the queue is bounded, the entries to keep are
+     * selected by quickselect over the keys, and the value of an entry is loaded only when the
+     * entry is kept.
+     */
+    public void merge(@Nonnull final double[] otherKeys, @Nonnegative final int n,
+            @Nonnull final ValueLoader<V> loader) {
+        checkNotSorted();
+
+        if (maxSize == 0 || size + n <= maxSize) {
+            ensureCapacity(size + n);
+            for (int i = 0; i < n; i++) {
+                if (maxSize == 0) {
+                    keys[size] = otherKeys[i];
+                    values[size] = loader.load(i);
+                } else {
+                    siftUp(size, otherKeys[i], loader.load(i));
+                }
+                size++;
+            }
+            return;
+        }
+
+        final int m = size + n;
+        if (mergeKeys.length < m) {
+            this.mergeKeys = new double[m];
+            this.mergeIndexes = new int[m];
+        }
+        final double[] mk = mergeKeys;
+        final int[] mi = mergeIndexes;
+        System.arraycopy(keys, 0, mk, 0, size);
+        System.arraycopy(otherKeys, 0, mk, size, n);
+        for (int i = 0; i < m; i++) {
+            mi[i] = i;
+        }
+        select(mk, mi, m, maxSize);
+
+        final double[] newKeys = (keys.length >= maxSize) ? keys : new double[maxSize];
+        final Object[] newValues = new Object[newKeys.length];
+        for (int i = 0; i < maxSize; i++) {
+            final int idx = mi[i];
+            newValues[i] = (idx < size) ? values[idx] : loader.load(idx - size);
+        }
+        System.arraycopy(mk, 0, newKeys, 0, maxSize);
+        this.keys = newKeys;
+        this.values = newValues;
+        this.size = maxSize;
+        heapify();
+    }
+
+    /**
+     * Sorts the entries in place from the highest to the lowest priority. No entry can be added
+     * until {@link #clear()}.
+     */
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        if (maxSize == 0) {
+            heapify();
+        }
+        for (int last = size - 1; last > 0; last--) {
+            final double key = keys[last];
+            final Object value = values[last];
+            keys[last] = keys[0];
+            values[last] = values[0];
+            siftDown(0, key, value, last);
+        }
+        this.sorted = true;
+    }
+
+    /**
+     * @return the i-th key, in the order of priority after {@link #sort()}
+     */
+    public double getKey(@Nonnegative final int i) {
+        return keys[i];
+    }
+
+    /**
+     * @return the i-th value, in the order of priority after {@link #sort()}
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public V getValue(@Nonnegative final int i) {
+        return (V) values[i];
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0, size, null); // help GC
+        this.size = 0;
+        this.sorted = false;
+    }
+
+    /**
+     * @return true if k1 has a higher priority than k2
+     */
+    private boolean higher(final double k1, final double k2) {
+        final int cmp = Double.compare(k1, k2);
+        return reverseOrder ? cmp < 0 : cmp > 0;
+    }
+
+    /**
+     * @return true if the k1 at the index i1 has a higher priority than the k2 at i2, where the
+     *         earlier one wins a tie
+     */
+    private boolean before(final double k1, final int i1, final double k2, final int i2) {
+        final int cmp = Double.compare(k1, k2);
+        if (cmp == 0) {
+            return i1 < i2;
+        }
+        return reverseOrder ? cmp < 0 : cmp > 0;
+    }
+
+    private void siftUp(int i, final double key, @Nonnull final Object value) {
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            final double parentKey = keys[parent];
+            if (!higher(parentKey, key)) {
+                break;
+            }
+            keys[i] = parentKey;
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void siftDown(int i, final double key, @Nonnull final Object value, final int n) {
+        final int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            final int right = child + 1;
+            if (right < n && higher(keys[child], keys[right])) {
+                child = right;
+            }
+            if (!higher(key, keys[child])) {
+                break;
+            }
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void heapify() {
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i, keys[i], values[i], size);
+        }
+    }
+
+    /**
+     * Partially sorts the first n keys (and their indexes) so that the k keys of the highest
+     * priority come first. Of equal keys, the ones of smaller indexes, i.e., the keys already in
+     * the queue and then the earlier ones of the merged keys, come first.
+     */
+    private void select(@Nonnull final double[] a, @Nonnull final int[] idx, final int n,
+            final int k) {
+        final int target = k - 1;
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final double pivot = a[mid];
+            final int pivotIdx = idx[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (before(a[i], idx[i], pivot, pivotIdx)) {
+                    i++;
+                }
+                while (before(pivot, pivotIdx, a[j], idx[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    final double tk = a[i];
+                    a[i] = a[j];
+                    a[j] = tk;
+                    final int ti = idx[i];
+                    idx[i] = idx[j];
+                    idx[j] = ti;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                hi = j;
+            } else if (target >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required <= keys.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, keys.length * 2);
+        if (maxSize > 0) {
+            newCapacity = Math.min(newCapacity, maxSize);
+        }
+        this.keys = Arrays.copyOf(keys, newCapacity);
+        this.values = Arrays.copyOf(values, newCapacity);
+    }
+
+    private void checkNotSorted() {
+        if (sorted) {
+            throw new IllegalStateException("Cannot add entries to a sorted queue");
+        }
+    }
+
+    public interface ValueLoader<V> {
+
+        @Nonnull
+        V load(@Nonnegative int i);
+
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.arrays;
+
+import hivemall.utils.lang.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A FLOAT array indexed by long that stores values in fixed-size pages. A page is allocated when
+ * a value in the page is first set, optionally off-heap, and thus untouched regions take no
+ * memory. Growing the array only copies the page directory, not the values.
+ */
+public final class PagedFloatArray {
+
+    /** 2^14 floats, i.e., 64KiB for a page */
+    public static final int DEFAULT_PAGE_BITS = 14;
+
+    private final int pageBits;
+    private final int pageSize;
+    private final long pageMask;
+    private final float defaultValue;
+    private final boolean offheap;
+
+    /** page directory used when not off-heap */
+    @Nullable
+    private float[][] heapPages;
+    /** page directory used when off-heap */
+    @Nullable
+    private FloatBuffer[] directPages;
+    private int numAllocatedPages;
+
+    public PagedFloatArray(@Nonnegative long initialCapacity) {
+        this(initialCapacity, 0.f, false);
+    }
+
+    public PagedFloatArray(@Nonnegative long initialCapacity, float defaultValue,
+            boolean offheap) {
+        this(initialCapacity, defaultValue, offheap, DEFAULT_PAGE_BITS);
+    }
+
+    public PagedFloatArray(@Nonnegative long initialCapacity, float defaultValue,
+            boolean offheap, @Nonnegative int pageBits) {
+        Preconditions.checkArgument(initialCapacity >= 0L,
+            "Invalid initial capacity: " + initialCapacity);
+        Preconditions.checkArgument(pageBits >= 1 && pageBits <= 28,
+            "pageBits must be in range [1,28]: " + pageBits);
+        this.pageBits = pageBits;
+        this.pageSize = 1 << pageBits;
+        this.pageMask = pageSize - 1;
+        this.defaultValue = defaultValue;
+        this.offheap = offheap;
+        int numPages = Math.max(1, pageIndex(initialCapacity + pageMask));
+        if (offheap) {
+            this.directPages = new FloatBuffer[numPages];
+        } else {
+            this.heapPages = new float[numPages][];
+        }
+        this.numAllocatedPages = 0;
+    }
+
+    private int pageIndex(final long index) {
+        final long page = index >>> pageBits;
+        if (page > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+        return (int) page;
+    }
+
+    public float get(@Nonnegative final long index) {
+        final int page = pageIndex(index);
+        final int offset = (int) (index & pageMask);
+        if (offheap) {
+            final FloatBuffer[] pages = directPages;
+            if (page >= pages.length || pages[page] == null) {
+                return defaultValue;
+            }
+            return pages[page].get(offset);
+        } else {
+            final float[][] pages = heapPages;
+            if (page >= pages.length || pages[page] == null) {
+                return defaultValue;
+            }
+            return pages[page][offset];
+        }
+    }
+
+    public void set(@Nonnegative final long index, final float value) {
+        final int page = pageIndex(index);
+        final int offset = (int) (index & pageMask);
+        if (offheap) {
+            FloatBuffer buf = directPage(page);
+            buf.put(offset, value);
+        } else {
+            float[] array = heapPage(page);
+            array[offset] = value;
+        }
+    }
+
+    @Nonnull
+    private float[] heapPage(final int page) {
+        float[][] pages = heapPages;
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, newDirectorySize(pages.length, page));
+            this.heapPages = pages;
+        }
+        float[] array = pages[page];
+        if (array == null) {
+            array = new float[pageSize];
+            if (defaultValue != 0.f) {
+                Arrays.fill(array, defaultValue);
+            }
+            pages[page] = array;
+            numAllocatedPages++;
+        }
+        return array;
+    }
+
+    @Nonnull
+    private FloatBuffer directPage(final int page) {
+        FloatBuffer[] pages = directPages;
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, newDirectorySize(pages.length, page));
+            this.directPages = pages;
+        }
+        FloatBuffer buf = pages[page];
+        if (buf == null) {
+            // direct buffers are zero-filled
+            buf = ByteBuffer.allocateDirect(pageSize << 2)
+                            .order(ByteOrder.nativeOrder())
+                            .asFloatBuffer();
+            if (defaultValue != 0.f) {
+                for (int i = 0; i < pageSize; i++) {
+                    buf.put(i, defaultValue);
+                }
+            }
+            pages[page] = buf;
+            numAllocatedPages++;
+        }
+        return buf;
+    }
+
+    private static int newDirectorySize(final int oldSize, final int page) {
+        long newSize = Math.max((long) oldSize << 1, (long) page + 1L);
+        return (int) Math.min(newSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return whether the page containing the given index is allocated
+     */
+    public boolean isAllocated(@Nonnegative final long index) {
+        final int page = pageIndex(index);
+        if (offheap) {
+            return page < directPages.length && directPages[page] != null;
+        } else {
+            return page < heapPages.length && heapPages[page] != null;
+        }
+    }
+
+    /**
+     * @return the least index greater than or equals to the given index in an allocated page, or
+     *         -1 when there is no such index
+     */
+    public long nextAllocated(@Nonnegative final long fromIndex) {
+        final int numPages = offheap ? directPages.length : heapPages.length;
+        long page = fromIndex >>> pageBits;
+        if (page >= numPages) {
+            return -1L;
+        }
+        if (isPageAllocated((int) page)) {
+            return fromIndex;
+        }
+        for (page = page + 1; page < numPages; page++) {
+            if (isPageAllocated((int) page)) {
+                return page << pageBits;
+            }
+        }
+        return -1L;
+    }
+
+    private boolean isPageAllocated(final int page) {
+        return offheap ? directPages[page] != null : heapPages[page] != null;
+    }
+
+    /**
+     * @return the number of values that the page directory can address without growing
+     */
+    public long capacity() {
+        final int numPages = offheap ? directPages.length : heapPages.length;
+        return ((long) numPages) << pageBits;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getNumAllocatedPages() {
+        return numAllocatedPages;
+    }
+
+    public long getAllocatedBytes() {
+        return ((long) numAllocatedPages * pageSize) << 2;
+    }
+
+    public boolean isOffHeap() {
+        return offheap;
+    }
+
+    /**
+     * Releases all the pages. Off-heap pages are freed when they are garbage collected.
+     */
+    public void clear() {
+        if (offheap) {
+            Arrays.fill(directPages, null);
+        } else {
+            Arrays.fill(heapPages, null);
+        }
+        this.numAllocatedPages = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PagedFloatArray [pageSize=" + pageSize + ", allocatedPages=" + numAllocatedPages
+                + ", capacity=" + capacity() + ", offheap=" + offheap + "]";
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.maps;
+
+import hivemall.utils.lang.Preconditions;
+import hivemall.utils.math.Primes;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * An open-addressing hash table using double hashing that accumulates float values of each key to
+ * compute their mean, e.g., the weights of a mini-batch. Keys are iterated in the order of their
+ * first addition, and {@link #clear()} keeps the allocated arrays so that the table is reused
+ * without allocating an accumulator for each key.
+ */
+public final class FloatAccumulatorTable<K> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final float GROW_FACTOR = 2.0f;
+
+    private Object[] _keys;
+    private double[] _sums;
+    private int[] _counts;
+    /** indexes of the used entries in the order of addition */
+    private int[] _order;
+    private int _used;
+    private int _growThreshold;
+
+    public FloatAccumulatorTable(@Nonnegative int size) {
+        Preconditions.checkArgument(size >= 1, "Invalid size: " + size);
+        allocate(Primes.findLeastPrimeNumber(Math.max(size, 3)));
+    }
+
+    private void allocate(@Nonnegative final int capacity) {
+        this._keys = new Object[capacity];
+        this._sums = new double[capacity];
+        this._counts = new int[capacity];
+        this._order = new int[Math.round(capacity * LOAD_FACTOR) + 1];
+        this._used = 0;
+        this._growThreshold = Math.round(capacity * LOAD_FACTOR);
+    }
+
+    public void add(@Nonnull final K key, final float value) {
+        int i = findOrAdd(key);
+        _sums[i] += value;
+        _counts[i]++;
+    }
+
+    public int size() {
+        return _used;
+    }
+
+    public boolean isEmpty() {
+        return _used == 0;
+    }
+
+    /**
+     * @param nth a position in the order of addition in [0, size())
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public K getKey(@Nonnegative final int nth) {
+        return (K) _keys[_order[nth]];
+    }
+
+    /**
+     * @param nth a position in the order of addition in [0, size())
+     * @return the mean of the values added for the nth key
+     */
+    public float getMean(@Nonnegative final int nth) {
+        final int i = _order[nth];
+        return (float) (_sums[i] / _counts[i]);
+    }
+
+    /**
+     * Removes all the entries in O(size()) while keeping the allocated arrays.
+     */
+    public void clear() {
+        final Object[] keys = _keys;
+        final double[] sums = _sums;
+        final int[] counts = _counts;
+        final int[] order = _order;
+        for (int n = 0, used = _used; n < used; n++) {
+            final int i = order[n];
+            keys[i] = null;
+            sums[i] = 0.d;
+            counts[i] = 0;
+        }
+        this._used = 0;
+    }
+
+    private int findOrAdd(@Nonnull final K key) {
+        Preconditions.checkNotNull(key);
+
+        final Object[] keys = _keys;
+        final int length = keys.length;
+        final int hash = key.hashCode() & 0x7fffffff;
+        int i = hash % length;
+        Object k = keys[i];
+        if (k != null) {
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+            final int decr = 1 + (hash % (length - 2));
+            for (;;) {
+                i -= decr;
+                if (i < 0) {
+                    i += length;
+                }
+                k = keys[i];
+                if (k == null) {
+                    break;
+                }
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+        }
+
+        if (_used >= _growThreshold) {
+            rehash(Primes.findLeastPrimeNumber(Math.round(length * GROW_FACTOR)));
+            return findOrAdd(key);
+        }
+        keys[i] = key;
+        _order[_used++] = i;
+        return i;
+    }
+
+    private void rehash(@Nonnegative final int newCapacity) {
+        final Object[] oldKeys = _keys;
+        final double[] oldSums = _sums;
+        final int[] oldCounts = _counts;
+        final int[] oldOrder = _order;
+        final int used = _used;
+
+        allocate(newCapacity);
+        final Object[] keys = _keys;
+        for (int n = 0; n < used; n++) {
+            final int oldIndex = oldOrder[n];
+            final Object k = oldKeys[oldIndex];
+            final int hash = k.hashCode() & 0x7fffffff;
+            int i = hash % newCapacity;
+            if (keys[i] != null) {
+                final int decr = 1 + (hash % (newCapacity - 2));
+                do {
+                    i -= decr;
+                    if (i < 0) {
+                        i += newCapacity;
+                    }
+                } while (keys[i] != null);
+            }
+            keys[i] = k;
+            _sums[i] = oldSums[oldIndex];
+            _counts[i] = oldCounts[oldIndex];
+            _order[n] = i;
+        }
+        this._used = used;
+    }
+
+    @Override
+    public String toString() {
+        return "FloatAccumulatorTable [size=" + _used + ", capacity=" + _keys.length + "]";
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A sorted map that appends entries into parallel key/value arrays and sorts them when the map is
+ * read or the arrays are full.
+ * 
+ * Unlike {@link java.util.TreeMap}, no node object is allocated for each entry. Entries are sorted
+ * by a stable merge sort over the natural runs of the arrays, and thus appending sorted entries,
+ * e.g., a partial result of another map, costs a linear-time merge. When the same key is put more
+ * than once, the last value is kept. Note that {@link #put(Object, Object)} does not return the
+ * previous value.
+ * 
+ * A bounded map keeps the first <code>bound</code> keys in the order, as
+ * {@link BoundedSortedMap} does.
+ */
+public final class SortedArrayMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_RUN = 32;
+
+    @Nullable
+    private final Comparator<? super K> comparator;
+    /** 0 for an unbounded map */
+    @Nonnegative
+    private final int bound;
+
+    @Nonnull
+    private Object[] keys;
+    @Nonnull
+    private Object[] values;
+    @Nonnegative
+    private int size;
+    /** entries in [0, sortedSize) are sorted and have unique keys */
+    @Nonnegative
+    private int sortedSize;
+
+    public SortedArrayMap() {
+        this(0, null);
+    }
+
+    public SortedArrayMap(@Nullable Comparator<? super K> comparator) {
+        this(0, comparator);
+    }
+
+    /**
+     * @param bound the maximum number of keys to keep, or 0 for an unbounded map
+     * @param comparator the order of keys, or null for the natural order
+     */
+    public SortedArrayMap(@Nonnegative int bound, @Nullable Comparator<? super K> comparator) {
+        if (bound < 0) {
+            throw new IllegalArgumentException("bound must not be negative: " + bound);
+        }
+        this.comparator = comparator;
+        this.bound = bound;
+        int capacity = (bound == 0) ? INITIAL_CAPACITY : Math.min(bound * 2, INITIAL_CAPACITY);
+        this.keys = new Object[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * @return always null
+     */
+    @Override
+    @Nullable
+    public V put(@CheckForNull final K key, @Nullable final V value) {
+        if (key == null) {
+            throw new NullPointerException("Null key is not permitted");
+        }
+        if (size == keys.length) {
+            compact();
+            final int capacity = keys.length;
+            if (size > (capacity >>> 1) && (bound == 0 || capacity < bound * 2)) {
+                int newCapacity = capacity * 2;
+                if (bound > 0) {
+                    newCapacity = Math.min(newCapacity, bound * 2);
+                }
+                this.keys = Arrays.copyOf(keys, newCapacity);
+                this.values = Arrays.copyOf(values, newCapacity);
+            }
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public int size() {
+        compact();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable final Object key) {
+        final int i = indexOf(key);
+        return (i >= 0) ? getValue(i) : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        this.size = 0;
+        this.sortedSize = 0;
+    }
+
+    @Override
+    @Nonnull
+    public Set<Map.Entry<K, V>> entrySet() {
+        compact();
+        return new EntrySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private K getKey(final int i) {
+        return (K) keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V getValue(final int i) {
+        return (V) values[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(@Nonnull final Object k1, @Nonnull final Object k2) {
+        if (comparator == null) {
+            return ((Comparable<Object>) k1).compareTo(k2);
+        }
+        return comparator.compare((K) k1, (K) k2);
+    }
+
+    private int indexOf(@Nullable final Object key) {
+        if (key == null) {
+            return -1;
+        }
+        compact();
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compare(keys[mid], key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sorts the entries, removes the duplicate keys, and truncates the entries to the bound.
+     */
+    private void compact() {
+        if (sortedSize == size) {
+            return;
+        }
+
+        final int n = size;
+        sort(n);
+
+        int w = 0;
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && compare(keys[i], keys[i + 1]) == 0) {
+                continue; // keep the last value of the same key
+            }
+            keys[w] = keys[i];
+            values[w] = values[i];
+            w++;
+        }
+        if (bound > 0 && w > bound) {
+            w = bound;
+        }
+        Arrays.fill(keys, w, n, null);
+        Arrays.fill(values, w, n, null);
+        this.size = w;
+        this.sortedSize = w;
+    }
+
+    /**
+     * Stable merge sort of the first n entries that merges natural runs of at least MIN_RUN
+     * entries.
+     */
+    private void sort(final int n) {
+        final int[] bounds = new int[n / MIN_RUN + 2];
+        int runs = 0;
+        for (int lo = 0; lo < n;) {
+            int hi = lo + 1;
+            while (hi < n && compare(keys[hi - 1], keys[hi]) <= 0) {
+                hi++;
+            }
+            final int end = Math.min(n, lo + MIN_RUN);
+            if (hi < end) {
+                insertionSort(lo, hi, end);
+                hi = end;
+            }
+            bounds[++runs] = hi;
+            lo = hi;
+        }
+        if (runs <= 1) {
+            return;
+        }
+
+        Object[] srcKeys = keys, srcValues = values;
+        Object[] dstKeys = new Object[keys.length], dstValues = new Object[keys.length];
+        while (runs > 1) {
+            int r = 0;
+            for (; r + 1 < runs; r += 2) {
+                merge(srcKeys, srcValues, dstKeys, dstValues, bounds[r], bounds[r + 1],
+                    bounds[r + 2]);
+            }
+            if (r < runs) {
+                final int from = bounds[r], len = bounds[r + 1] - from;
+                System.arraycopy(srcKeys, from, dstKeys, from, len);
+                System.arraycopy(srcValues, from, dstValues, from, len);
+            }
+            final int newRuns = (runs + 1) >>> 1;
+            for (int j = 1; j <= newRuns; j++) {
+                bounds[j] = bounds[Math.min(j * 2, runs)];
+            }
+            runs = newRuns;
+
+            Object[] tmp = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tmp;
+            tmp = srcValues;
+            srcValues = dstValues;
+            dstValues = tmp;
+        }
+        this.keys = srcKeys;
+        this.values = srcValues;
+    }
+
+    /**
+     * Inserts the entries in [mid, end) into the sorted entries in [lo, mid).
+     */
+    private void insertionSort(final int lo, final int mid, final int end) {
+        for (int i = mid; i < end; i++) {
+            final Object k = keys[i];
+            final Object v = values[i];
+            int j = i - 1;
+            while (j >= lo && compare(keys[j], k) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            values[j + 1] = v;
+        }
+    }
+
+    private void merge(@Nonnull final Object[] srcKeys, @Nonnull final Object[] srcValues,
+            @Nonnull final Object[] dstKeys, @Nonnull final Object[] dstValues, final int lo,
+            final int mid, final int hi) {
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) {
+            if (compare(srcKeys[i], srcKeys[j]) <= 0) {
+                dstKeys[k] = srcKeys[i];
+                dstValues[k++] = srcValues[i++];
+            } else {
+                dstKeys[k] = srcKeys[j];
+                dstValues[k++] = srcValues[j++];
+            }
+        }
+        while (i < mid) {
+            dstKeys[k] = srcKeys[i];
+            dstValues[k++] = srcValues[i++];
+        }
+        while (j < hi) {
+            dstKeys[k] = srcKeys[j];
+            dstValues[k++] = srcValues[j++];
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<Map.Entry<K, V>>() {
+                int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < size;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (i >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    final int idx = i++;
+                    return new SimpleImmutableEntry<K, V>(getKey(idx), getValue(idx));
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
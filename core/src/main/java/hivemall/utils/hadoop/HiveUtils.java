@@ -60,6 +60,7 @@ import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyPrimitiv
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyStringObjectInspector;
 import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryArray;
 import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryMap;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
@@ -69,6 +70,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardConstantListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
@@ -114,6 +116,23 @@ public final class HiveUtils {
         return Integer.parseInt(s);
     }
 
+    public static long parseLong(@Nonnull final Object o) {
+        if (o instanceof Long) {
+            return ((Long) o).longValue();
+        }
+        if (o instanceof Integer) {
+            return ((Integer) o).intValue();
+        }
+        if (o instanceof LongWritable) {
+            return ((LongWritable) o).get();
+        }
+        if (o instanceof IntWritable) {
+            return ((IntWritable) o).get();
+        }
+        String s = o.toString();
+        return Long.parseLong(s);
+    }
+
     public static Text asText(@Nullable final Object o) {
         if (o == null) {
             return null;
@@ -1136,6 +1155,34 @@ public final class HiveUtils {
         return serde;
     }
 
+    /**
+     * @return a binary serde for rows having the same fields as the given struct
+     */
+    @Nonnull
+    public static LazyBinarySerDe getLazyBinarySerde(@Nonnull final StructObjectInspector structOI)
+            throws SerDeException {
+        final List<? extends StructField> fields = structOI.getAllStructFieldRefs();
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("structOI must have at least one field");
+        }
+        final StringBuilder columnNames = new StringBuilder();
+        final StringBuilder columnTypes = new StringBuilder();
+        for (StructField field : fields) {
+            columnNames.append(field.getFieldName()).append(',');
+            columnTypes.append(field.getFieldObjectInspector().getTypeName()).append(',');
+        }
+        columnNames.deleteCharAt(columnNames.length() - 1);
+        columnTypes.deleteCharAt(columnTypes.length() - 1);
+
+        LazyBinarySerDe serde = new LazyBinarySerDe();
+        Configuration conf = new Configuration();
+        Properties tbl = new Properties();
+        tbl.setProperty("columns", columnNames.toString());
+        tbl.setProperty("columns.types", columnTypes.toString());
+        serde.initialize(conf, tbl);
+        return serde;
+    }
+
     public static LazySimpleSerDe getLineSerde(@Nonnull final PrimitiveObjectInspector... OIs)
             throws SerDeException {
         if (OIs.length == 0) {
@@ -45,6 +45,19 @@ public final class MurmurHash3 {
         return r;
     }
 
+    /**
+     * @return the same value as {@link #murmurhash3(String, int)} for the given range of data,
+     *         without creating a substring
+     */
+    public static int murmurhash3(final CharSequence data, final int offset, final int len,
+            final int numFeatures) {
+        int r = murmurhash3_x86_32(data, offset, len, 0x9747b28c) % numFeatures;
+        if (r < 0) {
+            r += numFeatures;
+        }
+        return r;
+    }
+
     public static int murmurhash3_x86_32(final String data) {
         return murmurhash3_x86_32(data, 0x9747b28c);
     }
@@ -138,4 +151,218 @@ public final class MurmurHash3 {
 
         return h1;
     }
+
+    public static int murmurhash3_x86_32(final byte[] data) {
+        return murmurhash3_x86_32(data, 0, data.length, 0x9747b28c);
+    }
+
+    /**
+     * Returns the MurmurHash3_x86_32 hash of the given bytes. For UTF-8 encoded bytes, the result
+     * is equal to that of {@link #murmurhash3_x86_32(CharSequence, int, int, int)}.
+     */
+    public static int murmurhash3_x86_32(final byte[] data, final int offset, final int len,
+            final int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        int h1 = seed;
+        final int roundedEnd = offset + (len & 0xfffffffc); // round down to 4 byte block
+
+        for (int i = offset; i < roundedEnd; i += 4) {
+            // little endian load order
+            int k1 = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16)
+                    | (data[i + 3] << 24);
+            k1 *= c1;
+            k1 = (k1 << 15) | (k1 >>> 17); // ROTL32(k1,15);
+            k1 *= c2;
+
+            h1 ^= k1;
+            h1 = (h1 << 13) | (h1 >>> 19); // ROTL32(h1,13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+
+        // handle tail
+        int k1 = 0;
+        switch (len & 0x03) {
+            case 3:
+                k1 = (data[roundedEnd + 2] & 0xff) << 16;
+                // fallthrough
+            case 2:
+                k1 |= (data[roundedEnd + 1] & 0xff) << 8;
+                // fallthrough
+            case 1:
+                k1 |= (data[roundedEnd] & 0xff);
+                k1 *= c1;
+                k1 = (k1 << 15) | (k1 >>> 17); // ROTL32(k1,15);
+                k1 *= c2;
+                h1 ^= k1;
+        }
+
+        // finalization
+        h1 ^= len;
+
+        // fmix(h1);
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+
+        return h1;
+    }
+
+    /**
+     * Returns the MurmurHash3_x86_32 hash of the given int values. The result is equal to that of
+     * the little-endian bytes of the values.
+     */
+    public static int murmurhash3_x86_32(final int[] data, final int offset, final int len,
+            final int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        int h1 = seed;
+        for (int i = offset, end = offset + len; i < end; i++) {
+            int k1 = data[i];
+            k1 *= c1;
+            k1 = (k1 << 15) | (k1 >>> 17); // ROTL32(k1,15);
+            k1 *= c2;
+
+            h1 ^= k1;
+            h1 = (h1 << 13) | (h1 >>> 19); // ROTL32(h1,13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+
+        // finalization
+        h1 ^= (len << 2);
+
+        // fmix(h1);
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+
+        return h1;
+    }
+
+    /**
+     * Returns the lower 64 bits of the MurmurHash3_x64_128 hash of the given bytes.
+     */
+    public static long murmurhash3_x64_64(final byte[] data, final int offset, final int len,
+            final int seed) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+
+        long h1 = seed & 0xffffffffL;
+        long h2 = seed & 0xffffffffL;
+        final int roundedEnd = offset + (len & 0xfffffff0); // round down to 16 byte block
+
+        for (int i = offset; i < roundedEnd; i += 16) {
+            long k1 = getLongLE(data, i);
+            long k2 = getLongLE(data, i + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // handle tail
+        long k1 = 0L, k2 = 0L;
+        switch (len & 0x0f) {
+            case 15:
+                k2 ^= (data[roundedEnd + 14] & 0xffL) << 48;
+                // fallthrough
+            case 14:
+                k2 ^= (data[roundedEnd + 13] & 0xffL) << 40;
+                // fallthrough
+            case 13:
+                k2 ^= (data[roundedEnd + 12] & 0xffL) << 32;
+                // fallthrough
+            case 12:
+                k2 ^= (data[roundedEnd + 11] & 0xffL) << 24;
+                // fallthrough
+            case 11:
+                k2 ^= (data[roundedEnd + 10] & 0xffL) << 16;
+                // fallthrough
+            case 10:
+                k2 ^= (data[roundedEnd + 9] & 0xffL) << 8;
+                // fallthrough
+            case 9:
+                k2 ^= (data[roundedEnd + 8] & 0xffL);
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+                // fallthrough
+            case 8:
+                k1 ^= (data[roundedEnd + 7] & 0xffL) << 56;
+                // fallthrough
+            case 7:
+                k1 ^= (data[roundedEnd + 6] & 0xffL) << 48;
+                // fallthrough
+            case 6:
+                k1 ^= (data[roundedEnd + 5] & 0xffL) << 40;
+                // fallthrough
+            case 5:
+                k1 ^= (data[roundedEnd + 4] & 0xffL) << 32;
+                // fallthrough
+            case 4:
+                k1 ^= (data[roundedEnd + 3] & 0xffL) << 24;
+                // fallthrough
+            case 3:
+                k1 ^= (data[roundedEnd + 2] & 0xffL) << 16;
+                // fallthrough
+            case 2:
+                k1 ^= (data[roundedEnd + 1] & 0xffL) << 8;
+                // fallthrough
+            case 1:
+                k1 ^= (data[roundedEnd] & 0xffL);
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+        }
+
+        // finalization
+        h1 ^= len;
+        h2 ^= len;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        return h1;
+    }
+
+    /**
+     * The 64-bit finalization mix of MurmurHash3, which also works as a hash of a long value.
+     */
+    public static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLongLE(final byte[] b, final int i) {
+        return (b[i] & 0xffL) | ((b[i + 1] & 0xffL) << 8) | ((b[i + 2] & 0xffL) << 16)
+                | ((b[i + 3] & 0xffL) << 24) | ((b[i + 4] & 0xffL) << 32)
+                | ((b[i + 5] & 0xffL) << 40) | ((b[i + 6] & 0xffL) << 48)
+                | ((b[i + 7] & 0xffL) << 56);
+    }
+
 }
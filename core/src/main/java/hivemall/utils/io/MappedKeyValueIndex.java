@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.io;
+
+import hivemall.utils.hashing.MurmurHash3;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A read-only hash index of binary keys and values that is memory-mapped from a file.
+ *
+ * Lookups compare the serialized key bytes in place and never deserialize entries. Since the
+ * index lives in the OS page cache, concurrent tasks mapping the same file on a node share a
+ * single copy of it.
+ *
+ * <pre>
+ * header  := MAGIC:int VERSION:int numEntries:long numSlots:long slotsOffset:long
+ * record  := keyLength:int key:byte[] valueLength:int value:byte[] (valueLength = -1 for null)
+ * slot    := recordOffset:long keyHash:int keyLength:int (recordOffset = 0 for an empty slot)
+ * file    := header record* padding slot*
+ * </pre>
+ *
+ * A record never spans two mapped regions, so that files larger than 2GB can be addressed.
+ */
+@ThreadSafe
+public final class MappedKeyValueIndex {
+
+    public static final int MAGIC = 0x484d4b56; // "HMKV"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_BYTES = 1L << REGION_SHIFT;
+    private static final long REGION_MASK = REGION_BYTES - 1L;
+    private static final int HASH_SEED = 0x9747b28c;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    @Nonnull
+    private final File file;
+    @Nonnull
+    private final ByteBuffer[] regions;
+    private final long numEntries;
+    private final long slotMask;
+    private final long slotsOffset;
+
+    private MappedKeyValueIndex(@Nonnull File file, @Nonnull ByteBuffer[] regions,
+            long numEntries, long numSlots, long slotsOffset) {
+        this.file = file;
+        this.regions = regions;
+        this.numEntries = numEntries;
+        this.slotMask = numSlots - 1L;
+        this.slotsOffset = slotsOffset;
+    }
+
+    @Nonnull
+    public File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return numEntries;
+    }
+
+    /**
+     * @return true if the given file starts with the header of this index format
+     */
+    public static boolean isIndexFile(@Nonnull final File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return in.readInt() == MAGIC;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Nonnull
+    public static MappedKeyValueIndex open(@Nonnull final File file) throws IOException {
+        final NioSegment segment = new NioSegment(file, true);
+        try {
+            final long fileSize = segment.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("Illegal index file size: " + fileSize);
+            }
+            final ByteBuffer[] regions = mapRegions(segment, MapMode.READ_ONLY, fileSize);
+            final ByteBuffer header = regions[0];
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not an index file: " + file.getAbsolutePath());
+            }
+            final int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported index version: " + version);
+            }
+            long numEntries = header.getLong(8);
+            long numSlots = header.getLong(16);
+            long slotsOffset = header.getLong(24);
+            if (slotsOffset + numSlots * SLOT_BYTES != fileSize) {
+                throw new IOException("Broken index file: " + file.getAbsolutePath());
+            }
+            return new MappedKeyValueIndex(file, regions, numEntries, numSlots, slotsOffset);
+        } finally {
+            // mapped regions remain valid after the channel is closed
+            segment.close();
+        }
+    }
+
+    /**
+     * @return the position of the value for the given key, or -1 if the key is not found
+     */
+    public long lookup(@Nonnull final byte[] key) {
+        return lookup(key, 0, key.length);
+    }
+
+    /**
+     * @return the position of the value for the given key, or -1 if the key is not found
+     */
+    public long lookup(@Nonnull final byte[] key, final int offset, final int length) {
+        final int hash = MurmurHash3.murmurhash3_x86_32(key, offset, length, HASH_SEED);
+        long i = hash & slotMask;
+        while (true) {
+            final long slotPos = slotsOffset + i * SLOT_BYTES;
+            final ByteBuffer slots = region(slotPos);
+            final int idx = index(slotPos);
+            final long recordPos = slots.getLong(idx);
+            if (recordPos == 0L) {
+                return -1L;
+            }
+            if (slots.getInt(idx + 8) == hash && slots.getInt(idx + 12) == length
+                    && keyEquals(recordPos + 4L, key, offset, length)) {
+                return recordPos + 4L + length;
+            }
+            i = (i + 1L) & slotMask;
+        }
+    }
+
+    /**
+     * @param valuePos a value position returned by {@link #lookup(byte[], int, int)}
+     * @return the length of the value in bytes, or -1 if the value is null
+     */
+    public int valueLength(@Nonnegative final long valuePos) {
+        return region(valuePos).getInt(index(valuePos));
+    }
+
+    /**
+     * Copies the value at the given position into dst.
+     *
+     * @param valuePos a value position returned by {@link #lookup(byte[], int, int)}
+     * @param dst a destination array that has room for {@link #valueLength(long)} bytes
+     */
+    public void readValue(@Nonnegative final long valuePos, @Nonnull final byte[] dst,
+            final int dstOffset) {
+        final ByteBuffer buf = region(valuePos);
+        final int idx = index(valuePos);
+        final int length = buf.getInt(idx);
+        final int start = idx + 4;
+        for (int j = 0; j < length; j++) {
+            dst[dstOffset + j] = buf.get(start + j);
+        }
+    }
+
+    @Nullable
+    public byte[] get(@Nonnull final byte[] key) {
+        final long pos = lookup(key, 0, key.length);
+        if (pos == -1L) {
+            return null;
+        }
+        final int length = valueLength(pos);
+        if (length == -1) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        readValue(pos, value, 0);
+        return value;
+    }
+
+    private boolean keyEquals(final long keyPos, @Nonnull final byte[] key, final int offset,
+            final int length) {
+        final ByteBuffer buf = region(keyPos);
+        final int start = index(keyPos);
+        for (int j = 0; j < length; j++) {
+            if (buf.get(start + j) != key[offset + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private ByteBuffer region(final long pos) {
+        return regions[(int) (pos >>> REGION_SHIFT)];
+    }
+
+    private static int index(final long pos) {
+        return (int) (pos & REGION_MASK);
+    }
+
+    @Nonnull
+    private static ByteBuffer[] mapRegions(@Nonnull final NioSegment segment,
+            @Nonnull final MapMode mode, final long fileSize) throws IOException {
+        final int numRegions = (int) ((fileSize + REGION_MASK) >>> REGION_SHIFT);
+        final ByteBuffer[] regions = new ByteBuffer[numRegions];
+        for (int i = 0; i < numRegions; i++) {
+            long start = ((long) i) << REGION_SHIFT;
+            long size = Math.min(REGION_BYTES, fileSize - start);
+            regions[i] = segment.map(mode, start, size);
+        }
+        return regions;
+    }
+
+    /**
+     * Writes an index file. Records are appended sequentially and the hash slots are built on
+     * {@link #close()} directly in the mapped file, so building requires no per-entry heap.
+     * When a key is put more than once, the last value wins.
+     */
+    @NotThreadSafe
+    public static final class Builder implements Closeable {
+
+        @Nonnull
+        private final File file;
+        @Nonnull
+        private final DataOutputStream out;
+        @Nonnull
+        private final byte[] padding;
+
+        private long position;
+        private long numRecords;
+        private boolean closed;
+
+        public Builder(@Nonnull File file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 65536));
+            this.padding = new byte[4096];
+            out.write(new byte[HEADER_BYTES]); // header is written on close
+            this.position = HEADER_BYTES;
+            this.numRecords = 0L;
+            this.closed = false;
+        }
+
+        public void put(@Nonnull final byte[] key, @Nullable final byte[] value)
+                throws IOException {
+            if (value == null) {
+                put(key, 0, key.length, null, 0, -1);
+            } else {
+                put(key, 0, key.length, value, 0, value.length);
+            }
+        }
+
+        public void put(@Nonnull final byte[] key, final int keyOffset, final int keyLength,
+                @Nullable final byte[] value, final int valueOffset, final int valueLength)
+                throws IOException {
+            final int recordBytes = 8 + keyLength + Math.max(valueLength, 0);
+            if (recordBytes > REGION_BYTES) {
+                throw new IOException("Record too large: " + recordBytes + " bytes");
+            }
+            final long remaining = REGION_BYTES - (position & REGION_MASK);
+            if (recordBytes > remaining) {
+                writePadding(remaining);
+            }
+            out.writeInt(keyLength);
+            out.write(key, keyOffset, keyLength);
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(valueLength);
+                out.write(value, valueOffset, valueLength);
+            }
+            position += recordBytes;
+            numRecords++;
+        }
+
+        private void writePadding(final long bytes) throws IOException {
+            long left = bytes;
+            if (left >= 4L) {
+                out.writeInt(-1); // marks the rest of the region as unused
+                left -= 4L;
+            }
+            while (left > 0L) {
+                int n = (int) Math.min(left, padding.length);
+                out.write(padding, 0, n);
+                left -= n;
+            }
+            position += bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            this.closed = true;
+
+            final long dataEnd = position;
+            final long slotsOffset = (dataEnd + SLOT_BYTES - 1L) / SLOT_BYTES * SLOT_BYTES;
+            writePadding(slotsOffset - dataEnd);
+            out.close();
+
+            final long numSlots = numSlots(numRecords);
+            final long fileSize = slotsOffset + numSlots * SLOT_BYTES;
+
+            final NioSegment segment = new NioSegment(file, false);
+            try {
+                final ByteBuffer[] regions = mapRegions(segment, MapMode.READ_WRITE, fileSize);
+                final long numEntries = buildSlots(regions, dataEnd, slotsOffset, numSlots - 1L);
+                final ByteBuffer header = regions[0];
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putLong(8, numEntries);
+                header.putLong(16, numSlots);
+                header.putLong(24, slotsOffset);
+                segment.flush();
+            } finally {
+                segment.close();
+            }
+        }
+
+        private static long numSlots(final long numRecords) {
+            final long required = Math.max(2L, (long) Math.ceil(numRecords / LOAD_FACTOR));
+            final long numSlots = Long.highestOneBit(required);
+            return (numSlots == required) ? numSlots : numSlots << 1;
+        }
+
+        private static long buildSlots(@Nonnull final ByteBuffer[] regions, final long dataEnd,
+                final long slotsOffset, final long slotMask) {
+            byte[] key = new byte[256];
+
+            long numEntries = 0L;
+            long pos = HEADER_BYTES;
+            while (pos < dataEnd) {
+                if (REGION_BYTES - (pos & REGION_MASK) < 4L) {
+                    pos = ((pos >>> REGION_SHIFT) + 1L) << REGION_SHIFT;
+                    continue;
+                }
+                final ByteBuffer buf = regions[(int) (pos >>> REGION_SHIFT)];
+                final int idx = index(pos);
+                final int keyLength = buf.getInt(idx);
+                if (keyLength == -1) {
+                    pos = ((pos >>> REGION_SHIFT) + 1L) << REGION_SHIFT;
+                    continue;
+                }
+                if (keyLength > key.length) {
+                    key = new byte[keyLength];
+                }
+                for (int j = 0; j < keyLength; j++) {
+                    key[j] = buf.get(idx + 4 + j);
+                }
+                final int valueLength = buf.getInt(idx + 4 + keyLength);
+                final int hash = MurmurHash3.murmurhash3_x86_32(key, 0, keyLength, HASH_SEED);
+
+                long i = hash & slotMask;
+                while (true) {
+                    final long slotPos = slotsOffset + i * SLOT_BYTES;
+                    final ByteBuffer slots = regions[(int) (slotPos >>> REGION_SHIFT)];
+                    final int sidx = index(slotPos);
+                    final long recordPos = slots.getLong(sidx);
+                    if (recordPos == 0L) {
+                        slots.putLong(sidx, pos);
+                        slots.putInt(sidx + 8, hash);
+                        slots.putInt(sidx + 12, keyLength);
+                        numEntries++;
+                        break;
+                    }
+                    if (slots.getInt(sidx + 8) == hash && slots.getInt(sidx + 12) == keyLength
+                            && recordKeyEquals(regions, recordPos + 4L, key, keyLength)) {
+                        slots.putLong(sidx, pos); // overwrite a duplicate key
+                        break;
+                    }
+                    i = (i + 1L) & slotMask;
+                }
+
+                pos += 8L + keyLength + Math.max(valueLength, 0);
+            }
+            return numEntries;
+        }
+
+        private static boolean recordKeyEquals(@Nonnull final ByteBuffer[] regions,
+                final long keyPos, @Nonnull final byte[] key, final int length) {
+            final ByteBuffer buf = regions[(int) (keyPos >>> REGION_SHIFT)];
+            final int start = index(keyPos);
+            for (int j = 0; j < length; j++) {
+                if (buf.get(start + j) != key[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
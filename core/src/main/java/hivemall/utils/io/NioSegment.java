@@ -23,7 +23,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -69,6 +71,20 @@ public class NioSegment implements Segments {
         return NIOUtils.writeFully(channel, buf, filePos);
     }
 
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Maps a region of this segment into memory. The file is extended when the region exceeds the
+     * current file size and the segment is writable.
+     */
+    @Nonnull
+    public MappedByteBuffer map(@Nonnull final MapMode mode, final long filePos, final long size)
+            throws IOException {
+        return channel.map(mode, filePos, size);
+    }
+
     @Override
     public final void close() throws IOException {
         close(false);
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.net;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Chooses between the NIO transport and the native epoll transport of Netty. The epoll transport
+ * is used only when requested and its native library is loadable (i.e., on Linux).
+ */
+public final class NettyUtils {
+
+    private NettyUtils() {}
+
+    public static boolean useEpoll(boolean preferEpoll) {
+        return preferEpoll && Epoll.isAvailable();
+    }
+
+    /**
+     * @param nThreads the number of threads, or 0 to use the default of Netty
+     */
+    @Nonnull
+    public static EventLoopGroup newEventLoopGroup(@Nonnegative int nThreads, boolean epoll) {
+        if (epoll) {
+            return new EpollEventLoopGroup(nThreads);
+        } else {
+            return new NioEventLoopGroup(nThreads);
+        }
+    }
+
+    @Nonnull
+    public static Class<? extends SocketChannel> getSocketChannelClass(boolean epoll) {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    @Nonnull
+    public static Class<? extends ServerChannel> getServerSocketChannelClass(boolean epoll) {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+}
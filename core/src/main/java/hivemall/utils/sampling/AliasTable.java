@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.sampling;
+
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Vose's alias method that draws an index with a probability proportional to its weight in O(1).
+ * 
+ * @link https://en.wikipedia.org/wiki/Alias_method
+ * @link http://www.keithschwarz.com/darts-dice-coins/
+ */
+public final class AliasTable {
+
+    @Nonnull
+    private final double[] prob;
+    @Nonnull
+    private final int[] alias;
+
+    /**
+     * @param weights non-negative weights whose sum is positive
+     */
+    public AliasTable(@Nonnull final double[] weights) {
+        final int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("weights must not be empty");
+        }
+        double sum = 0.d;
+        for (double w : weights) {
+            if (w < 0.d || Double.isNaN(w) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("Invalid weight: " + w);
+            }
+            sum += w;
+        }
+        if (sum <= 0.d) {
+            throw new IllegalArgumentException("Sum of weights must be positive: " + sum);
+        }
+
+        this.prob = new double[n];
+        this.alias = new int[n];
+
+        // scaled probabilities where 1.0 is the average
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int numSmall = 0, numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            double p = weights[i] * n / sum;
+            scaled[i] = p;
+            if (p < 1.d) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+
+        while (numSmall > 0 && numLarge > 0) {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            // move the excess of the large one to fill the column of the small one
+            double p = (scaled[l] + scaled[s]) - 1.d;
+            scaled[l] = p;
+            if (p < 1.d) {
+                small[numSmall++] = l;
+            } else {
+                large[numLarge++] = l;
+            }
+        }
+        // the rest are 1.0 except for rounding errors
+        while (numLarge > 0) {
+            int l = large[--numLarge];
+            prob[l] = 1.d;
+            alias[l] = l;
+        }
+        while (numSmall > 0) {
+            int s = small[--numSmall];
+            prob[s] = 1.d;
+            alias[s] = s;
+        }
+    }
+
+    @Nonnegative
+    public int size() {
+        return prob.length;
+    }
+
+    @Nonnegative
+    public int sample(@Nonnull final Random rand) {
+        int i = rand.nextInt(prob.length);
+        return (rand.nextDouble() < prob[i]) ? i : alias[i];
+    }
+
+}
@@ -23,9 +23,12 @@ import static hivemall.utils.hadoop.HiveUtils.lazyLong;
 import static hivemall.utils.hadoop.HiveUtils.lazyString;
 
 import hivemall.TestUtils;
+import hivemall.model.ModelSnapshot;
 import hivemall.utils.math.MathUtils;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -121,6 +124,118 @@ public class GeneralClassifierUDTFTest {
         Assert.assertTrue(y == predicted);
     }
 
+    @Test
+    public void testWarmStartFromSnapshot() throws Exception {
+        List<String> x = Arrays.asList("1:-2", "2:-1");
+        int y = 0;
+
+        File dir = File.createTempFile("GeneralClassifierUDTFTest", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        dir.deleteOnExit();
+
+        ObjectInspector intOI = PrimitiveObjectInspectorFactory.javaIntObjectInspector;
+        ObjectInspector stringOI = PrimitiveObjectInspectorFactory.javaStringObjectInspector;
+        ListObjectInspector stringListOI =
+                ObjectInspectorFactory.getStandardListObjectInspector(stringOI);
+        Collector noop = new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {}
+        };
+
+        GeneralClassifierUDTF udtf = new GeneralClassifierUDTF();
+        udtf.initialize(new ObjectInspector[] {stringListOI, intOI,
+                ObjectInspectorUtils.getConstantObjectInspector(stringOI,
+                    "-opt adagrad -iter 1 -snapshot " + dir.getAbsolutePath())});
+        udtf.setCollector(noop);
+        for (int i = 0; i < 10; i++) {
+            udtf.process(new Object[] {x, y});
+        }
+        udtf.finalizeTraining();
+        float expected = udtf.predict(udtf.parseFeatures(x));
+        udtf.close();
+
+        File[] snapshots = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".hms");
+            }
+        });
+        Assert.assertNotNull(snapshots);
+        Assert.assertEquals(1, snapshots.length);
+        snapshots[0].deleteOnExit();
+
+        GeneralClassifierUDTF resumed = new GeneralClassifierUDTF();
+        resumed.initialize(new ObjectInspector[] {stringListOI, intOI,
+                ObjectInspectorUtils.getConstantObjectInspector(stringOI,
+                    "-opt adagrad -iter 1 -warm_start " + snapshots[0].getAbsolutePath())});
+        Assert.assertEquals(expected, resumed.predict(resumed.parseFeatures(x)), 0.f);
+    }
+
+    @Test
+    public void testMiniBatchFTRLKeepsStatesOfTruncatedWeights() throws Exception {
+        List<String> x = Arrays.asList("1:1", "2:1");
+        int y = 1;
+
+        File dir = File.createTempFile("GeneralClassifierUDTFTest", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        dir.deleteOnExit();
+
+        ObjectInspector intOI = PrimitiveObjectInspectorFactory.javaIntObjectInspector;
+        ObjectInspector stringOI = PrimitiveObjectInspectorFactory.javaStringObjectInspector;
+        ListObjectInspector stringListOI =
+                ObjectInspectorFactory.getStandardListObjectInspector(stringOI);
+
+        // every update is truncated to zero by the large L1 term
+        GeneralClassifierUDTF udtf = new GeneralClassifierUDTF();
+        udtf.initialize(new ObjectInspector[] {stringListOI, intOI,
+                ObjectInspectorUtils.getConstantObjectInspector(stringOI,
+                    "-loss logloss -opt ftrl -lambda1 100 -mini_batch 2 -snapshot "
+                            + dir.getAbsolutePath())});
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {
+                Assert.fail("truncated weights should not be output: " + input);
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            udtf.process(new Object[] {x, y});
+        }
+        udtf.finalizeTraining();
+        Assert.assertEquals(0.f, udtf.predict(udtf.parseFeatures(x)), 0.f);
+        udtf.close();
+
+        File[] snapshots = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".hms");
+            }
+        });
+        Assert.assertNotNull(snapshots);
+        Assert.assertEquals(1, snapshots.length);
+        snapshots[0].deleteOnExit();
+
+        final List<Object> features = new ArrayList<Object>();
+        ModelSnapshot.Reader reader = new ModelSnapshot.Reader(snapshots[0]);
+        try {
+            Assert.assertEquals(2, reader.getNumStates());
+            reader.load(new ModelSnapshot.EntryHandler() {
+                @Override
+                public void handle(Object key, float weight, float[] states) {
+                    synchronized (features) {
+                        features.add(key);
+                    }
+                    Assert.assertEquals(0.f, weight, 0.f);
+                    // n and z are accumulated over the 4 examples
+                    Assert.assertTrue(states[0] > 0.f);
+                    Assert.assertTrue(states[1] != 0.f);
+                }
+            }, 1);
+        } finally {
+            reader.close();
+        }
+        Assert.assertEquals(2, features.size());
+    }
+
     private <T> void testFeature(@Nonnull List<T> x, @Nonnull ObjectInspector featureOI,
             @Nonnull Class<T> featureClass, @Nonnull Class<?> modelFeatureClass) throws Exception {
         int y = 0;
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.common;
+
+import hivemall.common.CompactRandomizedAmplifier.DropoutListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactRandomizedAmplifierTest {
+
+    @Test
+    public void test() throws HiveException {
+        int size = 100000;
+        int xtimes = 3;
+        CompactRandomizedAmplifier amplifier = new CompactRandomizedAmplifier(1000, xtimes, 43L);
+        DropoutCollector collector = new DropoutCollector();
+        amplifier.setDropoutListener(collector);
+        for (int i = 0; i < size; i++) {
+            byte[] b = ("row" + i + "-padding-to-exceed-the-compaction-threshold").getBytes();
+            amplifier.add(b, 0, b.length);
+        }
+        amplifier.sweepAll();
+
+        Assert.assertEquals(size * xtimes, collector.count);
+        Assert.assertEquals(size, collector.counts.size());
+        for (int i = 0; i < size; i++) {
+            String key = "row" + i + "-padding-to-exceed-the-compaction-threshold";
+            Assert.assertEquals(Integer.valueOf(xtimes), collector.counts.get(key));
+        }
+    }
+
+    @Test
+    public void testUnfilledBuffer() throws HiveException {
+        int xtimes = 2;
+        CompactRandomizedAmplifier amplifier = new CompactRandomizedAmplifier(1000, xtimes);
+        DropoutCollector collector = new DropoutCollector();
+        amplifier.setDropoutListener(collector);
+        for (int i = 0; i < 10; i++) {
+            byte[] b = Integer.toString(i).getBytes();
+            amplifier.add(b, 0, b.length);
+        }
+        amplifier.sweepAll();
+
+        Assert.assertEquals(10 * xtimes, collector.count);
+        Assert.assertEquals(10, collector.counts.size());
+    }
+
+    private static class DropoutCollector implements DropoutListener {
+
+        private int count = 0;
+        private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        @Override
+        public void onDrop(byte[] buf, int offset, int length) {
+            String s = new String(buf, offset, length);
+            Integer c = counts.get(s);
+            counts.put(s, (c == null) ? 1 : c.intValue() + 1);
+            count++;
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EpochReplayBufferTest {
+
+    @Test
+    public void testInMemory() throws IOException {
+        EpochReplayBuffer buffer = new EpochReplayBuffer("test", 1024L * 1024L, 128, false);
+        writeRecords(buffer, 1000);
+        Assert.assertEquals(1000L, buffer.getNumRecords());
+
+        for (int epoch = 0; epoch < 3; epoch++) {
+            assertInOrder(buffer, 1000);
+        }
+        Assert.assertFalse(buffer.isSpilled());
+        Assert.assertNull(buffer.getFile());
+        buffer.close();
+    }
+
+    @Test
+    public void testSpilled() throws IOException {
+        EpochReplayBuffer buffer = new EpochReplayBuffer("test", 256L, 128, false);
+        writeRecords(buffer, 1000);
+
+        // a record larger than a block
+        ByteBuffer buf = buffer.beginRecord(400);
+        for (int i = 0; i < 100; i++) {
+            buf.putInt(-i);
+        }
+        Assert.assertTrue(buffer.isSpilled());
+        File file = buffer.getFile();
+        Assert.assertNotNull(file);
+
+        for (int epoch = 0; epoch < 3; epoch++) {
+            EpochReplayBuffer.Replay replay = buffer.replay();
+            for (int i = 0; i < 1000; i++) {
+                ByteBuffer rec = replay.next();
+                Assert.assertNotNull(rec);
+                Assert.assertEquals(8, rec.remaining());
+                Assert.assertEquals(i, rec.getInt());
+                Assert.assertEquals(i * 0.5f, rec.getFloat(), 0.f);
+            }
+            ByteBuffer large = replay.next();
+            Assert.assertEquals(400, large.remaining());
+            Assert.assertEquals(0, large.getInt());
+            Assert.assertNull(replay.next());
+            replay.close();
+        }
+        Assert.assertTrue(file.exists());
+        buffer.close();
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testEarlyCloseOfSpilledReplay() throws IOException {
+        EpochReplayBuffer buffer = new EpochReplayBuffer("test", 0L, 64, false);
+        writeRecords(buffer, 10000);
+
+        EpochReplayBuffer.Replay replay = buffer.replay();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, replay.next().getInt());
+        }
+        replay.close();
+        assertInOrder(buffer, 10000);
+        buffer.close();
+    }
+
+    @Test
+    public void testShuffleBlocks() throws IOException {
+        for (long budget : new long[] {1024L * 1024L, 0L}) {
+            EpochReplayBuffer buffer = new EpochReplayBuffer("test", budget, 100, true);
+            writeRecords(buffer, 1000);
+            boolean shuffled = false;
+            for (int epoch = 0; epoch < 3; epoch++) {
+                final BitSet seen = new BitSet();
+                int prev = -1, numBlocks = 0;
+                EpochReplayBuffer.Replay replay = buffer.replay();
+                for (ByteBuffer rec = replay.next(); rec != null; rec = replay.next()) {
+                    int i = rec.getInt();
+                    Assert.assertFalse(seen.get(i));
+                    seen.set(i);
+                    if (replay.isFirstInBlock()) {
+                        numBlocks++;
+                        shuffled |= (i != prev + 1);
+                    } else {
+                        Assert.assertEquals(prev + 1, i); // records in a block keep their order
+                    }
+                    prev = i;
+                }
+                replay.close();
+                Assert.assertEquals(1000, seen.cardinality());
+                Assert.assertTrue(numBlocks > 1);
+            }
+            Assert.assertTrue(shuffled);
+            buffer.close();
+        }
+    }
+
+    private static void writeRecords(EpochReplayBuffer buffer, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            ByteBuffer buf = buffer.beginRecord(8);
+            buf.putInt(i);
+            buf.putFloat(i * 0.5f);
+        }
+    }
+
+    private static void assertInOrder(EpochReplayBuffer buffer, int n) throws IOException {
+        EpochReplayBuffer.Replay replay = buffer.replay();
+        for (int i = 0; i < n; i++) {
+            ByteBuffer rec = replay.next();
+            Assert.assertNotNull(rec);
+            Assert.assertEquals(i, rec.getInt());
+            Assert.assertEquals(i * 0.5f, rec.getFloat(), 0.f);
+        }
+        Assert.assertNull(replay.next());
+        replay.close();
+    }
+
+}
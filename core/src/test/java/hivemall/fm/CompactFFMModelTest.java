@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.model.ModelTableReader;
+import hivemall.utils.math.MathUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactFFMModelTest {
+
+    @Test
+    public void testFFMPredict() throws IOException {
+        final int numFields = 4;
+        // x = (field 1, index 10, 0.6), (field 2, index 20, 0.8)
+        StringBuilder table = new StringBuilder();
+        for (String modelId : new String[] {"m1", "m2"}) {
+            float scale = modelId.equals("m1") ? 1.f : 2.f;
+            appendRow(table, modelId, 0, 0.1f * scale, null);
+            appendRow(table, modelId, -10, 0.2f * scale, null);
+            appendRow(table, modelId, -20, -0.3f * scale, null);
+            // V_{10,f=2} and V_{20,f=1}
+            appendRow(table, modelId, 10 * numFields + 2, null, new float[] {0.5f * scale, -0.5f});
+            appendRow(table, modelId, 20 * numFields + 1, null, new float[] {1.f, 0.25f * scale});
+        }
+
+        CompactFFMModel model = new CompactFFMModel(numFields);
+        ModelTableReader.read(new BufferedReader(new StringReader(table.toString())),
+            CompactFFMModel.numColumns(), model);
+        Assert.assertEquals(2, model.getNumModels());
+
+        Feature[] x = new Feature[] {new IntFeature(10, (short) 1, 0.6d),
+                new IntFeature(20, (short) 2, 0.8d)};
+        double s1 = 0.1d + 0.2d * 0.6d - 0.3d * 0.8d + (0.5d * 1.d + -0.5d * 0.25d) * 0.6d * 0.8d;
+        double s2 = 0.2d + 0.4d * 0.6d - 0.6d * 0.8d + (1.d * 1.d + -0.5d * 0.5d) * 0.6d * 0.8d;
+        Assert.assertEquals((s1 + s2) / 2.d, model.predict(x, false), 1e-6d);
+        Assert.assertEquals((MathUtils.sigmoid(s1) + MathUtils.sigmoid(s2)) / 2.d,
+            model.predict(x, true), 1e-6d);
+
+        // unknown features only contribute through w0
+        Feature[] unknown = new Feature[] {new IntFeature(30, (short) 3, 1.d)};
+        Assert.assertEquals((0.1d + 0.2d) / 2.d, model.predict(unknown, false), 1e-6d);
+    }
+
+    @Test
+    public void testViEncoding() throws IOException {
+        // Vi of (index, field) is i = index * numFields + field
+        final float[] v12 = new float[] {0.5f, -1.f};
+        final float[] v21 = new float[] {2.f, 0.25f};
+        Feature[] x = new Feature[] {new IntFeature(1, (short) 1, 1.d),
+                new IntFeature(2, (short) 2, 1.d)};
+        double expected = 0.5d * 2.d + -1.d * 0.25d;
+
+        for (int numFields : new int[] {3, 10, 256}) {
+            StringBuilder table = new StringBuilder();
+            appendRow(table, "m1", 1 * numFields + 2, null, v12);
+            appendRow(table, "m1", 2 * numFields + 1, null, v21);
+            CompactFFMModel model = load(table.toString(), numFields);
+            Assert.assertEquals(1, model.getNumModels());
+            Assert.assertEquals(2L, model.size());
+            Assert.assertEquals(expected, model.predict(x, false), 1e-6d);
+
+            // the same rows under a different number of fields do not match
+            CompactFFMModel other = load(table.toString(), numFields + 1);
+            Assert.assertEquals(0.d, other.predict(x, false), 0.d);
+        }
+    }
+
+    @Test
+    public void testOverwriteRows() throws IOException {
+        final int numFields = 4;
+        StringBuilder table = new StringBuilder();
+        appendRow(table, "m1", 0, 1.f, null);
+        appendRow(table, "m1", -1, 2.f, null);
+        appendRow(table, "m1", 1 * numFields + 1, null, new float[] {1.f});
+        // later rows win
+        appendRow(table, "m1", 0, 0.5f, null);
+        appendRow(table, "m1", -1, -2.f, null);
+        appendRow(table, "m1", 1 * numFields + 1, null, new float[] {3.f});
+        // rows without a model_id or i are ignored
+        table.append("\\N\u00011\u00011.0\u0001\\N\n");
+        table.append("m1\u0001\\N\u00011.0\u0001\\N\n");
+
+        CompactFFMModel model = load(table.toString(), numFields);
+        Assert.assertEquals(1, model.getNumModels());
+        Assert.assertEquals(2L, model.size());
+
+        // a single feature has no interaction
+        Feature[] x = new Feature[] {new IntFeature(1, (short) 1, 0.5d)};
+        Assert.assertEquals(0.5d - 2.d * 0.5d, model.predict(x, false), 1e-6d);
+        Feature[] xx = new Feature[] {new IntFeature(1, (short) 1, 0.5d),
+                new IntFeature(1, (short) 1, 2.d)};
+        Assert.assertEquals(0.5d - 2.d * 2.5d + 3.d * 3.d * 0.5d * 2.d,
+            model.predict(xx, false), 1e-6d);
+    }
+
+    @Test
+    public void testEmptyModel() throws IOException {
+        CompactFFMModel model = load("", 4);
+        Assert.assertEquals(0, model.getNumModels());
+        Assert.assertEquals(0L, model.size());
+        Feature[] x = new Feature[] {new IntFeature(1, (short) 1, 1.d)};
+        Assert.assertEquals(0.d, model.predict(x, false), 0.d);
+        Assert.assertEquals(0.d, model.predict(x, true), 0.d);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInconsistentFactors() throws IOException {
+        StringBuilder table = new StringBuilder();
+        appendRow(table, "m1", 5, null, new float[] {1.f, 2.f});
+        appendRow(table, "m2", 9, null, new float[] {1.f, 2.f, 3.f});
+        load(table.toString(), 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRow() throws IOException {
+        load("m1\u0001-1\u0001abc\u0001\\N\n", 4);
+    }
+
+    @Nonnull
+    private static CompactFFMModel load(@Nonnull String table, int numFields)
+            throws IOException {
+        CompactFFMModel model = new CompactFFMModel(numFields);
+        ModelTableReader.read(new BufferedReader(new StringReader(table)),
+            CompactFFMModel.numColumns(), model);
+        return model;
+    }
+
+    static void appendRow(@Nonnull StringBuilder buf, @Nonnull String modelId, int i,
+            @Nullable Float Wi, @Nullable float[] Vi) {
+        buf.append(modelId).append('\u0001').append(i).append('\u0001');
+        buf.append(Wi == null ? "\\N" : Wi.toString()).append('\u0001');
+        if (Vi == null) {
+            buf.append("\\N");
+        } else {
+            for (int f = 0; f < Vi.length; f++) {
+                if (f != 0) {
+                    buf.append('\u0002');
+                }
+                buf.append(Vi[f]);
+            }
+        }
+        buf.append('\n');
+    }
+
+}
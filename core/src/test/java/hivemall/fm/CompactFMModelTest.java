@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.model.ModelTableReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactFMModelTest {
+
+    @Test
+    public void testFMPredict() throws IOException {
+        final int factors = 3;
+        final Random rnd = new Random(43L);
+        final float[] W = new float[5];
+        final float[][] V = new float[5][factors];
+        StringBuilder table = new StringBuilder();
+        table.append("0\u00010.5\u0001\\N\n");
+        for (int i = 1; i < 5; i++) {
+            W[i] = rnd.nextFloat() - 0.5f;
+            table.append(i).append('\u0001').append(W[i]).append('\u0001');
+            for (int f = 0; f < factors; f++) {
+                V[i][f] = rnd.nextFloat() - 0.5f;
+                if (f != 0) {
+                    table.append('\u0002');
+                }
+                table.append(V[i][f]);
+            }
+            table.append('\n');
+        }
+
+        CompactFMModel model = new CompactFMModel();
+        ModelTableReader.read(new BufferedReader(new StringReader(table.toString())),
+            CompactFMModel.numColumns(), model);
+        Assert.assertEquals(4, model.size());
+        Assert.assertEquals(factors, model.getFactors());
+
+        // features 1, 3 and 4, and an unknown feature
+        int[] slots = new int[] {model.getSlot("1"), model.getSlot("3"), model.getSlot("4"),
+                model.getSlot("5")};
+        double[] x = new double[] {0.3d, 1.d, -0.7d, 2.d};
+        Assert.assertEquals(-1, slots[3]);
+        int[] features = new int[] {1, 3, 4};
+
+        double expected = 0.5d;
+        for (int i = 0; i < 3; i++) {
+            expected += W[features[i]] * x[i];
+            for (int j = i + 1; j < 3; j++) {
+                double dot = 0.d;
+                for (int f = 0; f < factors; f++) {
+                    dot += V[features[i]][f] * V[features[j]][f];
+                }
+                expected += dot * x[i] * x[j];
+            }
+        }
+        Assert.assertEquals(expected, model.predict(slots, x, 4), 1e-6d);
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.fm;
+
+import hivemall.utils.lang.NumberUtils;
+import hivemall.utils.math.MathUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.FloatWritable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FFMScoringUDFTest {
+
+    private static final String TRAIN_OPTIONS =
+            "-classification -linear_term -w0 -factors 4 -iters 3";
+
+    @Test
+    public void testDefaultOptions() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        TrainedModel trained = train(TRAIN_OPTIONS + " -seed 43", samples);
+        double[] actual = score(trained.modelFile, null, samples);
+        Assert.assertArrayEquals(trained.predictions, actual, 1e-5d);
+    }
+
+    @Test
+    public void testFeatureHashing() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        String options = "-feature_hashing 20 -num_fields 20";
+        TrainedModel trained = train(TRAIN_OPTIONS + " -seed 43 " + options, samples);
+        double[] actual = score(trained.modelFile, options, samples);
+        Assert.assertArrayEquals(trained.predictions, actual, 1e-5d);
+
+        // Vi is keyed by index * numFields + field, so -num_fields has to match the training
+        double[] mismatched =
+                score(trained.modelFile, "-feature_hashing 20 -num_fields 21", samples);
+        Assert.assertFalse(Arrays.equals(actual, mismatched));
+    }
+
+    @Test
+    public void testIntFeature() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        String options = "-int_feature -num_fields 18";
+        TrainedModel trained = train(TRAIN_OPTIONS + " -seed 43 " + options, samples);
+        double[] actual = score(trained.modelFile, options, samples);
+        Assert.assertArrayEquals(trained.predictions, actual, 1e-5d);
+    }
+
+    @Test
+    public void testNoNormWithSigmoid() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        TrainedModel trained = train(TRAIN_OPTIONS + " -seed 43 -no_norm", samples);
+
+        double[] actual = score(trained.modelFile, "-no_norm", samples);
+        Assert.assertArrayEquals(trained.predictions, actual, 1e-5d);
+
+        double[] expected = new double[samples.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = MathUtils.sigmoid(trained.predictions[i]);
+        }
+        actual = score(trained.modelFile, "-no_norm -sigmoid", samples);
+        Assert.assertArrayEquals(expected, actual, 1e-6d);
+
+        // the instance-wise normalization has to match the training
+        double[] normalized = score(trained.modelFile, null, samples);
+        Assert.assertFalse(Arrays.equals(trained.predictions, normalized));
+    }
+
+    @Test
+    public void testAverageOverModels() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        TrainedModel m1 = train(TRAIN_OPTIONS + " -seed 43", samples);
+        TrainedModel m2 = train(TRAIN_OPTIONS + " -seed 31", samples);
+        Assert.assertNotEquals(m1.modelId, m2.modelId);
+
+        // a directory of model files is loaded as a whole
+        File dir = createTempDir();
+        File f1 = new File(dir, "000000_0");
+        File f2 = new File(dir, "000001_0");
+        Assert.assertTrue(m1.modelFile.renameTo(f1));
+        Assert.assertTrue(m2.modelFile.renameTo(f2));
+        f1.deleteOnExit();
+        f2.deleteOnExit();
+
+        final int n = samples.size();
+        double[] expected = new double[n];
+        double[] expectedProbs = new double[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = (m1.predictions[i] + m2.predictions[i]) / 2.d;
+            expectedProbs[i] = (MathUtils.sigmoid(m1.predictions[i])
+                    + MathUtils.sigmoid(m2.predictions[i])) / 2.d;
+        }
+        Assert.assertArrayEquals(expected, score(dir, null, samples), 1e-5d);
+        Assert.assertArrayEquals(expectedProbs, score(dir, "-sigmoid", samples), 1e-6d);
+    }
+
+    @Test
+    public void testNullFeatures() throws IOException, HiveException {
+        List<List<String>> samples = readSamples();
+        TrainedModel trained = train(TRAIN_OPTIONS + " -seed 43", samples);
+
+        FFMScoringUDF udf = new FFMScoringUDF();
+        udf.initialize(argOIs(trained.modelFile, null));
+        DeferredObject modelPath = new DeferredJavaObject(trained.modelFile.getPath());
+        Assert.assertNull(
+            udf.evaluate(new DeferredObject[] {modelPath, new DeferredJavaObject(null)}));
+        udf.close();
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMissingModel() throws IOException, HiveException {
+        File file = new File(createTempDir(), "missing");
+        FFMScoringUDF udf = new FFMScoringUDF();
+        udf.initialize(argOIs(file, null));
+        udf.evaluate(new DeferredObject[] {new DeferredJavaObject(file.getPath()),
+                new DeferredJavaObject(Arrays.asList("1:1:1.0"))});
+    }
+
+    private static final class TrainedModel {
+        final File modelFile;
+        final String modelId;
+        final double[] predictions;
+
+        TrainedModel(File modelFile, String modelId, double[] predictions) {
+            this.modelFile = modelFile;
+            this.modelId = modelId;
+            this.predictions = predictions;
+        }
+    }
+
+    /**
+     * Trains train_ffm and writes its (model_id, i, Wi, Vi) rows in the Hive text format.
+     */
+    @Nonnull
+    private static TrainedModel train(@Nonnull String options,
+            @Nonnull List<List<String>> samples) throws IOException, HiveException {
+        final FieldAwareFactorizationMachineUDTF udtf = new FieldAwareFactorizationMachineUDTF();
+        udtf.initialize(new ObjectInspector[] {
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector),
+                PrimitiveObjectInspectorFactory.javaDoubleObjectInspector,
+                ObjectInspectorUtils.getConstantObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector, options)});
+        for (List<String> features : samples) {
+            double y = Double.parseDouble(features.get(0));
+            udtf.process(new Object[] {features.subList(1, features.size()), y});
+        }
+        udtf.finalizeTraining();
+
+        final double[] predictions = new double[samples.size()];
+        for (int i = 0; i < predictions.length; i++) {
+            List<String> features = samples.get(i);
+            Feature[] x = udtf.parseFeatures(features.subList(1, features.size()));
+            predictions[i] = udtf._ffmModel.predict(x);
+        }
+
+        final File file = File.createTempFile("FFMScoringUDFTest", ".txt");
+        file.deleteOnExit();
+        final Writer out = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        final Set<String> modelIds = new HashSet<String>();
+        try {
+            udtf.setCollector(new Collector() {
+                @Override
+                public void collect(Object input) throws HiveException {
+                    Object[] row = (Object[]) input;
+                    modelIds.add(row[0].toString());
+                    try {
+                        writeRow(row, out);
+                    } catch (IOException e) {
+                        throw new HiveException(e);
+                    }
+                }
+            });
+            udtf.forwardModel();
+        } finally {
+            out.close();
+        }
+        Assert.assertEquals(1, modelIds.size());
+        return new TrainedModel(file, modelIds.iterator().next(), predictions);
+    }
+
+    private static void writeRow(@Nonnull Object[] row, @Nonnull Writer out)
+            throws IOException {
+        out.write(row[0].toString());
+        out.write('\u0001');
+        out.write(row[1].toString());
+        out.write('\u0001');
+        out.write(row[2] == null ? "\\N" : Float.toString(((FloatWritable) row[2]).get()));
+        out.write('\u0001');
+        if (row[3] == null) {
+            out.write("\\N");
+        } else {
+            @SuppressWarnings("unchecked")
+            List<FloatWritable> Vi = (List<FloatWritable>) row[3];
+            for (int f = 0; f < Vi.size(); f++) {
+                if (f != 0) {
+                    out.write('\u0002');
+                }
+                out.write(Float.toString(Vi.get(f).get()));
+            }
+        }
+        out.write('\n');
+    }
+
+    @Nonnull
+    private static double[] score(@Nonnull File model, @Nullable String options,
+            @Nonnull List<List<String>> samples) throws IOException, HiveException {
+        FFMScoringUDF udf = new FFMScoringUDF();
+        udf.initialize(argOIs(model, options));
+        final DeferredObject modelPath = new DeferredJavaObject(model.getAbsolutePath());
+
+        final double[] scores = new double[samples.size()];
+        for (int i = 0; i < scores.length; i++) {
+            List<String> features = samples.get(i);
+            DoubleWritable result = udf.evaluate(new DeferredObject[] {modelPath,
+                    new DeferredJavaObject(features.subList(1, features.size()))});
+            Assert.assertNotNull(result);
+            scores[i] = result.get();
+        }
+        udf.close();
+        return scores;
+    }
+
+    @Nonnull
+    private static ObjectInspector[] argOIs(@Nonnull File model, @Nullable String options) {
+        List<ObjectInspector> argOIs = new ArrayList<ObjectInspector>();
+        argOIs.add(ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector, model.getAbsolutePath()));
+        argOIs.add(ObjectInspectorFactory.getStandardListObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector));
+        if (options != null) {
+            argOIs.add(ObjectInspectorUtils.getConstantObjectInspector(
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector, options));
+        }
+        return argOIs.toArray(new ObjectInspector[argOIs.size()]);
+    }
+
+    /**
+     * @return samples of a label followed by features in &lt;field&gt;:&lt;index&gt;:&lt;value&gt;
+     */
+    @Nonnull
+    private static List<List<String>> readSamples() throws IOException {
+        final BufferedReader data = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(
+                FFMScoringUDFTest.class.getResourceAsStream("bigdata.tr.txt.gz")),
+            StandardCharsets.UTF_8));
+        final List<List<String>> samples = new ArrayList<List<String>>();
+        try {
+            String line;
+            while ((line = data.readLine()) != null) {
+                String[] columns = line.split(" ");
+                List<String> sample = new ArrayList<String>(columns.length);
+                // LibFFM data uses {0, 1}; Hivemall uses {-1, 1}
+                sample.add("0".equals(columns[0]) ? "-1" : columns[0]);
+                for (int j = 1; j < columns.length; j++) {
+                    String[] splitted = columns[j].split(":");
+                    Assert.assertEquals(3, splitted.length);
+                    if (NumberUtils.isDigits(splitted[1])) {
+                        int index = Integer.parseInt(splitted[1]) + 1; // avoid 0 index
+                        sample.add(splitted[0] + ':' + index + ':' + splitted[2]);
+                    } else {
+                        sample.add(columns[j]);
+                    }
+                }
+                samples.add(sample);
+            }
+        } finally {
+            data.close();
+        }
+        return samples;
+    }
+
+    @Nonnull
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("FFMScoringUDFTest", "");
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdir());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+}
@@ -74,6 +74,40 @@ public class FeatureTest {
         Assert.assertEquals(0.3651d, probe.getValue(), 0.d);
     }
 
+    @Test
+    public void testParseFFMFeatureHashing() throws HiveException {
+        IntFeature f = Feature.parseFFMFeature("field:feature:0.5", 1 << 18, 32);
+        Assert.assertEquals(MurmurHash3.murmurhash3("field", 32), f.getField());
+        Assert.assertEquals(MurmurHash3.murmurhash3("feature", 1 << 18) + 32,
+            f.getFeatureIndex());
+        Assert.assertEquals(0.5d, f.getValue(), 0.d);
+
+        // a numeric index is also hashed when feature hashing is enabled
+        f = Feature.parseFFMFeature("3:1163:0.5", 1 << 18, 32);
+        Assert.assertEquals(3, f.getField());
+        Assert.assertEquals(MurmurHash3.murmurhash3("1163", 1 << 18) + 32, f.getFeatureIndex());
+    }
+
+    @Test(expected = HiveException.class)
+    public void testParseFFMFeatureTooLargeField() throws HiveException {
+        Feature.parseFFMFeature("256:1163:0.3651", -1, Feature.DEFAULT_NUM_FIELDS);
+    }
+
+    @Test
+    public void testParseFFMIntFeature() throws HiveException {
+        Feature probe = new IntFeature(0, 0.d);
+        Feature.parseFFMIntFeature("2:1163:0.3651", probe, Feature.DEFAULT_NUM_FIELDS);
+        Assert.assertEquals(2, probe.getField());
+        Assert.assertEquals(1163, probe.getFeatureIndex());
+        Assert.assertEquals(0.3651d, probe.getValue(), 0.d);
+    }
+
+    @Test(expected = HiveException.class)
+    public void testParseFFMIntFeatureFails() throws HiveException {
+        Feature.parseFFMIntFeature("field:1163:0.3651", new IntFeature(0, 0.d),
+            Feature.DEFAULT_NUM_FIELDS);
+    }
+
     @Test
     public void testParseIntFeature() throws HiveException {
         Feature f = Feature.parseFeature("1163:0.3651", true);
@@ -55,6 +55,13 @@ public class FieldAwareFactorizationMachineUDTFTest {
             0.30f);
     }
 
+    @Test
+    public void testSGDIntFeature() throws HiveException, IOException {
+        run("Pure SGD with int features test", "bigdata.tr.txt.gz",
+            "-opt sgd -linear_term -classification -factors 10 -w0 -eta 0.4 -iters 20 -seed 43 -int_feature",
+            0.30f);
+    }
+
     @Test
     public void testAdaGrad() throws HiveException, IOException {
         run("AdaGrad test", "bigdata.tr.txt.gz",
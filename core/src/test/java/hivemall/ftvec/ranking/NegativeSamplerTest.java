@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.ftvec.ranking;
+
+import hivemall.ftvec.ranking.NegativeSampler.ItemScorer;
+import hivemall.ftvec.ranking.NegativeSampler.Strategy;
+import hivemall.utils.collections.lists.IntArrayList;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NegativeSamplerTest {
+
+    @Test
+    public void testUniform() {
+        NegativeSampler sampler = new NegativeSampler(newFeedback(), 10, Strategy.uniform, 1,
+            new Random(43L));
+        for (int i = 0; i < 1000; i++) {
+            int item = sampler.sample(0);
+            Assert.assertTrue(item >= 0 && item < 10);
+            Assert.assertFalse(sampler.isPositive(0, item));
+        }
+        // all the items are positive for user 2
+        Assert.assertEquals(-1, sampler.sample(2));
+    }
+
+    @Test
+    public void testPopularity() {
+        NegativeSampler sampler = new NegativeSampler(newFeedback(), 12, Strategy.popularity, 1,
+            new Random(43L));
+        Assert.assertEquals(3, sampler.getItemCount(1));
+        Assert.assertEquals(1, sampler.getItemCount(9));
+
+        final int[] counts = new int[12];
+        for (int i = 0; i < 10000; i++) {
+            int item = sampler.sample(1);
+            Assert.assertFalse(sampler.isPositive(1, item));
+            counts[item]++;
+        }
+        // item 1 is liked by 3 users while item 9 is liked by only user 2
+        Assert.assertTrue(counts[1] > counts[9] * 2);
+        // items without feedbacks are never drawn
+        Assert.assertEquals(0, counts[10]);
+        Assert.assertEquals(0, counts[11]);
+    }
+
+    @Test
+    public void testAdaptive() {
+        NegativeSampler sampler = new NegativeSampler(newFeedback(), 10, Strategy.adaptive, 8,
+            new Random(43L));
+        ItemScorer scorer = new ItemScorer() {
+            @Override
+            public double score(int user, int item) {
+                return item;
+            }
+        };
+
+        int uniformSum = 0, adaptiveSum = 0;
+        for (int i = 0; i < 1000; i++) {
+            int item = sampler.sample(0, scorer);
+            Assert.assertFalse(sampler.isPositive(0, item));
+            adaptiveSum += item;
+        }
+        NegativeSampler uniform = new NegativeSampler(newFeedback(), 10, Strategy.uniform, 1,
+            new Random(43L));
+        for (int i = 0; i < 1000; i++) {
+            uniformSum += uniform.sample(0);
+        }
+        // items with higher scores are preferred
+        Assert.assertTrue(adaptiveSum > uniformSum);
+    }
+
+    @Test
+    public void testDuplicateFeedbacks() {
+        PositiveOnlyFeedback feedback = new PositiveOnlyFeedback(-1);
+        feedback.addFeedback(0, 1);
+        feedback.addFeedback(0, 1);
+        feedback.addFeedback(0, 2);
+        feedback.addFeedback(1, 1);
+        Assert.assertEquals(4, feedback.getTotalFeedbacks());
+
+        NegativeSampler sampler = new NegativeSampler(feedback, 3, Strategy.popularity, 1,
+            new Random(43L));
+        Assert.assertEquals(2, sampler.getItemCount(1));
+        Assert.assertEquals(1, sampler.getItemCount(2));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(0, sampler.sample(0));
+        }
+    }
+
+    private static PositiveOnlyFeedback newFeedback() {
+        PositiveOnlyFeedback feedback = new PositiveOnlyFeedback(9);
+        feedback.addFeedback(0, new IntArrayList(new int[] {1, 2, 1}));
+        feedback.addFeedback(1, new IntArrayList(new int[] {0, 3}));
+        feedback.addFeedback(2, new IntArrayList(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}));
+        feedback.addFeedback(3, new IntArrayList(new int[] {1, 4}));
+        return feedback;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.ftvec.scaling;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ZScoreUDFTest {
+
+    @Test
+    public void test() {
+        ZScoreUDF udf = new ZScoreUDF();
+        assertEquals(1.f, udf.evaluate(2.d, 1.d, 1.d).get(), 0.f);
+        assertEquals(-2.f, udf.evaluate(0.f, 1.f, 0.5f).get(), 0.f);
+    }
+
+    @Test
+    public void testZeroStddev() {
+        ZScoreUDF udf = new ZScoreUDF();
+        assertEquals(0.f, udf.evaluate(2.d, 1.d, 0.d).get(), 0.f);
+        assertEquals(0.f, udf.evaluate(2.f, 1.f, 0.f).get(), 0.f);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mf;
+
+import hivemall.mf.FactorizedModel.RankInitScheme;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FactorSlabTest {
+
+    private static final int FACTOR = 7;
+
+    @Test
+    public void testGatherSameAsModel() {
+        FactorizedModel expected = newModel();
+        FactorizedModel actual = newModel();
+        FactorSlab slab = new FactorSlab(actual, FACTOR, 1);
+
+        int[] users = new int[] {3, 1, 3, 8, 1};
+        int[] items = new int[] {5, 2, 5, 9, 0};
+        for (int t = 0; t < users.length; t++) {
+            expected.getUserVector(users[t], true);
+            expected.getItemVector(items[t], true);
+            int ur = slab.userRow(users[t]);
+            int ir = slab.itemRow(items[t]);
+            assertRow(expected.getUserVector(users[t]), slab.userFactors, ur);
+            assertRow(expected.getItemVector(items[t]), slab.itemFactors, ir);
+        }
+        Assert.assertEquals(0, slab.userRow(3));
+        Assert.assertEquals(2, slab.userRow(8));
+        Assert.assertEquals(3, slab.itemRow(0));
+    }
+
+    @Test
+    public void testScatter() {
+        FactorizedModel model = newModel();
+        FactorSlab slab = new FactorSlab(model, FACTOR, 2);
+        int ur = slab.userRow(4);
+        int ir = slab.itemRow(6);
+        for (int k = 0; k < FACTOR; k++) {
+            slab.userFactors[ur * FACTOR + k] = k;
+            slab.itemFactors[ir * FACTOR + k] = -k;
+        }
+        slab.itemBiases[ir] = 0.5f;
+        slab.scatter(true);
+
+        Rating[] u = model.getUserVector(4);
+        Rating[] i = model.getItemVector(6);
+        for (int k = 0; k < FACTOR; k++) {
+            Assert.assertEquals(k, u[k].getWeight(), 0.f);
+            Assert.assertEquals(-k, i[k].getWeight(), 0.f);
+        }
+        Assert.assertEquals(0.5f, model.getItemBias(6), 0.f);
+
+        // rows are reassigned after scatter
+        Assert.assertEquals(0, slab.itemRow(7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testScatterNaN() {
+        FactorSlab slab = new FactorSlab(newModel(), FACTOR, 2);
+        int ur = slab.userRow(1);
+        slab.userFactors[ur * FACTOR] = Float.NaN;
+        slab.scatter(false);
+    }
+
+    @Test
+    public void testDot() {
+        for (int n = 0; n <= 9; n++) {
+            float[] a = new float[n + 2];
+            float[] b = new float[n + 3];
+            double expected = 0.d;
+            double norm = 0.d;
+            for (int k = 0; k < n; k++) {
+                a[k + 2] = k + 1;
+                b[k + 3] = 2 * k - 3;
+                expected += a[k + 2] * b[k + 3];
+                norm += a[k + 2] * a[k + 2];
+            }
+            Assert.assertEquals(expected, FactorSlab.dot(a, 2, b, 3, n), 1e-6d);
+            Assert.assertEquals(norm, FactorSlab.squaredNorm(a, 2, n), 1e-6d);
+        }
+    }
+
+    private static FactorizedModel newModel() {
+        return new FactorizedModel(new RatingInitializer() {
+            @Override
+            public Rating newRating(float v) {
+                return new Rating(v);
+            }
+        }, FACTOR, RankInitScheme.gaussian);
+    }
+
+    private static void assertRow(Rating[] expected, float[] slab, int row) {
+        for (int k = 0; k < FACTOR; k++) {
+            Assert.assertEquals(expected[k].getWeight(), slab[row * FACTOR + k], 0.f);
+        }
+    }
+
+}
@@ -259,7 +259,7 @@ public class MatrixFactorizationSGDUDTFTest {
         int iters = 10;
         ObjectInspector param = ObjectInspectorUtils.getConstantObjectInspector(
             PrimitiveObjectInspectorFactory.javaStringObjectInspector,
-            new String("-factor 3 -iterations " + iters));
+            new String("-factor 3 -replay_buffer_mb 0 -iterations " + iters));
         ObjectInspector[] argOIs = new ObjectInspector[] {intOI, intOI, floatOI, param};
         MapredContext mrContext = MapredContextAccessor.create(true, null);
         mf.configure(mrContext);
@@ -290,7 +290,7 @@ public class MatrixFactorizationSGDUDTFTest {
             }
         }
 
-        File tmpFile = mf.fileIO.getFile();
+        File tmpFile = mf.replayBuffer.getFile();
         mf.close();
         Assert.assertTrue(mf.count < trainingExamples * iters);
         Assert.assertEquals(5, numCollected.intValue());
@@ -307,7 +307,7 @@ public class MatrixFactorizationSGDUDTFTest {
         int iters = 5;
         ObjectInspector param = ObjectInspectorUtils.getConstantObjectInspector(
             PrimitiveObjectInspectorFactory.javaStringObjectInspector,
-            new String("-disable_cv -factor 3 -iterations " + iters));
+            new String("-disable_cv -factor 3 -replay_buffer_mb 0 -iterations " + iters));
         ObjectInspector[] argOIs = new ObjectInspector[] {intOI, intOI, floatOI, param};
         MapredContext mrContext = MapredContextAccessor.create(true, null);
         mf.configure(mrContext);
@@ -338,7 +338,7 @@ public class MatrixFactorizationSGDUDTFTest {
             }
         }
 
-        File tmpFile = mf.fileIO.getFile();
+        File tmpFile = mf.replayBuffer.getFile();
         mf.close();
         Assert.assertEquals(trainingExamples * iters, mf.count);
         Assert.assertEquals(5, numCollected.intValue());
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix;
+
+import hivemall.model.NewSparseModel;
+import hivemall.model.PredictionModel;
+import hivemall.model.WeightValue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MixUpdateQueueTest {
+
+    @Test
+    public void testDrain() {
+        PredictionModel model = newModel(16);
+        model.set("f1", new WeightValue(1.f));
+        model.set("f2", new WeightValue(1.f));
+
+        MixUpdateQueue queue = new MixUpdateQueue(model, 4);
+        Assert.assertTrue(queue.isEmpty());
+        queue.set("f1", 2.f, 1.f, (short) 0);
+        queue.set("f2", 3.f, 1.f, (short) 0);
+        queue.set("unknown", 4.f, 1.f, (short) 0);
+        Assert.assertFalse(queue.isEmpty());
+
+        Assert.assertEquals(3, queue.drainTo());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(2.f, model.getWeight("f1"), 0.f);
+        Assert.assertEquals(3.f, model.getWeight("f2"), 0.f);
+        Assert.assertFalse(model.contains("unknown"));
+        Assert.assertEquals(2L, model.getNumMixed());
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        PredictionModel model = newModel(16);
+        model.set("f", new WeightValue(1.f));
+
+        MixUpdateQueue queue = new MixUpdateQueue(model, 2);
+        for (int i = 0; i < 5; i++) {
+            queue.set("f", i, 1.f, (short) 0);
+        }
+        Assert.assertEquals(3L, queue.getNumDropped());
+        Assert.assertEquals(2, queue.drainTo());
+        Assert.assertEquals(1.f, model.getWeight("f"), 0.f);
+
+        // slots are reusable after draining
+        queue.set("f", 10.f, 1.f, (short) 0);
+        Assert.assertEquals(1, queue.drainTo());
+        Assert.assertEquals(10.f, model.getWeight("f"), 0.f);
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int numProducers = 4;
+        final int numFeatures = 10000;
+        final PredictionModel model = newModel(numFeatures);
+        for (int i = 0; i < numFeatures; i++) {
+            model.set(Integer.valueOf(i), new WeightValue(0.5f));
+        }
+
+        final MixUpdateQueue queue = new MixUpdateQueue(model, 1024);
+        final CountDownLatch done = new CountDownLatch(numProducers);
+        for (int p = 0; p < numProducers; p++) {
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < numFeatures; i++) {
+                        while (!queue.offer(Integer.valueOf(i), 1.f, 1.f, (short) 0)) {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            };
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        long drained = 0L;
+        while (done.getCount() > 0L || !queue.isEmpty()) {
+            drained += queue.drainTo();
+        }
+        Assert.assertEquals(numProducers * numFeatures, drained);
+        Assert.assertEquals(0L, queue.getNumDropped());
+        for (int i = 0; i < numFeatures; i++) {
+            Assert.assertEquals(1.f, model.getWeight(Integer.valueOf(i)), 0.f);
+        }
+    }
+
+    private static PredictionModel newModel(int size) {
+        PredictionModel model = new NewSparseModel(size);
+        model.configureClock();
+        return model;
+    }
+
+}
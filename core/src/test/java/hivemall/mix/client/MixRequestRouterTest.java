@@ -18,8 +18,13 @@
  */
 package hivemall.mix.client;
 
+import hivemall.mix.MixMessage;
+import hivemall.mix.MixMessage.MixEventName;
 import hivemall.mix.NodeInfo;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -33,4 +38,64 @@ public class MixRequestRouterTest {
         Assert.assertEquals(2, nodes.length);
     }
 
+    @Test
+    public void testBalance() {
+        MixRequestRouter router =
+                new MixRequestRouter("127.0.0.1:11212,127.0.0.1:11213,127.0.0.1:11214");
+        final int numFeatures = 30000;
+        final Map<NodeInfo, Integer> counts = new HashMap<NodeInfo, Integer>();
+        for (int i = 0; i < numFeatures; i++) {
+            NodeInfo node = router.selectNode(message(i));
+            Integer cnt = counts.get(node);
+            counts.put(node, (cnt == null) ? 1 : cnt.intValue() + 1);
+        }
+        Assert.assertEquals(3, counts.size());
+        for (Integer cnt : counts.values()) {
+            Assert.assertTrue("unbalanced: " + counts, cnt.intValue() > numFeatures / 3 * 0.7);
+        }
+    }
+
+    @Test
+    public void testAddNodeRemapsOnlyPartOfFeatures() {
+        MixRequestRouter router3 =
+                new MixRequestRouter("127.0.0.1:11212,127.0.0.1:11213,127.0.0.1:11214");
+        MixRequestRouter router4 = new MixRequestRouter(
+            "127.0.0.1:11212,127.0.0.1:11213,127.0.0.1:11214,127.0.0.1:11215");
+        final NodeInfo added = router4.getAllNodes()[3];
+
+        final int numFeatures = 40000;
+        int moved = 0;
+        for (int i = 0; i < numFeatures; i++) {
+            MixMessage msg = message("f" + i);
+            NodeInfo before = router3.selectNode(msg);
+            NodeInfo after = router4.selectNode(msg);
+            if (!before.equals(after)) {
+                // features move only to the new node
+                Assert.assertEquals(added, after);
+                moved++;
+            }
+        }
+        // about 1/4 of the features are expected to move
+        Assert.assertTrue("moved: " + moved, moved > numFeatures / 4 * 0.6);
+        Assert.assertTrue("moved: " + moved, moved < numFeatures / 4 * 1.4);
+    }
+
+    @Test
+    public void testSelectNodes() {
+        MixRequestRouter router =
+                new MixRequestRouter("127.0.0.1:11212,127.0.0.1:11213,127.0.0.1:11214");
+        for (int i = 0; i < 1000; i++) {
+            MixMessage msg = message(i);
+            NodeInfo[] replicas = router.selectNodes(msg.getFeature(), 2);
+            Assert.assertEquals(2, replicas.length);
+            Assert.assertEquals(router.selectNode(msg), replicas[0]);
+            Assert.assertFalse(replicas[0].equals(replicas[1]));
+        }
+        Assert.assertEquals(3, router.selectNodes("f", 5).length);
+    }
+
+    private static MixMessage message(Object feature) {
+        return new MixMessage(MixEventName.average, feature, 1.f, 1.f, 1, false);
+    }
+
 }
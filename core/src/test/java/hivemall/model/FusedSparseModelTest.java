@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.model.IWeightValue.WeightValueType;
+import hivemall.optimizer.Optimizer;
+import hivemall.optimizer.OptimizerOptions;
+import hivemall.optimizer.SparseOptimizerFactory;
+import hivemall.utils.collections.IMapIterator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FusedSparseModelTest {
+
+    @Test
+    public void testSlot() {
+        FusedSparseModel model = new FusedSparseModel(3, 2);
+        Assert.assertEquals(0, model.size());
+        Assert.assertEquals(0.f, model.getWeight("f1"), 0.f);
+
+        IWeightValue slot = model.slot("f1");
+        Assert.assertEquals(1, model.size());
+        Assert.assertEquals(0.f, slot.get(), 0.f);
+        slot.set(1.f);
+        slot.setSumOfSquaredGradients(2.f);
+        slot.setSumOfGradients(3.f);
+
+        Assert.assertEquals(1.f, model.getWeight("f1"), 0.f);
+        float[] states = new float[2];
+        Assert.assertTrue(model.getStates("f1", states));
+        Assert.assertArrayEquals(new float[] {2.f, 3.f}, states, 0.f);
+        Assert.assertFalse(model.getStates("f2", states));
+
+        model.delete("f1");
+        Assert.assertEquals(0, model.size());
+        Assert.assertFalse(model.contains("f1"));
+        slot = model.slot("f1");
+        Assert.assertEquals(0.f, slot.get(), 0.f);
+        Assert.assertEquals(0.f, slot.getSumOfSquaredGradients(), 0.f);
+    }
+
+    @Test
+    public void testRandomOperations() {
+        final FusedSparseModel model = new FusedSparseModel(16, 1);
+        final Map<Integer, Float> expected = new HashMap<Integer, Float>();
+        final Random rand = new Random(43L);
+        for (int i = 0; i < 100000; i++) {
+            Integer key = Integer.valueOf(rand.nextInt(5000));
+            if (rand.nextInt(4) == 0) {
+                model.delete(key);
+                expected.remove(key);
+            } else {
+                float w = rand.nextFloat();
+                model.slot(key).set(w);
+                expected.put(key, w);
+            }
+        }
+        Assert.assertEquals(expected.size(), model.size());
+        for (Map.Entry<Integer, Float> e : expected.entrySet()) {
+            Assert.assertEquals(e.getValue().floatValue(), model.getWeight(e.getKey()), 0.f);
+        }
+
+        int numEntries = 0;
+        final WeightValue probe = new WeightValue();
+        final IMapIterator<Integer, IWeightValue> itor = model.entries();
+        while (itor.next() != -1) {
+            itor.getValue(probe);
+            Assert.assertTrue(probe.isTouched());
+            Assert.assertEquals(expected.get(itor.getKey()).floatValue(), probe.get(), 0.f);
+            numEntries++;
+        }
+        Assert.assertEquals(expected.size(), numEntries);
+    }
+
+    @Test
+    public void testSameUpdatesAsOptimizerStates() {
+        for (String name : new String[] {"AdaGrad", "AdaDelta", "Adam", "FTRL"}) {
+            Map<String, String> options = OptimizerOptions.create();
+            options.put("optimizer", name);
+            if (!"AdaGrad".equals(name)) {
+                options.put("regularization", "no");
+            }
+            Optimizer expected = SparseOptimizerFactory.create(16, options);
+            Optimizer actual = SparseOptimizerFactory.create(16, options);
+            FusedSparseModel model = new FusedSparseModel(16, actual.getNumStates());
+            Map<Object, Float> weights = new HashMap<Object, Float>();
+
+            final Random rand = new Random(43L);
+            for (int i = 0; i < 10000; i++) {
+                Integer feature = Integer.valueOf(rand.nextInt(100));
+                float gradient = (float) rand.nextGaussian();
+                Float w = weights.get(feature);
+                float w1 = expected.update(feature, (w == null) ? 0.f : w.floatValue(), gradient);
+                weights.put(feature, w1);
+                float w2 = actual.update(model.slot(feature), gradient);
+                Assert.assertEquals(name, w1, w2, 0.f);
+                expected.proceedStep();
+                actual.proceedStep();
+            }
+        }
+    }
+
+    @Test
+    public void testAdaGradStride() {
+        Map<String, String> options = OptimizerOptions.create();
+        options.put("optimizer", "AdaGrad");
+        options.put("regularization", "no");
+        Optimizer expected = SparseOptimizerFactory.create(16, options);
+        Optimizer actual = SparseOptimizerFactory.create(16, options);
+        Assert.assertEquals(1, actual.getNumStates());
+
+        // a weight followed by the sum of squared gradients
+        FusedSparseModel model = new FusedSparseModel(16, actual.getNumStates());
+        Assert.assertEquals(1, model.getNumStates());
+        Assert.assertEquals(WeightValueType.ParamsF1, model.slot("f0").getType());
+
+        Map<Object, Float> weights = new HashMap<Object, Float>();
+        final Random rand = new Random(43L);
+        for (int i = 0; i < 10000; i++) {
+            Integer feature = Integer.valueOf(rand.nextInt(100));
+            float gradient = (float) rand.nextGaussian();
+            Float w = weights.get(feature);
+            float w1 = expected.update(feature, (w == null) ? 0.f : w.floatValue(), gradient);
+            weights.put(feature, w1);
+            Assert.assertEquals(w1, actual.update(model.slot(feature), gradient), 0.f);
+        }
+
+        final float[] expectedStates = new float[1];
+        final float[] actualStates = new float[1];
+        for (Map.Entry<Object, Float> e : weights.entrySet()) {
+            Object feature = e.getKey();
+            Assert.assertEquals(e.getValue().floatValue(), model.getWeight(feature), 0.f);
+            Assert.assertTrue(expected.getState(feature, expectedStates));
+            Assert.assertTrue(model.getStates(feature, actualStates));
+            Assert.assertEquals(expectedStates[0], actualStates[0], 0.f);
+
+            IWeightValue slot = model.get(feature);
+            Assert.assertEquals(WeightValueType.ParamsF1, slot.getType());
+            Assert.assertEquals(expectedStates[0], slot.getFloatParams(1), 0.f);
+        }
+    }
+
+}
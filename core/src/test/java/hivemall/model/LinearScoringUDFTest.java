@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinearScoringUDFTest {
+
+    private static final String MODEL = "1\u00010.5\n" + "f2\u0001-1.5\n" + "007\u00012.0\n"
+            + "\\N\u00011.0\n" + "f3\u0001\\N\n" + "日本\u00010.25\n" + "1\u00013.0\n";
+
+    // features, expected score
+    private static final Object[][] CASES = new Object[][] {
+            {Arrays.asList("1:2.0"), 6.d}, // the last row of a feature wins
+            {Arrays.asList("f2"), -1.5d}, // the value defaults to 1
+            {Arrays.asList("1:1.0", "f2:2.0", "007:0.5"), 3.d - 3.d + 1.d},
+            {Arrays.asList("7:1.0", "07"), 0.d}, // "007" is a string feature
+            {Arrays.asList("f3:1.0", "unknown:5.0"), 0.d}, // null weights are skipped
+            {Arrays.asList("日本:4.0"), 1.d},
+            {Arrays.asList("f2:-1.0", null, "f2:-1.0"), 3.d}, // null elements are ignored
+            {Arrays.<String>asList(), 0.d}};
+
+    @Test
+    public void testScores() throws IOException, HiveException {
+        File file = writeModel(createTempDir(), "000000_0", MODEL);
+        LinearScoringUDF udf = new LinearScoringUDF();
+        udf.initialize(argOIs(file));
+
+        DeferredObject modelPath = new DeferredJavaObject(file.getPath());
+        for (Object[] c : CASES) {
+            DoubleWritable result =
+                    udf.evaluate(new DeferredObject[] {modelPath, new DeferredJavaObject(c[0])});
+            Assert.assertNotNull(c[0].toString(), result);
+            Assert.assertEquals(c[0].toString(), ((Double) c[1]).doubleValue(), result.get(),
+                1e-6d);
+        }
+        Assert.assertNull(
+            udf.evaluate(new DeferredObject[] {modelPath, new DeferredJavaObject(null)}));
+        udf.close();
+    }
+
+    @Test
+    public void testModelDirectory() throws IOException, HiveException {
+        File dir = createTempDir();
+        writeModel(dir, "000000_0", "1\u00010.5\n" + "f2\u0001-1.5\n");
+        writeModel(dir, "000001_0", "3\u00012.0\n");
+        writeModel(dir, ".000001_0.crc", "3\u0001-100.0\n"); // checksums are skipped
+
+        LinearScoringUDF udf = new LinearScoringUDF();
+        udf.initialize(argOIs(dir));
+        DoubleWritable result = udf.evaluate(new DeferredObject[] {
+                new DeferredJavaObject(dir.getPath()),
+                new DeferredJavaObject(Arrays.asList("1:2.0", "f2", "3:0.5"))});
+        Assert.assertEquals(1.d - 1.5d + 1.d, result.get(), 1e-6d);
+        udf.close();
+    }
+
+    @Test
+    public void testInvalidFeatures() throws IOException, HiveException {
+        File file = writeModel(createTempDir(), "000000_0", MODEL);
+        LinearScoringUDF udf = new LinearScoringUDF();
+        udf.initialize(argOIs(file));
+
+        DeferredObject modelPath = new DeferredJavaObject(file.getPath());
+        for (List<String> features : Arrays.asList(Arrays.asList(":1.0"),
+            Arrays.asList("1:abc"))) {
+            try {
+                udf.evaluate(new DeferredObject[] {modelPath, new DeferredJavaObject(features)});
+                Assert.fail("HiveException is expected for " + features);
+            } catch (HiveException e) {
+                // expected
+            }
+        }
+        udf.close();
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMissingModel() throws IOException, HiveException {
+        File file = new File(createTempDir(), "missing");
+        LinearScoringUDF udf = new LinearScoringUDF();
+        udf.initialize(argOIs(file));
+        udf.evaluate(new DeferredObject[] {new DeferredJavaObject(file.getPath()),
+                new DeferredJavaObject(Arrays.asList("1:1.0"))});
+    }
+
+    @Nonnull
+    private static ObjectInspector[] argOIs(@Nonnull File model) {
+        return new ObjectInspector[] {
+                ObjectInspectorUtils.getConstantObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector, model.getPath()),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector)};
+    }
+
+    @Nonnull
+    private static File writeModel(@Nonnull File dir, @Nonnull String name,
+            @Nonnull String rows) throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            out.write(rows);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Nonnull
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("LinearScoringUDFTest", "");
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdir());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.model.ModelSnapshot.KeyType;
+import hivemall.optimizer.DenseOptimizerFactory;
+import hivemall.optimizer.Optimizer;
+import hivemall.optimizer.OptimizerOptions;
+import hivemall.optimizer.SparseOptimizerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelSnapshotTest {
+
+    @Test
+    public void testIntKeysWithStates() throws IOException {
+        File file = File.createTempFile("ModelSnapshotTest", ".hms");
+        file.deleteOnExit();
+
+        final int numEntries = 200000; // spans multiple blocks
+        ModelSnapshot.Writer writer = new ModelSnapshot.Writer(file, KeyType.INT, 2, 12345L);
+        float[] states = new float[2];
+        for (int i = 0; i < numEntries; i++) {
+            states[0] = i * 2.f;
+            states[1] = i * 3.f;
+            writer.write(Integer.valueOf(i), i, states);
+        }
+        writer.close();
+
+        for (int threads : new int[] {1, 4}) {
+            ModelSnapshot.Reader reader = new ModelSnapshot.Reader(file);
+            Assert.assertEquals(KeyType.INT, reader.getKeyType());
+            Assert.assertEquals(2, reader.getNumStates());
+            Assert.assertEquals(numEntries, reader.getNumEntries());
+            Assert.assertEquals(12345L, reader.getNumStep());
+
+            final int[] expected = new int[] {0};
+            reader.load(new ModelSnapshot.EntryHandler() {
+                @Override
+                public void handle(@Nonnull Object key, float weight, @Nonnull float[] states) {
+                    int i = expected[0]++;
+                    Assert.assertEquals(Integer.valueOf(i), key);
+                    Assert.assertEquals(i, weight, 0.f);
+                    Assert.assertEquals(i * 2.f, states[0], 0.f);
+                    Assert.assertEquals(i * 3.f, states[1], 0.f);
+                }
+            }, threads);
+            reader.close();
+            Assert.assertEquals(numEntries, expected[0]);
+        }
+    }
+
+    @Test
+    public void testStringKeys() throws IOException {
+        File file = File.createTempFile("ModelSnapshotTest", ".hms");
+        file.deleteOnExit();
+
+        ModelSnapshot.Writer writer = new ModelSnapshot.Writer(file, KeyType.STRING, 0, 1L);
+        writer.write("f1", 0.5f, new float[0]);
+        writer.write("日本", -1.5f, new float[0]);
+        writer.write("", 2.f, new float[0]);
+        writer.close();
+
+        final List<Object> keys = new ArrayList<Object>();
+        final List<Float> weights = new ArrayList<Float>();
+        ModelSnapshot.Reader reader = new ModelSnapshot.Reader(file);
+        reader.load(new ModelSnapshot.EntryHandler() {
+            @Override
+            public void handle(@Nonnull Object key, float weight, @Nonnull float[] states) {
+                Assert.assertEquals(0, states.length);
+                keys.add(key);
+                weights.add(weight);
+            }
+        }, 2);
+        reader.close();
+
+        Assert.assertEquals(3, keys.size());
+        Assert.assertEquals("f1", keys.get(0));
+        Assert.assertEquals("日本", keys.get(1));
+        Assert.assertEquals("", keys.get(2));
+        Assert.assertEquals(-1.5f, weights.get(1).floatValue(), 0.f);
+    }
+
+    @Test
+    public void testAdaGradStatesBetweenDenseAndSparse() throws IOException {
+        Map<String, String> options = OptimizerOptions.create();
+        options.put("optimizer", "adagrad");
+        options.put("regularization", "no");
+        Optimizer dense = DenseOptimizerFactory.create(100, options);
+        Optimizer sparse = SparseOptimizerFactory.create(100, options);
+        Assert.assertEquals(1, dense.getNumStates());
+        Assert.assertEquals(dense.getNumStates(), sparse.getNumStates());
+
+        float[] weights = new float[100];
+        for (int i = 0; i < 1000; i++) {
+            int feature = i % 100;
+            float gradient = (float) Math.sin(i);
+            dense.update(Integer.valueOf(feature), weights[feature], gradient);
+            weights[feature] = sparse.update(Integer.valueOf(feature), weights[feature],
+                gradient);
+            dense.proceedStep();
+            sparse.proceedStep();
+        }
+
+        File denseFile = snapshot(dense, weights);
+        File sparseFile = snapshot(sparse, weights);
+
+        // restore each snapshot into the other representation
+        Optimizer sparse2 = SparseOptimizerFactory.create(100, options);
+        Optimizer dense2 = DenseOptimizerFactory.create(100, options);
+        restore(denseFile, sparse2);
+        restore(sparseFile, dense2);
+
+        float[] expected = new float[1];
+        float[] actual = new float[1];
+        for (int i = 0; i < 100; i++) {
+            Integer feature = Integer.valueOf(i);
+            Assert.assertTrue(dense.getState(feature, expected));
+            Assert.assertTrue(sparse2.getState(feature, actual));
+            Assert.assertEquals(expected[0], actual[0], 0.f);
+            Assert.assertTrue(sparse.getState(feature, expected));
+            Assert.assertTrue(dense2.getState(feature, actual));
+            Assert.assertEquals(expected[0], actual[0], 0.f);
+            // both sides continue from the same state
+            float w1 = sparse2.update(feature, weights[i], 0.5f);
+            float w2 = dense2.update(feature, weights[i], 0.5f);
+            Assert.assertEquals(w1, w2, 1e-6f);
+        }
+    }
+
+    @Nonnull
+    private static File snapshot(@Nonnull Optimizer optimizer, @Nonnull float[] weights)
+            throws IOException {
+        File file = File.createTempFile("ModelSnapshotTest", ".hms");
+        file.deleteOnExit();
+
+        final int numStates = optimizer.getNumStates();
+        ModelSnapshot.Writer writer =
+                new ModelSnapshot.Writer(file, KeyType.INT, numStates, 1000L);
+        float[] states = new float[numStates];
+        for (int i = 0; i < weights.length; i++) {
+            Integer feature = Integer.valueOf(i);
+            Assert.assertTrue(optimizer.getState(feature, states));
+            writer.write(feature, weights[i], states);
+        }
+        writer.close();
+        return file;
+    }
+
+    private static void restore(@Nonnull File file, @Nonnull final Optimizer optimizer)
+            throws IOException {
+        ModelSnapshot.Reader reader = new ModelSnapshot.Reader(file);
+        Assert.assertEquals(optimizer.getNumStates(), reader.getNumStates());
+        reader.load(new ModelSnapshot.EntryHandler() {
+            @Override
+            public void handle(@Nonnull Object key, float weight, @Nonnull float[] states) {
+                optimizer.setState(key, weight, states);
+            }
+        }, 1);
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testIllegalFile() throws IOException {
+        File file = File.createTempFile("ModelSnapshotTest", ".txt");
+        file.deleteOnExit();
+        new ModelSnapshot.Reader(file);
+    }
+
+}
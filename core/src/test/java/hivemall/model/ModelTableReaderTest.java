@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelTableReaderTest {
+
+    @Test
+    public void testSplitRow() {
+        String[] row = new String[3];
+        ModelTableReader.splitRow("a\u00011.5\u0001\\N", row);
+        Assert.assertArrayEquals(new String[] {"a", "1.5", null}, row);
+
+        ModelTableReader.splitRow("b\u00012", row);
+        Assert.assertArrayEquals(new String[] {"b", "2", null}, row);
+
+        row = new String[2];
+        ModelTableReader.splitRow("c\u00013\u00014", row);
+        Assert.assertArrayEquals(new String[] {"c", "3"}, row);
+    }
+
+    @Test
+    public void testParseFloatArray() {
+        Assert.assertNull(ModelTableReader.parseFloatArray(null));
+        Assert.assertArrayEquals(new float[] {0.5f, -1.f, 2.f},
+            ModelTableReader.parseFloatArray("0.5\u0002-1.0\u00022"), 0.f);
+        Assert.assertArrayEquals(new float[] {3.f},
+            ModelTableReader.parseFloatArray("3.0"), 0.f);
+    }
+
+    @Test
+    public void testLoadLinearModel() throws IOException {
+        String table = "1\u00010.5\n" + "f2\u0001-1.5\n" + "007\u00012.0\n" + "7\u00013.0\n"
+                + "\\N\u00011.0\n" + "-3\u00014.0\n" + "1\u00010.25\n";
+        CompactLinearModel model = new CompactLinearModel();
+        long lines = ModelTableReader.read(new BufferedReader(new StringReader(table)),
+            CompactLinearModel.numColumns(), model);
+        Assert.assertEquals(7L, lines);
+        Assert.assertEquals(5, model.size());
+        Assert.assertEquals(0.25f, model.getWeight("1"), 0.f);
+        Assert.assertEquals(-1.5f, model.getWeight("f2"), 0.f);
+        Assert.assertEquals(2.f, model.getWeight("007"), 0.f);
+        Assert.assertEquals(3.f, model.getWeight("7"), 0.f);
+        Assert.assertEquals(4.f, model.getWeight("-3"), 0.f);
+        Assert.assertEquals(0.f, model.getWeight("unknown"), 0.f);
+    }
+
+    @Test
+    public void testParseIntKey() {
+        Assert.assertEquals(0L, FeatureSlotMap.parseIntKey("0"));
+        Assert.assertEquals(-12L, FeatureSlotMap.parseIntKey("-12"));
+        Assert.assertEquals(Integer.MAX_VALUE, FeatureSlotMap.parseIntKey("2147483647"));
+        Assert.assertEquals(Long.MIN_VALUE, FeatureSlotMap.parseIntKey("2147483648"));
+        Assert.assertEquals(Long.MIN_VALUE, FeatureSlotMap.parseIntKey("007"));
+        Assert.assertEquals(Long.MIN_VALUE, FeatureSlotMap.parseIntKey("-0"));
+        Assert.assertEquals(Long.MIN_VALUE, FeatureSlotMap.parseIntKey("1a"));
+        Assert.assertEquals(Long.MIN_VALUE, FeatureSlotMap.parseIntKey("-"));
+    }
+
+}
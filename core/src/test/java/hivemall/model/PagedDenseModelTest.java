@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.model;
+
+import hivemall.utils.collections.IMapIterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PagedDenseModelTest {
+
+    @Test
+    public void testSetGetDelete() {
+        PagedDenseModel model = new PagedDenseModel(16L, true, false);
+        Assert.assertTrue(model.hasCovariance());
+        Assert.assertNull(model.get(3));
+        Assert.assertEquals(0.f, model.getWeight(3), 0.f);
+        Assert.assertEquals(1.f, model.getCovariance(3), 0.f);
+
+        model.set(3, new WeightValue.WeightValueWithCovar(0.5f, 0.25f));
+        Assert.assertTrue(model.contains(3L));
+        Assert.assertEquals(0.5f, model.getWeight(Integer.valueOf(3)), 0.f);
+        Assert.assertEquals(0.5f, model.getWeight("3"), 0.f);
+        Assert.assertEquals(0.25f, model.getCovariance(3L), 0.f);
+        IWeightValue v = model.get(3);
+        Assert.assertEquals(0.5f, v.get(), 0.f);
+        Assert.assertEquals(0.25f, v.getCovariance(), 0.f);
+
+        model.delete(3);
+        Assert.assertFalse(model.contains(3));
+        Assert.assertEquals(1.f, model.getCovariance(3), 0.f);
+    }
+
+    @Test
+    public void testEntriesOfLargeIndexes() {
+        PagedDenseModel model = new PagedDenseModel(1024L);
+        final long large = (1L << 32) + 5L;
+        model.setWeight(7, 1.f);
+        model.setWeight(large, 2.f);
+        model.setWeight(8, 0.f);
+
+        int numTouched = 0;
+        float sum = 0.f;
+        final WeightValue probe = new WeightValue();
+        final IMapIterator<Long, IWeightValue> itor = model.entries();
+        while (itor.next() != -1) {
+            itor.getValue(probe);
+            if (!probe.isTouched()) {
+                continue;
+            }
+            numTouched++;
+            long key = itor.getKey().longValue();
+            Assert.assertTrue(key == 7L || key == large);
+            sum += probe.get();
+        }
+        Assert.assertEquals(2, numTouched);
+        Assert.assertEquals(3.f, sum, 0.f);
+    }
+
+}
@@ -96,6 +96,15 @@ public final class OptimizerTest {
                 SparseOptimizerFactory.create(8, options) instanceof SparseOptimizerFactory.Adam);
         }
 
+        options.put("optimizer", "FTRL");
+        for (final String regType : regTypes) {
+            options.put("regularization", regType);
+            Assert.assertTrue(
+                DenseOptimizerFactory.create(8, options) instanceof DenseOptimizerFactory.FTRL);
+            Assert.assertTrue(
+                SparseOptimizerFactory.create(8, options) instanceof SparseOptimizerFactory.FTRL);
+        }
+
         // We need special handling for `Optimizer#RDA`
         options.put("optimizer", "AdaGrad");
         options.put("regularization", "RDA");
@@ -104,8 +113,8 @@ public final class OptimizerTest {
         Assert.assertTrue(
             SparseOptimizerFactory.create(8, options) instanceof SparseOptimizerFactory.AdagradRDA);
 
-        // `SGD`, `AdaDelta`, and `Adam` currently does not support `RDA`
-        for (final String optimizerType : new String[] {"SGD", "AdaDelta", "Adam"}) {
+        // `SGD`, `AdaDelta`, `Adam`, and `FTRL` currently does not support `RDA`
+        for (final String optimizerType : new String[] {"SGD", "AdaDelta", "Adam", "FTRL"}) {
             options.put("optimizer", optimizerType);
             try {
                 DenseOptimizerFactory.create(8, options);
@@ -170,6 +179,35 @@ public final class OptimizerTest {
         testOptimizer(options, 65536, 1024);
     }
 
+    @Test
+    public void testFTRLOptimizer() {
+        final Map<String, String> options = new HashMap<String, String>();
+        options.put("optimizer", "FTRL");
+        testOptimizer(options, 65536, 1024);
+    }
+
+    @Test
+    public void testFTRLTruncation() {
+        final Map<String, String> options = new HashMap<String, String>();
+        options.put("optimizer", "FTRL");
+        options.put("lambda1", "0.5");
+        final Optimizer optimizer = SparseOptimizerFactory.create(8, options);
+        final float[] states = new float[optimizer.getNumStates()];
+
+        // |z| <= lambda1 results in a zero weight while z and n are kept
+        Assert.assertEquals(0.f, optimizer.update("f1", 0.f, 0.1f), 0.f);
+        Assert.assertTrue(optimizer.getState("f1", states));
+        Assert.assertEquals(0.01f, states[0], 1e-6f);
+        Assert.assertEquals(0.1f, states[1], 1e-6f);
+
+        // z = 1.0, n = 1.0, w = -(z - lambda1) / ((beta + sqrt(n)) / alpha + lambda2)
+        float w = optimizer.update("f2", 0.f, 1.f);
+        Assert.assertEquals(-0.5f / (2.f / 0.5f + 0.0001f), w, 1e-6f);
+        Assert.assertTrue(optimizer.getState("f2", states));
+        Assert.assertEquals(1.f, states[0], 1e-6f);
+        Assert.assertEquals(1.f, states[1], 1e-6f);
+    }
+
     @Test
     public void testAdamOptimizer() {
         final Map<String, String> options = new HashMap<String, String>();
@@ -23,10 +23,14 @@ import java.util.Map;
 
 import hivemall.TestUtils;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class SlimUDTFTest {
@@ -167,4 +171,76 @@ public class SlimUDTFTest {
             rows);
     }
 
+    @Test
+    public void testParallelIterations() throws HiveException {
+        Map<String, Float> expected = train("-l2 0.01 -l1 0.01 -iters 5 -disable_cvtest");
+        Map<String, Float> actual =
+                train("-l2 0.01 -l1 0.01 -iters 5 -disable_cvtest -num_threads 3");
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    private static Map<String, Float> train(String options) throws HiveException {
+        SlimUDTF slim = new SlimUDTF();
+        ObjectInspector ratesOI = ObjectInspectorFactory.getStandardMapObjectInspector(
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector,
+            PrimitiveObjectInspectorFactory.javaFloatObjectInspector);
+        ObjectInspector topKRatesOfIOI = ObjectInspectorFactory.getStandardMapObjectInspector(
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector, ratesOI);
+        ObjectInspector[] argOIs = {PrimitiveObjectInspectorFactory.javaIntObjectInspector,
+                ratesOI, topKRatesOfIOI, PrimitiveObjectInspectorFactory.javaIntObjectInspector,
+                ratesOI, ObjectInspectorUtils.getConstantObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector, options)};
+
+        final Map<String, Float> weights = new HashMap<>();
+        slim.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {
+                Object[] row = (Object[]) input;
+                int i = ((IntWritable) row[0]).get();
+                int j = ((IntWritable) row[1]).get();
+                weights.put(i + "," + j, ((FloatWritable) row[2]).get());
+            }
+        });
+        slim.initialize(argOIs);
+
+        int numUser = 4;
+        int numItem = 5;
+        float[][] data = {{1.f, 4.f, 0.f, 0.f, 0.f}, {0.f, 3.f, 0.f, 1.f, 2.f},
+                {2.f, 2.f, 0.f, 0.f, 3.f}, {0.f, 1.f, 1.f, 0.f, 0.f}};
+
+        for (int i = 0; i < numItem; i++) {
+            Map<Integer, Float> Ri = new HashMap<>();
+            for (int u = 0; u < numUser; u++) {
+                if (data[u][i] != 0.) {
+                    Ri.put(u, data[u][i]);
+                }
+            }
+            Map<Integer, Map<Integer, Float>> knnRatesOfI = new HashMap<>();
+            for (int u = 0; u < numUser; u++) {
+                Map<Integer, Float> Ru = new HashMap<>();
+                for (int k = 0; k < numItem; k++) {
+                    if (k != i) {
+                        Ru.put(k, data[u][k]);
+                    }
+                }
+                knnRatesOfI.put(u, Ru);
+            }
+            for (int j = 0; j < numItem; j++) {
+                if (i == j) {
+                    continue;
+                }
+                Map<Integer, Float> Rj = new HashMap<>();
+                for (int u = 0; u < numUser; u++) {
+                    if (data[u][j] != 0.) {
+                        Rj.put(u, data[u][j]);
+                    }
+                }
+                slim.process(new Object[] {i, Ri, knnRatesOfI, j, Rj});
+            }
+        }
+        slim.close();
+        return weights;
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.bloom;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockedBloomFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        final int size = 100000;
+        BlockedBloomFilter bf = createBloomFilter(43L, size, 0.01d);
+
+        final Text key = new Text();
+        final Random rnd = new Random(43L);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd.nextGaussian()));
+            Assert.assertTrue(bf.mightContain(key));
+        }
+    }
+
+    @Test
+    public void testErrorRate() {
+        final int size = 100000;
+        for (double errorRate : new double[] {0.01d, 0.005d, 0.001d}) {
+            BlockedBloomFilter bf = createBloomFilter(43L, size, errorRate);
+
+            final Text key = new Text();
+            int falsePositives = 0;
+            final int numProbes = 10 * size;
+            for (int i = 0; i < numProbes; i++) {
+                key.set("not-inserted-" + i);
+                if (bf.mightContain(key)) {
+                    falsePositives++;
+                }
+            }
+            double actual = falsePositives / (double) numProbes;
+            Assert.assertTrue("false positive rate: " + actual + ", expected: " + errorRate,
+                actual <= errorRate);
+        }
+    }
+
+    @Test
+    public void testNumBlocks() {
+        for (double errorRate : new double[] {0.01d, 0.005d, 0.001d}) {
+            int numBlocks = BlockedBloomFilter.numBlocks(100000L, errorRate);
+            Assert.assertTrue(
+                BlockedBloomFilter.falsePositiveRate(100000L, numBlocks) <= 0.95d * errorRate);
+            Assert.assertTrue(
+                BlockedBloomFilter.falsePositiveRate(100000L, numBlocks - 1) > 0.95d * errorRate);
+        }
+    }
+
+    @Test
+    public void testProbeSerialized() {
+        final int size = 10000;
+        BlockedBloomFilter bf = createBloomFilter(1L, size, 0.005d);
+        byte[] serialized = bf.serialize();
+
+        byte[] padded = new byte[serialized.length + 3];
+        System.arraycopy(serialized, 0, padded, 3, serialized.length);
+
+        final Text key = new Text();
+        final Random rnd = new Random(7L);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd.nextGaussian()));
+            Assert.assertEquals(bf.mightContain(key),
+                BlockedBloomFilter.mightContain(padded, 3, serialized.length, key));
+        }
+
+        Assert.assertEquals(bf,
+            BlockedBloomFilter.deserialize(padded, 3, serialized.length));
+    }
+
+    @Test
+    public void testOrAnd() {
+        final int size = 1000;
+        BlockedBloomFilter bf1 = createBloomFilter(1L, size, 0.01d);
+        BlockedBloomFilter bf2 = createBloomFilter(2L, size, 0.01d);
+
+        BlockedBloomFilter union = BlockedBloomFilter.deserialize(bf1.serialize(), 0,
+            bf1.serialize().length);
+        union.or(bf2);
+        BlockedBloomFilter intersection = BlockedBloomFilter.deserialize(bf1.serialize(), 0,
+            bf1.serialize().length);
+        intersection.and(bf2);
+
+        final Text key = new Text();
+        for (long seed = 1L; seed <= 2L; seed++) {
+            Random rnd = new Random(seed);
+            for (int i = 0; i < size; i++) {
+                key.set(Double.toHexString(rnd.nextGaussian()));
+                Assert.assertTrue(union.mightContain(key));
+                if (intersection.mightContain(key)) {
+                    Assert.assertTrue(bf1.mightContain(key) && bf2.mightContain(key));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrDifferentSizes() {
+        new BlockedBloomFilter(100, 0.01d).or(new BlockedBloomFilter(100000, 0.01d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalSerializedForm() {
+        byte[] b = new BlockedBloomFilter(100, 0.01d).serialize();
+        BlockedBloomFilter.mightContain(b, 0, b.length - 1, new Text("a"));
+    }
+
+    private static BlockedBloomFilter createBloomFilter(long seed, int size, double errorRate) {
+        BlockedBloomFilter bf = new BlockedBloomFilter(size, errorRate);
+        final Random rnd = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            bf.add(new Text(Double.toHexString(rnd.nextGaussian())));
+        }
+        return bf;
+    }
+
+}
@@ -24,6 +24,7 @@ import java.util.Random;
 import javax.annotation.Nonnull;
 
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
@@ -56,6 +57,48 @@ public class BloomAndUDFTest {
         assertNotContains(bf1, deserialized, 2L, 10000);
     }
 
+    @Test
+    public void testBinary() throws HiveException {
+        BloomAndUDF udf = new BloomAndUDF();
+
+        BlockedBloomFilter bf1 = createBlockedBloomFilter(1L, 1000);
+        BlockedBloomFilter bf2 = createBlockedBloomFilter(2L, 1000);
+
+        BytesWritable actual = udf.evaluate(new BytesWritable(bf1.serialize()),
+            new BytesWritable(bf2.serialize()));
+
+        bf1.and(bf2);
+        Assert.assertArrayEquals(bf1.serialize(), actual.copyBytes());
+        Assert.assertEquals(bf1,
+            BlockedBloomFilter.deserialize(actual.getBytes(), 0, actual.getLength()));
+        // keys of the first filter remain members only if the second one may contain them
+        final Text key = new Text();
+        final Random rnd1 = new Random(1L);
+        for (int i = 0; i < 1000; i++) {
+            key.set(Double.toHexString(rnd1.nextGaussian()));
+            Assert.assertEquals(bf2.mightContain(key), bf1.mightContain(key));
+        }
+
+        Assert.assertNull(udf.evaluate(null, new BytesWritable(bf2.serialize())));
+        Assert.assertNull(udf.evaluate(new BytesWritable(bf2.serialize()), null));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testSizeMismatchedBinary() throws HiveException {
+        BloomAndUDF udf = new BloomAndUDF();
+        BlockedBloomFilter bf1 = new BlockedBloomFilter(10000, 0.01d);
+        BlockedBloomFilter bf2 = new BlockedBloomFilter(100000, 0.01d);
+        udf.evaluate(new BytesWritable(bf1.serialize()), new BytesWritable(bf2.serialize()));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMalformedBinary() throws HiveException {
+        BloomAndUDF udf = new BloomAndUDF();
+        BlockedBloomFilter bf = new BlockedBloomFilter(10000, 0.01d);
+        udf.evaluate(new BytesWritable(bf.serialize()),
+            new BytesWritable("not a bloom filter".getBytes()));
+    }
+
     @Nonnull
     private static DynamicBloomFilter createBloomFilter(long seed, int size) {
         DynamicBloomFilter dbf = BloomFilterUtils.newDynamicBloomFilter(3000);
@@ -86,4 +129,18 @@ public class BloomAndUDFTest {
         }
     }
 
+    @Nonnull
+    private static BlockedBloomFilter createBlockedBloomFilter(long seed, int size) {
+        BlockedBloomFilter bf = new BlockedBloomFilter(10000, 0.01d);
+        final Text key = new Text();
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd1.nextGaussian()));
+            bf.add(key);
+        }
+
+        return bf;
+    }
+
 }
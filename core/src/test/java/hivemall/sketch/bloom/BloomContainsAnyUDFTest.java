@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.bloom;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.bloom.DynamicBloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomContainsAnyUDFTest {
+
+    @Test
+    public void testUDF() throws IOException, HiveException {
+        BloomContainsAnyUDF udf = new BloomContainsAnyUDF();
+        final long seed = 43L;
+        final int size = 100;
+
+        DynamicBloomFilter dbf = createBloomFilter(seed, size);
+        Text bfstr = BloomFilterUtils.serialize(dbf, new Text());
+
+        final Key probe = new Key();
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd1.nextGaussian()));
+            Text other = new Text("not-inserted-" + i);
+            Assert.assertEquals("Look up failed for key: " + key, Boolean.TRUE,
+                udf.evaluate(bfstr, Arrays.asList(other, null, key)));
+
+            probe.set(other.copyBytes(), 1.0d);
+            Assert.assertEquals(Boolean.valueOf(dbf.membershipTest(probe)),
+                udf.evaluate(bfstr, Arrays.asList(other)));
+        }
+
+        Assert.assertNull(udf.evaluate((Text) null, Arrays.asList(new Text("k"))));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bfstr, (List<Text>) null));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bfstr, Arrays.<Text>asList()));
+    }
+
+    @Test
+    public void testBinary() throws HiveException {
+        BloomContainsAnyUDF udf = new BloomContainsAnyUDF();
+        final long seed = 43L;
+        final int size = 100;
+
+        BlockedBloomFilter bf = createBlockedBloomFilter(seed, size);
+        byte[] serialized = bf.serialize();
+        // only the first getLength() bytes are the filter
+        BytesWritable bytes = new BytesWritable(new byte[serialized.length + 16]);
+        bytes.set(serialized, 0, serialized.length);
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd1.nextGaussian()));
+            Text other = new Text("not-inserted-" + i);
+            Assert.assertEquals("Look up failed for key: " + key, Boolean.TRUE,
+                udf.evaluate(bytes, Arrays.asList(other, null, key)));
+            Assert.assertEquals(Boolean.valueOf(bf.mightContain(other)),
+                udf.evaluate(bytes, Arrays.asList(other)));
+        }
+
+        Assert.assertNull(udf.evaluate((BytesWritable) null, Arrays.asList(new Text("k"))));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bytes, (List<Text>) null));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bytes, Arrays.<Text>asList()));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMalformedBinary() throws HiveException {
+        BloomContainsAnyUDF udf = new BloomContainsAnyUDF();
+        udf.evaluate(new BytesWritable(new byte[] {1, 2, 3}), Arrays.asList(new Text("k")));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testSizeMismatchedBinary() throws HiveException {
+        BloomContainsAnyUDF udf = new BloomContainsAnyUDF();
+        byte[] serialized = createBlockedBloomFilter(43L, 100).serialize();
+        // a block is missing
+        BytesWritable bytes = new BytesWritable(Arrays.copyOf(serialized, serialized.length - 64));
+        udf.evaluate(bytes, Arrays.asList(new Text("k")));
+    }
+
+    @Nonnull
+    private static DynamicBloomFilter createBloomFilter(long seed, int size) {
+        DynamicBloomFilter dbf = BloomFilterUtils.newDynamicBloomFilter(30);
+        final Key key = new Key();
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            Text t = new Text(Double.toHexString(rnd1.nextGaussian()));
+            key.set(t.copyBytes(), 1.0);
+            dbf.add(key);
+        }
+
+        return dbf;
+    }
+
+    @Nonnull
+    private static BlockedBloomFilter createBlockedBloomFilter(long seed, int size) {
+        BlockedBloomFilter bf = new BlockedBloomFilter(10000, 0.01d);
+        final Text key = new Text();
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd1.nextGaussian()));
+            bf.add(key);
+        }
+
+        return bf;
+    }
+
+}
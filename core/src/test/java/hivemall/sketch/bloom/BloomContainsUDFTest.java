@@ -19,11 +19,14 @@
 package hivemall.sketch.bloom;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import javax.annotation.Nonnull;
 
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Key;
@@ -52,6 +55,53 @@ public class BloomContainsUDFTest {
         }
     }
 
+    @Test
+    public void testBinary() throws HiveException {
+        BloomContainsUDF udf = new BloomContainsUDF();
+        final long seed = 43L;
+        final int size = 100;
+
+        BlockedBloomFilter bf = createBlockedBloomFilter(seed, size);
+        byte[] serialized = bf.serialize();
+        // only the first getLength() bytes are the filter
+        BytesWritable bytes = new BytesWritable(new byte[serialized.length + 16]);
+        bytes.set(serialized, 0, serialized.length);
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd1.nextGaussian()));
+            Assert.assertEquals("Look up failed for key: " + key, Boolean.TRUE,
+                udf.evaluate(bytes, key));
+            Assert.assertEquals(Boolean.TRUE,
+                udf.evaluate(bytes, Arrays.asList(key, null, new Text(key))));
+        }
+        for (int i = 0; i < size; i++) {
+            Text key = new Text("not-inserted-" + i);
+            Assert.assertEquals(Boolean.valueOf(bf.mightContain(key)), udf.evaluate(bytes, key));
+            Assert.assertEquals(Boolean.valueOf(bf.mightContain(key)),
+                udf.evaluate(bytes, Arrays.asList(key)));
+        }
+
+        Assert.assertNull(udf.evaluate((BytesWritable) null, new Text("k")));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bytes, (Text) null));
+        Assert.assertEquals(Boolean.FALSE, udf.evaluate(bytes, (List<Text>) null));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMalformedBinary() throws HiveException {
+        BloomContainsUDF udf = new BloomContainsUDF();
+        udf.evaluate(new BytesWritable(new byte[] {1, 2, 3}), new Text("k"));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testSizeMismatchedBinary() throws HiveException {
+        BloomContainsUDF udf = new BloomContainsUDF();
+        byte[] serialized = createBlockedBloomFilter(43L, 100).serialize();
+        // a block is missing
+        BytesWritable bytes = new BytesWritable(Arrays.copyOf(serialized, serialized.length - 64));
+        udf.evaluate(bytes, Arrays.asList(new Text("k")));
+    }
+
     @Nonnull
     private static DynamicBloomFilter createBloomFilter(long seed, int size) {
         DynamicBloomFilter dbf = BloomFilterUtils.newDynamicBloomFilter(30);
@@ -69,4 +119,18 @@ public class BloomContainsUDFTest {
         return dbf;
     }
 
+    @Nonnull
+    private static BlockedBloomFilter createBlockedBloomFilter(long seed, int size) {
+        BlockedBloomFilter bf = new BlockedBloomFilter(10000, 0.01d);
+        final Text key = new Text();
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd1.nextGaussian()));
+            bf.add(key);
+        }
+
+        return bf;
+    }
+
 }
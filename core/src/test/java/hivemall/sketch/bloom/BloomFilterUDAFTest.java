@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.bloom;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.bloom.DynamicBloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterUDAFTest {
+
+    @Test
+    public void testEvaluator() throws IOException, HiveException {
+        final int size = 1000;
+        BloomFilterUDAF.Evaluator partial1 = new BloomFilterUDAF.Evaluator();
+        BloomFilterUDAF.Evaluator partial2 = new BloomFilterUDAF.Evaluator();
+        partial1.init();
+        partial2.init();
+
+        final Random rnd = new Random(43L);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd.nextGaussian()));
+            ((i % 2 == 0) ? partial1 : partial2).iterate(key);
+        }
+        partial1.iterate(null);
+
+        BloomFilterUDAF.Evaluator merged = new BloomFilterUDAF.Evaluator();
+        merged.init();
+        merged.merge(partial1.terminatePartial());
+        merged.merge(partial2.terminatePartial());
+        DynamicBloomFilter actual =
+                BloomFilterUtils.deserialize(merged.terminate(), new DynamicBloomFilter());
+
+        final Key key = new Key();
+        rnd.setSeed(43L);
+        for (int i = 0; i < size; i++) {
+            key.set(new Text(Double.toHexString(rnd.nextGaussian())).copyBytes(), 1.0d);
+            Assert.assertTrue(actual.membershipTest(key));
+        }
+    }
+
+    @Test
+    public void testBlockedEvaluator() throws HiveException {
+        final int size = 1000;
+        final String options = "-capacity 10000 -error_rate 0.01";
+        BloomFilterUDAF.BlockedEvaluator partial1 = new BloomFilterUDAF.BlockedEvaluator();
+        BloomFilterUDAF.BlockedEvaluator partial2 = new BloomFilterUDAF.BlockedEvaluator();
+        partial1.init();
+        partial2.init();
+        BlockedBloomFilter expected = new BlockedBloomFilter(10000, 0.01d);
+
+        final Random rnd = new Random(43L);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd.nextGaussian()));
+            ((i % 2 == 0) ? partial1 : partial2).iterate(key, options);
+            expected.add(key);
+        }
+        partial1.iterate(null, options);
+
+        // a partial of no keys is null and ignored on merge
+        BloomFilterUDAF.BlockedEvaluator empty = new BloomFilterUDAF.BlockedEvaluator();
+        empty.init();
+        empty.iterate(null, options);
+        Assert.assertNull(empty.terminatePartial());
+        Assert.assertNull(empty.terminate());
+
+        BloomFilterUDAF.BlockedEvaluator merged = new BloomFilterUDAF.BlockedEvaluator();
+        merged.init();
+        merged.merge(empty.terminatePartial());
+        merged.merge(partial1.terminatePartial());
+        merged.merge(partial2.terminatePartial());
+        BytesWritable actual = merged.terminate();
+
+        Assert.assertEquals(expected,
+            BlockedBloomFilter.deserialize(actual.getBytes(), 0, actual.getLength()));
+        rnd.setSeed(43L);
+        for (int i = 0; i < size; i++) {
+            Text key = new Text(Double.toHexString(rnd.nextGaussian()));
+            Assert.assertTrue(
+                BlockedBloomFilter.mightContain(actual.getBytes(), 0, actual.getLength(), key));
+        }
+    }
+
+    @Test
+    public void testBlockedEvaluatorOptions() throws HiveException {
+        Assert.assertEquals(BlockedBloomFilter.numBlocks(10000, 0.01d),
+            numBlocks("-capacity 10000 -error_rate 0.01"));
+        Assert.assertEquals(BlockedBloomFilter.numBlocks(10000, 0.01d),
+            numBlocks("-error_rate 0.01 -capacity 10000"));
+        Assert.assertEquals(BlockedBloomFilter.numBlocks(BlockedBloomFilter.DEFAULT_CAPACITY,
+            0.001d), numBlocks("-error_rate 0.001"));
+        Assert.assertEquals(
+            BlockedBloomFilter.numBlocks(5000L, BlockedBloomFilter.DEFAULT_ERROR_RATE),
+            numBlocks("-capacity 5000"));
+        Assert.assertEquals(BlockedBloomFilter.numBlocks(BlockedBloomFilter.DEFAULT_CAPACITY,
+            BlockedBloomFilter.DEFAULT_ERROR_RATE), numBlocks(null));
+
+        for (String options : new String[] {"-capacity 0", "-capacity abc", "-error_rate 0",
+                "-error_rate 1.5", "-error_rate -0.1"}) {
+            try {
+                numBlocks(options);
+                Assert.fail("HiveException is expected for " + options);
+            } catch (HiveException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMergeMalformedPartial() throws HiveException {
+        BloomFilterUDAF.BlockedEvaluator evaluator = new BloomFilterUDAF.BlockedEvaluator();
+        evaluator.init();
+        evaluator.merge(new BytesWritable(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9}));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMergeSizeMismatchedPartials() throws HiveException {
+        BloomFilterUDAF.BlockedEvaluator evaluator = new BloomFilterUDAF.BlockedEvaluator();
+        evaluator.init();
+        evaluator.merge(new BytesWritable(new BlockedBloomFilter(10000, 0.01d).serialize()));
+        evaluator.merge(new BytesWritable(new BlockedBloomFilter(100000, 0.01d).serialize()));
+    }
+
+    private static int numBlocks(String options) throws HiveException {
+        BloomFilterUDAF.BlockedEvaluator evaluator = new BloomFilterUDAF.BlockedEvaluator();
+        evaluator.init();
+        evaluator.iterate(new Text("k"), options);
+        BytesWritable bytes = evaluator.terminate();
+        BlockedBloomFilter bf = BlockedBloomFilter.deserialize(bytes.getBytes(), 0,
+            bytes.getLength());
+        return bf.getNumBlocks();
+    }
+
+}
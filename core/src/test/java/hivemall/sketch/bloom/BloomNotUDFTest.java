@@ -24,6 +24,7 @@ import java.util.Random;
 import javax.annotation.Nonnull;
 
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Key;
@@ -47,6 +48,33 @@ public class BloomNotUDFTest {
         Assert.assertEquals(bf1.toString(), actual.toString());
     }
 
+    @Test
+    public void testBinary() throws HiveException {
+        BloomNotUDF udf = new BloomNotUDF();
+
+        BlockedBloomFilter bf = createBlockedBloomFilter(1L, 1000);
+        BytesWritable bytes = new BytesWritable(bf.serialize());
+        BytesWritable actual = udf.evaluate(bytes);
+
+        BlockedBloomFilter expected =
+                BlockedBloomFilter.deserialize(bytes.getBytes(), 0, bytes.getLength());
+        expected.not();
+        Assert.assertArrayEquals(expected.serialize(), actual.copyBytes());
+        // negated twice is the original filter
+        Assert.assertArrayEquals(bf.serialize(), udf.evaluate(actual).copyBytes());
+
+        Assert.assertNull(udf.evaluate((BytesWritable) null));
+    }
+
+    @Test(expected = HiveException.class)
+    public void testMalformedBinary() throws HiveException {
+        BloomNotUDF udf = new BloomNotUDF();
+        byte[] serialized = new BlockedBloomFilter(10000, 0.01d).serialize();
+        // the header claims more blocks than the binary has
+        serialized[7]++;
+        udf.evaluate(new BytesWritable(serialized));
+    }
+
     @Nonnull
     private static DynamicBloomFilter createBloomFilter(long seed, int size) {
         DynamicBloomFilter dbf = BloomFilterUtils.newDynamicBloomFilter(3000);
@@ -64,4 +92,18 @@ public class BloomNotUDFTest {
         return dbf;
     }
 
+    @Nonnull
+    private static BlockedBloomFilter createBlockedBloomFilter(long seed, int size) {
+        BlockedBloomFilter bf = new BlockedBloomFilter(10000, 0.01d);
+        final Text key = new Text();
+
+        final Random rnd1 = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            key.set(Double.toHexString(rnd1.nextGaussian()));
+            bf.add(key);
+        }
+
+        return bf;
+    }
+
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.frequency;
+
+import hivemall.utils.lang.mutable.MutableLong;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequentItemsTest {
+
+    @Test
+    public void testHeavyHitters() {
+        final int k = 64;
+        FrequentItems sketch = new FrequentItems(k);
+        Map<String, Long> actual = new HashMap<String, Long>();
+        Random rnd = new Random(43L);
+        final int n = 200000;
+        for (int i = 0; i < n; i++) {
+            // zipf-like: a few items are frequent
+            String item = "item" + (int) Math.floor(Math.pow(rnd.nextDouble(), 4) * 10000);
+            sketch.update(item);
+            Long c = actual.get(item);
+            actual.put(item, (c == null) ? 1L : c + 1L);
+        }
+        Assert.assertEquals(n, sketch.getN());
+        Assert.assertTrue(sketch.size() <= 2 * k);
+        Assert.assertTrue("maxError: " + sketch.getMaxError(), sketch.getMaxError() <= n / (k + 1));
+
+        for (Map.Entry<String, Long> e : actual.entrySet()) {
+            String item = e.getKey();
+            long count = e.getValue().longValue();
+            Assert.assertTrue(sketch.getLowerBound(item) <= count);
+            Assert.assertTrue(count <= sketch.getUpperBound(item));
+        }
+
+        List<Map.Entry<String, MutableLong>> top = sketch.getTopItems(3);
+        Assert.assertEquals(3, top.size());
+        Assert.assertEquals("item0", top.get(0).getKey());
+        Assert.assertTrue(
+            top.get(0).getValue().getValue() >= top.get(1).getValue().getValue());
+    }
+
+    @Test
+    public void testMaxErrorBound() {
+        final int k = 4;
+        FrequentItems sketch = new FrequentItems(k);
+        long n = 0L;
+        for (String item : new String[] {"a", "b", "c"}) {
+            sketch.update(item, 100L);
+            n += 100L;
+        }
+        // a single occurrence of many items forces purges
+        for (int i = 0; i < 1000; i++) {
+            sketch.update("x" + i);
+            n++;
+            Assert.assertTrue("maxError: " + sketch.getMaxError() + ", n: " + n,
+                sketch.getMaxError() <= n / (k + 1));
+            Assert.assertTrue(sketch.size() <= 2 * k);
+        }
+        for (String item : new String[] {"a", "b", "c"}) {
+            Assert.assertTrue(sketch.getLowerBound(item) <= 100L);
+            Assert.assertTrue(100L <= sketch.getUpperBound(item));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        FrequentItems a = new FrequentItems(16);
+        FrequentItems b = new FrequentItems(16);
+        for (int i = 0; i < 1000; i++) {
+            a.update("x");
+            a.update("a" + i);
+            b.update("x", 2L);
+            b.update("b" + i);
+        }
+        a.merge(b);
+        Assert.assertEquals(5000L, a.getN());
+        Assert.assertTrue(a.getLowerBound("x") <= 3000L);
+        Assert.assertTrue(3000L <= a.getUpperBound("x"));
+        Assert.assertEquals("x", a.getTopItems(1).get(0).getKey());
+        Assert.assertTrue(a.getMaxError() <= 5000L / 17);
+    }
+
+    @Test
+    public void testSerialization() {
+        FrequentItems sketch = new FrequentItems(8);
+        for (int i = 0; i < 100; i++) {
+            sketch.update("k" + (i % 13));
+            sketch.update("あ");
+        }
+        byte[] serialized = sketch.serialize();
+        byte[] padded = new byte[serialized.length + 5];
+        System.arraycopy(serialized, 0, padded, 5, serialized.length);
+
+        FrequentItems deserialized = FrequentItems.deserialize(padded, 5, serialized.length);
+        Assert.assertEquals(sketch.getN(), deserialized.getN());
+        Assert.assertEquals(sketch.getMaxError(), deserialized.getMaxError());
+        Assert.assertEquals(sketch.size(), deserialized.size());
+        Assert.assertEquals(sketch.getLowerBound("あ"),
+            deserialized.getLowerBound("あ"));
+        Assert.assertEquals(sketch.getLowerBound("k3"), deserialized.getLowerBound("k3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        new FrequentItems().update("a", -1L);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.hll;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testEstimate() {
+        final Random rnd = new Random(43L);
+        for (int n : new int[] {0, 1, 10, 100, 1000, 10000, 100000, 1000000}) {
+            HyperLogLog hll = new HyperLogLog(14);
+            for (int i = 0; i < n; i++) {
+                long v = rnd.nextLong();
+                hll.addHash(HyperLogLog.hash(v));
+                hll.addHash(HyperLogLog.hash(v)); // duplicates do not count
+            }
+            long actual = hll.estimate();
+            // the standard error is 1.04/sqrt(2^14) < 1%
+            Assert.assertEquals("n=" + n, n, actual, Math.max(1.d, n * 0.03d));
+        }
+    }
+
+    @Test
+    public void testHashBytes() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 50000; i++) {
+            byte[] b = ("key" + (i % 20000)).getBytes();
+            hll.addHash(HyperLogLog.hash(b, 0, b.length));
+        }
+        Assert.assertEquals(20000, hll.estimate(), 20000 * 0.05d);
+    }
+
+    @Test
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (long i = 0; i < 30000; i++) {
+            long h = HyperLogLog.hash(i);
+            if (i < 20000) {
+                a.addHash(h);
+            }
+            if (i >= 10000) {
+                b.addHash(h);
+            }
+            union.addHash(h);
+        }
+        a.merge(b);
+        Assert.assertEquals(union, a);
+
+        HyperLogLog c = new HyperLogLog(12);
+        byte[] serialized = union.serialize();
+        c.merge(serialized, 0, serialized.length);
+        Assert.assertEquals(union, c);
+    }
+
+    @Test
+    public void testFold() {
+        HyperLogLog high = new HyperLogLog(14);
+        HyperLogLog low = new HyperLogLog(12);
+        for (long i = 0; i < 50000; i++) {
+            long h = HyperLogLog.hash(i);
+            high.addHash(h);
+            low.addHash(h);
+        }
+        Assert.assertEquals(low, high.reduce(12));
+
+        HyperLogLog merged = new HyperLogLog(12);
+        merged.merge(high);
+        Assert.assertEquals(low, merged);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeLowerPrecision() {
+        new HyperLogLog(14).merge(new HyperLogLog(12));
+    }
+
+    @Test
+    public void testSerialization() {
+        HyperLogLog hll = new HyperLogLog(10);
+        for (long i = 0; i < 5000; i++) {
+            hll.addHash(HyperLogLog.hash(i));
+        }
+        byte[] serialized = hll.serialize();
+        Assert.assertEquals(2 + 1024, serialized.length);
+
+        byte[] padded = new byte[serialized.length + 3];
+        System.arraycopy(serialized, 0, padded, 3, serialized.length);
+        Assert.assertEquals(hll.estimate(),
+            HyperLogLog.estimate(padded, 3, serialized.length));
+        Assert.assertEquals(10, HyperLogLog.getPrecision(padded, 3, serialized.length));
+        Assert.assertEquals(hll, HyperLogLog.deserialize(padded, 3, serialized.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalSerializedForm() {
+        byte[] b = new HyperLogLog(10).serialize();
+        HyperLogLog.estimate(b, 0, b.length - 1);
+    }
+
+}
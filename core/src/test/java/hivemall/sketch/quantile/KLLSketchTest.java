@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.sketch.quantile;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KLLSketchTest {
+
+    @Test
+    public void testQuantiles() {
+        final int n = 1000000;
+        KLLSketch sketch = new KLLSketch(200);
+        Random rnd = new Random(43L);
+        for (int i = 0; i < n; i++) {
+            sketch.update(rnd.nextDouble());
+        }
+        Assert.assertEquals(n, sketch.getN());
+        Assert.assertTrue("retained: " + sketch.getNumRetained(),
+            sketch.getNumRetained() < 3 * 200 + 64);
+
+        double[] phis = new double[] {0.01d, 0.1d, 0.25d, 0.5d, 0.75d, 0.9d, 0.99d};
+        double[] actual = sketch.quantiles(phis);
+        for (int i = 0; i < phis.length; i++) {
+            // the rank error is about 1.65% for k=200
+            Assert.assertEquals("phi=" + phis[i], phis[i], actual[i], 0.02d);
+        }
+        Assert.assertEquals(sketch.getMin(), sketch.quantile(0.d), 0.d);
+        Assert.assertEquals(sketch.getMax(), sketch.quantile(1.d), 0.d);
+    }
+
+    @Test
+    public void testSmall() {
+        KLLSketch sketch = new KLLSketch();
+        Assert.assertTrue(Double.isNaN(sketch.quantile(0.5d)));
+
+        for (int i = 1; i <= 99; i++) {
+            sketch.update(i);
+        }
+        sketch.update(Double.NaN);
+        Assert.assertEquals(99L, sketch.getN());
+        Assert.assertEquals(50.d, sketch.quantile(0.5d), 0.d);
+        Assert.assertEquals(1.d, sketch.quantile(0.d), 0.d);
+        Assert.assertEquals(99.d, sketch.quantile(1.d), 0.d);
+    }
+
+    @Test
+    public void testMerge() {
+        KLLSketch merged = new KLLSketch(100);
+        double[] all = new double[200000];
+        Random rnd = new Random(31L);
+        for (int p = 0; p < 4; p++) {
+            KLLSketch part = new KLLSketch(100);
+            for (int i = 0; i < 50000; i++) {
+                double v = rnd.nextGaussian() + p;
+                all[p * 50000 + i] = v;
+                part.update(v);
+            }
+            merged.merge(part);
+        }
+        Arrays.sort(all);
+        Assert.assertEquals(all.length, merged.getN());
+        Assert.assertEquals(all[0], merged.getMin(), 0.d);
+        Assert.assertEquals(all[all.length - 1], merged.getMax(), 0.d);
+        for (double phi : new double[] {0.1d, 0.5d, 0.9d}) {
+            double q = merged.quantile(phi);
+            int rank = Arrays.binarySearch(all, q);
+            Assert.assertEquals("phi=" + phi, phi, rank / (double) all.length, 0.04d);
+        }
+    }
+
+    @Test
+    public void testSerialization() {
+        KLLSketch sketch = new KLLSketch(50);
+        Random rnd = new Random(7L);
+        for (int i = 0; i < 10000; i++) {
+            sketch.update(rnd.nextDouble());
+        }
+        byte[] serialized = sketch.serialize();
+        byte[] padded = new byte[serialized.length + 3];
+        System.arraycopy(serialized, 0, padded, 3, serialized.length);
+
+        KLLSketch deserialized = KLLSketch.deserialize(padded, 3, serialized.length);
+        Assert.assertEquals(sketch.getN(), deserialized.getN());
+        Assert.assertEquals(sketch.getK(), deserialized.getK());
+        Assert.assertEquals(sketch.getNumRetained(), deserialized.getNumRetained());
+        double[] phis = new double[] {0.1d, 0.5d, 0.9d};
+        Assert.assertArrayEquals(sketch.quantiles(phis), deserialized.quantiles(phis), 0.d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        byte[] b = new KLLSketch().serialize();
+        KLLSketch.deserialize(b, 0, b.length - 1);
+    }
+
+}
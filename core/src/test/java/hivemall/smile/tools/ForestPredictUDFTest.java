@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.smile.tools;
+
+import hivemall.math.matrix.dense.RowMajorDenseMatrix2d;
+import hivemall.math.vector.DenseVector;
+import hivemall.smile.classification.DecisionTree;
+import hivemall.smile.classification.PredictionHandler;
+import hivemall.smile.data.Attribute;
+import hivemall.smile.regression.RegressionTree;
+import hivemall.smile.utils.SmileExtUtils;
+import hivemall.utils.codec.Base91;
+import hivemall.utils.lang.ArrayUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import smile.data.AttributeDataset;
+import smile.data.parser.ArffParser;
+import smile.math.Math;
+
+public class ForestPredictUDFTest {
+
+    @Test
+    public void testIris() throws IOException, ParseException, HiveException {
+        URL url = new URL(
+            "https://gist.githubusercontent.com/myui/143fa9d05bd6e7db0114/raw/500f178316b802f1cade6e3bf8dc814a96e84b1e/iris.arff");
+        InputStream is = new BufferedInputStream(url.openStream());
+
+        ArffParser arffParser = new ArffParser();
+        arffParser.setResponseIndex(4);
+        AttributeDataset iris = arffParser.parse(is);
+        double[][] x = iris.toArray(new double[iris.size()][]);
+        int[] y = iris.toArray(new int[iris.size()]);
+        Attribute[] attrs = SmileExtUtils.convertAttributeTypes(iris.attributes());
+
+        final int numTrees = 5;
+        final DecisionTree.Node[] trees = new DecisionTree.Node[numTrees];
+        final List<Text> models = new ArrayList<Text>(numTrees);
+        final double[] weights = new double[numTrees];
+        for (int t = 0; t < numTrees; t++) {
+            int[] index = Math.permutate(x.length);
+            int m = x.length / 2;
+            double[][] trainx = new double[m][];
+            int[] trainy = new int[m];
+            for (int i = 0; i < m; i++) {
+                trainx[i] = x[index[i]];
+                trainy[i] = y[index[i]];
+            }
+            DecisionTree tree = new DecisionTree(attrs,
+                new RowMajorDenseMatrix2d(trainx, x[0].length), trainy, 4);
+            byte[] b = tree.serialize(true);
+            trees[t] = DecisionTree.deserialize(b, b.length, true);
+            models.add(new Text(Base91.encode(b)));
+            weights[t] = 0.5d + t;
+        }
+
+        ForestPredictUDF udf = new ForestPredictUDF();
+        udf.initialize(new ObjectInspector[] {
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.writableStringObjectInspector),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaDoubleObjectInspector),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaDoubleObjectInspector),
+                ObjectInspectorUtils.getConstantObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector, "-classification")});
+
+        for (int i = 0; i < x.length; i++) {
+            // the same as rf_ensemble(yhat, posteriori, model_weight)
+            final double[] expected = new double[3];
+            for (int t = 0; t < numTrees; t++) {
+                final double weight = weights[t];
+                trees[t].predict(new DenseVector(x[i]), new PredictionHandler() {
+                    @Override
+                    public void handle(int output, double[] posteriori) {
+                        expected[output] += posteriori[output] * weight;
+                    }
+                });
+            }
+            int label = Math.whichMax(expected);
+            Math.unitize1(expected);
+
+            DeferredObject[] arguments = new DeferredObject[] {new DeferredJavaObject("rf#1"),
+                    new DeferredJavaObject(models),
+                    new DeferredJavaObject(ArrayUtils.toList(x[i])),
+                    new DeferredJavaObject(ArrayUtils.toList(weights))};
+            Object[] result = (Object[]) udf.evaluate(arguments);
+            Assert.assertEquals(label, ((IntWritable) result[0]).get());
+            Assert.assertEquals(expected[label], ((DoubleWritable) result[1]).get(), 1e-10);
+            @SuppressWarnings("unchecked")
+            List<DoubleWritable> probabilities = (List<DoubleWritable>) result[2];
+            for (int k = 0; k < expected.length; k++) {
+                Assert.assertEquals(expected[k], probabilities.get(k).get(), 1e-10);
+            }
+        }
+        udf.close();
+    }
+
+    @Test
+    public void testCpu() throws IOException, ParseException, HiveException {
+        URL url = new URL(
+            "https://gist.githubusercontent.com/myui/ef17aabecf0c0c5bcb69/raw/aac0575b4d43072c6f3c82d9072fdefb61892694/cpu.arff");
+        InputStream is = new BufferedInputStream(url.openStream());
+
+        ArffParser arffParser = new ArffParser();
+        arffParser.setResponseIndex(6);
+        AttributeDataset data = arffParser.parse(is);
+        double[] datay = data.toArray(new double[data.size()]);
+        double[][] datax = data.toArray(new double[data.size()][]);
+        Attribute[] attrs = SmileExtUtils.convertAttributeTypes(data.attributes());
+
+        final int numTrees = 4;
+        final RegressionTree[] trees = new RegressionTree[numTrees];
+        final List<Text> models = new ArrayList<Text>(numTrees);
+        for (int t = 0; t < numTrees; t++) {
+            int[] index = Math.permutate(datax.length);
+            int m = 3 * datax.length / 4;
+            double[][] trainx = new double[m][];
+            double[] trainy = new double[m];
+            for (int i = 0; i < m; i++) {
+                trainx[i] = datax[index[i]];
+                trainy[i] = datay[index[i]];
+            }
+            trees[t] = new RegressionTree(attrs,
+                new RowMajorDenseMatrix2d(trainx, trainx[0].length), trainy, 20);
+            models.add(new Text(Base91.encode(trees[t].serialize(true))));
+        }
+
+        ForestPredictUDF udf = new ForestPredictUDF();
+        udf.initialize(new ObjectInspector[] {
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.writableStringObjectInspector),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaDoubleObjectInspector)});
+
+        for (double[] x : Arrays.asList(datax)) {
+            double expected = 0.d;
+            for (RegressionTree tree : trees) {
+                expected += tree.predict(x);
+            }
+            expected /= numTrees;
+
+            DeferredObject[] arguments = new DeferredObject[] {new DeferredJavaObject("rf#1"),
+                    new DeferredJavaObject(models), new DeferredJavaObject(ArrayUtils.toList(x))};
+            DoubleWritable result = (DoubleWritable) udf.evaluate(arguments);
+            Assert.assertEquals(expected, result.get(), 1e-10);
+        }
+        udf.close();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EachTopKUDTFTest {
+
+    @Test
+    public void testTopK() throws HiveException {
+        // equal keys at the k-th boundary keep the earlier row
+        List<String> results = evaluate(2, new Object[][] {{"g1", 0.7d, "a"}, {"g1", 0.9d, "b"},
+                {"g1", 0.7d, "c"}, {"g2", 0.1d, "d"}, {"g2", 0.5d, "e"}, {"g2", 0.3d, "f"}});
+        Assert.assertEquals(Arrays.asList("1:0.9:b", "2:0.7:a", "1:0.5:e", "2:0.3:f"), results);
+    }
+
+    @Test
+    public void testTopKWithTiedRanks() throws HiveException {
+        List<String> results = evaluate(3, new Object[][] {{"g1", 0.7d, "a"}, {"g1", 0.9d, "b"},
+                {"g1", 0.7d, "c"}, {"g1", 0.1d, "d"}});
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("1:0.9:b", results.get(0));
+        List<String> tied = new ArrayList<String>(results.subList(1, 3));
+        Collections.sort(tied);
+        Assert.assertEquals(Arrays.asList("2:0.7:a", "2:0.7:c"), tied);
+    }
+
+    @Test
+    public void testTailK() throws HiveException {
+        List<String> results = evaluate(-2, new Object[][] {{"g1", 0.3d, "a"}, {"g1", 0.1d, "b"},
+                {"g1", 0.3d, "c"}, {"g1", 0.5d, "d"}});
+        Assert.assertEquals(Arrays.asList("1:0.1:b", "2:0.3:a"), results);
+    }
+
+    private static List<String> evaluate(final int k, final Object[][] rows)
+            throws HiveException {
+        EachTopKUDTF udtf = new EachTopKUDTF();
+        ObjectInspector stringOI = PrimitiveObjectInspectorFactory.javaStringObjectInspector;
+        udtf.initialize(new ObjectInspector[] {
+                ObjectInspectorUtils.getConstantObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaIntObjectInspector, k),
+                stringOI, PrimitiveObjectInspectorFactory.javaDoubleObjectInspector, stringOI});
+
+        final List<String> results = new ArrayList<String>();
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(Object input) throws HiveException {
+                Object[] row = (Object[]) input;
+                results.add(((IntWritable) row[0]).get() + ":" + ((DoubleWritable) row[1]).get()
+                        + ":" + row[2]);
+            }
+        });
+        for (Object[] row : rows) {
+            udtf.process(new Object[] {k, row[0], row[1], row[2]});
+        }
+        udtf.close();
+        return results;
+    }
+
+}
@@ -185,6 +185,92 @@ public class UDAFToOrderedListTest {
         Assert.assertEquals("banana", res.get(1));
     }
 
+    @Test
+    public void testTopKWithDoubleKeyTiesAtCut() throws Exception {
+        ObjectInspector[] inputOIs =
+                new ObjectInspector[] {PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                        PrimitiveObjectInspectorFactory.javaDoubleObjectInspector,
+                        ObjectInspectorUtils.getConstantObjectInspector(
+                            PrimitiveObjectInspectorFactory.javaStringObjectInspector, "-k 2")};
+
+        final String[] values = new String[] {"banana", "apple", "candy", "donut"};
+        final double[] keys = new double[] {0.7, 0.9, 0.7, 0.1};
+
+        evaluator.init(GenericUDAFEvaluator.Mode.PARTIAL1, inputOIs);
+        evaluator.reset(agg);
+
+        for (int i = 0; i < values.length; i++) {
+            evaluator.iterate(agg, new Object[] {values[i], keys[i]});
+        }
+
+        List<Object> res = evaluator.terminate(agg);
+
+        // the earlier one of the duplicated keys (0.7) at the k-th position is kept
+        Assert.assertEquals(2, res.size());
+        Assert.assertEquals("apple", res.get(0));
+        Assert.assertEquals("banana", res.get(1));
+    }
+
+    @Test
+    public void testTailKWithIntKeyTiesAtCut() throws Exception {
+        ObjectInspector[] inputOIs =
+                new ObjectInspector[] {PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                        PrimitiveObjectInspectorFactory.javaIntObjectInspector,
+                        ObjectInspectorUtils.getConstantObjectInspector(
+                            PrimitiveObjectInspectorFactory.javaStringObjectInspector, "-k -2")};
+
+        final String[] values = new String[] {"banana", "apple", "candy", "donut"};
+        final int[] keys = new int[] {3, 1, 3, 5};
+
+        evaluator.init(GenericUDAFEvaluator.Mode.PARTIAL1, inputOIs);
+        evaluator.reset(agg);
+
+        for (int i = 0; i < values.length; i++) {
+            evaluator.iterate(agg, new Object[] {values[i], keys[i]});
+        }
+
+        List<Object> res = evaluator.terminate(agg);
+
+        Assert.assertEquals(2, res.size());
+        Assert.assertEquals("apple", res.get(0));
+        Assert.assertEquals("banana", res.get(1));
+    }
+
+    @Test
+    public void testTopKWithDoubleKeyMerge() throws Exception {
+        ObjectInspector[] inputOIs =
+                new ObjectInspector[] {PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                        PrimitiveObjectInspectorFactory.javaDoubleObjectInspector,
+                        ObjectInspectorUtils.getConstantObjectInspector(
+                            PrimitiveObjectInspectorFactory.javaStringObjectInspector, "-k 2")};
+
+        ObjectInspector partialOI = evaluator.init(GenericUDAFEvaluator.Mode.PARTIAL1, inputOIs);
+        evaluator.reset(agg);
+        evaluator.iterate(agg, new Object[] {"banana", 0.7d});
+        evaluator.iterate(agg, new Object[] {"apple", 0.9d});
+        Object partial1 = evaluator.terminatePartial(agg);
+
+        evaluator.reset(agg);
+        evaluator.iterate(agg, new Object[] {"candy", 0.7d});
+        evaluator.iterate(agg, new Object[] {"donut", 0.1d});
+        Object partial2 = evaluator.terminatePartial(agg);
+
+        UDAFToOrderedListEvaluator merger = new UDAFToOrderedListEvaluator();
+        QueueAggregationBuffer mergeAgg =
+                (QueueAggregationBuffer) merger.getNewAggregationBuffer();
+        merger.init(GenericUDAFEvaluator.Mode.FINAL, new ObjectInspector[] {partialOI});
+        merger.reset(mergeAgg);
+        merger.merge(mergeAgg, partial1);
+        merger.merge(mergeAgg, partial2);
+
+        List<Object> res = merger.terminate(mergeAgg);
+
+        // the duplicated key (0.7) of the later partial result is rejected
+        Assert.assertEquals(2, res.size());
+        Assert.assertEquals("apple", res.get(0));
+        Assert.assertEquals("banana", res.get(1));
+    }
+
     @Test
     public void testNaturalOrderWithKey() throws Exception {
         ObjectInspector[] inputOIs =
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.tools.map;
+
+import hivemall.tools.map.MergeMapsUDAF.MergeMapsEvaluator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MergeMapsUDAFTest {
+
+    @Test
+    public void testSortedByKeys() throws Exception {
+        MergeMapsEvaluator evaluator = new MergeMapsEvaluator();
+        ObjectInspector mapOI = ObjectInspectorFactory.getStandardMapObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector);
+        evaluator.init(GenericUDAFEvaluator.Mode.COMPLETE, new ObjectInspector[] {mapOI});
+
+        @SuppressWarnings("deprecation")
+        AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+        evaluator.iterate(agg, new Object[] {map(new Object[] {"C", "A"}, 30, 10)});
+        evaluator.iterate(agg, new Object[] {null});
+        evaluator.iterate(agg, new Object[] {map(new Object[] {"B", "A", "D"}, 20, 11, 40)});
+
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> result = (Map<Object, Object>) evaluator.terminate(agg);
+        Assert.assertEquals(Arrays.<Object>asList("A", "B", "C", "D"),
+            Arrays.asList(result.keySet().toArray()));
+        Assert.assertEquals(Arrays.<Object>asList(11, 20, 30, 40),
+            Arrays.asList(result.values().toArray()));
+
+        evaluator.close();
+    }
+
+    @Test
+    public void testBinaryKeys() throws Exception {
+        MergeMapsEvaluator evaluator = new MergeMapsEvaluator();
+        ObjectInspector mapOI = ObjectInspectorFactory.getStandardMapObjectInspector(
+            PrimitiveObjectInspectorFactory.javaByteArrayObjectInspector,
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector);
+        evaluator.init(GenericUDAFEvaluator.Mode.COMPLETE, new ObjectInspector[] {mapOI});
+
+        @SuppressWarnings("deprecation")
+        AggregationBuffer agg = evaluator.getNewAggregationBuffer();
+        evaluator.iterate(agg,
+            new Object[] {map(new Object[] {new byte[] {2}, new byte[] {1}}, 2, 1)});
+        evaluator.iterate(agg, new Object[] {map(new Object[] {new byte[] {3}}, 3)});
+
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> result = (Map<Object, Object>) evaluator.terminate(agg);
+        Assert.assertEquals(3, result.size());
+
+        evaluator.close();
+    }
+
+    private static Map<Object, Object> map(Object[] keys, Object... values) {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+}
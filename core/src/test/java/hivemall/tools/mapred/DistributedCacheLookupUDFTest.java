@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.tools.mapred;
+
+import hivemall.utils.io.MappedKeyValueIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DistributedCacheLookupUDFTest {
+
+    @Test
+    public void testSingleKeyLookups() throws IOException, HiveException {
+        File file = buildIndex("1", "10", "2", "20", "3", null);
+        DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+        udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                PrimitiveObjectInspectorFactory.javaIntObjectInspector, constInt(-1)});
+
+        // results are not overwritten by the following lookups
+        Object r1 = udf.evaluate(args(file, 1));
+        Object r2 = udf.evaluate(args(file, 2));
+        Assert.assertEquals(new IntWritable(10), r1);
+        Assert.assertEquals(new IntWritable(20), r2);
+        Assert.assertNotSame(r1, r2);
+
+        // a missing key and a null value fall back to the default value
+        Assert.assertEquals(new IntWritable(-1), udf.evaluate(args(file, 4)));
+        Assert.assertEquals(new IntWritable(-1), udf.evaluate(args(file, 3)));
+        Assert.assertEquals(new IntWritable(10), r1);
+        udf.close();
+    }
+
+    @Test
+    public void testStringValues() throws IOException, HiveException {
+        File file = buildIndex("k1", "a long value", "k2", "short", "日本", "語");
+        DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+        udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector, constString("")});
+
+        Object r1 = udf.evaluate(args(file, "k1"));
+        Object r2 = udf.evaluate(args(file, "k2"));
+        Object r3 = udf.evaluate(args(file, "日本"));
+        Assert.assertEquals(new Text("a long value"), r1);
+        Assert.assertEquals(new Text("short"), r2);
+        Assert.assertEquals(new Text("語"), r3);
+        Assert.assertEquals(new Text(""), udf.evaluate(args(file, "k3")));
+        udf.close();
+    }
+
+    @Test
+    public void testDoubleValuesWithParseKey() throws IOException, HiveException {
+        File file = buildIndex("f1", "0.5", "f2", "-1.25");
+        DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+        udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector, constDouble(0.d),
+                constBoolean(true)});
+
+        Object r1 = udf.evaluate(args(file, "f1:3.0"));
+        Object r2 = udf.evaluate(args(file, "f2"));
+        Assert.assertEquals(new DoubleWritable(0.5d), r1);
+        Assert.assertEquals(new DoubleWritable(-1.25d), r2);
+        Assert.assertEquals(new DoubleWritable(0.d), udf.evaluate(args(file, "f3:1.0")));
+        udf.close();
+    }
+
+    @Test
+    public void testMultipleKeyLookups() throws IOException, HiveException {
+        File file = buildIndex("1", "10", "2", "20", "3", null);
+        DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+        udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaIntObjectInspector),
+                constInt(-1)});
+
+        Map<?, ?> map = (Map<?, ?>) udf.evaluate(args(file, Arrays.asList(1, 2, 3, 4, null)));
+        Assert.assertEquals(4, map.size());
+        Assert.assertEquals(new IntWritable(10), map.get(1));
+        Assert.assertEquals(new IntWritable(20), map.get(2));
+        Assert.assertEquals(new IntWritable(-1), map.get(3));
+        Assert.assertEquals(new IntWritable(-1), map.get(4));
+        Assert.assertNotSame(map.get(1), map.get(2));
+        udf.close();
+    }
+
+    @Test
+    public void testMultipleDefaultValues() throws IOException, HiveException {
+        File file = buildIndex("1", "10", "2", "20");
+        DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+        udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                ObjectInspectorFactory.getStandardListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaIntObjectInspector),
+                ObjectInspectorFactory.getStandardConstantListObjectInspector(
+                    PrimitiveObjectInspectorFactory.javaIntObjectInspector,
+                    Arrays.asList(-1, -2, -3))});
+
+        Map<?, ?> map = (Map<?, ?>) udf.evaluate(new DeferredObject[] {
+                new DeferredJavaObject(file.getPath()),
+                new DeferredJavaObject(Arrays.asList(1, 5, 2)),
+                new DeferredJavaObject(Arrays.asList(-1, -2, -3))});
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals(new IntWritable(10), map.get(1));
+        Assert.assertEquals(new IntWritable(-2), map.get(5));
+        Assert.assertEquals(new IntWritable(20), map.get(2));
+        udf.close();
+    }
+
+    @Test
+    public void testUseIndexOnTextFile() throws IOException, HiveException {
+        File file = File.createTempFile("DistributedCacheLookupUDFTest", ".txt");
+        file.deleteOnExit();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            out.write("1\u000110\n2\u000120\n3\u0001\\N\n1\u000111\n");
+        } finally {
+            out.close();
+        }
+
+        // the in-heap cache and the index built from the text file give the same results
+        for (boolean useIndex : new boolean[] {false, true}) {
+            DistributedCacheLookupUDF udf = new DistributedCacheLookupUDF();
+            udf.initialize(new ObjectInspector[] {constString(file.getPath()),
+                    PrimitiveObjectInspectorFactory.javaIntObjectInspector, constInt(-1),
+                    constBoolean(false), constBoolean(useIndex)});
+
+            Object r1 = udf.evaluate(args(file, 1));
+            Object r2 = udf.evaluate(args(file, 2));
+            Assert.assertEquals(new IntWritable(11), r1);
+            Assert.assertEquals(new IntWritable(20), r2);
+            Assert.assertEquals(new IntWritable(-1), udf.evaluate(args(file, 3)));
+            Assert.assertEquals(new IntWritable(-1), udf.evaluate(args(file, 4)));
+            udf.close();
+        }
+    }
+
+    /**
+     * @param kvs keys and values in turn where a value may be null
+     */
+    @Nonnull
+    private static File buildIndex(@Nonnull String... kvs) throws IOException {
+        File file = File.createTempFile("DistributedCacheLookupUDFTest", ".idx");
+        file.deleteOnExit();
+
+        MappedKeyValueIndex.Builder builder = new MappedKeyValueIndex.Builder(file);
+        for (int i = 0; i < kvs.length; i += 2) {
+            byte[] k = kvs[i].getBytes(StandardCharsets.UTF_8);
+            byte[] v = (kvs[i + 1] == null) ? null : kvs[i + 1].getBytes(StandardCharsets.UTF_8);
+            builder.put(k, v);
+        }
+        builder.close();
+        Assert.assertTrue(MappedKeyValueIndex.isIndexFile(file));
+        return file;
+    }
+
+    @Nonnull
+    private static DeferredObject[] args(@Nonnull File file, @Nullable Object keys) {
+        return new DeferredObject[] {new DeferredJavaObject(file.getPath()),
+                new DeferredJavaObject(keys), null};
+    }
+
+    @Nonnull
+    private static ObjectInspector constString(@Nonnull String value) {
+        return ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector, value);
+    }
+
+    @Nonnull
+    private static ObjectInspector constInt(int value) {
+        return ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaIntObjectInspector, value);
+    }
+
+    @Nonnull
+    private static ObjectInspector constDouble(double value) {
+        return ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaDoubleObjectInspector, value);
+    }
+
+    @Nonnull
+    private static ObjectInspector constBoolean(boolean value) {
+        return ObjectInspectorUtils.getConstantObjectInspector(
+            PrimitiveObjectInspectorFactory.javaBooleanObjectInspector, value);
+    }
+
+}
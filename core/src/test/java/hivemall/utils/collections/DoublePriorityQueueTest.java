@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections;
+
+import hivemall.utils.collections.DoublePriorityQueue.ValueLoader;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DoublePriorityQueueTest {
+
+    @Test
+    public void testTop3() {
+        DoublePriorityQueue<String> queue = new DoublePriorityQueue<String>(3, false);
+        Assert.assertTrue(queue.offer(1.d, "a"));
+        Assert.assertTrue(queue.offer(4.d, "b"));
+        Assert.assertTrue(queue.offer(3.d, "c"));
+        Assert.assertTrue(queue.accepts(2.d));
+        Assert.assertTrue(queue.offer(2.d, "d"));
+        Assert.assertFalse(queue.accepts(1.d));
+        Assert.assertFalse(queue.offer(1.d, "e"));
+        Assert.assertFalse(queue.offer(2.d, "f"));
+        Assert.assertEquals(3, queue.size());
+
+        queue.sort();
+        Assert.assertEquals(4.d, queue.getKey(0), 0.d);
+        Assert.assertEquals("b", queue.getValue(0));
+        Assert.assertEquals("c", queue.getValue(1));
+        Assert.assertEquals("d", queue.getValue(2));
+
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue(queue.offer(0.d, "g"));
+    }
+
+    @Test
+    public void testTail3() {
+        DoublePriorityQueue<String> queue = new DoublePriorityQueue<String>(3, true);
+        queue.offer(1.d, "a");
+        queue.offer(4.d, "b");
+        queue.offer(3.d, "c");
+        queue.offer(2.d, "d");
+        Assert.assertFalse(queue.offer(5.d, "e"));
+        queue.sort();
+        Assert.assertEquals("a", queue.getValue(0));
+        Assert.assertEquals("d", queue.getValue(1));
+        Assert.assertEquals("c", queue.getValue(2));
+    }
+
+    @Test
+    public void testUnbounded() {
+        DoublePriorityQueue<Integer> queue = new DoublePriorityQueue<Integer>(true);
+        Random rnd = new Random(43L);
+        double[] expected = new double[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = rnd.nextDouble();
+            Assert.assertTrue(queue.offer(expected[i], i));
+        }
+        Arrays.sort(expected);
+
+        queue.sort();
+        Assert.assertEquals(expected.length, queue.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], queue.getKey(i), 0.d);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        final Random rnd = new Random(43L);
+        final int k = 50;
+        final DoublePriorityQueue<Double> queue = new DoublePriorityQueue<Double>(k, false);
+        final double[] all = new double[2000];
+        for (int i = 0; i < 1000; i++) {
+            all[i] = rnd.nextInt(500);
+            queue.offer(all[i], Double.valueOf(all[i]));
+        }
+
+        final double[] other = new double[1000];
+        for (int i = 0; i < other.length; i++) {
+            other[i] = rnd.nextInt(500);
+            all[1000 + i] = other[i];
+        }
+        final int[] loaded = new int[1];
+        queue.merge(other, other.length, new ValueLoader<Double>() {
+            @Override
+            public Double load(int i) {
+                loaded[0]++;
+                return Double.valueOf(other[i]);
+            }
+        });
+        Assert.assertTrue(loaded[0] <= k);
+        Assert.assertEquals(k, queue.size());
+
+        Arrays.sort(all);
+        queue.sort();
+        for (int i = 0; i < k; i++) {
+            Assert.assertEquals(all[all.length - 1 - i], queue.getKey(i), 0.d);
+            Assert.assertEquals(queue.getKey(i), queue.getValue(i).doubleValue(), 0.d);
+        }
+    }
+
+    @Test
+    public void testMergeTiesKeepEarlier() {
+        final DoublePriorityQueue<String> queue = new DoublePriorityQueue<String>(3, false);
+        queue.offer(0.9d, "q1");
+        queue.offer(0.5d, "q2");
+        final double[] other = new double[] {0.5d, 0.7d, 0.5d, 0.1d};
+        final String[] values = new String[] {"o1", "o2", "o3", "o4"};
+        queue.merge(other, other.length, new ValueLoader<String>() {
+            @Override
+            public String load(int i) {
+                return values[i];
+            }
+        });
+
+        queue.sort();
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals("q1", queue.getValue(0));
+        Assert.assertEquals("o2", queue.getValue(1));
+        Assert.assertEquals("q2", queue.getValue(2));
+    }
+
+}
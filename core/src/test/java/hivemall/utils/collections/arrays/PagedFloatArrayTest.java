@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.arrays;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PagedFloatArrayTest {
+
+    @Test
+    public void testLazyAllocation() {
+        PagedFloatArray array = new PagedFloatArray(100L, 0.f, false, 4);
+        Assert.assertEquals(0, array.getNumAllocatedPages());
+        Assert.assertEquals(0.f, array.get(5L), 0.f);
+        Assert.assertFalse(array.isAllocated(5L));
+        Assert.assertEquals(-1L, array.nextAllocated(0L));
+
+        array.set(37L, 1.5f);
+        Assert.assertEquals(1, array.getNumAllocatedPages());
+        Assert.assertEquals(16L * 4L, array.getAllocatedBytes());
+        Assert.assertEquals(1.5f, array.get(37L), 0.f);
+        Assert.assertTrue(array.isAllocated(32L));
+        Assert.assertFalse(array.isAllocated(31L));
+        Assert.assertEquals(32L, array.nextAllocated(0L));
+        Assert.assertEquals(40L, array.nextAllocated(40L));
+        Assert.assertEquals(-1L, array.nextAllocated(48L));
+    }
+
+    @Test
+    public void testGrowBeyondIntRange() {
+        PagedFloatArray array = new PagedFloatArray(16L, 1.f, false, 10);
+        long index = (1L << 33) + 3L;
+        Assert.assertEquals(1.f, array.get(index), 0.f);
+        array.set(index, 2.f);
+        array.set(7L, 3.f);
+        Assert.assertEquals(2.f, array.get(index), 0.f);
+        Assert.assertEquals(3.f, array.get(7L), 0.f);
+        Assert.assertEquals(1.f, array.get(index + 1L), 0.f);
+        Assert.assertEquals(1.f, array.get(8L), 0.f);
+        Assert.assertTrue(array.capacity() > index);
+        Assert.assertEquals(2, array.getNumAllocatedPages());
+        Assert.assertEquals(index - 3L, array.nextAllocated(1024L));
+    }
+
+    @Test
+    public void testOffHeap() {
+        PagedFloatArray heap = new PagedFloatArray(1000L, 0.f, false, 8);
+        PagedFloatArray direct = new PagedFloatArray(1000L, 0.f, true, 8);
+        Assert.assertTrue(direct.isOffHeap());
+        Random rand = new Random(31L);
+        for (int i = 0; i < 10000; i++) {
+            long index = rand.nextInt(100000);
+            float value = rand.nextFloat();
+            heap.set(index, value);
+            direct.set(index, value);
+        }
+        Assert.assertEquals(heap.getNumAllocatedPages(), direct.getNumAllocatedPages());
+        for (long i = 0; i < 100000L; i++) {
+            Assert.assertEquals(heap.get(i), direct.get(i), 0.f);
+        }
+
+        direct.clear();
+        Assert.assertEquals(0, direct.getNumAllocatedPages());
+        Assert.assertEquals(0.f, direct.get(1L), 0.f);
+    }
+
+}
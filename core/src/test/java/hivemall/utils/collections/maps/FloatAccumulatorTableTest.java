@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.maps;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FloatAccumulatorTableTest {
+
+    @Test
+    public void testMeanInOrderOfAddition() {
+        FloatAccumulatorTable<String> table = new FloatAccumulatorTable<String>(1);
+        Assert.assertTrue(table.isEmpty());
+        table.add("b", 1.f);
+        table.add("a", 2.f);
+        table.add("b", 2.f);
+        table.add("c", -1.f);
+        table.add("b", 3.f);
+
+        Assert.assertEquals(3, table.size());
+        Assert.assertEquals("b", table.getKey(0));
+        Assert.assertEquals(2.f, table.getMean(0), 0.f);
+        Assert.assertEquals("a", table.getKey(1));
+        Assert.assertEquals(2.f, table.getMean(1), 0.f);
+        Assert.assertEquals("c", table.getKey(2));
+        Assert.assertEquals(-1.f, table.getMean(2), 0.f);
+    }
+
+    @Test
+    public void testClearAndReuse() {
+        FloatAccumulatorTable<Integer> table = new FloatAccumulatorTable<Integer>(16);
+        for (int i = 0; i < 100; i++) {
+            table.add(i, i);
+        }
+        Assert.assertEquals(100, table.size());
+        table.clear();
+        Assert.assertTrue(table.isEmpty());
+
+        table.add(7, 1.f);
+        table.add(7, 2.f);
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(Integer.valueOf(7), table.getKey(0));
+        Assert.assertEquals(1.5f, table.getMean(0), 0.f);
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        final Random rand = new Random(43L);
+        final FloatAccumulatorTable<Integer> table = new FloatAccumulatorTable<Integer>(4);
+        for (int batch = 0; batch < 10; batch++) {
+            final Map<Integer, double[]> expected = new HashMap<Integer, double[]>();
+            for (int i = 0; i < 5000; i++) {
+                int key = rand.nextInt(2000);
+                float value = rand.nextFloat();
+                table.add(key, value);
+                double[] acc = expected.get(key);
+                if (acc == null) {
+                    acc = new double[2];
+                    expected.put(key, acc);
+                }
+                acc[0] += value;
+                acc[1]++;
+            }
+            Assert.assertEquals(expected.size(), table.size());
+            for (int i = 0; i < table.size(); i++) {
+                double[] acc = expected.get(table.getKey(i));
+                Assert.assertNotNull(acc);
+                Assert.assertEquals((float) (acc[0] / acc[1]), table.getMean(i), 1e-6f);
+            }
+            table.clear();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.collections.maps;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SortedArrayMapTest {
+
+    @Test
+    public void testNaturalOrder() {
+        SortedArrayMap<Integer, String> map = new SortedArrayMap<Integer, String>();
+        map.put(3, "c");
+        map.put(1, "a");
+        map.put(2, "b");
+        map.put(1, "A");
+
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("A", map.get(1));
+        Assert.assertNull(map.get(4));
+        Assert.assertArrayEquals(new Object[] {1, 2, 3}, map.keySet().toArray());
+        Assert.assertArrayEquals(new Object[] {"A", "b", "c"}, map.values().toArray());
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testRandomAgainstTreeMap() {
+        Random rnd = new Random(43L);
+        SortedArrayMap<Integer, Integer> map =
+                new SortedArrayMap<Integer, Integer>(Collections.<Integer>reverseOrder());
+        TreeMap<Integer, Integer> expected =
+                new TreeMap<Integer, Integer>(Collections.<Integer>reverseOrder());
+        for (int i = 0; i < 10000; i++) {
+            int key = rnd.nextInt(3000);
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void testBounded() {
+        Random rnd = new Random(43L);
+        SortedArrayMap<Integer, Integer> map = new SortedArrayMap<Integer, Integer>(100, null);
+        BoundedSortedMap<Integer, Integer> expected =
+                new BoundedSortedMap<Integer, Integer>(100);
+        for (int i = 0; i < 10000; i++) {
+            int key = rnd.nextInt(5000);
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        Assert.assertEquals(100, map.size());
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void testMergeSortedRuns() {
+        SortedArrayMap<Integer, String> map = new SortedArrayMap<Integer, String>();
+        TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+        for (int run = 0; run < 5; run++) {
+            for (int i = 0; i < 1000; i++) {
+                int key = i * 5 + run % 3;
+                map.put(key, "r" + run);
+                expected.put(key, "r" + run);
+            }
+        }
+        assertEquals(expected, map);
+    }
+
+    private static <K, V> void assertEquals(Map<K, V> expected, Map<K, V> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertArrayEquals(expected.keySet().toArray(), actual.keySet().toArray());
+        Assert.assertArrayEquals(expected.values().toArray(), actual.values().toArray());
+    }
+
+}
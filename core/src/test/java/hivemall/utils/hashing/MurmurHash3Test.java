@@ -18,6 +18,7 @@
  */
 package hivemall.utils.hashing;
 
+import java.io.UnsupportedEncodingException;
 import java.util.Random;
 
 import org.junit.Test;
@@ -35,4 +36,56 @@ public class MurmurHash3Test {
         }
     }
 
+    @Test
+    public void testMurmurhash3Bytes() throws UnsupportedEncodingException {
+        Random rand = new Random(43L);
+        for (int i = 0; i < 100; i++) {
+            int v = rand.nextInt(Integer.MAX_VALUE);
+            String s = Integer.toOctalString(v) + "\u3042" + i;
+            byte[] b = s.getBytes("UTF-8");
+            Assert.assertEquals(MurmurHash3.murmurhash3_x86_32(s),
+                MurmurHash3.murmurhash3_x86_32(b));
+            Assert.assertEquals(MurmurHash3.murmurhash3_x86_32(s, 31),
+                MurmurHash3.murmurhash3_x86_32(b, 0, b.length, 31));
+        }
+    }
+
+    @Test
+    public void testMurmurhash3Ints() {
+        int[] ints = new int[] {1, -3, 0x7fffffff, 42};
+        byte[] b = new byte[ints.length * 4];
+        for (int i = 0; i < ints.length; i++) {
+            int v = ints[i];
+            b[i * 4] = (byte) v;
+            b[i * 4 + 1] = (byte) (v >>> 8);
+            b[i * 4 + 2] = (byte) (v >>> 16);
+            b[i * 4 + 3] = (byte) (v >>> 24);
+        }
+        Assert.assertEquals(MurmurHash3.murmurhash3_x86_32(b, 0, b.length, 7),
+            MurmurHash3.murmurhash3_x86_32(ints, 0, ints.length, 7));
+        Assert.assertEquals(MurmurHash3.murmurhash3_x86_32(b, 4, 8, 7),
+            MurmurHash3.murmurhash3_x86_32(ints, 1, 2, 7));
+    }
+
+    @Test
+    public void testMurmurhash3Range() {
+        String s = "field:feature:1.0";
+        Assert.assertEquals(MurmurHash3.murmurhash3("feature", 1024),
+            MurmurHash3.murmurhash3(s, 6, 7, 1024));
+        Assert.assertEquals(MurmurHash3.murmurhash3("field", 31),
+            MurmurHash3.murmurhash3(s, 0, 5, 31));
+    }
+
+    @Test
+    public void testMurmurhash3x64() throws UnsupportedEncodingException {
+        byte[] b = "The quick brown fox jumps over the lazy dog".getBytes("UTF-8");
+        Assert.assertEquals(0xe34bbc7bbc071b6cL, MurmurHash3.murmurhash3_x64_64(b, 0, b.length, 0));
+
+        byte[] padded = new byte[b.length + 5];
+        System.arraycopy(b, 0, padded, 5, b.length);
+        Assert.assertEquals(MurmurHash3.murmurhash3_x64_64(b, 0, b.length, 0),
+            MurmurHash3.murmurhash3_x64_64(padded, 5, b.length, 0));
+        Assert.assertEquals(0L, MurmurHash3.murmurhash3_x64_64(new byte[0], 0, 0, 0));
+    }
+
 }
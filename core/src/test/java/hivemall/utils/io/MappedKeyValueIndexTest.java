@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedKeyValueIndexTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        File file = File.createTempFile("MappedKeyValueIndexTest", ".idx");
+        file.deleteOnExit();
+
+        MappedKeyValueIndex.Builder builder = new MappedKeyValueIndex.Builder(file);
+        for (int i = 0; i < 10000; i++) {
+            builder.put(bytes("k" + i), bytes("v" + i));
+        }
+        builder.put(bytes("null"), null);
+        builder.put(bytes("k1"), bytes("overwritten"));
+        builder.close();
+
+        Assert.assertTrue(MappedKeyValueIndex.isIndexFile(file));
+        MappedKeyValueIndex index = MappedKeyValueIndex.open(file);
+        Assert.assertEquals(10001L, index.size());
+        for (int i = 2; i < 10000; i++) {
+            Assert.assertArrayEquals(bytes("v" + i), index.get(bytes("k" + i)));
+        }
+        Assert.assertArrayEquals(bytes("overwritten"), index.get(bytes("k1")));
+        Assert.assertNull(index.get(bytes("k10000")));
+
+        long pos = index.lookup(bytes("null"));
+        Assert.assertTrue(pos > 0L);
+        Assert.assertEquals(-1, index.valueLength(pos));
+        Assert.assertEquals(-1L, index.lookup(bytes("")));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = File.createTempFile("MappedKeyValueIndexTest", ".idx");
+        file.deleteOnExit();
+
+        new MappedKeyValueIndex.Builder(file).close();
+
+        MappedKeyValueIndex index = MappedKeyValueIndex.open(file);
+        Assert.assertEquals(0L, index.size());
+        Assert.assertNull(index.get(bytes("k")));
+    }
+
+    @Test
+    public void testTextFileIsNotIndex() throws IOException {
+        File file = File.createTempFile("MappedKeyValueIndexTest", ".txt");
+        file.deleteOnExit();
+        Assert.assertFalse(MappedKeyValueIndex.isIndexFile(file));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(UTF8);
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.utils.sampling;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AliasTableTest {
+
+    @Test
+    public void testDistribution() {
+        double[] weights = new double[] {1.d, 0.d, 3.d, 6.d};
+        AliasTable table = new AliasTable(weights);
+        Assert.assertEquals(4, table.size());
+
+        final int n = 200000;
+        final int[] counts = new int[weights.length];
+        Random rand = new Random(43L);
+        for (int i = 0; i < n; i++) {
+            counts[table.sample(rand)]++;
+        }
+        Assert.assertEquals(0, counts[1]);
+        Assert.assertEquals(0.1d, counts[0] / (double) n, 0.01d);
+        Assert.assertEquals(0.3d, counts[2] / (double) n, 0.01d);
+        Assert.assertEquals(0.6d, counts[3] / (double) n, 0.01d);
+    }
+
+    @Test
+    public void testSingleItem() {
+        AliasTable table = new AliasTable(new double[] {0.5d});
+        Random rand = new Random(43L);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(0, table.sample(rand));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWeights() {
+        new AliasTable(new double[] {0.d, 0.d});
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.metrics;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Timings recorded by MIX request handlers.
+ */
+@ThreadSafe
+public final class HandlerMetrics {
+
+    @Nonnull
+    private final LatencyHistogram processingTime;
+    @Nonnull
+    private final LatencyHistogram lockWaitTime;
+
+    public HandlerMetrics() {
+        this.processingTime = new LatencyHistogram();
+        this.lockWaitTime = new LatencyHistogram();
+    }
+
+    public void recordProcessingTime(@Nonnegative long nanos) {
+        processingTime.record(nanos);
+    }
+
+    /**
+     * Records the time spent waiting for a contended lock of a partial result.
+     */
+    public void recordLockWaitTime(@Nonnegative long nanos) {
+        lockWaitTime.record(nanos);
+    }
+
+    @Nonnull
+    LatencyHistogram getProcessingTime() {
+        return processingTime;
+    }
+
+    @Nonnull
+    LatencyHistogram getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+}
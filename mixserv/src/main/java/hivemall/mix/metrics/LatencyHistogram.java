@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A lock-free histogram of non-negative values such as latencies in nanoseconds. Like
+ * HdrHistogram, values are counted in log-linear buckets: each power of two range is split into
+ * 16 sub-buckets, and thus a recorded value is reported within 1/16 (6.25%) of its magnitude.
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+    @Nonnull
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(NUM_BUCKETS);
+    }
+
+    public void record(@Nonnegative final long value) {
+        counts.getAndIncrement(indexOf(Math.max(0L, value)));
+    }
+
+    /**
+     * Returns the counts recorded since the last call and resets them.
+     */
+    @Nonnull
+    public Snapshot snapshotAndReset() {
+        final long[] snapshot = new long[NUM_BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (counts.get(i) != 0L) {
+                long c = counts.getAndSet(i, 0L);
+                snapshot[i] = c;
+                total += c;
+            }
+        }
+        return new Snapshot(snapshot, total);
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + sub;
+    }
+
+    /**
+     * @return the largest value counted in the bucket
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        final int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        final long lowest = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lowest + (1L << shift) - 1L;
+    }
+
+    public static final class Snapshot {
+
+        @Nonnull
+        private final long[] counts;
+        private final long totalCount;
+
+        Snapshot(@Nonnull long[] counts, long totalCount) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * @param percentile in range (0, 100]
+         * @return the value below which the given percentile of recorded values fall, or 0 if
+         *         nothing is recorded
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (totalCount == 0L) {
+                return 0L;
+            }
+            final long threshold = Math.max(1L, (long) Math.ceil(totalCount * percentile / 100.d));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= threshold) {
+                    return highestValueOf(i);
+                }
+            }
+            return getMaxValue();
+        }
+
+        public long getMaxValue() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0L) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0L;
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.metrics;
+
+import hivemall.mix.metrics.LatencyHistogram.Snapshot;
+import hivemall.mix.store.SessionObject;
+import hivemall.mix.store.SessionStore;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.group.ChannelGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Periodically aggregates the handler timings, the session states and the channel backlogs into
+ * {@link MixServerMetrics}. The expensive parts of the metrics are computed here rather than in
+ * the request path.
+ */
+@NotThreadSafe
+public final class MetricsCollector implements Runnable {
+    private static final Log logger = LogFactory.getLog(MetricsCollector.class);
+
+    /** a rough size of a session entry: a map node, a feature and a partial result with a lock */
+    private static final long ESTIMATED_BYTES_PER_ENTRY = 128L;
+
+    @Nonnull
+    private final MixServerMetrics metrics;
+    @Nonnull
+    private final HandlerMetrics handlerMetrics;
+    @Nonnull
+    private final SessionStore sessionStore;
+    @Nonnull
+    private final ChannelGroup channels;
+    private final boolean dumpToLog;
+
+    /** groupID to the number of requests and responses at the last run */
+    @Nonnull
+    private final Map<String, long[]> lastCounts;
+    private long lastCollected;
+
+    public MetricsCollector(@Nonnull MixServerMetrics metrics,
+            @Nonnull HandlerMetrics handlerMetrics, @Nonnull SessionStore sessionStore,
+            @Nonnull ChannelGroup channels, boolean dumpToLog) {
+        this.metrics = metrics;
+        this.handlerMetrics = handlerMetrics;
+        this.sessionStore = sessionStore;
+        this.channels = channels;
+        this.dumpToLog = dumpToLog;
+        this.lastCounts = new HashMap<String, long[]>();
+        this.lastCollected = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run() {
+        try {
+            collect();
+        } catch (RuntimeException e) {
+            // an exception would cancel the subsequent executions
+            logger.error("Failed to collect metrics", e);
+        }
+    }
+
+    private void collect() {
+        final long now = System.currentTimeMillis();
+        final long elapsed = Math.max(1L, now - lastCollected);
+        this.lastCollected = now;
+
+        Snapshot processing = handlerMetrics.getProcessingTime().snapshotAndReset();
+        metrics.setProcessingTimeP50Micros(processing.getValueAtPercentile(50.d) / 1000L);
+        metrics.setProcessingTimeP99Micros(processing.getValueAtPercentile(99.d) / 1000L);
+        metrics.setProcessingTimeMaxMicros(processing.getMaxValue() / 1000L);
+        Snapshot lockWait = handlerMetrics.getLockWaitTime().snapshotAndReset();
+        metrics.setContendedLocks(lockWait.getTotalCount());
+        metrics.setLockWaitTimeP99Micros(lockWait.getValueAtPercentile(99.d) / 1000L);
+
+        final Map<String, SessionObject> sessions = sessionStore.getSessionMap();
+        final List<String> sessionStats = new ArrayList<String>(sessions.size());
+        final Map<String, long[]> counts = new HashMap<String, long[]>(sessions.size() * 2);
+        long totalEntries = 0L;
+        for (Map.Entry<String, SessionObject> e : sessions.entrySet()) {
+            String groupID = e.getKey();
+            SessionObject session = e.getValue();
+            long requests = session.getRequests();
+            long responses = session.getResponses();
+            long[] last = lastCounts.get(groupID);
+            long requestsPerSec = (last == null) ? 0L : (requests - last[0]) * 1000L / elapsed;
+            long responsesPerSec = (last == null) ? 0L : (responses - last[1]) * 1000L / elapsed;
+            counts.put(groupID, new long[] {requests, responses});
+
+            int entries = session.get().size();
+            totalEntries += entries;
+            sessionStats.add(groupID + ": " + requestsPerSec + " requests/sec, " + responsesPerSec
+                    + " responses/sec, " + entries + " entries, ~"
+                    + (entries * ESTIMATED_BYTES_PER_ENTRY / 1024L) + " KB");
+        }
+        lastCounts.clear();
+        lastCounts.putAll(counts);
+        metrics.setNumSessions(sessionStats.size());
+        metrics.setNumPartialResults(totalEntries);
+        metrics.setEstimatedMemoryBytes(totalEntries * ESTIMATED_BYTES_PER_ENTRY);
+        metrics.setSessionStats(sessionStats.toArray(new String[sessionStats.size()]));
+
+        int numChannels = 0, numUnwritable = 0;
+        long pendingBytes = 0L;
+        for (Channel ch : channels) {
+            numChannels++;
+            if (!ch.isWritable()) {
+                numUnwritable++;
+            }
+            ChannelOutboundBuffer buf = ch.unsafe().outboundBuffer();
+            if (buf != null) {
+                pendingBytes += buf.totalPendingWriteBytes();
+            }
+        }
+        metrics.setNumChannels(numChannels);
+        metrics.setNumUnwritableChannels(numUnwritable);
+        metrics.setPendingOutboundBytes(pendingBytes);
+
+        if (dumpToLog && logger.isInfoEnabled()) {
+            logger.info(toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder(1024);
+        buf.append("Processing time: p50=").append(metrics.getProcessingTimeP50Micros());
+        buf.append(" us, p99=").append(metrics.getProcessingTimeP99Micros());
+        buf.append(" us, max=").append(metrics.getProcessingTimeMaxMicros()).append(" us\n");
+        buf.append("Contended locks: ").append(metrics.getContendedLocks());
+        buf.append(", wait p99=").append(metrics.getLockWaitTimeP99Micros()).append(" us\n");
+        buf.append("Channels: ").append(metrics.getNumChannels());
+        buf.append(", unwritable=").append(metrics.getNumUnwritableChannels());
+        buf.append(", pending outbound=").append(metrics.getPendingOutboundBytes() / 1024L);
+        buf.append(" KB\n");
+        buf.append("Sessions: ").append(metrics.getNumSessions());
+        buf.append(", entries=").append(metrics.getNumPartialResults());
+        buf.append(", memory=~").append(metrics.getEstimatedMemoryBytes() / (1024L * 1024L));
+        buf.append(" MB");
+        for (String stat : metrics.getSessionStats()) {
+            buf.append("\n  ").append(stat);
+        }
+        return buf.toString();
+    }
+
+}
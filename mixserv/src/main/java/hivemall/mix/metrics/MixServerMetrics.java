@@ -24,6 +24,18 @@ public final class MixServerMetrics implements MixServerMetricsMBean {
     private long writeThroughput;
     private long lastReads;
     private long lastWrites;
+    private volatile int numSessions;
+    private volatile long numPartialResults;
+    private volatile long estimatedMemoryBytes;
+    private volatile long processingTimeP50Micros;
+    private volatile long processingTimeP99Micros;
+    private volatile long processingTimeMaxMicros;
+    private volatile long contendedLocks;
+    private volatile long lockWaitTimeP99Micros;
+    private volatile int numChannels;
+    private volatile int numUnwritableChannels;
+    private volatile long pendingOutboundBytes;
+    private volatile String[] sessionStats = new String[0];
 
     public MixServerMetrics() {}
 
@@ -43,6 +55,54 @@ public final class MixServerMetrics implements MixServerMetricsMBean {
         this.lastWrites = lastWrites;
     }
 
+    public void setNumSessions(int numSessions) {
+        this.numSessions = numSessions;
+    }
+
+    public void setNumPartialResults(long numPartialResults) {
+        this.numPartialResults = numPartialResults;
+    }
+
+    public void setEstimatedMemoryBytes(long estimatedMemoryBytes) {
+        this.estimatedMemoryBytes = estimatedMemoryBytes;
+    }
+
+    public void setProcessingTimeP50Micros(long processingTimeP50Micros) {
+        this.processingTimeP50Micros = processingTimeP50Micros;
+    }
+
+    public void setProcessingTimeP99Micros(long processingTimeP99Micros) {
+        this.processingTimeP99Micros = processingTimeP99Micros;
+    }
+
+    public void setProcessingTimeMaxMicros(long processingTimeMaxMicros) {
+        this.processingTimeMaxMicros = processingTimeMaxMicros;
+    }
+
+    public void setContendedLocks(long contendedLocks) {
+        this.contendedLocks = contendedLocks;
+    }
+
+    public void setLockWaitTimeP99Micros(long lockWaitTimeP99Micros) {
+        this.lockWaitTimeP99Micros = lockWaitTimeP99Micros;
+    }
+
+    public void setNumChannels(int numChannels) {
+        this.numChannels = numChannels;
+    }
+
+    public void setNumUnwritableChannels(int numUnwritableChannels) {
+        this.numUnwritableChannels = numUnwritableChannels;
+    }
+
+    public void setPendingOutboundBytes(long pendingOutboundBytes) {
+        this.pendingOutboundBytes = pendingOutboundBytes;
+    }
+
+    public void setSessionStats(String[] sessionStats) {
+        this.sessionStats = sessionStats;
+    }
+
     @Override
     public long getReadThroughput() {
         return readThroughput;
@@ -63,4 +123,64 @@ public final class MixServerMetrics implements MixServerMetricsMBean {
         return lastWrites;
     }
 
+    @Override
+    public int getNumSessions() {
+        return numSessions;
+    }
+
+    @Override
+    public long getNumPartialResults() {
+        return numPartialResults;
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return estimatedMemoryBytes;
+    }
+
+    @Override
+    public long getProcessingTimeP50Micros() {
+        return processingTimeP50Micros;
+    }
+
+    @Override
+    public long getProcessingTimeP99Micros() {
+        return processingTimeP99Micros;
+    }
+
+    @Override
+    public long getProcessingTimeMaxMicros() {
+        return processingTimeMaxMicros;
+    }
+
+    @Override
+    public long getContendedLocks() {
+        return contendedLocks;
+    }
+
+    @Override
+    public long getLockWaitTimeP99Micros() {
+        return lockWaitTimeP99Micros;
+    }
+
+    @Override
+    public int getNumChannels() {
+        return numChannels;
+    }
+
+    @Override
+    public int getNumUnwritableChannels() {
+        return numUnwritableChannels;
+    }
+
+    @Override
+    public long getPendingOutboundBytes() {
+        return pendingOutboundBytes;
+    }
+
+    @Override
+    public String[] getSessionStats() {
+        return sessionStats;
+    }
+
 }
@@ -28,4 +28,28 @@ public interface MixServerMetricsMBean {
 
     long getLastWrites();
 
+    int getNumSessions();
+
+    long getNumPartialResults();
+
+    long getEstimatedMemoryBytes();
+
+    long getProcessingTimeP50Micros();
+
+    long getProcessingTimeP99Micros();
+
+    long getProcessingTimeMaxMicros();
+
+    long getContendedLocks();
+
+    long getLockWaitTimeP99Micros();
+
+    int getNumChannels();
+
+    int getNumUnwritableChannels();
+
+    long getPendingOutboundBytes();
+
+    String[] getSessionStats();
+
 }
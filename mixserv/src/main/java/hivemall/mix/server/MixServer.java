@@ -19,24 +19,32 @@
 package hivemall.mix.server;
 
 import hivemall.mix.MixEnv;
+import hivemall.mix.metrics.HandlerMetrics;
+import hivemall.mix.metrics.MetricsCollector;
 import hivemall.mix.metrics.MetricsRegistry;
 import hivemall.mix.metrics.MixServerMetrics;
 import hivemall.mix.metrics.ThroughputCounter;
 import hivemall.mix.store.SessionStore;
 import hivemall.mix.store.SessionStore.IdleSessionSweeper;
+import hivemall.mix.store.SessionStore.SessionCheckpointer;
 import hivemall.utils.lang.CommandLineUtils;
 import hivemall.utils.lang.Primitives;
+import hivemall.utils.net.NettyUtils;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -44,6 +52,7 @@ import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.net.ssl.SSLException;
 
 import org.apache.commons.cli.CommandLine;
@@ -62,6 +71,12 @@ public final class MixServer implements Runnable {
     private final long sessionTTLinSec;
     private final long sweepIntervalInSec;
     private final boolean jmx;
+    private final boolean metricsLog;
+    private final long metricsIntervalInSec;
+    private final boolean epoll;
+    @Nullable
+    private final File checkpointDir;
+    private final long checkpointIntervalInSec;
     private volatile ServerState state;
 
     public MixServer(CommandLine cl) {
@@ -75,6 +90,17 @@ public final class MixServer implements Runnable {
         this.sessionTTLinSec = Primitives.parseLong(cl.getOptionValue("ttl"), 120L);
         this.sweepIntervalInSec = Primitives.parseLong(cl.getOptionValue("sweep"), 60L);
         this.jmx = cl.hasOption("jmx");
+        this.metricsLog = cl.hasOption("metrics_log");
+        this.metricsIntervalInSec =
+                Primitives.parseLong(cl.getOptionValue("metrics_interval"), 10L);
+        this.epoll = NettyUtils.useEpoll(cl.hasOption("epoll"));
+        if (cl.hasOption("epoll") && !epoll) {
+            logger.warn("Native epoll transport is not available. Use NIO transport instead.");
+        }
+        String checkpointDir = cl.getOptionValue("checkpoint_dir");
+        this.checkpointDir = (checkpointDir == null) ? null : new File(checkpointDir);
+        this.checkpointIntervalInSec =
+                Primitives.parseLong(cl.getOptionValue("checkpoint_interval"), 60L);
         this.state = ServerState.INITIALIZING;
         // Print the configurations that this Mix server works with
         logger.info(this.toString());
@@ -102,6 +128,16 @@ public final class MixServer implements Runnable {
             "The interval in sec that the session expiry thread runs [default: 60 sec]");
         opts.addOption("jmx", "metrics", false,
             "Toggle this option to enable monitoring metrics using JMX [default: false]");
+        opts.addOption("metrics_log", false,
+            "Toggle this option to periodically log monitoring metrics [default: false]");
+        opts.addOption("metrics_interval", true,
+            "The interval in sec that monitoring metrics are aggregated [default: 10 sec]");
+        opts.addOption("epoll", false,
+            "Use the native epoll transport if available (Linux only) [default: false]");
+        opts.addOption("checkpoint", "checkpoint_dir", true,
+            "The directory to checkpoint sessions and to restore them from on startup");
+        opts.addOption("checkpoint_interval", true,
+            "The interval in sec that sessions are checkpointed [default: 60 sec]");
         return opts;
     }
 
@@ -109,8 +145,10 @@ public final class MixServer implements Runnable {
     public String toString() {
         return "[port=" + port + ", numWorkers=" + numWorkers + ", ssl=" + ssl + ", scale=" + scale
                 + ", syncThreshold=" + syncThreshold + ", sessionTTLinSec=" + sessionTTLinSec
-                + ", sweepIntervalInSec=" + sweepIntervalInSec + ", jmx=" + jmx + ", state=" + state
-                + "]";
+                + ", sweepIntervalInSec=" + sweepIntervalInSec + ", jmx=" + jmx + ", metricsLog="
+                + metricsLog + ", metricsIntervalInSec=" + metricsIntervalInSec + ", epoll="
+                + epoll + ", checkpointDir=" + checkpointDir + ", checkpointIntervalInSec="
+                + checkpointIntervalInSec + ", state=" + state + "]";
     }
 
     public ServerState getState() {
@@ -150,38 +188,79 @@ public final class MixServer implements Runnable {
         }
 
         // configure initializer
-        SessionStore sessionStore = new SessionStore();
-        MixServerHandler msgHandler = new MixServerHandler(sessionStore, syncThreshold, scale);
+        SessionStore sessionStore = new SessionStore(checkpointDir);
+        if (checkpointDir != null) {
+            try {
+                long startTime = System.currentTimeMillis();
+                int restored = sessionStore.restore();
+                logger.info("Restored " + restored + " session groups from " + checkpointDir
+                        + " in " + (System.currentTimeMillis() - startTime) + " msec");
+            } catch (IOException e) {
+                logger.error("Failed to restore sessions from " + checkpointDir, e);
+            }
+        }
+        HandlerMetrics handlerMetrics = null;
+        ChannelGroup channels = null;
+        if (jmx || metricsLog) {
+            handlerMetrics = new HandlerMetrics();
+            channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+            MetricsCollector collector = new MetricsCollector(metrics, handlerMetrics,
+                sessionStore, channels, metricsLog);
+            metricCollector.scheduleWithFixedDelay(collector, metricsIntervalInSec,
+                metricsIntervalInSec, TimeUnit.SECONDS);
+        }
+        MixServerHandler msgHandler =
+                new MixServerHandler(sessionStore, syncThreshold, scale, handlerMetrics);
         MixServerInitializer initializer =
-                new MixServerInitializer(msgHandler, throughputCounter, sslCtx);
+                new MixServerInitializer(msgHandler, throughputCounter, sslCtx, channels);
 
         Runnable cleanSessionTask = new IdleSessionSweeper(sessionStore, sessionTTLinSec * 1000L);
         ScheduledExecutorService idleSessionChecker = Executors.newScheduledThreadPool(1);
+        Runnable checkpointTask = null;
         try {
             // start idle session sweeper
             idleSessionChecker.scheduleAtFixedRate(cleanSessionTask, sessionTTLinSec + 10L,
                 sweepIntervalInSec, TimeUnit.SECONDS);
+            // start session checkpointer on the same thread as the sweeper
+            if (checkpointDir != null) {
+                checkpointTask = new SessionCheckpointer(sessionStore);
+                idleSessionChecker.scheduleWithFixedDelay(checkpointTask,
+                    checkpointIntervalInSec, checkpointIntervalInSec, TimeUnit.SECONDS);
+            }
             // accept connections
             acceptConnections(initializer, port, numWorkers);
         } finally {
             // release threads
             idleSessionChecker.shutdownNow();
-            if (jmx) {
-                MetricsRegistry.unregisterMBeans(port);
+            try {
+                if (checkpointTask != null) {
+                    try {
+                        idleSessionChecker.awaitTermination(60L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    checkpointTask.run(); // final checkpoint
+                }
+            } finally {
+                if (jmx) {
+                    MetricsRegistry.unregisterMBeans(port);
+                }
+                metricCollector.shutdownNow();
             }
-            metricCollector.shutdownNow();
         }
     }
 
     private void acceptConnections(@Nonnull MixServerInitializer initializer, int port,
             @Nonnegative int numWorkers) throws InterruptedException {
-        final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        final EventLoopGroup workerGroup = new NioEventLoopGroup(numWorkers);
+        final EventLoopGroup bossGroup = NettyUtils.newEventLoopGroup(1, epoll);
+        final EventLoopGroup workerGroup = NettyUtils.newEventLoopGroup(numWorkers, epoll);
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.option(ChannelOption.SO_KEEPALIVE, true);
+            b.childOption(ChannelOption.TCP_NODELAY, true); // responses are flushed per read
+            b.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
             b.group(bossGroup, workerGroup);
-            b.channel(NioServerSocketChannel.class);
+            b.channel(NettyUtils.getServerSocketChannelClass(epoll));
             b.handler(new LoggingHandler(LogLevel.INFO));
             b.childHandler(initializer);
 
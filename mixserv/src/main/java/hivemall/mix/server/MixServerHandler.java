@@ -20,6 +20,7 @@ package hivemall.mix.server;
 
 import hivemall.mix.MixMessage;
 import hivemall.mix.MixMessage.MixEventName;
+import hivemall.mix.metrics.HandlerMetrics;
 import hivemall.mix.store.PartialArgminKLD;
 import hivemall.mix.store.PartialAverage;
 import hivemall.mix.store.PartialResult;
@@ -33,6 +34,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 @Sharable
 public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessage> {
@@ -41,13 +43,21 @@ public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessa
     private final SessionStore sessionStore;
     private final int syncThreshold;
     private final float scale;
+    @Nullable
+    private final HandlerMetrics metrics;
 
     public MixServerHandler(@Nonnull SessionStore sessionStore, @Nonnegative int syncThreshold,
             @Nonnegative float scale) {
+        this(sessionStore, syncThreshold, scale, null);
+    }
+
+    public MixServerHandler(@Nonnull SessionStore sessionStore, @Nonnegative int syncThreshold,
+            @Nonnegative float scale, @Nullable HandlerMetrics metrics) {
         super();
         this.sessionStore = sessionStore;
         this.syncThreshold = syncThreshold;
         this.scale = scale;
+        this.metrics = metrics;
     }
 
     @Override
@@ -56,9 +66,13 @@ public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessa
         switch (event) {
             case average:
             case argminKLD: {
+                final long startTime = (metrics == null) ? 0L : System.nanoTime();
                 SessionObject session = getSession(msg);
                 PartialResult partial = getPartialResult(msg, session);
                 mix(ctx, msg, partial, session);
+                if (metrics != null) {
+                    metrics.recordProcessingTime(System.nanoTime() - startTime);
+                }
                 break;
             }
             case closeGroup: {
@@ -70,6 +84,16 @@ public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessa
         }
     }
 
+    /**
+     * Responses are written without flushing in {@link #channelRead0(ChannelHandlerContext,
+     * MixMessage)} and flushed at once when the messages decoded from a read are all processed.
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        ctx.flush();
+        super.channelReadComplete(ctx);
+    }
+
     private void closeGroup(@Nonnull MixMessage msg) {
         String groupId = msg.getGroupID();
         if (groupId == null) {
@@ -132,7 +156,7 @@ public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessa
 
         MixMessage responseMsg = null;
         try {
-            partial.lock();
+            lock(partial);
 
             if (cancelRequest) {
                 partial.subtract(weight, covar, deltaUpdates, scale);
@@ -155,7 +179,17 @@ public final class MixServerHandler extends SimpleChannelInboundHandler<MixMessa
 
         if (responseMsg != null) {
             session.incrResponse();
-            ctx.writeAndFlush(responseMsg);
+            ctx.write(responseMsg); // flushed in channelReadComplete
+        }
+    }
+
+    private void lock(@Nonnull final PartialResult partial) {
+        if (metrics == null) {
+            partial.lock();
+        } else if (!partial.tryLock()) {
+            final long startTime = System.nanoTime();
+            partial.lock();
+            metrics.recordLockWaitTime(System.nanoTime() - startTime);
         }
     }
 
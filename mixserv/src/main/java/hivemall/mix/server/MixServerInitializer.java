@@ -23,6 +23,7 @@ import hivemall.mix.MixMessageEncoder;
 import hivemall.mix.metrics.ThroughputCounter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
 
@@ -37,16 +38,31 @@ public final class MixServerInitializer extends ChannelInitializer<SocketChannel
     private final ThroughputCounter throughputCounter;
     @Nullable
     private final SslContext sslCtx;
+    @Nullable
+    private final ChannelGroup channels;
 
     public MixServerInitializer(@Nonnull MixServerHandler msgHandler,
             @Nullable ThroughputCounter throughputCounter, @Nullable SslContext sslCtx) {
+        this(msgHandler, throughputCounter, sslCtx, null);
+    }
+
+    /**
+     * @param channels a group to which accepted channels are added for monitoring
+     */
+    public MixServerInitializer(@Nonnull MixServerHandler msgHandler,
+            @Nullable ThroughputCounter throughputCounter, @Nullable SslContext sslCtx,
+            @Nullable ChannelGroup channels) {
         this.requestHandler = msgHandler;
         this.throughputCounter = throughputCounter;
         this.sslCtx = sslCtx;
+        this.channels = channels;
     }
 
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
+        if (channels != null) {
+            channels.add(ch); // removed from the group on close
+        }
         ChannelPipeline pipeline = ch.pipeline();
         if (sslCtx != null) {
             pipeline.addLast(sslCtx.newHandler(ch.alloc()));
@@ -18,7 +18,12 @@
  */
 package hivemall.mix.store;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 
 public final class PartialArgminKLD extends PartialResult {
@@ -63,4 +68,18 @@ public final class PartialArgminKLD extends PartialResult {
         return (float) (sum_mean_div_covar / sum_inv_covar);
     }
 
+    @Override
+    protected void writeState(@Nonnull DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeDouble(sum_mean_div_covar);
+        out.writeFloat(sum_inv_covar);
+    }
+
+    @Override
+    protected void readState(@Nonnull DataInput in) throws IOException {
+        super.readState(in);
+        this.sum_mean_div_covar = in.readDouble();
+        this.sum_inv_covar = in.readFloat();
+    }
+
 }
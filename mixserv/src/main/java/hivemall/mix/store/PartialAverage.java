@@ -18,7 +18,12 @@
  */
 package hivemall.mix.store;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 
 public final class PartialAverage extends PartialResult {
@@ -67,4 +72,18 @@ public final class PartialAverage extends PartialResult {
         return (float) (scaledSumWeights / totalUpdates) * scale;
     }
 
+    @Override
+    protected void writeState(@Nonnull DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeDouble(scaledSumWeights);
+        out.writeInt(totalUpdates);
+    }
+
+    @Override
+    protected void readState(@Nonnull DataInput in) throws IOException {
+        super.readState(in);
+        this.scaledSumWeights = in.readDouble();
+        this.totalUpdates = in.readInt();
+    }
+
 }
@@ -21,7 +21,12 @@ package hivemall.mix.store;
 import hivemall.utils.lock.Lock;
 import hivemall.utils.lock.TTASLock;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 
 public abstract class PartialResult {
@@ -40,6 +45,13 @@ public abstract class PartialResult {
         lock.lock();
     }
 
+    /**
+     * @return true if the lock is acquired without waiting
+     */
+    public final boolean tryLock() {
+        return lock.tryLock();
+    }
+
     public final void unlock() {
         lock.unlock();
     }
@@ -75,4 +87,18 @@ public abstract class PartialResult {
         return Math.min(Math.abs(tempValue1), Math.abs(tempValue2));
     }
 
+    /**
+     * Writes the state of this partial result for a checkpoint. The caller must hold the lock.
+     */
+    protected void writeState(@Nonnull DataOutput out) throws IOException {
+        out.writeShort(globalClock);
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutput)}.
+     */
+    protected void readState(@Nonnull DataInput in) throws IOException {
+        this.globalClock = in.readShort();
+    }
+
 }
@@ -34,6 +34,9 @@ public final class SessionObject {
     private final AtomicLong num_requests;
     private final AtomicLong num_responses;
 
+    /** the number of requests at the last checkpoint */
+    private volatile long checkpointedRequests;
+
     public SessionObject(@Nonnull ConcurrentMap<Object, PartialResult> obj) {
         if (obj == null) {
             throw new IllegalArgumentException("obj is null");
@@ -55,6 +58,24 @@ public final class SessionObject {
         return lastAccessed;
     }
 
+    /**
+     * Marks this session as accessed now, e.g., when it is restored from a checkpoint.
+     */
+    void touch() {
+        this.lastAccessed = System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if this session received requests since the last checkpoint
+     */
+    boolean isModifiedSinceCheckpoint() {
+        return num_requests.get() != checkpointedRequests;
+    }
+
+    void setCheckpointedRequests(long requests) {
+        this.checkpointedRequests = requests;
+    }
+
     public void incrRequest() {
         this.lastAccessed = System.currentTimeMillis();
         num_requests.getAndIncrement();
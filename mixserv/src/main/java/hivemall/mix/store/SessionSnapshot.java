@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.store;
+
+import hivemall.utils.io.IOUtils;
+import hivemall.utils.lang.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * A binary snapshot of the {@link PartialResult} table of a MIX session.
+ * 
+ * <pre>
+ * header:  MAGIC(int) VERSION(int) numEntries(int) groupID(string)
+ * entries: featureType(byte) feature partialType(byte) state
+ * </pre>
+ * 
+ * Each entry is written under the lock of its {@link PartialResult}, and thus every entry is
+ * consistent while the snapshot as a whole is taken without stopping MIX requests. Snapshots are
+ * read through a buffered stream on loading, and thus they are not limited in size.
+ */
+public final class SessionSnapshot {
+
+    public static final String FILE_EXTENSION = ".mixs";
+
+    private static final int MAGIC = 0x484d4d53; // "HMMS"
+    private static final int VERSION = 1;
+    private static final int NUM_ENTRIES_OFFSET = 8;
+
+    private static final byte INTEGER_TYPE = 1;
+    private static final byte TEXT_TYPE = 2;
+    private static final byte STRING_TYPE = 3;
+    private static final byte INT_WRITABLE_TYPE = 4;
+    private static final byte LONG_WRITABLE_TYPE = 5;
+
+    private static final byte AVERAGE_TYPE = 1;
+    private static final byte ARGMIN_KLD_TYPE = 2;
+
+    @Nonnull
+    private final String groupID;
+    @Nonnull
+    private final ConcurrentMap<Object, PartialResult> partials;
+
+    private SessionSnapshot(@Nonnull String groupID,
+            @Nonnull ConcurrentMap<Object, PartialResult> partials) {
+        this.groupID = groupID;
+        this.partials = partials;
+    }
+
+    @Nonnull
+    public String getGroupID() {
+        return groupID;
+    }
+
+    @Nonnull
+    public ConcurrentMap<Object, PartialResult> getPartialResults() {
+        return partials;
+    }
+
+    /**
+     * @return the number of written entries
+     */
+    public static int write(@Nonnull String groupID,
+            @Nonnull ConcurrentMap<Object, PartialResult> partials, @Nonnull File file)
+            throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        int numEntries = 0;
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(fos, 1024 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(-1); // numEntries is filled later
+            writeString(groupID, out);
+
+            for (Map.Entry<Object, PartialResult> e : partials.entrySet()) {
+                final PartialResult partial = e.getValue();
+                final byte partialType;
+                if (partial instanceof PartialAverage) {
+                    partialType = AVERAGE_TYPE;
+                } else if (partial instanceof PartialArgminKLD) {
+                    partialType = ARGMIN_KLD_TYPE;
+                } else {
+                    throw new IllegalStateException("Unexpected partial result: "
+                            + partial.getClass().getName());
+                }
+                writeFeature(e.getKey(), out);
+                out.writeByte(partialType);
+                partial.lock();
+                try {
+                    partial.writeState(out);
+                } finally {
+                    partial.unlock();
+                }
+                numEntries++;
+            }
+            out.flush();
+
+            // the map may change during iteration, so the header is fixed up at last
+            ByteBuffer buf = ByteBuffer.allocate(4);
+            buf.putInt(0, numEntries);
+            fos.getChannel().write(buf, NUM_ENTRIES_OFFSET);
+        } finally {
+            IOUtils.closeQuietly(fos);
+        }
+        return numEntries;
+    }
+
+    @Nonnull
+    public static SessionSnapshot read(@Nonnull File file) throws IOException {
+        if (file.length() < NUM_ENTRIES_OFFSET + 4) {
+            throw new IOException("Not a MIX session snapshot: " + file);
+        }
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(fis, 1024 * 1024));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a MIX session snapshot: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            final int numEntries = in.readInt();
+            if (numEntries < 0) {
+                throw new IOException("Incomplete snapshot: " + file);
+            }
+            final String groupID = readString(in);
+
+            final ConcurrentMap<Object, PartialResult> partials =
+                    new ConcurrentHashMap<Object, PartialResult>(
+                        Math.max(16, (int) (numEntries / 0.75f) + 1));
+            for (int i = 0; i < numEntries; i++) {
+                Object feature = readFeature(in);
+                final byte partialType = in.readByte();
+                final PartialResult partial;
+                switch (partialType) {
+                    case AVERAGE_TYPE:
+                        partial = new PartialAverage();
+                        break;
+                    case ARGMIN_KLD_TYPE:
+                        partial = new PartialArgminKLD();
+                        break;
+                    default:
+                        throw new IOException("Illegal partial result type: " + partialType);
+                }
+                partial.readState(in);
+                partials.put(feature, partial);
+            }
+            return new SessionSnapshot(groupID, partials);
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    private static void writeFeature(@Nonnull final Object feature,
+            @Nonnull final DataOutputStream out) throws IOException {
+        if (feature instanceof Integer) {
+            out.writeByte(INTEGER_TYPE);
+            out.writeInt(((Integer) feature).intValue());
+        } else if (feature instanceof Text) {
+            Text t = (Text) feature;
+            out.writeByte(TEXT_TYPE);
+            out.writeInt(t.getLength());
+            out.write(t.getBytes(), 0, t.getLength());
+        } else if (feature instanceof String) {
+            out.writeByte(STRING_TYPE);
+            writeString((String) feature, out);
+        } else if (feature instanceof IntWritable) {
+            out.writeByte(INT_WRITABLE_TYPE);
+            out.writeInt(((IntWritable) feature).get());
+        } else if (feature instanceof LongWritable) {
+            out.writeByte(LONG_WRITABLE_TYPE);
+            out.writeLong(((LongWritable) feature).get());
+        } else {
+            throw new IllegalStateException("Unexpected type: " + feature.getClass().getName());
+        }
+    }
+
+    @Nonnull
+    private static Object readFeature(@Nonnull final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case INTEGER_TYPE:
+                return Integer.valueOf(in.readInt());
+            case TEXT_TYPE:
+                return new Text(readBytes(in));
+            case STRING_TYPE:
+                return readString(in);
+            case INT_WRITABLE_TYPE:
+                return new IntWritable(in.readInt());
+            case LONG_WRITABLE_TYPE:
+                return new LongWritable(in.readLong());
+            default:
+                throw new IOException("Illegal feature type: " + type);
+        }
+    }
+
+    private static void writeString(@Nonnull final String s, @Nonnull final DataOutputStream out)
+            throws IOException {
+        byte[] b = StringUtils.getBytes(s);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    @Nonnull
+    private static String readString(@Nonnull final DataInputStream in) throws IOException {
+        return StringUtils.toString(readBytes(in));
+    }
+
+    @Nonnull
+    private static byte[] readBytes(@Nonnull final DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("Illegal length: " + len);
+        }
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+
+}
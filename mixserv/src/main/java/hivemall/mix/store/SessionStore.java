@@ -18,6 +18,12 @@
  */
 package hivemall.mix.store;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +32,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.logging.Log;
@@ -37,9 +44,20 @@ public final class SessionStore {
     private static final Log logger = LogFactory.getLog(SessionStore.class);
 
     private final ConcurrentMap<String, SessionObject> sessions;
+    @Nullable
+    private final File checkpointDir;
 
     public SessionStore() {
+        this(null);
+    }
+
+    /**
+     * @param checkpointDir the directory where session snapshots are written, or null to keep
+     *        sessions only in memory
+     */
+    public SessionStore(@Nullable File checkpointDir) {
         this.sessions = new ConcurrentHashMap<String, SessionObject>();
+        this.checkpointDir = checkpointDir;
     }
 
     @Nonnull
@@ -47,6 +65,14 @@ public final class SessionStore {
         return sessions;
     }
 
+    /**
+     * @return a read-only view of the sessions keyed by group IDs
+     */
+    @Nonnull
+    public Map<String, SessionObject> getSessionMap() {
+        return Collections.unmodifiableMap(sessions);
+    }
+
     @Nonnull
     public SessionObject get(@Nonnull String groupID) {
         SessionObject sessionObj = sessions.get(groupID);
@@ -65,19 +91,123 @@ public final class SessionStore {
     public void remove(@Nonnull String groupID) {
         SessionObject removedSession = sessions.remove(groupID);
         if (removedSession != null) {
+            deleteCheckpoint(groupID);
             logger.info("Removed an idle session group: " + groupID + "\t"
                     + removedSession.getSessionInfo());
         }
     }
 
+    /**
+     * Loads the session snapshots in the checkpoint directory.
+     * 
+     * @return the number of restored sessions
+     */
+    public int restore() throws IOException {
+        if (checkpointDir == null || !checkpointDir.isDirectory()) {
+            return 0;
+        }
+        final File[] files = checkpointDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SessionSnapshot.FILE_EXTENSION);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Failed to list files in " + checkpointDir);
+        }
+        int restored = 0;
+        for (File file : files) {
+            final SessionSnapshot snapshot;
+            try {
+                snapshot = SessionSnapshot.read(file);
+            } catch (IOException e) {
+                logger.warn("Skipped a broken session snapshot: " + file, e);
+                continue;
+            }
+            SessionObject sessionObj = new SessionObject(snapshot.getPartialResults());
+            sessionObj.touch(); // so that the session is not swept right away
+            if (sessions.putIfAbsent(snapshot.getGroupID(), sessionObj) == null) {
+                restored++;
+                if (logger.isInfoEnabled()) {
+                    logger.info("Restored a session group: " + snapshot.getGroupID() + " ("
+                            + snapshot.getPartialResults().size() + " entries)");
+                }
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Writes snapshots of the sessions that received requests since the last checkpoint.
+     * 
+     * @return the number of written sessions
+     */
+    public int checkpoint() throws IOException {
+        if (checkpointDir == null) {
+            return 0;
+        }
+        if (!checkpointDir.exists() && !checkpointDir.mkdirs()) {
+            throw new IOException("Failed to create a checkpoint directory: " + checkpointDir);
+        }
+        int written = 0;
+        for (Map.Entry<String, SessionObject> e : sessions.entrySet()) {
+            final String groupID = e.getKey();
+            final SessionObject sessionObj = e.getValue();
+            if (!sessionObj.isModifiedSinceCheckpoint()) {
+                continue;
+            }
+            final long requests = sessionObj.getRequests();
+            final File file = getCheckpointFile(groupID);
+            final File tmpFile = new File(file.getPath() + ".tmp");
+            SessionSnapshot.write(groupID, sessionObj.get(), tmpFile);
+            if (!tmpFile.renameTo(file)) {
+                if (!file.delete() || !tmpFile.renameTo(file)) {
+                    tmpFile.delete();
+                    throw new IOException("Failed to rename " + tmpFile + " to " + file);
+                }
+            }
+            sessionObj.setCheckpointedRequests(requests);
+            if (sessions.get(groupID) != sessionObj) {
+                file.delete(); // removed while writing the snapshot
+                continue;
+            }
+            written++;
+        }
+        return written;
+    }
+
+    private void deleteCheckpoint(@Nonnull String groupID) {
+        if (checkpointDir == null) {
+            return;
+        }
+        File file = getCheckpointFile(groupID);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete a session snapshot: " + file);
+        }
+    }
+
+    @Nonnull
+    private File getCheckpointFile(@Nonnull String groupID) {
+        assert (checkpointDir != null);
+        final String name;
+        try {
+            name = URLEncoder.encode(groupID, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return new File(checkpointDir, name + SessionSnapshot.FILE_EXTENSION);
+    }
+
     @ThreadSafe
     public static final class IdleSessionSweeper implements Runnable {
 
+        private final SessionStore sessionStore;
         private final ConcurrentMap<String, SessionObject> sessions;
         private final long ttl;
 
         public IdleSessionSweeper(@Nonnull SessionStore sessionStore,
                 @Nonnegative long ttlInMillis) {
+            this.sessionStore = sessionStore;
             this.sessions = sessionStore.getSessions();
             this.ttl = ttlInMillis;
         }
@@ -92,6 +222,7 @@ public final class SessionStore {
                 long elapsedTime = System.currentTimeMillis() - lastAccessed;
                 if (elapsedTime > ttl) {
                     itor.remove();
+                    sessionStore.deleteCheckpoint(e.getKey());
                     if (logger.isInfoEnabled()) {
                         logger.info("Removed an idle session group: " + e.getKey() + "\t"
                                 + sessionObj.getSessionInfo());
@@ -102,4 +233,33 @@ public final class SessionStore {
         }
     }
 
+    @ThreadSafe
+    public static final class SessionCheckpointer implements Runnable {
+
+        private final SessionStore sessionStore;
+
+        public SessionCheckpointer(@Nonnull SessionStore sessionStore) {
+            this.sessionStore = sessionStore;
+        }
+
+        public void run() {
+            final long startTime = System.currentTimeMillis();
+            final int written;
+            try {
+                written = sessionStore.checkpoint();
+            } catch (IOException e) {
+                logger.error("Failed to checkpoint sessions", e);
+                return;
+            } catch (RuntimeException e) {
+                // an exception would cancel the subsequent executions
+                logger.error("Failed to checkpoint sessions", e);
+                return;
+            }
+            if (written > 0 && logger.isInfoEnabled()) {
+                logger.info("Checkpointed " + written + " session groups in "
+                        + (System.currentTimeMillis() - startTime) + " msec");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.metrics;
+
+import hivemall.mix.metrics.LatencyHistogram.Snapshot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0L; v < 100000L; v++) {
+            int index = LatencyHistogram.indexOf(v);
+            long highest = LatencyHistogram.highestValueOf(index);
+            Assert.assertTrue(v + " > " + highest, v <= highest);
+            Assert.assertTrue(v + " vs " + highest, highest - v <= Math.max(1L, v / 16L));
+        }
+        long max = Long.MAX_VALUE;
+        Assert.assertEquals(max, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(max)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Snapshot snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(1000L, snapshot.getTotalCount());
+        assertApprox(500000L, snapshot.getValueAtPercentile(50.d));
+        assertApprox(990000L, snapshot.getValueAtPercentile(99.d));
+        assertApprox(1000000L, snapshot.getMaxValue());
+
+        Snapshot empty = histogram.snapshotAndReset();
+        Assert.assertEquals(0L, empty.getTotalCount());
+        Assert.assertEquals(0L, empty.getValueAtPercentile(99.d));
+        Assert.assertEquals(0L, empty.getMaxValue());
+    }
+
+    private static void assertApprox(long expected, long actual) {
+        Assert.assertTrue("expected " + expected + " but " + actual, actual >= expected);
+        Assert.assertTrue("expected " + expected + " but " + actual,
+            actual <= expected + expected / 16L);
+    }
+
+}
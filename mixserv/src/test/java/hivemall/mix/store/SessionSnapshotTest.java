@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionSnapshotTest {
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        File file = File.createTempFile("SessionSnapshotTest", SessionSnapshot.FILE_EXTENSION);
+        file.deleteOnExit();
+
+        // spans several read buffers
+        final int numEntries = 200000;
+        ConcurrentMap<Object, PartialResult> partials =
+                new ConcurrentHashMap<Object, PartialResult>();
+        for (int i = 0; i < numEntries; i++) {
+            PartialResult partial = (i % 3 == 0) ? new PartialArgminKLD() : new PartialAverage();
+            partial.add(i, 0.5f, 1 + (i % 7), 1.f);
+            final Object feature;
+            switch (i % 5) {
+                case 0:
+                    feature = Integer.valueOf(i);
+                    break;
+                case 1:
+                    feature = new Text("f" + i);
+                    break;
+                case 2:
+                    feature = "日本" + i;
+                    break;
+                case 3:
+                    feature = new IntWritable(i);
+                    break;
+                default:
+                    feature = new LongWritable(i * 10000000000L);
+                    break;
+            }
+            partials.put(feature, partial);
+        }
+        Assert.assertEquals(numEntries, SessionSnapshot.write("job_1-label", partials, file));
+        Assert.assertTrue(file.length() > 2 * 1024 * 1024);
+
+        SessionSnapshot snapshot = SessionSnapshot.read(file);
+        Assert.assertEquals("job_1-label", snapshot.getGroupID());
+        ConcurrentMap<Object, PartialResult> restored = snapshot.getPartialResults();
+        Assert.assertEquals(numEntries, restored.size());
+        for (Map.Entry<Object, PartialResult> e : partials.entrySet()) {
+            PartialResult expected = e.getValue();
+            PartialResult actual = restored.get(e.getKey());
+            Assert.assertNotNull(e.getKey().toString(), actual);
+            Assert.assertEquals(expected.getClass(), actual.getClass());
+            Assert.assertEquals(expected.getWeight(1.f), actual.getWeight(1.f), 0.f);
+            Assert.assertEquals(expected.getCovariance(1.f), actual.getCovariance(1.f), 0.f);
+            Assert.assertEquals(expected.getClock(), actual.getClock());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshot() throws IOException {
+        File file = File.createTempFile("SessionSnapshotTest", SessionSnapshot.FILE_EXTENSION);
+        file.deleteOnExit();
+
+        ConcurrentMap<Object, PartialResult> partials =
+                new ConcurrentHashMap<Object, PartialResult>();
+        for (int i = 0; i < 100; i++) {
+            PartialResult partial = new PartialAverage();
+            partial.add(i, 1.f, 1, 1.f);
+            partials.put(Integer.valueOf(i), partial);
+        }
+        SessionSnapshot.write("job_1-label", partials, file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3L);
+        } finally {
+            raf.close();
+        }
+        SessionSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testIllegalFile() throws IOException {
+        File file = File.createTempFile("SessionSnapshotTest", ".txt");
+        file.deleteOnExit();
+        SessionSnapshot.read(file);
+    }
+
+}
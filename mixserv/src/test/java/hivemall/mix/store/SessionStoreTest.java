@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package hivemall.mix.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionStoreTest {
+
+    @Test
+    public void testCheckpointAndRestore() throws IOException {
+        File dir = createTempDir();
+        try {
+            SessionStore store = new SessionStore(dir);
+            SessionObject session = store.get("job_1-label");
+            ConcurrentMap<Object, PartialResult> map = session.get();
+            for (int i = 0; i < 1000; i++) {
+                PartialResult avg = new PartialAverage();
+                avg.add(i, 1.f, 3, 1.f);
+                avg.add(i + 1, 1.f, 1, 1.f);
+                map.put(Integer.valueOf(i), avg);
+            }
+            PartialResult kld = new PartialArgminKLD();
+            kld.add(0.5f, 0.25f, 2, 1.f);
+            map.put(new Text("f1"), kld);
+            PartialResult str = new PartialAverage();
+            str.add(1.5f, 1.f, 1, 1.f);
+            map.put("f2", str);
+            map.put(new IntWritable(-1), str);
+            session.incrRequest();
+
+            Assert.assertEquals(1, store.checkpoint());
+            // unmodified sessions are not written again
+            Assert.assertEquals(0, store.checkpoint());
+
+            SessionStore restored = new SessionStore(dir);
+            Assert.assertEquals(1, restored.restore());
+            ConcurrentMap<Object, PartialResult> restoredMap = restored.get("job_1-label").get();
+            Assert.assertEquals(map.size(), restoredMap.size());
+            for (int i = 0; i < 1000; i++) {
+                PartialResult expected = map.get(Integer.valueOf(i));
+                PartialResult actual = restoredMap.get(Integer.valueOf(i));
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(expected.getWeight(1.f), actual.getWeight(1.f), 0.f);
+                Assert.assertEquals(expected.getClock(), actual.getClock());
+            }
+            PartialResult actualKld = restoredMap.get(new Text("f1"));
+            Assert.assertTrue(actualKld instanceof PartialArgminKLD);
+            Assert.assertEquals(kld.getWeight(1.f), actualKld.getWeight(1.f), 0.f);
+            Assert.assertEquals(kld.getCovariance(1.f), actualKld.getCovariance(1.f), 0.f);
+            Assert.assertEquals(1.5f, restoredMap.get("f2").getWeight(1.f), 0.f);
+            Assert.assertEquals(1.5f, restoredMap.get(new IntWritable(-1)).getWeight(1.f), 0.f);
+
+            // restored sessions are not swept right away
+            new SessionStore.IdleSessionSweeper(restored, 60000L).run();
+            Assert.assertEquals(1, new SessionStore(dir).restore());
+
+            restored.remove("job_1-label");
+            Assert.assertEquals(0, new SessionStore(dir).restore());
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static File createTempDir() throws IOException {
+        File file = File.createTempFile("hivemall-mixserv", ".test");
+        Assert.assertTrue(file.delete());
+        Assert.assertTrue(file.mkdir());
+        return file;
+    }
+
+    private static void deleteRecursively(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+}